@@ -0,0 +1,422 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.commons.executors;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A MultiPriorityBlockingQueue which doesn't use a lock for inserting and retrieving the
+ * elements. The internal queues must be safe for concurrent access by multiple producers and
+ * consumers, for example the RingBufferQueue or the ConcurrentUnboundedQueue, and the next queue
+ * is picked by the {@link WeightedNextQueueAlgorithm}. </p>
+ *
+ * <p> A lock is only acquired on the slow path, when a consumer has to wait for an element
+ * to arrive or a producer has to wait for space in a full internal queue. Producers and consumers
+ * which find the queue in a usable state never touch the lock.</p>
+ *
+ * @param <E> E should implement the Importance interface.
+ */
+public class ConcurrentMultiPriorityBlockingQueue<E> extends MultiPriorityBlockingQueue<E> {
+
+    /** Internal queues sorted according to the priority */
+    private final InternalQueue<E>[] internalQueues;
+
+    /** Number of items in the queue */
+    private final AtomicInteger count = new AtomicInteger(0);
+
+    /** Lock used only for parking the waiting producers and consumers */
+    private final ReentrantLock waitLock = new ReentrantLock();
+
+    /** Waiting queue for takes */
+    private final Condition notEmpty = waitLock.newCondition();
+
+    /** Number of consumers waiting for an element */
+    private final AtomicInteger waitingConsumers = new AtomicInteger(0);
+
+    /** Number of producers waiting for space in an internal queue */
+    private final AtomicInteger waitingProducers = new AtomicInteger(0);
+
+    private final int capacity;
+
+    /**
+     * Create a queue with the given queues. </p>
+     *
+     * <p> This method will create a Queue that accepts objects with only the priorities specified.
+     * If a object is submitted with a different priority it will result in an
+     * IllegalArgumentException.</p>
+     *
+     * @param queues list of concurrent InternalQueues to be used
+     * @param isFixedQueues weather fixed size queues are used
+     */
+    @SuppressWarnings({"unchecked"})
+    public ConcurrentMultiPriorityBlockingQueue(List<InternalQueue<E>> queues,
+                                                boolean isFixedQueues) {
+        super(queues, isFixedQueues, new WeightedNextQueueAlgorithm<E>());
+
+        List<InternalQueue<E>> sorted = getQueues();
+        internalQueues = sorted.toArray(new InternalQueue[sorted.size()]);
+
+        int c = 0;
+        for (InternalQueue<E> queue : internalQueues) {
+            queue.setNotFullCond(waitLock.newCondition());
+            if (c != Integer.MAX_VALUE) {
+                c = isFixedQueues && queue.getCapacity() != Integer.MAX_VALUE ?
+                        c + queue.getCapacity() : Integer.MAX_VALUE;
+            }
+        }
+        capacity = c;
+    }
+
+    /**
+     * Put the specified value in to the queue. The put will block until space available
+     * in the corresponding internal queue.
+     *
+     * @param e object that implements the Importance interface
+     * @throws InterruptedException if the thread is interrupted
+     */
+    public void put(E e) throws InterruptedException {
+        InternalQueue<E> internalQueue = getQueueForElement(e);
+        if (enqueue(internalQueue, e)) {
+            return;
+        }
+
+        waitLock.lockInterruptibly();
+        waitingProducers.incrementAndGet();
+        try {
+            while (!enqueue(internalQueue, e)) {
+                internalQueue.getNotFullCond().await();
+            }
+        } finally {
+            waitingProducers.decrementAndGet();
+            waitLock.unlock();
+        }
+    }
+
+    /**
+     * Add the element if space available in the internal queue corresponding to the
+     * priority of the object.
+     *
+     * @param e element to be added
+     * @return true if element is added
+     */
+    public boolean offer(E e) {
+        return enqueue(getQueueForElement(e), e);
+    }
+
+    /**
+     * Try to add the element within the given time period. Wait the specified time for
+     * space to be available. This method blocks only if the internal queue with the
+     * corresponding priority is full.
+     *
+     * @param e element to be added
+     * @param timeout time to wait if space not available
+     * @param unit time unit
+     * @return true if the element is added
+     * @throws InterruptedException if the thread is interrupted
+     */
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        InternalQueue<E> internalQueue = getQueueForElement(e);
+        if (enqueue(internalQueue, e)) {
+            return true;
+        }
+
+        long nanos = unit.toNanos(timeout);
+        waitLock.lockInterruptibly();
+        waitingProducers.incrementAndGet();
+        try {
+            for (;;) {
+                if (enqueue(internalQueue, e)) {
+                    return true;
+                }
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = internalQueue.getNotFullCond().awaitNanos(nanos);
+            }
+        } finally {
+            waitingProducers.decrementAndGet();
+            waitLock.unlock();
+        }
+    }
+
+    /**
+     * Get an element. Block until an element is available
+     * @return an element
+     * @throws InterruptedException if the thread is interrupted
+     */
+    public E take() throws InterruptedException {
+        E e = dequeue();
+        if (e != null) {
+            return e;
+        }
+
+        waitLock.lockInterruptibly();
+        waitingConsumers.incrementAndGet();
+        try {
+            try {
+                while ((e = dequeue()) == null) {
+                    notEmpty.await();
+                }
+            } catch (InterruptedException ie) {
+                notEmpty.signal();
+                throw ie;
+            }
+            return e;
+        } finally {
+            waitingConsumers.decrementAndGet();
+            waitLock.unlock();
+        }
+    }
+
+    /**
+     * Get the element from the top of the queue. If an element is not available wait
+     * the specified timeout.
+     *
+     * @param timeout waiting time for element to be available
+     * @param unit time unit
+     * @return an object
+     * @throws InterruptedException if the thread is interrupted
+     */
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        E e = dequeue();
+        if (e != null) {
+            return e;
+        }
+
+        long nanos = unit.toNanos(timeout);
+        waitLock.lockInterruptibly();
+        waitingConsumers.incrementAndGet();
+        try {
+            for (;;) {
+                e = dequeue();
+                if (e != null) {
+                    return e;
+                }
+                if (nanos <= 0) {
+                    return null;
+                }
+                try {
+                    nanos = notEmpty.awaitNanos(nanos);
+                } catch (InterruptedException ie) {
+                    notEmpty.signal();
+                    throw ie;
+                }
+            }
+        } finally {
+            waitingConsumers.decrementAndGet();
+            waitLock.unlock();
+        }
+    }
+
+    public E poll() {
+        return dequeue();
+    }
+
+    public E peek() {
+        InternalQueue<E> internalQueue = getNextQueueAlgorithm().getNextQueue();
+        return internalQueue != null ? internalQueue.peek() : null;
+    }
+
+    /**
+     * We always give high priority to highest priority elements. We try to drain all the
+     * high priority items first.
+     *
+     * @param c collection to drain the items
+     * @return number of elements copied
+     */
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * We always give high priority to highest priority elements. We try to drain all the
+     * high priority items first.
+     *
+     * @param c collection to drain the items
+     * @param maxElements maximum elements to copy
+     * @return number of elements copied
+     */
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        int elementsCopied = 0;
+        for (InternalQueue<E> internalQueue : internalQueues) {
+            if (elementsCopied >= maxElements) {
+                break;
+            }
+            int n = internalQueue.drainTo(c, maxElements - elementsCopied);
+            if (n > 0) {
+                elementsCopied += n;
+                count.addAndGet(-n);
+                signalNotFull(internalQueue);
+            }
+        }
+        return elementsCopied;
+    }
+
+    public int remainingCapacity() {
+        if (capacity == Integer.MAX_VALUE) {
+            return Integer.MAX_VALUE;
+        }
+        return Math.max(0, capacity - count.get());
+    }
+
+    public int size() {
+        return Math.max(0, count.get());
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public Iterator<E> iterator() {
+        final Iterator<E> it = snapshot().iterator();
+        return new Iterator<E>() {
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            public E next() {
+                return it.next();
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("Elements cannot be removed " +
+                        "through the iterator of a ConcurrentMultiPriorityBlockingQueue");
+            }
+        };
+    }
+
+    public boolean remove(Object o) {
+        for (InternalQueue<E> internalQueue : internalQueues) {
+            if (internalQueue.remove(o)) {
+                count.decrementAndGet();
+                signalNotFull(internalQueue);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean contains(Object o) {
+        for (InternalQueue<E> internalQueue : internalQueues) {
+            if (internalQueue.contains(o)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String toString() {
+        StringBuffer s = new StringBuffer();
+        for (InternalQueue<E> internalQueue : internalQueues) {
+            s.append(internalQueue.toString());
+        }
+        return s.toString();
+    }
+
+    public void clear() {
+        for (InternalQueue<E> internalQueue : internalQueues) {
+            int n = 0;
+            while (internalQueue.poll() != null) {
+                n++;
+            }
+            if (n > 0) {
+                count.addAndGet(-n);
+                signalNotFull(internalQueue);
+            }
+        }
+    }
+
+    @SuppressWarnings({"SuspiciousToArrayCall"})
+    public <T> T[] toArray(T[] a) {
+        return snapshot().toArray(a);
+    }
+
+    public Object[] toArray() {
+        return snapshot().toArray();
+    }
+
+    private List<E> snapshot() {
+        List<E> list = new ArrayList<E>();
+        for (InternalQueue<E> internalQueue : internalQueues) {
+            list.addAll(internalQueue);
+        }
+        return list;
+    }
+
+    private boolean enqueue(InternalQueue<E> internalQueue, E e) {
+        if (!internalQueue.offer(e)) {
+            return false;
+        }
+        count.incrementAndGet();
+
+        if (waitingConsumers.get() > 0) {
+            waitLock.lock();
+            try {
+                notEmpty.signal();
+            } finally {
+                waitLock.unlock();
+            }
+        }
+        return true;
+    }
+
+    private E dequeue() {
+        // an internal queue reported as non empty might be drained by another consumer
+        // before we poll it, so retry until all the queues look empty
+        InternalQueue<E> internalQueue;
+        while ((internalQueue = getNextQueueAlgorithm().getNextQueue()) != null) {
+            E e = internalQueue.poll();
+            if (e != null) {
+                count.decrementAndGet();
+                signalNotFull(internalQueue);
+                return e;
+            }
+        }
+        return null;
+    }
+
+    private void signalNotFull(InternalQueue<E> internalQueue) {
+        if (waitingProducers.get() > 0) {
+            waitLock.lock();
+            try {
+                internalQueue.getNotFullCond().signalAll();
+            } finally {
+                waitLock.unlock();
+            }
+        }
+    }
+
+    private InternalQueue<E> getQueueForElement(E e) {
+        int priority = ((Importance) e).getPriority();
+        for (InternalQueue<E> q : internalQueues) {
+            if (q.getPriority() == priority) {
+                return q;
+            }
+        }
+        throw new IllegalArgumentException();
+    }
+}
@@ -28,6 +28,7 @@ public abstract class ExecutorConstants {
     public static final String IS_FIXED_SIZE = "isFixedSize";
     public static final String BEFORE_EXECUTE_HANDLER = "beforeExecuteHandler";
     public static final String NEXT_QUEUE = "nextQueue";
+    public static final String LOCK_FREE = "lockFree";
 
     public static final String PROPERTY = "property";
 
@@ -22,15 +22,19 @@ package org.apache.synapse.commons.executors;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.axis2.transport.base.threads.NativeThreadFactory;
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
 
 import java.util.concurrent.*;
+import java.util.Collections;
 import java.util.Map;
 import java.util.HashMap;
 
 /**
  * This is the class used for executing the tasks with a given priority. It is backed by a
  * BlockingQueue and a ThreadPoolExecutor. The BlockingQueue is a custom implementation which 
- * has multiple internal queues for handling separate priorities.
+ * has multiple internal queues for handling separate priorities. The time each task spends
+ * waiting in the queues is recorded per priority and exposed through the PriorityExecutorView
+ * MBean.
  */
 public class PriorityExecutor {
     private final Log log = LogFactory.getLog(PriorityExecutor.class);    
@@ -53,6 +57,8 @@ public class PriorityExecutor {
     private String fileName;
     /** Weather executor is initializer */
     private boolean initialzed;
+    /** Wait time statistics of the tasks, keyed by the priority */
+    private Map<Integer, WaitTimeHistogram> waitTimeHistograms = Collections.emptyMap();
 
     /**
      * Execute a given task with the priority specified. If the task throws an exception,
@@ -89,8 +95,19 @@ public class PriorityExecutor {
                 new NativeThreadFactory(new ThreadGroup("executor-group"),
                         "priority-worker" + (name != null ? "-" + name : "")));
 
+        Map<Integer, WaitTimeHistogram> histograms = new HashMap<Integer, WaitTimeHistogram>();
+        for (InternalQueue<Runnable> q : queue.getQueues()) {
+            histograms.put(q.getPriority(), new WaitTimeHistogram(q.getPriority()));
+        }
+        waitTimeHistograms = Collections.unmodifiableMap(histograms);
+
         initialzed = true;
 
+        if (name != null) {
+            MBeanRegistrar.getInstance().registerMBean(new PriorityExecutorView(this),
+                    PriorityExecutorView.PRIORITY_EXECUTOR_VIEW, name);
+        }
+
         if (log.isDebugEnabled()) {
             log.debug("Started the thread pool executor with threads, " +
                     "core = " + core + " max = " + max +
@@ -115,6 +132,11 @@ public class PriorityExecutor {
                 log.error("Failed to Shut down Executor");
             }
 
+            if (name != null) {
+                MBeanRegistrar.getInstance().unRegisterMBean(
+                        PriorityExecutorView.PRIORITY_EXECUTOR_VIEW, name);
+            }
+
             initialzed = false;
         }
     }
@@ -249,6 +271,19 @@ public class PriorityExecutor {
         this.fileName = fileName;
     }
 
+    /**
+     * Get the wait time statistics of the tasks executed by this executor
+     *
+     * @return histograms keyed by the priority of the internal queues
+     */
+    public Map<Integer, WaitTimeHistogram> getWaitTimeHistograms() {
+        return waitTimeHistograms;
+    }
+
+    ThreadPoolExecutor getThreadPool() {
+        return executor;
+    }
+
     /**
      * Private class for executing the tasks submitted. This class is used for
      * prevent the threads from dying in case of unhandled exceptions. Also
@@ -261,12 +296,19 @@ public class PriorityExecutor {
 
         private int priority = 1;
 
+        private final long queuedTime = System.nanoTime();
+
         private Worker(Runnable runnable, int priority) {
             this.priority = priority;
             this.runnable = runnable;
         }
 
         public void run() {
+            WaitTimeHistogram histogram = waitTimeHistograms.get(priority);
+            if (histogram != null) {
+                histogram.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - queuedTime));
+            }
+
             try {
                 runnable.run();
             } catch (Throwable e) {
@@ -0,0 +1,118 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.commons.executors;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * JMX view of a PriorityExecutor. Wait times are reported in milliseconds and keyed by
+ * the priority of the internal queues.
+ */
+public class PriorityExecutorView implements PriorityExecutorViewMBean {
+
+    public static final String PRIORITY_EXECUTOR_VIEW = "PriorityExecutor";
+
+    private final PriorityExecutor executor;
+
+    public PriorityExecutorView(PriorityExecutor executor) {
+        this.executor = executor;
+    }
+
+    public int getQueueSize() {
+        MultiPriorityBlockingQueue<Runnable> queue = executor.getQueue();
+        return queue != null ? queue.size() : 0;
+    }
+
+    public Map<Integer, Integer> getQueueSizes() {
+        Map<Integer, Integer> sizes = new HashMap<Integer, Integer>();
+        MultiPriorityBlockingQueue<Runnable> queue = executor.getQueue();
+        if (queue != null) {
+            List<InternalQueue<Runnable>> queues = queue.getQueues();
+            for (InternalQueue<Runnable> q : queues) {
+                sizes.put(q.getPriority(), q.size());
+            }
+        }
+        return sizes;
+    }
+
+    public boolean isLockFree() {
+        return executor.getQueue() instanceof ConcurrentMultiPriorityBlockingQueue;
+    }
+
+    public int getActiveThreadCount() {
+        ThreadPoolExecutor pool = executor.getThreadPool();
+        return pool != null ? pool.getActiveCount() : 0;
+    }
+
+    public int getPoolSize() {
+        ThreadPoolExecutor pool = executor.getThreadPool();
+        return pool != null ? pool.getPoolSize() : 0;
+    }
+
+    public long getCompletedTaskCount() {
+        ThreadPoolExecutor pool = executor.getThreadPool();
+        return pool != null ? pool.getCompletedTaskCount() : 0;
+    }
+
+    public long[] getWaitTimeBucketLimits() {
+        return WaitTimeHistogram.getBucketLimits();
+    }
+
+    public Map<Integer, long[]> getWaitTimeHistograms() {
+        Map<Integer, long[]> histograms = new HashMap<Integer, long[]>();
+        for (WaitTimeHistogram h : executor.getWaitTimeHistograms().values()) {
+            histograms.put(h.getPriority(), h.getBuckets());
+        }
+        return histograms;
+    }
+
+    public Map<Integer, Long> getTasksExecuted() {
+        Map<Integer, Long> counts = new HashMap<Integer, Long>();
+        for (WaitTimeHistogram h : executor.getWaitTimeHistograms().values()) {
+            counts.put(h.getPriority(), h.getCount());
+        }
+        return counts;
+    }
+
+    public Map<Integer, Double> getAvgWaitTimes() {
+        Map<Integer, Double> averages = new HashMap<Integer, Double>();
+        for (WaitTimeHistogram h : executor.getWaitTimeHistograms().values()) {
+            averages.put(h.getPriority(), h.getAvgWaitTime());
+        }
+        return averages;
+    }
+
+    public Map<Integer, Long> getMaxWaitTimes() {
+        Map<Integer, Long> max = new HashMap<Integer, Long>();
+        for (WaitTimeHistogram h : executor.getWaitTimeHistograms().values()) {
+            max.put(h.getPriority(), h.getMaxWaitTime());
+        }
+        return max;
+    }
+
+    public void reset() {
+        for (WaitTimeHistogram h : executor.getWaitTimeHistograms().values()) {
+            h.reset();
+        }
+    }
+}
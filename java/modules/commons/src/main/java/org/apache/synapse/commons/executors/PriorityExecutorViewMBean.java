@@ -0,0 +1,44 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.commons.executors;
+
+import java.util.Map;
+
+/**
+ * Provides the queue occupancy and the wait time statistics of a PriorityExecutor.
+ */
+public interface PriorityExecutorViewMBean {
+
+    public int getQueueSize();
+    public Map<Integer, Integer> getQueueSizes();
+    public boolean isLockFree();
+
+    public int getActiveThreadCount();
+    public int getPoolSize();
+    public long getCompletedTaskCount();
+
+    public long[] getWaitTimeBucketLimits();
+    public Map<Integer, long[]> getWaitTimeHistograms();
+    public Map<Integer, Long> getTasksExecuted();
+    public Map<Integer, Double> getAvgWaitTimes();
+    public Map<Integer, Long> getMaxWaitTimes();
+
+    public void reset();
+}
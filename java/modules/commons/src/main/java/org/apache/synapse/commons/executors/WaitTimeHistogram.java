@@ -0,0 +1,126 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.commons.executors;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records the time tasks of a single priority spent waiting in the queues of a
+ * PriorityExecutor before a thread picked them up. Wait times are counted in to a fixed set
+ * of buckets, so that recording a value never blocks the worker threads.
+ */
+public class WaitTimeHistogram {
+
+    /** Upper limits of the buckets in milliseconds, the last bucket holds everything above */
+    private static final long[] BUCKET_LIMITS = {1, 5, 10, 50, 100, 500, 1000, 5000};
+
+    private final int priority;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_LIMITS.length + 1);
+
+    private final AtomicLong count = new AtomicLong(0);
+
+    private final AtomicLong totalWaitTime = new AtomicLong(0);
+
+    private final AtomicLong maxWaitTime = new AtomicLong(0);
+
+    public WaitTimeHistogram(int priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * Record the wait time of a single task
+     *
+     * @param waitTime time the task was waiting in the queue, in milliseconds
+     */
+    public void record(long waitTime) {
+        if (waitTime < 0) {
+            waitTime = 0;
+        }
+
+        int i = 0;
+        while (i < BUCKET_LIMITS.length && waitTime > BUCKET_LIMITS[i]) {
+            i++;
+        }
+        buckets.incrementAndGet(i);
+        count.incrementAndGet();
+        totalWaitTime.addAndGet(waitTime);
+
+        long max;
+        while (waitTime > (max = maxWaitTime.get())) {
+            if (maxWaitTime.compareAndSet(max, waitTime)) {
+                break;
+            }
+        }
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Get the number of tasks recorded in each bucket. The bucket at index i holds the
+     * tasks waited no longer than BUCKET_LIMITS[i] milliseconds, and the last bucket holds
+     * the tasks waited longer than the largest limit.
+     *
+     * @return counts of the buckets
+     */
+    public long[] getBuckets() {
+        long[] values = new long[buckets.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = buckets.get(i);
+        }
+        return values;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMaxWaitTime() {
+        return maxWaitTime.get();
+    }
+
+    public double getAvgWaitTime() {
+        long c = count.get();
+        return c == 0 ? 0 : (double) totalWaitTime.get() / c;
+    }
+
+    public void reset() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        totalWaitTime.set(0);
+        maxWaitTime.set(0);
+    }
+
+    /**
+     * Get the upper limits of the buckets in milliseconds
+     *
+     * @return upper limits of the buckets
+     */
+    public static long[] getBucketLimits() {
+        long[] limits = new long[BUCKET_LIMITS.length];
+        System.arraycopy(BUCKET_LIMITS, 0, limits, 0, limits.length);
+        return limits;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.commons.executors;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread safe, weighted round robin algorithm for getting the next queue. Unlike the
+ * {@link PRRNextQueueAlgorithm} this algorithm doesn't have to be called under a lock, which
+ * makes it suitable for the {@link ConcurrentMultiPriorityBlockingQueue}. </p>
+ *
+ * <p>A schedule is calculated once at the initialization. In a single cycle every queue appears
+ * in the schedule as many times as its priority and the appearances are spread across the cycle.
+ * For queues with priorities 3 and 1 the schedule becomes 1, 1, 2, 1. Every call to
+ * {@link #getNextQueue()} takes the next slot of the schedule using an atomic counter. If the
+ * queue of that slot is empty the queues are scanned starting from the highest priority. If none
+ * of the queues have messages it will return null.</p>
+ */
+public class WeightedNextQueueAlgorithm<E> implements NextQueueAlgorithm<E> {
+
+    /** Reference to the actual queue */
+    private List<InternalQueue<E>> queues;
+
+    /** Index of the queue to be tried first for each slot of a cycle */
+    private int[] schedule;
+
+    /** Number of selections made so far, used for picking the slot of the schedule */
+    private final AtomicLong cursor = new AtomicLong(0);
+
+    public InternalQueue<E> getNextQueue() {
+        if (schedule.length == 0) {
+            return null;
+        }
+
+        long slot = cursor.getAndIncrement() & Long.MAX_VALUE;
+        InternalQueue<E> internalQueue = queues.get(schedule[(int) (slot % schedule.length)]);
+        if (internalQueue.size() > 0) {
+            return internalQueue;
+        }
+
+        // queues are sorted according to the priority, pick the highest non empty queue
+        for (InternalQueue<E> q : queues) {
+            if (q.size() > 0) {
+                return q;
+            }
+        }
+        return null;
+    }
+
+    public void init(List<InternalQueue<E>> queues) {
+        this.queues = queues;
+
+        int size = queues.size();
+        int[] weights = new int[size];
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            weights[i] = Math.max(1, queues.get(i).getPriority());
+            total += weights[i];
+        }
+
+        // smooth weighted round robin, so that the lower priorities are not starved in bursts
+        schedule = new int[total];
+        int[] current = new int[size];
+        for (int s = 0; s < total; s++) {
+            int selected = 0;
+            for (int i = 0; i < size; i++) {
+                current[i] += weights[i];
+                if (current[i] > current[selected]) {
+                    selected = i;
+                }
+            }
+            current[selected] -= total;
+            schedule[s] = selected;
+        }
+    }
+}
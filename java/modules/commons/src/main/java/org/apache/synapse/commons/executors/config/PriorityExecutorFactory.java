@@ -20,7 +20,9 @@
 package org.apache.synapse.commons.executors.config;
 
 import org.apache.synapse.commons.executors.*;
+import org.apache.synapse.commons.executors.queues.ConcurrentUnboundedQueue;
 import org.apache.synapse.commons.executors.queues.FixedSizeQueue;
+import org.apache.synapse.commons.executors.queues.RingBufferQueue;
 import org.apache.synapse.commons.executors.queues.UnboundedQueue;
 import org.apache.axiom.om.OMElement;
 import org.apache.axiom.om.OMAttribute;
@@ -49,6 +51,8 @@ public class PriorityExecutorFactory {
 
     public static final QName NEXT_QUEUE_ATT = new QName(ExecutorConstants.NEXT_QUEUE);
 
+    public static final QName LOCK_FREE_ATT = new QName(ExecutorConstants.LOCK_FREE);
+
     public static final QName MAX_ATT = new QName(ExecutorConstants.MAX);
     public static final QName CORE_ATT = new QName(ExecutorConstants.CORE);
     public static final QName KEEP_ALIVE_ATT = new QName(ExecutorConstants.KEEP_ALIVE);
@@ -97,12 +101,28 @@ public class PriorityExecutorFactory {
                 isFixedSize = Boolean.parseBoolean(fixedSizeAtt.getAttributeValue());
             }
 
+            boolean isLockFree = false;
+
+            OMAttribute lockFreeAtt = queuesEle.getAttribute(LOCK_FREE_ATT);
+            if (lockFreeAtt != null) {
+                isLockFree = Boolean.parseBoolean(lockFreeAtt.getAttributeValue());
+            }
+
+            if (isLockFree && nqa != null) {
+                handlerException(ExecutorConstants.NEXT_QUEUE + " cannot be used with " +
+                        ExecutorConstants.LOCK_FREE + " queues");
+            }
+
             // create the queue configuration
             List<InternalQueue<Runnable>> intQueues
-                    = createQueues(queueQName, queuesEle, isFixedSize);
+                    = createQueues(queueQName, queuesEle, isFixedSize, isLockFree);
 
-            MultiPriorityBlockingQueue<Runnable> queue =
-                    new MultiPriorityBlockingQueue<Runnable>(intQueues, isFixedSize, nqa);
+            MultiPriorityBlockingQueue<Runnable> queue;
+            if (isLockFree) {
+                queue = new ConcurrentMultiPriorityBlockingQueue<Runnable>(intQueues, isFixedSize);
+            } else {
+                queue = new MultiPriorityBlockingQueue<Runnable>(intQueues, isFixedSize, nqa);
+            }
 
             executor.setQueue(queue);
         } else {
@@ -129,7 +149,8 @@ public class PriorityExecutorFactory {
     }
 
     private static List<InternalQueue<Runnable>> createQueues(
-            QName qQName, OMElement queuesEle, boolean isFixedSize) throws AxisFault {
+            QName qQName, OMElement queuesEle, boolean isFixedSize,
+            boolean isLockFree) throws AxisFault {
 
         List<InternalQueue<Runnable>> internalQueues =
                 new ArrayList<InternalQueue<Runnable>>();
@@ -155,8 +176,12 @@ public class PriorityExecutorFactory {
             }
 
             InternalQueue<Runnable> queue;
-            if (isFixedSize) {
+            if (isFixedSize && isLockFree) {
+                queue = new RingBufferQueue<Runnable>(p, s);
+            } else if (isFixedSize) {
                 queue = new FixedSizeQueue<Runnable>(p, s);
+            } else if (isLockFree) {
+                queue = new ConcurrentUnboundedQueue<Runnable>(p);
             } else {
                 queue = new UnboundedQueue<Runnable>(p);
             }
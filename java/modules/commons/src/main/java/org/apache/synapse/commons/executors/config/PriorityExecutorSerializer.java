@@ -52,7 +52,10 @@ public class PriorityExecutorSerializer {
         NextQueueAlgorithm algo = queue.getNextQueueAlgorithm();
         OMElement queuesEle = createElement(ExecutorConstants.QUEUES, namespace);
 
-        if (!(algo instanceof PRRNextQueueAlgorithm)) {
+        if (queue instanceof ConcurrentMultiPriorityBlockingQueue) {
+            queuesEle.addAttribute(fac.createOMAttribute(ExecutorConstants.LOCK_FREE, nullNS,
+                    Boolean.toString(true)));
+        } else if (!(algo instanceof PRRNextQueueAlgorithm)) {
             queuesEle.addAttribute(fac.createOMAttribute(ExecutorConstants.NEXT_QUEUE, nullNS,
                     algo.getClass().getName()));
         }
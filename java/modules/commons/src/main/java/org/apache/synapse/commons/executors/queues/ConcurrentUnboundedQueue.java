@@ -0,0 +1,155 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.commons.executors.queues;
+
+import org.apache.synapse.commons.executors.InternalQueue;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+
+/**
+ * An unbounded, lock-free internal queue which can be accessed by multiple producers and
+ * multiple consumers concurrently. This queue is backed by a ConcurrentLinkedQueue and keeps
+ * a separate counter, so that the size can be read without traversing the elements.
+ *
+ * @param <E> Should implement the Importance interface
+ */
+public class ConcurrentUnboundedQueue<E> extends AbstractQueue<E> implements InternalQueue<E> {
+
+    private final ConcurrentLinkedQueue<E> elements = new ConcurrentLinkedQueue<E>();
+
+    private final AtomicInteger count = new AtomicInteger(0);
+
+    /**
+     * Priority of this queue
+     */
+    private int priority;
+
+    /**
+     * A waiting queue when this queue is full
+     */
+    private Condition notFullCond;
+
+    public ConcurrentUnboundedQueue(int priority) {
+        this.priority = priority;
+    }
+
+    public Iterator<E> iterator() {
+        final Iterator<E> it = elements.iterator();
+        return new Iterator<E>() {
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            public E next() {
+                return it.next();
+            }
+
+            public void remove() {
+                it.remove();
+                count.decrementAndGet();
+            }
+        };
+    }
+
+    public int size() {
+        int size = count.get();
+        return size < 0 ? 0 : size;
+    }
+
+    public boolean offer(E e) {
+        elements.offer(e);
+        count.incrementAndGet();
+        return true;
+    }
+
+    public E poll() {
+        E e = elements.poll();
+        if (e != null) {
+            count.decrementAndGet();
+        }
+        return e;
+    }
+
+    public E peek() {
+        return elements.peek();
+    }
+
+    public boolean remove(Object o) {
+        if (elements.remove(o)) {
+            count.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    public boolean contains(Object o) {
+        return elements.contains(o);
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int p) {
+        this.priority = p;
+    }
+
+    public Condition getNotFullCond() {
+        return notFullCond;
+    }
+
+    public void setNotFullCond(Condition notFullCond) {
+        this.notFullCond = notFullCond;
+    }
+
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == null) {
+            throw new NullPointerException();
+        }
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+
+        int n = 0;
+        E e;
+        while (n < maxElements && (e = poll()) != null) {
+            c.add(e);
+            n++;
+        }
+        return n;
+    }
+
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    public int getCapacity() {
+        return Integer.MAX_VALUE;
+    }
+}
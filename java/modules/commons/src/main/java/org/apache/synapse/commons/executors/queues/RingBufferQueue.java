@@ -0,0 +1,247 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.commons.executors.queues;
+
+import org.apache.synapse.commons.executors.InternalQueue;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+
+/**
+ * A bounded, lock-free internal queue which can be accessed by multiple producers and multiple
+ * consumers concurrently. Every slot of the backing array carries a sequence number which tells
+ * the producers and consumers whether the slot is ready to be written or read, so that an
+ * operation only needs a single CAS on the head or the tail of the queue.
+ *
+ * <p>The iterator of this queue works on a snapshot of the queue and does not support removal
+ * of elements.</p>
+ *
+ * @param <E> Should implement the Importance interface
+ */
+public class RingBufferQueue<E> extends AbstractQueue<E> implements InternalQueue<E> {
+
+    /**
+     * Priority of this queue
+     */
+    private int priority;
+
+    /**
+     * A waiting queue when this queue is full
+     */
+    private Condition notFullCond;
+
+    /**
+     * Capacity of the queue
+     */
+    private final int capacity;
+
+    /**
+     * Slots holding the elements
+     */
+    private final AtomicReferenceArray<E> slots;
+
+    /**
+     * Sequence numbers of the slots
+     */
+    private final AtomicLongArray sequences;
+
+    /**
+     * Position of the next element to be read
+     */
+    private final AtomicLong head = new AtomicLong(0);
+
+    /**
+     * Position of the next element to be written
+     */
+    private final AtomicLong tail = new AtomicLong(0);
+
+    /**
+     * Create a queue with the given priority and capacity.
+     * @param priority priority of the elements in the queue
+     * @param capacity capacity of the queue
+     */
+    public RingBufferQueue(int priority, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity should be a positive value");
+        }
+        this.priority = priority;
+        this.capacity = capacity;
+
+        slots = new AtomicReferenceArray<E>(capacity);
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+
+        for (;;) {
+            long pos = tail.get();
+            int index = (int) (pos % capacity);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    slots.lazySet(index, e);
+                    sequences.set(index, pos + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                // the slot still holds an element which is not consumed, queue is full
+                return false;
+            }
+        }
+    }
+
+    public E poll() {
+        for (;;) {
+            long pos = head.get();
+            int index = (int) (pos % capacity);
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    E e = slots.get(index);
+                    slots.lazySet(index, null);
+                    sequences.set(index, pos + capacity);
+                    return e;
+                }
+            } else if (diff < 0) {
+                // the slot is not written yet, queue is empty
+                return null;
+            }
+        }
+    }
+
+    public E peek() {
+        for (;;) {
+            long pos = head.get();
+            int index = (int) (pos % capacity);
+            if (sequences.get(index) - (pos + 1) < 0) {
+                return null;
+            }
+            E e = slots.get(index);
+            if (e != null && head.get() == pos) {
+                return e;
+            }
+        }
+    }
+
+    public int size() {
+        // read the head first so that a concurrent take cannot make the size negative
+        long h = head.get();
+        long size = tail.get() - h;
+        if (size < 0) {
+            return 0;
+        }
+        return size > capacity ? capacity : (int) size;
+    }
+
+    public Iterator<E> iterator() {
+        final List<E> snapshot = new ArrayList<E>();
+        long pos = head.get();
+        long end = tail.get();
+        for (; pos < end; pos++) {
+            E e = slots.get((int) (pos % capacity));
+            if (e != null) {
+                snapshot.add(e);
+            }
+        }
+
+        final Iterator<E> it = snapshot.iterator();
+        return new Iterator<E>() {
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            public E next() {
+                return it.next();
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException(
+                        "Elements cannot be removed from a RingBufferQueue iterator");
+            }
+        };
+    }
+
+    public boolean remove(Object o) {
+        // arbitrary elements cannot be removed without locking the whole buffer
+        return false;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int p) {
+        this.priority = p;
+    }
+
+    public Condition getNotFullCond() {
+        return notFullCond;
+    }
+
+    public void setNotFullCond(Condition notFullCond) {
+        this.notFullCond = notFullCond;
+    }
+
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == null) {
+            throw new NullPointerException();
+        }
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+
+        int n = 0;
+        E e;
+        while (n < maxElements && (e = poll()) != null) {
+            c.add(e);
+            n++;
+        }
+        return n;
+    }
+
+    public int remainingCapacity() {
+        return capacity - size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public String toString() {
+        return super.toString() + this.priority;
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.commons.executors;
+
+import org.apache.synapse.commons.executors.queues.ConcurrentUnboundedQueue;
+import org.apache.synapse.commons.executors.queues.RingBufferQueue;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test the ConcurrentMultiPriorityBlockingQueue operations.
+ */
+public class ConcurrentMultiPriorityBlockingQueueTest extends TestCase {
+
+    private static final int ITEMS = 100;
+
+    private final int[] priorities = {1, 3};
+    private final int[] sizes = {ITEMS, ITEMS};
+
+    private ConcurrentMultiPriorityBlockingQueue<DummyTask> fixedQueue;
+
+    private ConcurrentMultiPriorityBlockingQueue<DummyTask> unboundedQueue;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        List<InternalQueue<DummyTask>> fixed = new ArrayList<InternalQueue<DummyTask>>();
+        List<InternalQueue<DummyTask>> unbounded = new ArrayList<InternalQueue<DummyTask>>();
+        for (int i = 0; i < priorities.length; i++) {
+            fixed.add(new RingBufferQueue<DummyTask>(priorities[i], sizes[i]));
+            unbounded.add(new ConcurrentUnboundedQueue<DummyTask>(priorities[i]));
+        }
+
+        fixedQueue = new ConcurrentMultiPriorityBlockingQueue<DummyTask>(fixed, true);
+        unboundedQueue = new ConcurrentMultiPriorityBlockingQueue<DummyTask>(unbounded, false);
+    }
+
+    public void testOffer() {
+        performOffer(fixedQueue, sizes, priorities);
+
+        assertEquals(ITEMS * 2, fixedQueue.size());
+        assertEquals(0, fixedQueue.remainingCapacity());
+        assertFalse(fixedQueue.offer(new DummyTask(3)));
+
+        fixedQueue.clear();
+        assertEquals(0, fixedQueue.size());
+
+        performOffer(unboundedQueue, sizes, priorities);
+
+        assertEquals(ITEMS * 2, unboundedQueue.size());
+        assertEquals(Integer.MAX_VALUE, unboundedQueue.remainingCapacity());
+
+        unboundedQueue.clear();
+        assertEquals(0, unboundedQueue.size());
+    }
+
+    public void testUnknownPriority() {
+        try {
+            fixedQueue.offer(new DummyTask(5));
+            fail("Priority without a queue should be rejected");
+        } catch (IllegalArgumentException expected) {
+            assertEquals(0, fixedQueue.size());
+        }
+    }
+
+    public void testWeightedSelection() throws InterruptedException {
+        performOffer(fixedQueue, sizes, priorities);
+
+        // with priorities 3 and 1, every cycle of 4 takes 3 high priority tasks
+        int high = 0;
+        for (int i = 0; i < 40; i++) {
+            if (fixedQueue.take().getPriority() == 3) {
+                high++;
+            }
+        }
+        assertEquals(30, high);
+
+        fixedQueue.clear();
+    }
+
+    public void testTakeFallsBackToNonEmptyQueue() throws InterruptedException {
+        for (int i = 0; i < 10; i++) {
+            fixedQueue.offer(new DummyTask(1));
+        }
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(1, fixedQueue.take().getPriority());
+        }
+        assertNull(fixedQueue.poll());
+        assertNull(fixedQueue.poll(10, TimeUnit.MILLISECONDS));
+    }
+
+    public void testBlockingTake() throws InterruptedException {
+        final CountDownLatch taken = new CountDownLatch(1);
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    fixedQueue.take();
+                    taken.countDown();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        });
+        t.start();
+
+        waitForThreadState(t, Thread.State.WAITING);
+        fixedQueue.offer(new DummyTask(1));
+
+        assertTrue(taken.await(5, TimeUnit.SECONDS));
+        assertEquals(0, fixedQueue.size());
+    }
+
+    public void testBlockingPut() throws InterruptedException {
+        performOffer(fixedQueue, sizes, priorities);
+
+        final CountDownLatch put = new CountDownLatch(1);
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    fixedQueue.put(new DummyTask(3));
+                    put.countDown();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        });
+        t.start();
+
+        waitForThreadState(t, Thread.State.WAITING);
+        assertEquals(1, put.getCount());
+
+        // drain the high priority queue to make room for the blocked put
+        List<DummyTask> drained = new ArrayList<DummyTask>();
+        fixedQueue.drainTo(drained, ITEMS + 1);
+
+        assertTrue(put.await(5, TimeUnit.SECONDS));
+        assertEquals(ITEMS, fixedQueue.size());
+
+        fixedQueue.clear();
+    }
+
+    public void testConcurrentPutAndTake() throws InterruptedException {
+        final int threads = 4;
+        final int items = 5000;
+        final AtomicInteger takenCount = new AtomicInteger(0);
+        final CountDownLatch done = new CountDownLatch(threads * 2);
+
+        for (int t = 0; t < threads; t++) {
+            final int priority = priorities[t % priorities.length];
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < items; i++) {
+                            fixedQueue.put(new DummyTask(priority));
+                        }
+                    } catch (InterruptedException ignored) {
+                    }
+                    done.countDown();
+                }
+            }).start();
+
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < items; i++) {
+                            if (fixedQueue.take() != null) {
+                                takenCount.incrementAndGet();
+                            }
+                        }
+                    } catch (InterruptedException ignored) {
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(threads * items, takenCount.get());
+        assertEquals(0, fixedQueue.size());
+    }
+
+    private void performOffer(ConcurrentMultiPriorityBlockingQueue<DummyTask> queue,
+                              int[] items, int[] priorities) {
+        for (int i = 0; i < priorities.length; i++) {
+            for (int j = 0; j < items[i]; j++) {
+                queue.offer(new DummyTask(priorities[i]));
+            }
+        }
+    }
+
+    private void waitForThreadState(Thread t, Thread.State state) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+        while (t.getState() != state && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+    }
+}
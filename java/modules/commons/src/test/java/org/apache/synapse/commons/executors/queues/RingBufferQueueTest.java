@@ -0,0 +1,150 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.commons.executors.queues;
+
+import junit.framework.TestCase;
+import org.apache.synapse.commons.executors.DummyTask;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RingBufferQueueTest extends TestCase {
+
+    private RingBufferQueue<DummyTask> queue;
+
+    private final int SIZE = 10;
+    private final int PRIORITY = 10;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        queue = new RingBufferQueue<DummyTask>(PRIORITY, SIZE);
+    }
+
+    public void testOffer() {
+        for (int i = 0; i < SIZE; i++) {
+            assertTrue(queue.offer(new DummyTask(PRIORITY)));
+        }
+
+        assertEquals(SIZE, queue.size());
+        assertEquals(0, queue.remainingCapacity());
+        assertFalse("Queue is full", queue.offer(new DummyTask(PRIORITY)));
+
+        queue.clear();
+
+        assertEquals(0, queue.size());
+        assertEquals(SIZE, queue.remainingCapacity());
+    }
+
+    public void testOrderAcrossWrapAround() {
+        int mark = 0;
+        int expected = 0;
+        // go around the buffer a few times with a partially filled queue
+        for (int round = 0; round < SIZE * 3; round++) {
+            for (int i = 0; i < 3; i++) {
+                DummyTask task = new DummyTask(PRIORITY);
+                task.setMark(mark++);
+                assertTrue(queue.offer(task));
+            }
+            for (int i = 0; i < 3; i++) {
+                assertEquals(expected++, queue.peek().getMark());
+                assertEquals(expected - 1, queue.poll().getMark());
+            }
+        }
+
+        assertNull(queue.poll());
+        assertNull(queue.peek());
+    }
+
+    public void testDrainTo() {
+        for (int i = 0; i < SIZE; i++) {
+            queue.offer(new DummyTask(PRIORITY));
+        }
+
+        List<DummyTask> tasks = new ArrayList<DummyTask>();
+        assertEquals(4, queue.drainTo(tasks, 4));
+        assertEquals(SIZE - 4, queue.size());
+        assertEquals(SIZE - 4, queue.drainTo(tasks));
+        assertEquals(SIZE, tasks.size());
+        assertEquals(0, queue.size());
+    }
+
+    public void testIterator() {
+        for (int i = 0; i < SIZE / 2; i++) {
+            DummyTask task = new DummyTask(PRIORITY);
+            task.setMark(i);
+            queue.offer(task);
+        }
+
+        int i = 0;
+        for (DummyTask task : queue) {
+            assertEquals(i++, task.getMark());
+        }
+        assertEquals(SIZE / 2, i);
+        assertTrue(queue.contains(queue.peek()));
+    }
+
+    public void testConcurrentAccess() throws InterruptedException {
+        final int threads = 4;
+        final int items = 10000;
+        final ConcurrentHashMap<DummyTask, Boolean> taken =
+                new ConcurrentHashMap<DummyTask, Boolean>();
+        final AtomicInteger remaining = new AtomicInteger(threads * items);
+        final CountDownLatch done = new CountDownLatch(threads * 2);
+
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                public void run() {
+                    for (int i = 0; i < items; i++) {
+                        DummyTask task = new DummyTask(PRIORITY);
+                        while (!queue.offer(task)) {
+                            Thread.yield();
+                        }
+                    }
+                    done.countDown();
+                }
+            }).start();
+
+            new Thread(new Runnable() {
+                public void run() {
+                    while (remaining.get() > 0) {
+                        DummyTask task = queue.poll();
+                        if (task != null) {
+                            assertNull("Task is taken twice", taken.put(task, Boolean.TRUE));
+                            remaining.decrementAndGet();
+                        } else {
+                            Thread.yield();
+                        }
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        done.await();
+
+        assertEquals(threads * items, taken.size());
+        assertEquals(0, queue.size());
+    }
+}
@@ -259,6 +259,12 @@ public final class SynapseConstants {
     //- Endpoints processing constants -
     /** Property name to store the last endpoint through which the message has flowed */
     public static final String LAST_ENDPOINT = "last_endpoint";
+
+    /**
+     * Property name to store the load statistics of the endpoint chosen by a latency aware load
+     * balance algorithm, until the request is sent
+     */
+    public static final String LOADBALANCE_STATISTICS = "synapse.loadbalance.statistics";
     
     /** A name to use for anonymous endpoints */
     public static final String ANONYMOUS_ENDPOINT = "AnonymousEndpoint";
@@ -49,6 +49,7 @@ import org.apache.synapse.mediators.base.SequenceMediator;
 import org.apache.synapse.registry.Registry;
 import org.apache.axiom.om.OMNode;
 import org.apache.synapse.rest.API;
+import org.apache.synapse.rest.APIRoutingIndex;
 
 import javax.xml.namespace.QName;
 import java.io.IOException;
@@ -154,6 +155,9 @@ public class SynapseConfiguration implements ManagedLifecycle, SynapseArtifact {
 
     private Map<String, API> apiTable = new ConcurrentHashMap<String, API>();
 
+    private volatile APIRoutingIndex apiRoutingIndex = new APIRoutingIndex(
+            Collections.<API>emptyList());
+
     /**
      * Description/documentation of the configuration
      */
@@ -326,6 +330,7 @@ public class SynapseConfiguration implements ManagedLifecycle, SynapseArtifact {
                 }
             }
             apiTable.put(name, api);
+            rebuildAPIRoutingIndex();
         } else {
             handleException("Duplicate resource definition by the name: " + name);
         }
@@ -342,6 +347,7 @@ public class SynapseConfiguration implements ManagedLifecycle, SynapseArtifact {
                 }
             }
             apiTable.put(name, api);
+            rebuildAPIRoutingIndex();
         }
     }
 
@@ -353,10 +359,26 @@ public class SynapseConfiguration implements ManagedLifecycle, SynapseArtifact {
         return apiTable.get(name);
     }
 
+    /**
+     * Get the routing index compiled from the APIs currently deployed in the configuration.
+     * The returned index is an immutable snapshot, which is replaced whenever an API is
+     * added, updated or removed.
+     *
+     * @return the current API routing index
+     */
+    public APIRoutingIndex getAPIRoutingIndex() {
+        return apiRoutingIndex;
+    }
+
+    private synchronized void rebuildAPIRoutingIndex() {
+        apiRoutingIndex = new APIRoutingIndex(apiTable.values());
+    }
+
     public void removeAPI(String name) {
         API api = apiTable.get(name);
         if (api != null) {
             apiTable.remove(name);
+            rebuildAPIRoutingIndex();
         } else {
             handleException("No API exists by the name: " + name);
         }
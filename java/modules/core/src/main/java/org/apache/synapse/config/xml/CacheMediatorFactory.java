@@ -35,11 +35,12 @@ import java.util.Properties;
  *
  * <pre>
  * &lt;cache [id="string"] [hashGenerator="class"] [timeout="seconds"]
- *      [scope=(per-host | per-mediator)] collector=(true | false) [maxMessageSize="in-bytes"]&gt;
+ *      [scope=(per-host | per-mediator)] collector=(true | false) [maxMessageSize="in-bytes"]
+ *      [engine="class"]&gt;
  *   &lt;onCacheHit [sequence="key"]&gt;
  *     (mediator)+
  *   &lt;/onCacheHit&gt;?
- *   &lt;implementation type=(memory | disk) maxSize="int"/&gt;
+ *   &lt;implementation type=(memory | disk) maxSize="int" [maxBytes="long"]/&gt;*
  * &lt;/cache&gt;
  * </pre>
  */
@@ -55,6 +56,8 @@ public class CacheMediatorFactory extends AbstractMediatorFactory {
     private static final QName ATT_SEQUENCE = new QName("sequence");
     private static final QName ATT_TYPE = new QName("type");
     private static final QName ATT_SIZE = new QName("maxSize");
+    private static final QName ATT_BYTES = new QName("maxBytes");
+    private static final QName ATT_ENGINE = new QName("engine");
     private static final QName ON_CACHE_HIT_Q =
         new QName(XMLConfigConstants.SYNAPSE_NAMESPACE, "onCacheHit");
     private static final QName IMPLEMENTATION_Q =
@@ -121,6 +124,11 @@ public class CacheMediatorFactory extends AbstractMediatorFactory {
                 cache.setTimeout(DEFAULT_TIMEOUT);
             }
 
+            OMAttribute engineAttr = elem.getAttribute(ATT_ENGINE);
+            if (engineAttr != null && engineAttr.getAttributeValue() != null) {
+                cache.setEngine(engineAttr.getAttributeValue());
+            }
+
             OMAttribute maxMessageSizeAttr = elem.getAttribute(ATT_MAX_MSG_SIZE);
             if (maxMessageSizeAttr != null && maxMessageSizeAttr.getAttributeValue() != null) {
                 cache.setMaxMessageSize(Integer.parseInt(maxMessageSizeAttr.getAttributeValue()));
@@ -141,18 +149,26 @@ public class CacheMediatorFactory extends AbstractMediatorFactory {
                 OMElement implElem = (OMElement) itr.next();
                 OMAttribute typeAttr = implElem.getAttribute(ATT_TYPE);
                 OMAttribute sizeAttr = implElem.getAttribute(ATT_SIZE);
+                OMAttribute bytesAttr = implElem.getAttribute(ATT_BYTES);
                 if (typeAttr != null && typeAttr.getAttributeValue() != null) {
                     String type = typeAttr.getAttributeValue();
-                    if (CachingConstants.TYPE_MEMORY.equals(type) && sizeAttr != null &&
-                        sizeAttr.getAttributeValue() != null) {
-                        cache.setInMemoryCacheSize(Integer.parseInt(sizeAttr.getAttributeValue()));
+                    if (CachingConstants.TYPE_MEMORY.equals(type)) {
+                        if (sizeAttr != null && sizeAttr.getAttributeValue() != null) {
+                            cache.setInMemoryCacheSize(
+                                    Integer.parseInt(sizeAttr.getAttributeValue()));
+                        }
+                        if (bytesAttr != null && bytesAttr.getAttributeValue() != null) {
+                            cache.setMaxMemoryBytes(Long.parseLong(bytesAttr.getAttributeValue()));
+                        }
                     } else if (CachingConstants.TYPE_DISK.equals(type)) {
-                        log.warn("Disk based and hirearchycal caching is not implemented yet");
                         if (sizeAttr != null && sizeAttr.getAttributeValue() != null) {
                             cache.setDiskCacheSize(Integer.parseInt(sizeAttr.getAttributeValue()));
                         } else {
                             cache.setDiskCacheSize(DEFAULT_DISK_CACHE_SIZE);
                         }
+                        if (bytesAttr != null && bytesAttr.getAttributeValue() != null) {
+                            cache.setMaxDiskBytes(Long.parseLong(bytesAttr.getAttributeValue()));
+                        }
                     } else {
                         handleException("unknown implementation type for the Cache mediator");
                     }
@@ -28,11 +28,12 @@ import org.apache.synapse.mediators.builtin.CacheMediator;
  * <p/>
  * <pre>
  * &lt;cache [id="string"] [hashGenerator="class"] [timeout="seconds"]
- *      [scope=(per-host | per-mediator)] collector=(true | false) [maxMessageSize="in-bytes"]&gt;
+ *      [scope=(per-host | per-mediator)] collector=(true | false) [maxMessageSize="in-bytes"]
+ *      [engine="class"]&gt;
  *   &lt;onCacheHit [sequence="key"]&gt;
  *     (mediator)+
  *   &lt;/onCacheHit&gt;?
- *   &lt;implementation type=(memory | disk) maxSize="int"/&gt;
+ *   &lt;implementation type=(memory | disk) maxSize="int" [maxBytes="long"]/&gt;*
  * &lt;/cache&gt;
  * </pre>
  */
@@ -71,6 +72,11 @@ public class CacheMediatorSerializer extends AbstractMediatorSerializer {
                     fac.createOMAttribute("timeout", nullNS, Long.toString(mediator.getTimeout())));
             }
 
+            if (mediator.getEngine() != null) {
+                cache.addAttribute(
+                    fac.createOMAttribute("engine", nullNS, mediator.getEngine()));
+            }
+
             if (mediator.getMaxMessageSize() != 0) {
                 cache.addAttribute(
                     fac.createOMAttribute("maxMessageSize", nullNS,
@@ -94,6 +100,10 @@ public class CacheMediatorSerializer extends AbstractMediatorSerializer {
                 implElem.addAttribute(fac.createOMAttribute("type", nullNS, "memory"));
                 implElem.addAttribute(fac.createOMAttribute("maxSize", nullNS,
                     Integer.toString(mediator.getInMemoryCacheSize())));
+                if (mediator.getMaxMemoryBytes() > 0) {
+                    implElem.addAttribute(fac.createOMAttribute("maxBytes", nullNS,
+                        Long.toString(mediator.getMaxMemoryBytes())));
+                }
                 cache.addChild(implElem);
             }
 
@@ -102,6 +112,10 @@ public class CacheMediatorSerializer extends AbstractMediatorSerializer {
                 implElem.addAttribute(fac.createOMAttribute("type", nullNS, "disk"));
                 implElem.addAttribute(fac.createOMAttribute("maxSize", nullNS,
                     Integer.toString(mediator.getDiskCacheSize())));
+                if (mediator.getMaxDiskBytes() != CacheMediator.DEFAULT_MAX_DISK_BYTES) {
+                    implElem.addAttribute(fac.createOMAttribute("maxBytes", nullNS,
+                        Long.toString(mediator.getMaxDiskBytes())));
+                }
                 cache.addChild(implElem);
             }
         }
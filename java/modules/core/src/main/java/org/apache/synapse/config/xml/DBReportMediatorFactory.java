@@ -31,7 +31,8 @@ import java.util.Properties;
 /**
  * Factory for {@link DBReportMediator} instances.
  * <pre>
- * &lt;dbreport useTransaction="true|false"&gt;
+ * &lt;dbreport useTransaction="true|false" [batchSize="int" batchInterval="long"
+ *     batchQueueSize="int"]&gt;
  *   &lt;connection&gt;
  *     &lt;pool&gt;
  *      (
@@ -61,6 +62,9 @@ public class DBReportMediatorFactory extends AbstractDBMediatorFactory {
     private static final QName DBREPORT_Q =
             new QName(SynapseConstants.SYNAPSE_NAMESPACE, "dbreport");
     private static final QName DBREPORT_USE_TX = new QName("useTransaction");
+    private static final QName DBREPORT_BATCH_SIZE = new QName("batchSize");
+    private static final QName DBREPORT_BATCH_INTERVAL = new QName("batchInterval");
+    private static final QName DBREPORT_BATCH_QUEUE_SIZE = new QName("batchQueueSize");
 
     public Mediator createSpecificMediator(OMElement elem, Properties properties) {
         DBReportMediator mediator = new DBReportMediator();
@@ -74,11 +78,38 @@ public class DBReportMediatorFactory extends AbstractDBMediatorFactory {
                 mediator.setUseTransaction(false);
             }
         }
+
+        OMAttribute batchSize = elem.getAttribute(DBREPORT_BATCH_SIZE);
+        if (batchSize != null) {
+            mediator.setBatchSize(getInt(batchSize, 1));
+        }
+        OMAttribute batchInterval = elem.getAttribute(DBREPORT_BATCH_INTERVAL);
+        if (batchInterval != null) {
+            mediator.setBatchInterval(getInt(batchInterval, 1));
+        }
+        OMAttribute batchQueueSize = elem.getAttribute(DBREPORT_BATCH_QUEUE_SIZE);
+        if (batchQueueSize != null) {
+            mediator.setBatchQueueSize(getInt(batchQueueSize, 1));
+        }
+
         buildDataSource(elem, mediator);
         processStatements(elem, mediator);
         return mediator;
     }
 
+    private int getInt(OMAttribute attribute, int min) {
+        try {
+            int value = Integer.parseInt(attribute.getAttributeValue().trim());
+            if (value >= min) {
+                return value;
+            }
+        } catch (NumberFormatException ignore) {
+        }
+        handleException("Invalid value : " + attribute.getAttributeValue() + " for the " +
+                attribute.getLocalName() + " attribute of the dbreport mediator");
+        return min;
+    }
+
     public QName getTagQName() {
         return DBREPORT_Q;
     }
@@ -41,6 +41,14 @@ public class DBReportMediatorSerializer extends AbstractDBMediatorSerializer {
         if (mediator.isUseTransaction()) {
             dbReport.addAttribute(fac.createOMAttribute("useTransaction", nullNS, "true"));
         }
+        if (mediator.getBatchSize() > 0) {
+            dbReport.addAttribute(fac.createOMAttribute("batchSize", nullNS,
+                    String.valueOf(mediator.getBatchSize())));
+            dbReport.addAttribute(fac.createOMAttribute("batchInterval", nullNS,
+                    String.valueOf(mediator.getBatchInterval())));
+            dbReport.addAttribute(fac.createOMAttribute("batchQueueSize", nullNS,
+                    String.valueOf(mediator.getBatchQueueSize())));
+        }
         saveTracingState(dbReport, mediator);
         serializeDBInformation(mediator, dbReport);
 
@@ -39,7 +39,8 @@ import java.util.Properties;
  * <p/>
  * <pre>
  * &lt;iterate [continueParent=(true | false)] [preservePayload=(true | false)]
- *          (attachPath="xpath")? expression="xpath"&gt;
+ *          (attachPath="xpath")? expression="xpath" [sequential=(true | false)]
+ *          [streaming=(true | false) [maxPending="int"]]&gt;
  *   &lt;target [to="uri"] [soapAction="qname"] [sequence="sequence_ref"]
  *          [endpoint="endpoint_ref"]&gt;
  *     &lt;sequence&gt;
@@ -64,6 +65,8 @@ public class IterateMediatorFactory extends AbstractMediatorFactory {
     private static final QName ATT_PREPLD = new QName("preservePayload");
     private static final QName ATT_ATTACHPATH = new QName("attachPath");
     private static final QName ATT_SEQUENTIAL = new QName("sequential");
+    private static final QName ATT_STREAMING = new QName("streaming");
+    private static final QName ATT_MAX_PENDING = new QName("maxPending");
 
     private static final QName ID_Q
             = new QName(XMLConfigConstants.NULL_NAMESPACE, "id");
@@ -128,6 +131,29 @@ public class IterateMediatorFactory extends AbstractMediatorFactory {
                 attachPathValue, e);
         }
 
+        OMAttribute streaming = elem.getAttribute(ATT_STREAMING);
+        if (streaming != null && Boolean.valueOf(streaming.getAttributeValue())) {
+            if (mediator.isContinueParent() || mediator.isPreservePayload()) {
+                handleException("Wrong configuration for the iterate mediator :: a streaming " +
+                    "iterator consumes the message, hence it can neither continue the parent " +
+                    "nor preserve the payload");
+            }
+            mediator.setStreaming(true);
+
+            OMAttribute maxPending = elem.getAttribute(ATT_MAX_PENDING);
+            if (maxPending != null) {
+                try {
+                    mediator.setMaxPending(Integer.parseInt(maxPending.getAttributeValue()));
+                } catch (NumberFormatException e) {
+                    handleException("Invalid maxPending value for the iterate mediator : " +
+                        maxPending.getAttributeValue(), e);
+                }
+                if (mediator.getMaxPending() < 1) {
+                    handleException("maxPending of the iterate mediator must be positive");
+                }
+            }
+        }
+
         boolean asynchronous = true;
         OMAttribute sequentialAttr = elem.getAttribute(ATT_SEQUENTIAL);
         if (sequentialAttr != null && sequentialAttr.getAttributeValue().equals("true")) {
@@ -29,7 +29,8 @@ import org.apache.synapse.mediators.eip.splitter.IterateMediator;
  *
  * <pre>
  * &lt;iterate [continueParent=(true | false)] [preservePayload=(true | false)]
- *          (attachPath="xpath")? expression="xpath"&gt;
+ *          (attachPath="xpath")? expression="xpath" [sequential=(true | false)]
+ *          [streaming=(true | false) [maxPending="int"]]&gt;
  *   &lt;target [to="uri"] [soapAction="qname"] [sequence="sequence_ref"]
  *          [endpoint="endpoint_ref"]&gt;
  *     &lt;sequence&gt;
@@ -89,6 +90,14 @@ public class IterateMediatorSerializer extends AbstractMediatorSerializer {
             itrElem.addAttribute("sequential", "true", nullNS);
         }
 
+        if (itrMed.isStreaming()) {
+            itrElem.addAttribute("streaming", "true", nullNS);
+            if (itrMed.getMaxPending() != IterateMediator.DEFAULT_MAX_PENDING) {
+                itrElem.addAttribute("maxPending",
+                        Integer.toString(itrMed.getMaxPending()), nullNS);
+            }
+        }
+
         itrElem.addChild(TargetSerializer.serializeTarget(itrMed.getTarget()));
 
         return itrElem;
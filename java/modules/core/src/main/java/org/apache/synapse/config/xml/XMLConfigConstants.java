@@ -113,6 +113,14 @@ public class XMLConfigConstants {
     public static final String RETRIES_BEFORE_SUSPENSION = "retriesBeforeSuspension";
     public static final String RETRY_DELAY = "retryDelay";
 
+    public static final String CIRCUIT_BREAKER = "circuitBreaker";
+    public static final String CIRCUIT_BREAKER_WINDOW_SIZE = "windowSize";
+    public static final String CIRCUIT_BREAKER_MINIMUM_CALLS = "minimumCalls";
+    public static final String CIRCUIT_BREAKER_FAILURE_RATE = "failureRateThreshold";
+    public static final String CIRCUIT_BREAKER_SLOW_CALL_DURATION = "slowCallDuration";
+    public static final String CIRCUIT_BREAKER_SLOW_CALL_RATE = "slowCallRateThreshold";
+    public static final String CIRCUIT_BREAKER_HALF_OPEN_CALLS = "halfOpenCalls";
+
     public static final String RETRY_CONFIG = "retryConfig";
 
 	public static final String LOADBALANCE_POLICY = "policy";
@@ -156,6 +156,7 @@ public class DynamicLoadbalanceEndpointFactory extends EndpointFactory {
                     LoadbalanceAlgorithm algorithm =
                             LoadbalanceAlgorithmFactory.
                                     createLoadbalanceAlgorithm(loadbalanceElement, null);
+                    algorithm.setLoadBalanceEndpoint(loadbalanceEndpoint);
                     lbMembershipHandler.init(lbProperties, algorithm);
                     loadbalanceEndpoint.setLoadBalanceMembershipHandler(lbMembershipHandler);
                 } catch (Exception e) {
@@ -326,9 +326,67 @@ public class EndpointDefinitionFactory implements DefinitionFactory {
             }
         }
 
+        OMElement circuitBreaker = elem.getFirstChildWithName(new QName(
+            SynapseConstants.SYNAPSE_NAMESPACE, XMLConfigConstants.CIRCUIT_BREAKER));
+
+        if (circuitBreaker != null) {
+            try {
+                String value = getChildText(circuitBreaker,
+                        XMLConfigConstants.CIRCUIT_BREAKER_WINDOW_SIZE);
+                definition.setCircuitBreakerWindowSize(
+                        value != null ? Integer.parseInt(value) : 100);
+                if (definition.getCircuitBreakerWindowSize() <= 0) {
+                    handleException("The circuit breaker window size should be a positive " +
+                            "number : " + value);
+                }
+
+                value = getChildText(circuitBreaker,
+                        XMLConfigConstants.CIRCUIT_BREAKER_MINIMUM_CALLS);
+                if (value != null) {
+                    definition.setCircuitBreakerMinimumCalls(Integer.parseInt(value));
+                }
+
+                value = getChildText(circuitBreaker,
+                        XMLConfigConstants.CIRCUIT_BREAKER_FAILURE_RATE);
+                if (value != null) {
+                    definition.setCircuitBreakerFailureRateThreshold(Float.parseFloat(value));
+                }
+
+                value = getChildText(circuitBreaker,
+                        XMLConfigConstants.CIRCUIT_BREAKER_SLOW_CALL_DURATION);
+                if (value != null) {
+                    definition.setCircuitBreakerSlowCallDuration(Long.parseLong(value));
+                }
+
+                value = getChildText(circuitBreaker,
+                        XMLConfigConstants.CIRCUIT_BREAKER_SLOW_CALL_RATE);
+                if (value != null) {
+                    definition.setCircuitBreakerSlowCallRateThreshold(Float.parseFloat(value));
+                }
+
+                value = getChildText(circuitBreaker,
+                        XMLConfigConstants.CIRCUIT_BREAKER_HALF_OPEN_CALLS);
+                if (value != null) {
+                    definition.setCircuitBreakerHalfOpenCalls(Integer.parseInt(value));
+                }
+            } catch (NumberFormatException e) {
+                handleException("The circuit breaker settings should be specified as valid " +
+                        "numbers", e);
+            }
+        }
+
         return definition;
     }
 
+    private static String getChildText(OMElement elem, String localName) {
+        OMElement child = elem.getFirstChildWithName(new QName(
+            SynapseConstants.SYNAPSE_NAMESPACE, localName));
+        if (child != null && child.getText() != null && child.getText().trim().length() > 0) {
+            return child.getText().trim();
+        }
+        return null;
+    }
+
     protected static void handleException(String msg) {
         log.error(msg);
         throw new SynapseException(msg);
@@ -200,6 +200,28 @@ public class EndpointDefinitionSerializer {
             element.addChild(markAsTimedout);
         }
 
+        if (endpointDefinition.isCircuitBreakerEnabled()) {
+            OMElement circuitBreaker = fac.createOMElement(
+                XMLConfigConstants.CIRCUIT_BREAKER, SynapseConstants.SYNAPSE_OMNAMESPACE);
+            addChild(fac, circuitBreaker, XMLConfigConstants.CIRCUIT_BREAKER_WINDOW_SIZE,
+                    Integer.toString(endpointDefinition.getCircuitBreakerWindowSize()));
+            addChild(fac, circuitBreaker, XMLConfigConstants.CIRCUIT_BREAKER_MINIMUM_CALLS,
+                    Integer.toString(endpointDefinition.getCircuitBreakerMinimumCalls()));
+            addChild(fac, circuitBreaker, XMLConfigConstants.CIRCUIT_BREAKER_FAILURE_RATE,
+                    Float.toString(endpointDefinition.getCircuitBreakerFailureRateThreshold()));
+            if (endpointDefinition.getCircuitBreakerSlowCallDuration() > 0) {
+                addChild(fac, circuitBreaker,
+                        XMLConfigConstants.CIRCUIT_BREAKER_SLOW_CALL_DURATION,
+                        Long.toString(endpointDefinition.getCircuitBreakerSlowCallDuration()));
+                addChild(fac, circuitBreaker, XMLConfigConstants.CIRCUIT_BREAKER_SLOW_CALL_RATE,
+                        Float.toString(
+                                endpointDefinition.getCircuitBreakerSlowCallRateThreshold()));
+            }
+            addChild(fac, circuitBreaker, XMLConfigConstants.CIRCUIT_BREAKER_HALF_OPEN_CALLS,
+                    Integer.toString(endpointDefinition.getCircuitBreakerHalfOpenCalls()));
+            element.addChild(circuitBreaker);
+        }
+
          if (!endpointDefinition.getRetryDisabledErrorCodes().isEmpty()) {
             OMElement retryConfig = fac.createOMElement(XMLConfigConstants.RETRY_CONFIG,
                     SynapseConstants.SYNAPSE_OMNAMESPACE);
@@ -211,4 +233,10 @@ public class EndpointDefinitionSerializer {
             element.addChild(retryConfig);
         }
     }
+
+    private static void addChild(OMFactory fac, OMElement parent, String localName, String text) {
+        OMElement child = fac.createOMElement(localName, SynapseConstants.SYNAPSE_OMNAMESPACE);
+        child.setText(text);
+        parent.addChild(child);
+    }
 }
@@ -22,6 +22,8 @@ package org.apache.synapse.core.axis2;
 import org.apache.axis2.client.async.AxisCallback;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseConstants;
+import org.apache.synapse.endpoints.EndpointDefinition;
+import org.apache.synapse.endpoints.algorithms.LoadStatistics;
 
 /**
  * This class only "holds" the Synapse out message context for the Synapse callback message
@@ -38,8 +40,21 @@ public class AsyncCallback implements AxisCallback {
     /** Action to perform when timeout occurs */
     private int timeOutAction = SynapseConstants.NONE;
 
+    /** Time the callback was created, i.e. the time the request was sent */
+    private final long createdTime;
+
+    /** The endpoint the request was sent to, if any */
+    private EndpointDefinition endpoint;
+
+    /** Load statistics of the endpoint chosen by the load balancer, if any */
+    private LoadStatistics loadStatistics;
+
+    /** Handle of the timeout scheduled for this callback by the callback receiver */
+    private volatile TimingWheel<String>.Timeout timeout;
+
     public AsyncCallback(MessageContext synapseOutMsgCtx) {
         this.synapseOutMsgCtx = synapseOutMsgCtx;
+        this.createdTime = System.currentTimeMillis();
     }
 
     public void onMessage(org.apache.axis2.context.MessageContext messageContext) {}
@@ -69,4 +84,32 @@ public class AsyncCallback implements AxisCallback {
     public void setTimeOutAction(int timeOutAction) {
         this.timeOutAction = timeOutAction;
     }
+
+    public long getCreatedTime() {
+        return createdTime;
+    }
+
+    public EndpointDefinition getEndpoint() {
+        return endpoint;
+    }
+
+    public void setEndpoint(EndpointDefinition endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public LoadStatistics getLoadStatistics() {
+        return loadStatistics;
+    }
+
+    public void setLoadStatistics(LoadStatistics loadStatistics) {
+        this.loadStatistics = loadStatistics;
+    }
+
+    TimingWheel<String>.Timeout getTimeout() {
+        return timeout;
+    }
+
+    void setTimeout(TimingWheel<String>.Timeout timeout) {
+        this.timeout = timeout;
+    }
 }
@@ -39,6 +39,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.SynapseConstants;
 import org.apache.synapse.endpoints.EndpointDefinition;
+import org.apache.synapse.endpoints.algorithms.LoadStatistics;
 import org.apache.synapse.rest.RESTConstants;
 import org.apache.synapse.transport.nhttp.NhttpConstants;
 import org.apache.synapse.util.MessageHelper;
@@ -382,9 +383,20 @@ public class Axis2FlexibleMEPClient {
                 // TimeoutHandler can detect timed out callbacks and take approprite action.
                 callback.setTimeOutOn(System.currentTimeMillis() + endpoint.getTimeoutDuration());
                 callback.setTimeOutAction(endpoint.getTimeoutAction());
+                callback.setEndpoint(endpoint);
             } else {
                 callback.setTimeOutOn(System.currentTimeMillis());
             }
+
+            // hand over the load statistics of the endpoint chosen by the load balancer, the
+            // callback receiver reports the outcome of the request to them
+            Object loadStatistics = synapseOutMessageContext.getProperty(
+                    SynapseConstants.LOADBALANCE_STATISTICS);
+            if (loadStatistics instanceof LoadStatistics) {
+                callback.setLoadStatistics((LoadStatistics) loadStatistics);
+                synapseOutMessageContext.getPropertyKeySet().remove(
+                        SynapseConstants.LOADBALANCE_STATISTICS);
+            }
             mepClient.setCallback(callback);
         }
 
@@ -0,0 +1,118 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.core.axis2;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per endpoint histograms of the response times and the timeouts of the callbacks held by
+ * the {@link SynapseCallbackReceiver}. Each histogram counts the callbacks completed (or
+ * expired) within each of the {@link #BUCKET_BOUNDS}, with the last bucket counting the
+ * callbacks which took longer than the largest bound.
+ */
+class CallbackStatistics {
+
+    /** Upper bounds of the histogram buckets in milliseconds */
+    static final long[] BUCKET_BOUNDS = {10, 50, 100, 500, 1000, 5000, 10000, 30000, 60000};
+
+    /** Endpoints beyond this limit (e.g. dynamically created ones) are counted together */
+    private static final int MAX_ENDPOINTS = 1000;
+
+    private static final String OTHER_ENDPOINTS = "[other endpoints]";
+
+    private final ConcurrentMap<String, EndpointStatistics> endpoints =
+            new ConcurrentHashMap<String, EndpointStatistics>();
+
+    private final AtomicLong timeouts = new AtomicLong(0);
+
+    void recordResponse(String endpoint, long elapsed) {
+        getStatistics(endpoint).responseTimes.incrementAndGet(bucketOf(elapsed));
+    }
+
+    void recordTimeout(String endpoint, long elapsed) {
+        timeouts.incrementAndGet();
+        getStatistics(endpoint).timeouts.incrementAndGet(bucketOf(elapsed));
+    }
+
+    long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    String[] getEndpoints() {
+        Set<String> names = endpoints.keySet();
+        return names.toArray(new String[names.size()]);
+    }
+
+    long[] getResponseTimeHistogram(String endpoint) {
+        EndpointStatistics stats = endpoints.get(endpoint);
+        return stats != null ? toArray(stats.responseTimes) : new long[BUCKET_BOUNDS.length + 1];
+    }
+
+    long[] getTimeoutHistogram(String endpoint) {
+        EndpointStatistics stats = endpoints.get(endpoint);
+        return stats != null ? toArray(stats.timeouts) : new long[BUCKET_BOUNDS.length + 1];
+    }
+
+    void reset() {
+        endpoints.clear();
+        timeouts.set(0);
+    }
+
+    private EndpointStatistics getStatistics(String endpoint) {
+        EndpointStatistics stats = endpoints.get(endpoint);
+        if (stats == null) {
+            if (endpoints.size() >= MAX_ENDPOINTS) {
+                endpoint = OTHER_ENDPOINTS;
+            }
+            stats = new EndpointStatistics();
+            EndpointStatistics existing = endpoints.putIfAbsent(endpoint, stats);
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+        return stats;
+    }
+
+    private static int bucketOf(long elapsed) {
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            if (elapsed <= BUCKET_BOUNDS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS.length;
+    }
+
+    private static long[] toArray(AtomicLongArray counts) {
+        long[] values = new long[counts.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = counts.get(i);
+        }
+        return values;
+    }
+
+    private static class EndpointStatistics {
+        private final AtomicLongArray responseTimes = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+        private final AtomicLongArray timeouts = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+    }
+}
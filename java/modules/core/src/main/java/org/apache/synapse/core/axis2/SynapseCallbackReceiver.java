@@ -43,6 +43,7 @@ import org.apache.synapse.aspects.statistics.StatisticsReporter;
 import org.apache.synapse.commons.jmx.MBeanRegistrar;
 import org.apache.synapse.config.SynapseConfigUtils;
 import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.endpoints.AbstractEndpoint;
 import org.apache.synapse.endpoints.Endpoint;
 import org.apache.synapse.endpoints.dispatch.Dispatcher;
 import org.apache.synapse.transport.nhttp.NhttpConstants;
@@ -52,12 +53,19 @@ import org.apache.synapse.transport.passthru.config.SourceConfiguration;
 import org.apache.synapse.util.ResponseAcceptEncodingProcessor;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * This is the message receiver that receives the responses for outgoing messages sent out
  * by Synapse. It holds a callbackStore that maps the [unique] messageID of each message to
  * a callback object that gets executed on timeout or when a response is received (before timeout)
  *
+ * The timeouts of the callbacks are kept in a {@link TimingWheel}, so that the TimeoutHandler
+ * only has to look at the callbacks which are due instead of scanning the whole store. Response
+ * time and timeout histograms are kept per endpoint and exposed through the
+ * {@link SynapseCallbackStoreView}.
+ *
  * The AnonymousServiceFactory uses this MessageReceiver for all Anonymous services created by it.
  * This however - effectively - is a singleton class
  */
@@ -70,13 +78,27 @@ public class SynapseCallbackReceiver implements MessageReceiver {
 
     private static final SynapseCallbackReceiver instance = new SynapseCallbackReceiver();
 
-    /** This is the synchronized callbackStore that maps outgoing messageID's to callback objects */
-    private final Map<String, AxisCallback> callbackStore;  // will be made thread safe in the constructor
+    /** Time range covered by a single slot of the timeout wheel */
+    private static final long TIMEOUT_TICK = 100;
+    private static final int TIMEOUT_WHEEL_SIZE = 512;
+
+    /** This is the concurrent callbackStore that maps outgoing messageID's to callback objects */
+    private final ConcurrentMap<String, AxisCallback> callbackStore;
+
+    /** Timeouts of the callbacks in the callbackStore, keyed by the message ID */
+    private final TimingWheel<String> timeouts;
+
+    private final CallbackStatistics statistics = new CallbackStatistics();
+
+    /** This is the timeout for otherwise non-expiring callbacks */
+    private long globalTimeout = SynapseConstants.DEFAULT_GLOBAL_TIMEOUT;
 
     private boolean initialized = false;
 
     private SynapseCallbackReceiver() {
-        callbackStore = Collections.synchronizedMap(new HashMap<String, AxisCallback>());
+        callbackStore = new ConcurrentHashMap<String, AxisCallback>();
+        timeouts = new TimingWheel<String>(TIMEOUT_TICK, TIMEOUT_WHEEL_SIZE,
+                System.currentTimeMillis());
     }
 
     /**
@@ -107,8 +129,10 @@ public class SynapseCallbackReceiver implements MessageReceiver {
             log.debug("Initializing SynapseCallbackReceiver");
         }
 
+        globalTimeout = SynapseConfigUtils.getGlobalTimeoutInterval();
+
         // create the Timer object and a TimeoutHandler task
-        TimeoutHandler timeoutHandler = new TimeoutHandler(callbackStore, contextInformation);
+        TimeoutHandler timeoutHandler = new TimeoutHandler(this, contextInformation);
         
         Timer timeOutTimer = synCfg.getSynapseTimer();
         long timeoutHandlerInterval = SynapseConfigUtils.getTimeoutHandlerInterval();
@@ -143,24 +167,107 @@ public class SynapseCallbackReceiver implements MessageReceiver {
     }
 
     public String[] getPendingCallbacks() {
-        Set<String> keys = callbackStore.keySet();
-        List<String> list = new ArrayList<String>();
-        synchronized (callbackStore) {
-            Iterator<String> iterator = keys.iterator();
-            while (iterator.hasNext()) {
-                list.add(iterator.next());
-            }
-        }
+        List<String> list = new ArrayList<String>(callbackStore.keySet());
         return list.toArray(new String[list.size()]);
     }
 
+    CallbackStatistics getStatistics() {
+        return statistics;
+    }
+
     public void addCallback(String MsgID, AxisCallback callback) {
-        callbackStore.put(MsgID, callback);
+        if (callback instanceof AsyncCallback &&
+                ((AsyncCallback) callback).getLoadStatistics() != null) {
+            ((AsyncCallback) callback).getLoadStatistics().requestStarted();
+        }
+
+        AxisCallback previous = callbackStore.put(MsgID, callback);
+        if (previous != null) {
+            cancelTimeout(previous);
+            recordCompletion(previous, System.currentTimeMillis(), false);
+        }
+
+        if (callback instanceof AsyncCallback) {
+            AsyncCallback asyncCallback = (AsyncCallback) callback;
+            asyncCallback.setTimeout(timeouts.schedule(MsgID, getDeadline(asyncCallback)));
+        }
+
         if (log.isDebugEnabled()) {
             log.debug("Callback added. Total callbacks waiting for : " + callbackStore.size());
         }
     }
 
+    /**
+     * Remove the callbacks whose timeout has expired from the callback store. Callbacks with a
+     * timeout action expire at their timeout, while the others are kept until the global
+     * timeout elapses after it.
+     *
+     * @param currentTime the current time
+     * @return the expired callbacks
+     */
+    List<AsyncCallback> expireCallbacks(long currentTime) {
+        List<AsyncCallback> expired = new ArrayList<AsyncCallback>();
+        for (String messageID : timeouts.advance(currentTime)) {
+            AxisCallback callback = callbackStore.get(messageID);
+            // the callback may have been replaced since the timeout was scheduled
+            if (callback instanceof AsyncCallback &&
+                    getDeadline((AsyncCallback) callback) <= currentTime &&
+                    callbackStore.remove(messageID, callback)) {
+
+                AsyncCallback asyncCallback = (AsyncCallback) callback;
+                statistics.recordTimeout(getEndpointName(asyncCallback),
+                        currentTime - asyncCallback.getCreatedTime());
+                recordCompletion(asyncCallback, currentTime, false);
+                expired.add(asyncCallback);
+            }
+        }
+        return expired;
+    }
+
+    long getGlobalTimeout() {
+        return globalTimeout;
+    }
+
+    private long getDeadline(AsyncCallback callback) {
+        if (callback.getTimeOutAction() == SynapseConstants.NONE) {
+            return callback.getTimeOutOn() + globalTimeout;
+        }
+        return callback.getTimeOutOn();
+    }
+
+    private void cancelTimeout(AxisCallback callback) {
+        if (callback instanceof AsyncCallback) {
+            TimingWheel<String>.Timeout timeout = ((AsyncCallback) callback).getTimeout();
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+    }
+
+    /**
+     * Report the outcome of a request to the load statistics of the endpoint chosen by the load
+     * balancer, if any.
+     *
+     * @param callback    the callback of the request, which has been removed from the store
+     * @param currentTime the current time
+     * @param success     whether a response was received for the request
+     */
+    private static void recordCompletion(AxisCallback callback, long currentTime,
+                                         boolean success) {
+        if (callback instanceof AsyncCallback) {
+            AsyncCallback asyncCallback = (AsyncCallback) callback;
+            if (asyncCallback.getLoadStatistics() != null) {
+                asyncCallback.getLoadStatistics().requestCompleted(
+                        currentTime - asyncCallback.getCreatedTime(), success);
+            }
+        }
+    }
+
+    private static String getEndpointName(AsyncCallback callback) {
+        return callback.getEndpoint() != null ?
+                callback.getEndpoint().toString() : SynapseConstants.ANONYMOUS_ENDPOINT;
+    }
+
     /**
      * Every time a response message is received this method gets invoked. It will then select
      * the outgoing *Synapse* message context for the reply we received, and determine what action
@@ -180,8 +287,10 @@ public class SynapseCallbackReceiver implements MessageReceiver {
          */
         if (messageCtx.getProperty(NhttpConstants.HTTP_202_RECEIVED) != null && "true".equals(
                 messageCtx.getProperty(NhttpConstants.HTTP_202_RECEIVED))) {
-            if (callbackStore.containsKey(messageCtx.getMessageID())) {
-                callbackStore.remove(messageCtx.getMessageID());
+            AxisCallback callback = callbackStore.remove(messageCtx.getMessageID());
+            if (callback != null) {
+                cancelTimeout(callback);
+                recordCompletion(callback, System.currentTimeMillis(), true);
                 if (log.isDebugEnabled()) {
                     log.debug("CallBack registered with Message id : " + messageCtx.getMessageID() +
                             " removed from the " +
@@ -208,6 +317,16 @@ public class SynapseCallbackReceiver implements MessageReceiver {
 
         if (messageID != null) {
             AxisCallback callback = callbackStore.remove(messageID);
+            if (callback != null) {
+                cancelTimeout(callback);
+                long currentTime = System.currentTimeMillis();
+                if (callback instanceof AsyncCallback) {
+                    statistics.recordResponse(getEndpointName((AsyncCallback) callback),
+                            currentTime - ((AsyncCallback) callback).getCreatedTime());
+                }
+                recordCompletion(callback, currentTime, !Boolean.TRUE.equals(
+                        messageCtx.getProperty(SynapseConstants.SENDING_FAULT)));
+            }
             if (log.isDebugEnabled()) {
                 log.debug("Callback removed for request message id : " + messageID +
                         ". Pending callbacks count : " + callbackStore.size());
@@ -322,7 +441,12 @@ public class SynapseCallbackReceiver implements MessageReceiver {
             if (faultStack != null && !faultStack.isEmpty()
                 && faultStack.peek() instanceof Endpoint) {
                 Endpoint successfulEndpoint = (Endpoint) faultStack.pop();
-                successfulEndpoint.onSuccess();
+                if (successfulEndpoint instanceof AbstractEndpoint && callback != null) {
+                    ((AbstractEndpoint) successfulEndpoint).onSuccess(
+                            System.currentTimeMillis() - callback.getCreatedTime());
+                } else {
+                    successfulEndpoint.onSuccess();
+                }
             }
             if (log.isDebugEnabled()) {
                 log.debug("Synapse received an asynchronous response message");
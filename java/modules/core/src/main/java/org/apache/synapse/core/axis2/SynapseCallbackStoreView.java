@@ -34,4 +34,28 @@ public class SynapseCallbackStoreView implements SynapseCallbackStoreViewMBean {
     public String[] getPendingCallbacks() {
         return receiver.getPendingCallbacks();
     }
+
+    public long getTimedOutCallbackCount() {
+        return receiver.getStatistics().getTimeoutCount();
+    }
+
+    public String[] getEndpoints() {
+        return receiver.getStatistics().getEndpoints();
+    }
+
+    public long[] getHistogramBounds() {
+        return CallbackStatistics.BUCKET_BOUNDS.clone();
+    }
+
+    public long[] getResponseTimeHistogram(String endpoint) {
+        return receiver.getStatistics().getResponseTimeHistogram(endpoint);
+    }
+
+    public long[] getTimeoutHistogram(String endpoint) {
+        return receiver.getStatistics().getTimeoutHistogram(endpoint);
+    }
+
+    public void resetStatistics() {
+        receiver.getStatistics().reset();
+    }
 }
@@ -38,4 +38,47 @@ public interface SynapseCallbackStoreViewMBean {
      */
     public String[] getPendingCallbacks();
 
+    /**
+     * Get the number of callbacks expired by the timeout handler
+     *
+     * @return A long
+     */
+    public long getTimedOutCallbackCount();
+
+    /**
+     * Get the names of the endpoints for which response time and timeout histograms are kept
+     *
+     * @return An array of strings
+     */
+    public String[] getEndpoints();
+
+    /**
+     * Get the upper bounds of the histogram buckets in milliseconds. The histograms have one
+     * more bucket, counting the values larger than the last bound
+     *
+     * @return An array of longs
+     */
+    public long[] getHistogramBounds();
+
+    /**
+     * Get the histogram of the response times of an endpoint
+     *
+     * @param endpoint name of the endpoint as returned by {@link #getEndpoints()}
+     * @return An array of counts, one per histogram bucket
+     */
+    public long[] getResponseTimeHistogram(String endpoint);
+
+    /**
+     * Get the histogram of the time elapsed before the callbacks of an endpoint timed out
+     *
+     * @param endpoint name of the endpoint as returned by {@link #getEndpoints()}
+     * @return An array of counts, one per histogram bucket
+     */
+    public long[] getTimeoutHistogram(String endpoint);
+
+    /**
+     * Clear the timeout count and the histograms
+     */
+    public void resetStatistics();
+
 }
@@ -30,28 +30,25 @@ import org.apache.synapse.aspects.statistics.StatisticsCollector;
 import org.apache.synapse.config.SynapseConfigUtils;
 import org.apache.synapse.endpoints.dispatch.SALSessions;
 
-import java.util.Map;
 import java.util.Stack;
 import java.util.TimerTask;
 
 /**
  * An object of this class is registered to be invoked in some predefined time intervals. This
- * checks the timeouts of callbacks stored in the SynapseCallbackReceiver and removes all expired
- * callbacks. Timeouts of the callbacks are stored as the time, not the duration. So that the
- * time or the interval of invoking this class does not affect the correctness of the timeouts,
- * although longer intervals would introduce larger error between the actual timeout and the
- * specified timeout.
+ * expires the timed out callbacks stored in the SynapseCallbackReceiver. Timeouts of the callbacks
+ * are stored as the time, not the duration. So that the time or the interval of invoking this
+ * class does not affect the correctness of the timeouts, although longer intervals would
+ * introduce larger error between the actual timeout and the specified timeout.
  *
- * For each invocation this gets a time value to be compared against the timeouts of the callback
- * objects. This time is the System.currentTimeMillis() for Java 1.4 and System.nanoTime() for
- * Java 1.5 and later.
+ * The callback receiver keeps the timeouts in a timing wheel, so each invocation only deals with
+ * the callbacks which are due, irrespective of the number of pending callbacks.
  */
 public class TimeoutHandler extends TimerTask {
 
     private static final Log log = LogFactory.getLog(TimeoutHandler.class);
 
-    /** The callback map - already a Collections.synchronized() hash map */
-    private final Map callbackStore;
+    /** The callback receiver holding the callbacks */
+    private final SynapseCallbackReceiver callbackReceiver;
     /** a lock to prevent concurrent execution while ensuring least overhead */
     private final Object lock = new Object();
     private boolean alreadyExecuting = false;
@@ -61,8 +58,9 @@ public class TimeoutHandler extends TimerTask {
     private StatisticsCleaner statisticsCleaner;
     private ServerContextInformation contextInfo = null;
 
-    public TimeoutHandler(Map callbacks, ServerContextInformation contextInfo) {
-        this.callbackStore = callbacks;
+    public TimeoutHandler(SynapseCallbackReceiver callbackReceiver,
+                          ServerContextInformation contextInfo) {
+        this.callbackReceiver = callbackReceiver;
         this.contextInfo = contextInfo;
         this.globalTimeout = SynapseConfigUtils.getGlobalTimeoutInterval();
         log.info("This engine will expire all callbacks after : " + (globalTimeout / 1000) +
@@ -102,63 +100,46 @@ public class TimeoutHandler extends TimerTask {
         //clear all the expired sessions
         SALSessions.getInstance().clearSessions();
 
-        // checks if callback store contains at least one entry before proceeding. otherwise getting
-        // the time for doing nothing would be a inefficient task.
+        long currentTime = currentTime();
 
-        // we have to synchronize this on the callbackStore as iterators of thread safe collections
-        // are not thread safe. callbackStore can be modified
-        // concurrently by the SynapseCallbackReceiver.
-        synchronized(callbackStore) {
-
-            if (callbackStore.size() > 0) {
-
-                long currentTime = currentTime();
-
-                for (Object key : callbackStore.keySet()) {
-
-                    AsyncCallback callback = (AsyncCallback) callbackStore.get(key);
-                    if (callback == null) {
-                        if (log.isDebugEnabled()) {
-                            log.debug("There is no callback for key :" + key);
-                        }
-                        continue;
-                    }
-                    if (callback.getTimeOutAction() != SynapseConstants.NONE) {
-
-                        if (callback.getTimeOutOn() <= currentTime) {
-                            callbackStore.remove(key);
-
-                            if (callback.getTimeOutAction() == SynapseConstants.DISCARD_AND_FAULT) {
-
-                                // actiavte the fault sequence of the current sequence mediator
-                                MessageContext msgContext = callback.getSynapseOutMsgCtx();
+        for (AsyncCallback callback : callbackReceiver.expireCallbacks(currentTime)) {
+            // expired callbacks are already removed from the store, so a failure in handling
+            // one of them must not prevent the others from being handled
+            try {
+                handleTimeout(callback);
+            } catch (Exception e) {
+                log.warn("Error while handling the timeout of message ID : " +
+                        callback.getSynapseOutMsgCtx().getMessageID(), e);
+            }
+        }
+    }
 
-                                // add an error code to the message context, so that error sequences
-                                // can identify the cause of error
-                                msgContext.setProperty(SynapseConstants.ERROR_CODE,
-                                        SynapseConstants.HANDLER_TIME_OUT);
-                                msgContext.setProperty(SynapseConstants.ERROR_MESSAGE,
-                                        SEND_TIMEOUT_MESSAGE);
+    private void handleTimeout(AsyncCallback callback) {
+        if (callback.getTimeOutAction() == SynapseConstants.DISCARD_AND_FAULT) {
 
-                                Stack faultStack = msgContext.getFaultStack();
+            // actiavte the fault sequence of the current sequence mediator
+            MessageContext msgContext = callback.getSynapseOutMsgCtx();
 
-                                for (int j = 0; j < faultStack.size(); j++) {
-                                    Object o = faultStack.pop();
-                                    if (o instanceof FaultHandler) {
-                                        ((FaultHandler) o).handleFault(msgContext);
-                                    }
-                                }
+            // add an error code to the message context, so that error sequences
+            // can identify the cause of error
+            msgContext.setProperty(SynapseConstants.ERROR_CODE,
+                    SynapseConstants.HANDLER_TIME_OUT);
+            msgContext.setProperty(SynapseConstants.ERROR_MESSAGE,
+                    SEND_TIMEOUT_MESSAGE);
 
-                            }
-                        }
+            Stack faultStack = msgContext.getFaultStack();
 
-                    } else if (currentTime > globalTimeout + callback.getTimeOutOn()) {
-                        log.warn("Expiring message ID : " + key + "; dropping message after " +
-                                "global timeout of : " + (globalTimeout / 1000) + " seconds");
-                        callbackStore.remove(key);
-                    }
+            for (int j = 0; j < faultStack.size(); j++) {
+                Object o = faultStack.pop();
+                if (o instanceof FaultHandler) {
+                    ((FaultHandler) o).handleFault(msgContext);
                 }
             }
+
+        } else if (callback.getTimeOutAction() == SynapseConstants.NONE) {
+            log.warn("Expiring message ID : " + callback.getSynapseOutMsgCtx().getMessageID() +
+                    "; dropping message after global timeout of : " +
+                    (globalTimeout / 1000) + " seconds");
         }
     }
 
@@ -0,0 +1,333 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.core.axis2;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A hierarchical timing wheel used to expire the callbacks of the
+ * {@link SynapseCallbackReceiver} and the sessions of the session affinity load balance
+ * endpoints without scanning them all. Each level of the wheel is an array of buckets covering
+ * a fixed time range, and deadlines which are too far in the future for a level are kept in the
+ * next, coarser level and moved down as the time advances. Scheduling and
+ * cancelling a timeout are O(1) operations, and advancing the wheel only touches the buckets
+ * which are due.
+ * <p/>
+ * Any number of threads may schedule and cancel timeouts concurrently, while the wheel is
+ * advanced by a single thread (the timeout handler). A timeout never expires before its
+ * deadline, and expires on the first call to {@link #advance(long)} after it.
+ *
+ * @param <T> type of the items scheduled on the wheel
+ */
+public class TimingWheel<T> {
+
+    private final Level root;
+
+    /** Buckets which contain timeouts, ordered by the time they are due */
+    private final PriorityBlockingQueue<Bucket> dueQueue = new PriorityBlockingQueue<Bucket>(
+            64, new Comparator<Bucket>() {
+                public int compare(Bucket b1, Bucket b2) {
+                    long e1 = b1.expiration;
+                    long e2 = b2.expiration;
+                    return e1 < e2 ? -1 : (e1 == e2 ? 0 : 1);
+                }
+            });
+
+    /** Timeouts found to be expired while being scheduled */
+    private final ConcurrentLinkedQueue<Timeout> expiredOnArrival =
+            new ConcurrentLinkedQueue<Timeout>();
+
+    /** Timeouts in the current tick which are not yet due */
+    private final List<Timeout> deferred = new ArrayList<Timeout>();
+
+    /** Scheduling takes the read lock, advancing the wheel takes the write lock */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Create a new timing wheel.
+     *
+     * @param tickMillis  the time range covered by a bucket in the first level
+     * @param wheelSize   number of buckets in each level
+     * @param startMillis the current time
+     */
+    public TimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        this.root = new Level(tickMillis, wheelSize, startMillis);
+    }
+
+    /**
+     * Schedule an item to be expired at the given time.
+     *
+     * @param item     the item to be expired
+     * @param deadline the time at which the item should be expired
+     * @return a handle which can be used to cancel the timeout
+     */
+    public Timeout schedule(T item, long deadline) {
+        Timeout timeout = new Timeout(item, deadline);
+        lock.readLock().lock();
+        try {
+            if (!root.add(timeout)) {
+                expiredOnArrival.add(timeout);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return timeout;
+    }
+
+    /**
+     * Advance the wheel to the given time, and return the items whose deadline has passed.
+     * The returned items are removed from the wheel.
+     *
+     * @param now the current time
+     * @return expired items, in no particular order
+     */
+    public List<T> advance(long now) {
+        List<Timeout> candidates = new ArrayList<Timeout>();
+        lock.writeLock().lock();
+        try {
+            candidates.addAll(deferred);
+            deferred.clear();
+
+            Bucket bucket = dueQueue.peek();
+            while (bucket != null && bucket.expiration <= now) {
+                dueQueue.poll();
+                root.advanceClock(bucket.expiration);
+                for (Timeout timeout : bucket.flush()) {
+                    if (!root.add(timeout)) {
+                        candidates.add(timeout);
+                    }
+                }
+                bucket = dueQueue.peek();
+            }
+            root.advanceClock(now);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Timeout timeout;
+        while ((timeout = expiredOnArrival.poll()) != null) {
+            candidates.add(timeout);
+        }
+
+        List<T> expired = new ArrayList<T>();
+        List<Timeout> notDue = new ArrayList<Timeout>();
+        for (Timeout candidate : candidates) {
+            if (candidate.cancelled) {
+                continue;
+            }
+            if (candidate.deadline <= now) {
+                expired.add(candidate.item);
+            } else {
+                // in the current tick, but the deadline itself has not passed yet
+                notDue.add(candidate);
+            }
+        }
+
+        if (!notDue.isEmpty()) {
+            lock.writeLock().lock();
+            try {
+                deferred.addAll(notDue);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * A timeout scheduled on the wheel
+     */
+    public final class Timeout {
+
+        private final T item;
+        private final long deadline;
+
+        private volatile Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+        private volatile boolean cancelled = false;
+
+        private Timeout(T item, long deadline) {
+            this.item = item;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancel this timeout, removing it from the wheel
+         */
+        public void cancel() {
+            cancelled = true;
+            // the timeout may be moved to a different bucket concurrently
+            Bucket current;
+            while ((current = bucket) != null && !current.remove(this)) {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * A doubly linked list of the timeouts which fall in to a time range
+     */
+    private final class Bucket {
+
+        private final Timeout head = new Timeout(null, 0);
+
+        /** Start of the time range of this bucket, or -1 while it is empty */
+        private volatile long expiration = -1;
+
+        private Bucket() {
+            head.next = head;
+            head.prev = head;
+        }
+
+        /**
+         * Add a timeout to this bucket.
+         *
+         * @param timeout the timeout to add
+         * @param expiration start of the time range of the slot
+         * @return true if the bucket was empty and has to be queued
+         */
+        synchronized boolean add(Timeout timeout, long expiration) {
+            timeout.bucket = this;
+            timeout.prev = head.prev;
+            timeout.next = head;
+            head.prev.next = timeout;
+            head.prev = timeout;
+
+            if (this.expiration != expiration) {
+                this.expiration = expiration;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized boolean remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return timeout.bucket == null;
+            }
+            timeout.prev.next = timeout.next;
+            timeout.next.prev = timeout.prev;
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+            return true;
+        }
+
+        synchronized List<Timeout> flush() {
+            List<Timeout> timeouts = new ArrayList<Timeout>();
+            Timeout timeout = head.next;
+            while (timeout != head) {
+                Timeout next = timeout.next;
+                timeout.prev = null;
+                timeout.next = null;
+                timeout.bucket = null;
+                timeouts.add(timeout);
+                timeout = next;
+            }
+            head.next = head;
+            head.prev = head;
+            expiration = -1;
+            return timeouts;
+        }
+    }
+
+    /**
+     * One level of the wheel
+     */
+    private final class Level {
+
+        private final long tickMillis;
+        private final long interval;
+        private final Bucket[] buckets;
+
+        private volatile long currentTime;
+        private volatile Level overflow;
+
+        @SuppressWarnings("unchecked")
+        private Level(long tickMillis, int wheelSize, long startMillis) {
+            this.tickMillis = tickMillis;
+            this.interval = tickMillis * wheelSize;
+            this.buckets = (Bucket[]) Array.newInstance(Bucket.class, wheelSize);
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[i] = new Bucket();
+            }
+            this.currentTime = startMillis - (startMillis % tickMillis);
+        }
+
+        /**
+         * Add a timeout to this level, or to one of the coarser levels.
+         *
+         * @param timeout the timeout to add
+         * @return false if the timeout falls in the current tick, and has to be expired
+         */
+        private boolean add(Timeout timeout) {
+            if (timeout.cancelled) {
+                return true;
+            }
+
+            long deadline = timeout.deadline;
+            if (deadline < currentTime + tickMillis) {
+                return false;
+
+            } else if (deadline < currentTime + interval) {
+                long slot = deadline / tickMillis;
+                Bucket bucket = buckets[(int) (slot % buckets.length)];
+                if (bucket.add(timeout, slot * tickMillis)) {
+                    dueQueue.offer(bucket);
+                }
+                return true;
+
+            } else {
+                return getOverflow().add(timeout);
+            }
+        }
+
+        private Level getOverflow() {
+            Level level = overflow;
+            if (level == null) {
+                synchronized (this) {
+                    level = overflow;
+                    if (level == null) {
+                        level = new Level(interval, buckets.length, currentTime);
+                        overflow = level;
+                    }
+                }
+            }
+            return level;
+        }
+
+        private void advanceClock(long time) {
+            if (time >= currentTime + tickMillis) {
+                currentTime = time - (time % tickMillis);
+                Level level = overflow;
+                if (level != null) {
+                    level.advanceClock(currentTime);
+                }
+            }
+        }
+    }
+}
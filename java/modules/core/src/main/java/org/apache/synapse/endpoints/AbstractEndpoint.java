@@ -438,6 +438,16 @@ public abstract class AbstractEndpoint extends FaultHandler implements Endpoint,
         // do nothing
     }
 
+    /**
+     * The SynapseCallbackReceiver notifies an endpoint, if a message was successfully processed
+     * along with the time it took to receive the response
+     *
+     * @param responseTime the time taken to receive the response in ms
+     */
+    public void onSuccess(long responseTime) {
+        onSuccess();
+    }
+
 
     /**
      * Should this mediator perform tracing? True if its explicitly asked to
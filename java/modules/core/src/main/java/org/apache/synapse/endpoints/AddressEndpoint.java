@@ -44,8 +44,12 @@ public class AddressEndpoint extends AbstractEndpoint {
     }
 
     public void onSuccess() {
+        onSuccess(-1);
+    }
+
+    public void onSuccess(long responseTime) {
         if (getContext() != null) {
-            getContext().onSuccess();
+            getContext().onSuccess(responseTime);
         }
     }
 
@@ -0,0 +1,217 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The circuit breaker used by an {@link EndpointContext} when the endpoint definition enables
+ * one. The outcomes of the last calls made to the endpoint are kept in a ring buffer, and the
+ * circuit opens (i.e. the endpoint gets suspended) as soon as the share of the failed calls or
+ * of the slow calls among them reaches the configured threshold. Once the suspension is over
+ * the circuit is half open, and a limited number of probe calls are let through. The circuit
+ * closes when all the probes succeed, and opens again when one of them fails or is slow.
+ * <p/>
+ * The outcomes are recorded without locking. Each state transition is reported to exactly one
+ * of the threads racing to make it, which is then responsible for updating the endpoint state.
+ */
+class CircuitBreaker {
+
+    /** The result of recording an outcome, which did not change the state */
+    static final int NO_CHANGE = 0;
+    /** The result of recording an outcome, which opened the circuit */
+    static final int OPENED = 1;
+    /** The result of recording an outcome, which closed the circuit */
+    static final int CLOSED = 2;
+
+    private static final int ST_CLOSED = 0;
+    private static final int ST_OPEN = 1;
+    private static final int ST_HALF_OPEN = 2;
+
+    // outcome flags kept in the ring buffer, an empty slot being 0
+    private static final int RECORDED = 1;
+    private static final int FAILED = 2;
+    private static final int SLOW = 4;
+
+    private final int minimumCalls;
+    private final float failureRateThreshold;
+    private final float slowCallRateThreshold;
+    private final long slowCallDuration;
+    private final int halfOpenCalls;
+
+    private final AtomicIntegerArray window;
+    private final AtomicLong cursor = new AtomicLong(0);
+    private final AtomicInteger calls = new AtomicInteger(0);
+    private final AtomicInteger failures = new AtomicInteger(0);
+    private final AtomicInteger slowCalls = new AtomicInteger(0);
+
+    private final AtomicInteger state = new AtomicInteger(ST_CLOSED);
+    /** Probe calls let through, and the successful ones, while the circuit is half open */
+    private final AtomicInteger probes = new AtomicInteger(0);
+    private final AtomicInteger probeSuccesses = new AtomicInteger(0);
+    /** The time after which a new set of probes is let through, if the last ones are lost */
+    private volatile long probeDeadline = 0;
+
+    CircuitBreaker(EndpointDefinition definition) {
+        this.window = new AtomicIntegerArray(definition.getCircuitBreakerWindowSize());
+        this.minimumCalls = Math.max(1, Math.min(definition.getCircuitBreakerMinimumCalls(),
+                definition.getCircuitBreakerWindowSize()));
+        this.failureRateThreshold = definition.getCircuitBreakerFailureRateThreshold();
+        this.slowCallRateThreshold = definition.getCircuitBreakerSlowCallRateThreshold();
+        this.slowCallDuration = definition.getCircuitBreakerSlowCallDuration();
+        this.halfOpenCalls = Math.max(1, definition.getCircuitBreakerHalfOpenCalls());
+    }
+
+    /**
+     * Record a successful call
+     *
+     * @param responseTime the time taken by the call in milliseconds, or -1 if not known
+     * @return {@link #OPENED} if the call was too slow and opened the circuit, {@link #CLOSED}
+     *         if it was the last probe needed to close the circuit, {@link #NO_CHANGE} otherwise
+     */
+    int onSuccess(long responseTime) {
+        boolean slow = slowCallDuration > 0 && responseTime >= slowCallDuration;
+        return record(RECORDED | (slow ? SLOW : 0));
+    }
+
+    /**
+     * Record a failed or timed out call
+     *
+     * @return {@link #OPENED} if the call opened the circuit, {@link #NO_CHANGE} otherwise
+     */
+    int onFailure() {
+        return record(RECORDED | FAILED);
+    }
+
+    /**
+     * Called once the circuit has been open for the suspend duration, to decide whether a call
+     * can be made to probe the endpoint.
+     *
+     * @param now          the current time
+     * @param probeTimeout the time in milliseconds to wait for the outcome of the probes,
+     *                     before letting through new probes
+     * @return true if the caller may send a probe to the endpoint
+     */
+    boolean tryProbe(long now, long probeTimeout) {
+        if (state.get() == ST_OPEN && state.compareAndSet(ST_OPEN, ST_HALF_OPEN)) {
+            probeDeadline = now + probeTimeout;
+        } else if (state.get() == ST_HALF_OPEN && now >= probeDeadline &&
+                probes.get() >= halfOpenCalls) {
+            // the outcome of the probes never arrived, e.g. the messages were out only
+            probeDeadline = now + probeTimeout;
+            probes.set(0);
+        }
+
+        if (state.get() != ST_HALF_OPEN) {
+            return state.get() == ST_CLOSED;
+        }
+        return probes.incrementAndGet() <= halfOpenCalls;
+    }
+
+    /**
+     * Close the circuit and forget the recorded outcomes, e.g. as the endpoint has been
+     * switched on manually
+     */
+    void reset() {
+        state.set(ST_CLOSED);
+        clearWindow();
+    }
+
+    boolean isOpen() {
+        return state.get() != ST_CLOSED;
+    }
+
+    int getCalls() {
+        return calls.get();
+    }
+
+    int getFailures() {
+        return failures.get();
+    }
+
+    int getSlowCalls() {
+        return slowCalls.get();
+    }
+
+    private int record(int outcome) {
+        int current = state.get();
+
+        if (current == ST_HALF_OPEN) {
+            if ((outcome & (FAILED | SLOW)) != 0) {
+                return open(ST_HALF_OPEN);
+            }
+            if (probeSuccesses.incrementAndGet() >= halfOpenCalls &&
+                    state.compareAndSet(ST_HALF_OPEN, ST_CLOSED)) {
+                clearWindow();
+                return CLOSED;
+            }
+            return NO_CHANGE;
+
+        } else if (current == ST_OPEN) {
+            // a late outcome of a call made before the circuit opened
+            return NO_CHANGE;
+        }
+
+        int index = (int) (cursor.getAndIncrement() % window.length());
+        update(window.getAndSet(index, outcome), -1);
+        update(outcome, 1);
+
+        int count = calls.get();
+        if (count >= minimumCalls &&
+                (exceeds(failures.get(), count, failureRateThreshold) ||
+                 exceeds(slowCalls.get(), count, slowCallRateThreshold))) {
+            return open(ST_CLOSED);
+        }
+        return NO_CHANGE;
+    }
+
+    private int open(int expected) {
+        if (state.compareAndSet(expected, ST_OPEN)) {
+            probes.set(0);
+            probeSuccesses.set(0);
+            return OPENED;
+        }
+        return NO_CHANGE;
+    }
+
+    private static boolean exceeds(int count, int total, float threshold) {
+        return threshold > 0 && count * 100f >= threshold * total;
+    }
+
+    private void update(int outcome, int delta) {
+        if ((outcome & RECORDED) != 0) {
+            calls.addAndGet(delta);
+        }
+        if ((outcome & FAILED) != 0) {
+            failures.addAndGet(delta);
+        }
+        if ((outcome & SLOW) != 0) {
+            slowCalls.addAndGet(delta);
+        }
+    }
+
+    private void clearWindow() {
+        for (int i = 0; i < window.length(); i++) {
+            update(window.getAndSet(i, 0), -1);
+        }
+    }
+}
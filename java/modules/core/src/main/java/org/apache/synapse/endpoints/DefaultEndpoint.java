@@ -43,8 +43,12 @@ public class DefaultEndpoint extends AbstractEndpoint {
     }
 
     public void onSuccess() {
+        onSuccess(-1);
+    }
+
+    public void onSuccess(long responseTime) {
         if (getContext() != null) {
-            getContext().onSuccess();
+            getContext().onSuccess(responseTime);
         }
     }
 
@@ -24,6 +24,7 @@ import org.apache.axis2.context.ConfigurationContext;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.protocol.HTTP;
+import org.apache.synapse.ManagedLifecycle;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseConstants;
 import org.apache.synapse.SynapseException;
@@ -32,6 +33,8 @@ import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.core.axis2.Axis2MessageContext;
 import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
 import org.apache.synapse.endpoints.algorithms.AlgorithmContext;
+import org.apache.synapse.endpoints.algorithms.LatencyAwareAlgorithm;
+import org.apache.synapse.endpoints.algorithms.LoadbalanceAlgorithm;
 import org.apache.synapse.endpoints.dispatch.Dispatcher;
 import org.apache.synapse.endpoints.dispatch.HttpSessionDispatcher;
 import org.apache.synapse.endpoints.dispatch.SALSessions;
@@ -86,10 +89,32 @@ public class DynamicLoadbalanceEndpoint extends LoadbalanceEndpoint {
             if (!salSessions.isInitialized()) {
                 salSessions.initialize(isClusteringEnabled, cc);
             }
+
+            // the algorithm is held by the membership handler rather than by this endpoint,
+            // so initialize it here if it implements the ManagedLifecycle interface
+            LoadbalanceAlgorithm algorithm = getMembershipAlgorithm();
+            if (algorithm instanceof ManagedLifecycle) {
+                ((ManagedLifecycle) algorithm).init(synapseEnvironment);
+            }
         }
         log.info("Dynamic load balance endpoint initialized");
     }
 
+    @Override
+    public void destroy() {
+        super.destroy();
+
+        LoadbalanceAlgorithm algorithm = getMembershipAlgorithm();
+        if (algorithm instanceof ManagedLifecycle) {
+            ((ManagedLifecycle) algorithm).destroy();
+        }
+    }
+
+    private LoadbalanceAlgorithm getMembershipAlgorithm() {
+        return getLbMembershipHandler() != null ?
+                getLbMembershipHandler().getLoadbalanceAlgorithm() : null;
+    }
+
     private LoadBalanceMembershipHandler lbMembershipHandler;
 
     public DynamicLoadbalanceEndpoint() {
@@ -267,6 +292,11 @@ public class DynamicLoadbalanceEndpoint extends LoadbalanceEndpoint {
 
         Endpoint endpoint = getEndpoint(to, currentMember, synCtx);
         faultHandler.setCurrentEp(endpoint);
+
+        LoadbalanceAlgorithm algorithm = getMembershipAlgorithm();
+        if (algorithm instanceof LatencyAwareAlgorithm) {
+            ((LatencyAwareAlgorithm) algorithm).recordSelection(synCtx, currentMember);
+        }
         if (isSessionAffinityBasedLB() && newSession) {
             prepareEndPointSequence(synCtx, endpoint);
             synCtx.setProperty(SynapseConstants.PROP_SAL_ENDPOINT_CURRENT_MEMBER, currentMember);
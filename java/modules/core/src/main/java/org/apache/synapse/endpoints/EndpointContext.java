@@ -59,9 +59,9 @@ public class EndpointContext {
     public static final int ST_OFF = 4;
 
     /** The state of the endpoint at present */
-    private int  localState = ST_ACTIVE;
+    private volatile int  localState = ST_ACTIVE;
     /** The time in ms, until the next retry - depending on a timeout or suspension */
-    private long localNextRetryTime = -1;
+    private volatile long localNextRetryTime = -1;
     /** The number of attempts left for timeout failures, until they make the endpoint suspended */
     private int  localRemainingRetries = -1;
     /** The duration in ms for the last suspension */
@@ -79,6 +79,9 @@ public class EndpointContext {
     /** Metrics bean to notify the state changes */
     private EndpointView metricsBean = null;
 
+    /** The circuit breaker which drives the state, if enabled by the definition */
+    private CircuitBreaker circuitBreaker = null;
+
     // for clustered mode operation, keys pre-computed and used for replication
     private final String STATE_KEY;
     private final String NEXT_RETRY_TIME_KEY;
@@ -90,12 +93,18 @@ public class EndpointContext {
      * @param endpointName the name of the endpoint (mainly for logging)
      * @param endpointDefinition the definition of the endpoint
      *  (e.g. retry time, suspend duration..)
-     * @param clustered is the environment clustered?
+     * @param clustered is the environment clustered? The state of an endpoint using a circuit
+     *  breaker is always kept locally, as each node judges the endpoint from its own calls
      * @param cfgCtx the Axis2 configurationContext for clustering
      */
     public EndpointContext(String endpointName, EndpointDefinition endpointDefinition,
                            boolean clustered, ConfigurationContext cfgCtx, EndpointView metricsBean) {
 
+        if (endpointDefinition != null && endpointDefinition.isCircuitBreakerEnabled()) {
+            this.circuitBreaker = new CircuitBreaker(endpointDefinition);
+            clustered = false;
+        }
+
         if (clustered) {
             if (endpointName == null) {
                 if (endpointDefinition != null &&
@@ -272,6 +281,30 @@ public class EndpointContext {
      * Endpoint has processed a message successfully
      */
     public void onSuccess() {
+        onSuccess(-1);
+    }
+
+    /**
+     * Endpoint has processed a message successfully
+     *
+     * @param responseTime the time taken to process the message in ms, or -1 if not known
+     */
+    public void onSuccess(long responseTime) {
+        if (circuitBreaker != null) {
+            if (localState == ST_OFF) {
+                return;
+            }
+            int transition = circuitBreaker.onSuccess(responseTime);
+            if (transition == CircuitBreaker.CLOSED) {
+                log.info("Endpoint : " + endpointName + " currently " + getStateAsString() +
+                        " will now be marked active since it processed the probe messages");
+                setState(ST_ACTIVE);
+            } else if (transition == CircuitBreaker.OPENED) {
+                openCircuit("were slow");
+            }
+            return;
+        }
+
         if (isClustered) {
             Integer state = (Integer) cfgCtx.getPropertyNonReplicable(STATE_KEY);
 
@@ -293,6 +326,10 @@ public class EndpointContext {
      * Endpoint failed processing a message
      */
     public void onFault() {
+        if (circuitBreaker != null) {
+            onCircuitBreakerFailure();
+            return;
+        }
         log.warn("Endpoint : " + endpointName + " will be marked SUSPENDED as it failed");
         setState(ST_SUSPENDED);
     }
@@ -301,6 +338,10 @@ public class EndpointContext {
      * Endpoint timeout processing a message
      */
     public void onTimeout() {
+        if (circuitBreaker != null) {
+            onCircuitBreakerFailure();
+            return;
+        }
         if (log.isDebugEnabled()) {
             log.debug("Endpoint : " + endpointName + " will be marked for " +
                     "SUSPENSION due to the occurrence of one of the configured errors");
@@ -308,6 +349,25 @@ public class EndpointContext {
         setState(ST_TIMEOUT);
     }
 
+    /**
+     * Record a failed or timed out call with the circuit breaker, and suspend the endpoint if
+     * that opens the circuit
+     */
+    private void onCircuitBreakerFailure() {
+        if (localState != ST_OFF &&
+                circuitBreaker.onFailure() == CircuitBreaker.OPENED) {
+            openCircuit("failed");
+        }
+    }
+
+    private void openCircuit(String reason) {
+        log.warn("Endpoint : " + endpointName + " will be marked SUSPENDED as too many " +
+                "of its recent calls " + reason);
+        // no probes until the suspend duration has been computed
+        localNextRetryTime = Long.MAX_VALUE;
+        setState(ST_SUSPENDED);
+    }
+
     /**
      * Compute the suspension duration according to the geometric series parameters defined
      */
@@ -418,6 +478,20 @@ public class EndpointContext {
             } else if (localState == ST_OFF) {
                 return false;
 
+            } else if (circuitBreaker != null) {
+
+                // once the suspension is over, let through as many probes as the circuit
+                // breaker allows, it will make the state change based on their outcome
+                long now = System.currentTimeMillis();
+                if (now >= localNextRetryTime &&
+                        circuitBreaker.tryProbe(now, localLastSuspendDuration)) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Endpoint : " + endpointName + " which is currently " +
+                                "SUSPENDED, will be probed now");
+                    }
+                    return true;
+                }
+
             } else if (System.currentTimeMillis() >= localNextRetryTime) {
 
                 // if we are not active, but reached the next retry time, return true but do not
@@ -455,6 +529,9 @@ public class EndpointContext {
      */
     public void switchOff() {
         log.info("Manually switching off endpoint : " + endpointName);
+        if (circuitBreaker != null) {
+            circuitBreaker.reset();
+        }
         setState(ST_OFF);
     }
 
@@ -463,6 +540,9 @@ public class EndpointContext {
      */
     public void switchOn() {
         log.info("Manually activating endpoint : " + endpointName);
+        if (circuitBreaker != null) {
+            circuitBreaker.reset();
+        }
         setState(ST_ACTIVE);
     }
 
@@ -142,6 +142,19 @@ public class EndpointDefinition implements AspectConfigurable {
     /** A list of error codes which puts the endpoint into timeout mode */
     private final List<Integer> timeoutErrorCodes = new ArrayList<Integer>();
 
+    /** The number of recent calls considered by the circuit breaker, 0 if it is disabled */
+    private int circuitBreakerWindowSize = 0;
+    /** The minimum number of calls recorded, before the circuit breaker may open */
+    private int circuitBreakerMinimumCalls = 10;
+    /** The percentage of failed calls which opens the circuit breaker */
+    private float circuitBreakerFailureRateThreshold = 50;
+    /** The percentage of slow calls which opens the circuit breaker */
+    private float circuitBreakerSlowCallRateThreshold = 100;
+    /** The duration in ms after which a call is considered slow, -1 if none are */
+    private long circuitBreakerSlowCallDuration = -1;
+    /** The number of probe calls which should succeed to close the circuit breaker */
+    private int circuitBreakerHalfOpenCalls = 1;
+
     private AspectConfiguration aspectConfiguration;
     /**
      * The variable that indicate tracing on or off for the current mediator
@@ -499,6 +512,64 @@ public class EndpointDefinition implements AspectConfigurable {
         return timeoutErrorCodes;
     }
 
+    /**
+     * Is the endpoint state driven by a circuit breaker over the recent calls, rather than by
+     * the individual timeouts and errors?
+     *
+     * @return true if a circuit breaker is used
+     */
+    public boolean isCircuitBreakerEnabled() {
+        return circuitBreakerWindowSize > 0;
+    }
+
+    public int getCircuitBreakerWindowSize() {
+        return circuitBreakerWindowSize;
+    }
+
+    public void setCircuitBreakerWindowSize(int circuitBreakerWindowSize) {
+        this.circuitBreakerWindowSize = circuitBreakerWindowSize;
+    }
+
+    public int getCircuitBreakerMinimumCalls() {
+        return circuitBreakerMinimumCalls;
+    }
+
+    public void setCircuitBreakerMinimumCalls(int circuitBreakerMinimumCalls) {
+        this.circuitBreakerMinimumCalls = circuitBreakerMinimumCalls;
+    }
+
+    public float getCircuitBreakerFailureRateThreshold() {
+        return circuitBreakerFailureRateThreshold;
+    }
+
+    public void setCircuitBreakerFailureRateThreshold(float circuitBreakerFailureRateThreshold) {
+        this.circuitBreakerFailureRateThreshold = circuitBreakerFailureRateThreshold;
+    }
+
+    public float getCircuitBreakerSlowCallRateThreshold() {
+        return circuitBreakerSlowCallRateThreshold;
+    }
+
+    public void setCircuitBreakerSlowCallRateThreshold(float circuitBreakerSlowCallRateThreshold) {
+        this.circuitBreakerSlowCallRateThreshold = circuitBreakerSlowCallRateThreshold;
+    }
+
+    public long getCircuitBreakerSlowCallDuration() {
+        return circuitBreakerSlowCallDuration;
+    }
+
+    public void setCircuitBreakerSlowCallDuration(long circuitBreakerSlowCallDuration) {
+        this.circuitBreakerSlowCallDuration = circuitBreakerSlowCallDuration;
+    }
+
+    public int getCircuitBreakerHalfOpenCalls() {
+        return circuitBreakerHalfOpenCalls;
+    }
+
+    public void setCircuitBreakerHalfOpenCalls(int circuitBreakerHalfOpenCalls) {
+        this.circuitBreakerHalfOpenCalls = circuitBreakerHalfOpenCalls;
+    }
+
     public List<Integer> getRetryDisabledErrorCodes() {
         return retryDisabledErrorCodes;
     }
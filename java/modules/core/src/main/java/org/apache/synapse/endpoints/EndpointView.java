@@ -22,6 +22,10 @@ package org.apache.synapse.endpoints;
 import org.apache.axis2.transport.base.MessageLevelMetricsCollector;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.endpoints.algorithms.LatencyAwareAlgorithm;
+import org.apache.synapse.endpoints.algorithms.LoadStatistics;
+import org.apache.synapse.endpoints.algorithms.LoadbalanceAlgorithm;
+import org.apache.synapse.endpoints.dispatch.SALSessions;
 
 import java.util.*;
 import java.util.concurrent.*;
@@ -318,6 +322,69 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
         }
     }
 
+    /**
+     * A Map of the peak EWMA response times (in milliseconds) of the children or members of a
+     * load balance endpoint using a latency aware algorithm
+     * @return a Map of member names and response times, empty for other endpoints
+     */
+    public Map<String, Double> getMemberResponseTimeTable() {
+        Map<String, Double> responseTimeTable = new HashMap<String, Double>();
+        LatencyAwareAlgorithm algorithm = getLatencyAwareAlgorithm();
+        if (algorithm != null) {
+            for (LoadStatistics stats : algorithm.getStatistics()) {
+                responseTimeTable.put(stats.getName(), stats.getResponseTime());
+            }
+        }
+        return responseTimeTable;
+    }
+
+    /**
+     * A Map of the number of requests waiting for a response from the children or members of
+     * a load balance endpoint using a latency aware algorithm
+     * @return a Map of member names and request counts, empty for other endpoints
+     */
+    public Map<String, Integer> getMemberActiveRequestTable() {
+        Map<String, Integer> activeRequestTable = new HashMap<String, Integer>();
+        LatencyAwareAlgorithm algorithm = getLatencyAwareAlgorithm();
+        if (algorithm != null) {
+            for (LoadStatistics stats : algorithm.getStatistics()) {
+                activeRequestTable.put(stats.getName(), stats.getActiveRequests());
+            }
+        }
+        return activeRequestTable;
+    }
+
+    /**
+     * Number of live sessions established through a session affinity load balance endpoint
+     * @return number of live sessions, 0 for other endpoints
+     */
+    public int getLiveSessionCount() {
+        return SALSessions.getInstance().getLiveSessionCount(endpoint);
+    }
+
+    /**
+     * Number of sessions established through a session affinity load balance endpoint
+     * which have been expired
+     * @return number of expired sessions, 0 for other endpoints
+     */
+    public long getExpiredSessionCount() {
+        return SALSessions.getInstance().getExpiredSessionCount(endpoint);
+    }
+
+    private LatencyAwareAlgorithm getLatencyAwareAlgorithm() {
+        LoadbalanceAlgorithm algorithm = null;
+        if (endpoint instanceof DynamicLoadbalanceEndpoint) {
+            DynamicLoadbalanceEndpoint dynamicEndpoint = (DynamicLoadbalanceEndpoint) endpoint;
+            if (dynamicEndpoint.getLbMembershipHandler() != null) {
+                algorithm = dynamicEndpoint.getLbMembershipHandler().getLoadbalanceAlgorithm();
+            }
+        } else if (endpoint instanceof LoadbalanceEndpoint) {
+            algorithm = ((LoadbalanceEndpoint) endpoint).getAlgorithm();
+        }
+        return algorithm instanceof LatencyAwareAlgorithm ?
+                (LatencyAwareAlgorithm) algorithm : null;
+    }
+
     public Date getSuspendedAt() {
         return suspendedAt;
     }
@@ -43,6 +43,10 @@ public interface EndpointViewMBean {
     public double getAvgSizeSent();
     public Map getSendingFaultTable();
     public Map getResponseCodeTable();
+    public Map getMemberResponseTimeTable();
+    public Map getMemberActiveRequestTable();
+    public int getLiveSessionCount();
+    public long getExpiredSessionCount();
 
     public Date getSuspendedAt();
     public Date getTimedoutAt();
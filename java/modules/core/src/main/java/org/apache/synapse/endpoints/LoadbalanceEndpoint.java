@@ -27,6 +27,7 @@ import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
 import org.apache.synapse.core.axis2.Axis2MessageContext;
 import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.endpoints.algorithms.AlgorithmContext;
+import org.apache.synapse.endpoints.algorithms.LatencyAwareAlgorithm;
 import org.apache.synapse.endpoints.algorithms.LoadbalanceAlgorithm;
 import org.apache.synapse.mediators.MediatorProperty;
 
@@ -155,6 +156,10 @@ public class LoadbalanceEndpoint extends AbstractEndpoint {
 
         if (currentMember != null) {
 
+            if (algorithm instanceof LatencyAwareAlgorithm) {
+                ((LatencyAwareAlgorithm) algorithm).recordSelection(synCtx, currentMember);
+            }
+
             // URL rewrite
             if (transport.equals("http") || transport.equals("https")) {
                 String address = to.getAddress();
@@ -36,6 +36,7 @@ import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.core.axis2.Axis2MessageContext;
 import org.apache.synapse.mediators.Value;
 import org.apache.synapse.mediators.eip.EIPConstants;
+import org.apache.synapse.util.EnvelopeSnapshot;
 import org.apache.synapse.util.MessageHelper;
 
 /**
@@ -117,12 +118,16 @@ public class RecipientListEndpoint extends AbstractEndpoint {
     private void sendToEndpointList(MessageContext synCtx, List<Endpoint> children) {
         int i = 0;
         boolean foundEndpoint = false;
+        EnvelopeSnapshot snapshot = null;
         for (Endpoint childEndpoint : children) {
             if (childEndpoint.readyToSend()) {
                 foundEndpoint = true;
+                if (snapshot == null) {
+                    snapshot = new EnvelopeSnapshot(synCtx);
+                }
                 MessageContext newCtx;
                 try {
-                    newCtx = MessageHelper.cloneMessageContext(synCtx);
+                    newCtx = MessageHelper.cloneMessageContext(synCtx, snapshot.newEnvelope());
                 } catch (AxisFault e) {
                     handleException("Error cloning the message context", e);
                     return;
@@ -196,6 +201,7 @@ public class RecipientListEndpoint extends AbstractEndpoint {
 		
 		int i = 0;
 		boolean foundEndpoint = false;
+		EnvelopeSnapshot snapshot = null;
 		
 		for (Member member : members) {
 			
@@ -211,9 +217,12 @@ public class RecipientListEndpoint extends AbstractEndpoint {
 				continue;
 			}	
 			
+			if (snapshot == null) {
+				snapshot = new EnvelopeSnapshot(synCtx);
+			}
 			MessageContext newCtx;
 			try {
-				newCtx = MessageHelper.cloneMessageContext(synCtx);
+				newCtx = MessageHelper.cloneMessageContext(synCtx, snapshot.newEnvelope());
 			} catch (AxisFault e) {
 				handleException("Error cloning the message context", e);
                 return;
@@ -337,4 +337,18 @@ public class SALoadbalanceEndpoint extends LoadbalanceEndpoint {
     public void setSessionTimeout(long sessionTimeout) {
         this.sessionTimeout = sessionTimeout;
     }
+
+    /**
+     * @return number of live sessions established through this endpoint
+     */
+    public int getLiveSessionCount() {
+        return SALSessions.getInstance().getLiveSessionCount(this);
+    }
+
+    /**
+     * @return number of sessions established through this endpoint which have been expired
+     */
+    public long getExpiredSessionCount() {
+        return SALSessions.getInstance().getExpiredSessionCount(this);
+    }
 }
@@ -56,7 +56,11 @@ public class WSDLEndpoint extends AbstractEndpoint {
     }
 
     public void onSuccess() {
-        getContext().onSuccess();
+        onSuccess(-1);
+    }
+
+    public void onSuccess(long responseTime) {
+        getContext().onSuccess(responseTime);
     }
 
     public void send(MessageContext synCtx) {
@@ -0,0 +1,233 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints.algorithms;
+
+import org.apache.axis2.clustering.Member;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.ManagedLifecycle;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.PropertyInclude;
+import org.apache.synapse.SynapseConstants;
+import org.apache.synapse.SynapseException;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.endpoints.Endpoint;
+import org.apache.synapse.mediators.MediatorProperty;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Base class of the load balance algorithms which choose the endpoint or application member
+ * based on its observed load, as tracked by {@link LoadStatistics}.
+ * <p/>
+ * The algorithm records the statistics of the chosen endpoint or member in the message, under
+ * {@link SynapseConstants#LOADBALANCE_STATISTICS}. The
+ * {@link org.apache.synapse.core.axis2.SynapseCallbackReceiver} picks it up when the request is
+ * sent, and reports the response time when the response, a fault or a timeout is received.
+ * Where load balance endpoints are nested, only the innermost one gets this feedback.
+ * <p/>
+ * The time over which past response times lose their weight can be configured using the
+ * <code>loadbalance.decayTime</code> property of the load balance endpoint, in milliseconds.
+ */
+public abstract class LatencyAwareAlgorithm implements LoadbalanceAlgorithm, ManagedLifecycle {
+
+    private static final Log log = LogFactory.getLog(LatencyAwareAlgorithm.class);
+
+    public static final String LB_DECAY_TIME = "loadbalance.decayTime";
+    public static final long DEFAULT_DECAY_TIME = 10000;
+
+    private List<Endpoint> endpoints = null;
+    private List<Member> members = null;
+    private Endpoint loadBalanceEndpoint = null;
+
+    private long decayTime = DEFAULT_DECAY_TIME;
+
+    /** Statistics of the endpoints and members, created when they are first considered */
+    private final ConcurrentMap<Object, LoadStatistics> statistics =
+            new ConcurrentHashMap<Object, LoadStatistics>();
+
+    public void setApplicationMembers(List<Member> members) {
+        this.members = members;
+        // forget the members which have left, unless requests sent to them are outstanding
+        if (members != null && statistics.size() > members.size()) {
+            Set<Object> current = new HashSet<Object>(members);
+            for (Object target : statistics.keySet()) {
+                if (target instanceof Member && !current.contains(target) &&
+                        statistics.get(target).getActiveRequests() <= 0) {
+                    statistics.remove(target);
+                }
+            }
+        }
+    }
+
+    public void setEndpoints(List<Endpoint> endpoints) {
+        this.endpoints = endpoints;
+    }
+
+    public void setLoadBalanceEndpoint(Endpoint endpoint) {
+        this.loadBalanceEndpoint = endpoint;
+    }
+
+    /**
+     * Choose the least loaded of the endpoints which are ready to send, as decided by
+     * {@link #choose(List)}.
+     *
+     * @param synCtx           MessageContext instance which holds all per-message properties
+     * @param algorithmContext The context in which holds run time states related to the algorithm
+     * @return endpoint to send the next message, or null if none of the endpoints is ready
+     */
+    public Endpoint getNextEndpoint(MessageContext synCtx, AlgorithmContext algorithmContext) {
+        if (endpoints == null) {
+            return null;
+        }
+
+        List<Endpoint> candidates = new ArrayList<Endpoint>(endpoints.size());
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.readyToSend()) {
+                candidates.add(endpoint);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        Endpoint endpoint = choose(candidates);
+        recordSelection(synCtx, endpoint);
+        return endpoint;
+    }
+
+    /**
+     * Choose the least loaded of the members which are not suspended, or of all the members if
+     * all of them are suspended. The caller is expected to call
+     * {@link #recordSelection(MessageContext, Object)} for the member which is returned.
+     *
+     * @param algorithmContext The context in which holds run time states related to the algorithm
+     * @return member to send the next message, or null if there are no members
+     */
+    public Member getNextApplicationMember(AlgorithmContext algorithmContext) {
+        List<Member> members = this.members;
+        if (members == null || members.isEmpty()) {
+            return null;
+        }
+
+        List<Member> candidates = new ArrayList<Member>(members.size());
+        for (Member member : members) {
+            if (!member.isSuspended()) {
+                candidates.add(member);
+            }
+        }
+        return choose(candidates.isEmpty() ? new ArrayList<Member>(members) : candidates);
+    }
+
+    /**
+     * Record the endpoint or member chosen for the given message, so that the outcome of the
+     * request is reported to its statistics.
+     *
+     * @param synCtx the message
+     * @param target the chosen endpoint or member
+     */
+    public void recordSelection(MessageContext synCtx, Object target) {
+        synCtx.setProperty(SynapseConstants.LOADBALANCE_STATISTICS, getStatistics(target));
+    }
+
+    /**
+     * Choose one of the given candidates.
+     *
+     * @param candidates the endpoints or members to choose from, never empty
+     * @return the chosen candidate
+     */
+    protected abstract <T> T choose(List<T> candidates);
+
+    @Override
+    public abstract LoadbalanceAlgorithm clone();
+
+    /**
+     * @param target an endpoint or a member
+     * @return the statistics of the given endpoint or member
+     */
+    public LoadStatistics getStatistics(Object target) {
+        LoadStatistics stats = statistics.get(target);
+        if (stats == null) {
+            stats = new LoadStatistics(getName(target), decayTime);
+            LoadStatistics existing = statistics.putIfAbsent(target, stats);
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * @return the statistics of all the endpoints and members considered so far
+     */
+    public Collection<LoadStatistics> getStatistics() {
+        return statistics.values();
+    }
+
+    public void reset(AlgorithmContext algorithmContext) {
+        statistics.clear();
+    }
+
+    public void init(SynapseEnvironment se) {
+        if (loadBalanceEndpoint instanceof PropertyInclude) {
+            MediatorProperty val =
+                    ((PropertyInclude) loadBalanceEndpoint).getProperty(LB_DECAY_TIME);
+            if (val != null) {
+                try {
+                    decayTime = Long.parseLong(val.getValue().trim());
+                } catch (NumberFormatException e) {
+                    handleException("Invalid value specified for " + LB_DECAY_TIME + " : " +
+                            val.getValue(), e);
+                }
+                if (decayTime <= 0) {
+                    handleException(LB_DECAY_TIME + " must be a positive number of " +
+                            "milliseconds : " + val.getValue(), null);
+                }
+            }
+        }
+    }
+
+    public void destroy() {
+        statistics.clear();
+    }
+
+    public long getDecayTime() {
+        return decayTime;
+    }
+
+    private static void handleException(String msg, Exception e) {
+        log.error(msg, e);
+        throw new SynapseException(msg, e);
+    }
+
+    private static String getName(Object target) {
+        if (target instanceof Member) {
+            Member member = (Member) target;
+            return member.getHostName() + ":" + member.getPort();
+        }
+        return target.toString();
+    }
+}
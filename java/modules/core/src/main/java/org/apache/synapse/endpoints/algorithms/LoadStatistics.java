@@ -0,0 +1,131 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints.algorithms;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the load of an endpoint or an application member chosen by a
+ * {@link LatencyAwareAlgorithm}, i.e. the number of requests which are waiting for a response
+ * and a peak EWMA (exponentially weighted moving average) of the response time.
+ * <p/>
+ * The peak EWMA follows increases of the response time immediately, while decreases are taken
+ * in to account gradually over the decay time. The average also decays towards zero while no
+ * responses are received, so that an endpoint which was slow in the past is tried again after
+ * a while. Failed requests count as responses which took at least twice the current average.
+ */
+public class LoadStatistics {
+
+    /** Minimum response time, in milliseconds, assumed for a failed request */
+    private static final long FAILURE_PENALTY = 1000;
+
+    private final String name;
+    private final long decayTime;
+
+    private final AtomicInteger activeRequests = new AtomicInteger(0);
+    private final AtomicLong requestCount = new AtomicLong(0);
+    private final AtomicLong failureCount = new AtomicLong(0);
+
+    /** The peak EWMA of the response time in milliseconds, as of the last update */
+    private volatile double responseTime = 0;
+    private volatile long lastUpdate = System.currentTimeMillis();
+
+    /**
+     * @param name      name of the endpoint or member
+     * @param decayTime the time in milliseconds over which past response times lose their weight
+     */
+    public LoadStatistics(String name, long decayTime) {
+        this.name = name;
+        this.decayTime = Math.max(1, decayTime);
+    }
+
+    /**
+     * Record a request sent to the endpoint or member
+     */
+    public void requestStarted() {
+        requestCount.incrementAndGet();
+        activeRequests.incrementAndGet();
+    }
+
+    /**
+     * Record the completion of a request recorded by {@link #requestStarted()}
+     *
+     * @param time    the time taken in milliseconds
+     * @param success whether a response was received, as opposed to a fault or a timeout
+     */
+    public synchronized void requestCompleted(long time, boolean success) {
+        activeRequests.decrementAndGet();
+
+        long now = System.currentTimeMillis();
+        double current = responseTime;
+        double weight = Math.exp(-(double) Math.max(now - lastUpdate, 0) / decayTime);
+        double observed = Math.max(time, 0);
+        if (!success) {
+            failureCount.incrementAndGet();
+            observed = Math.max(observed, Math.max(current * weight * 2, FAILURE_PENALTY));
+        }
+
+        if (observed > current) {
+            responseTime = observed;
+        } else {
+            responseTime = current * weight + observed * (1 - weight);
+        }
+        lastUpdate = now;
+    }
+
+    /**
+     * The cost of sending a request to the endpoint or member, which grows with both the
+     * response time and the number of requests waiting for a response
+     *
+     * @return the current cost
+     */
+    public double getLoad() {
+        return (getResponseTime() + 1) * (activeRequests.get() + 1);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the current peak EWMA of the response time, in milliseconds
+     */
+    public double getResponseTime() {
+        return decay(responseTime, System.currentTimeMillis());
+    }
+
+    public int getActiveRequests() {
+        return activeRequests.get();
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    private double decay(double value, long now) {
+        long elapsed = now - lastUpdate;
+        return elapsed > 0 ? value * Math.exp(-(double) elapsed / decayTime) : value;
+    }
+}
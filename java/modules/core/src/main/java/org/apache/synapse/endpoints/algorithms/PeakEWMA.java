@@ -0,0 +1,60 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints.algorithms;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A load balance algorithm which sends each message to the endpoint (or application member)
+ * with the lowest cost, the cost being the peak EWMA of its response time multiplied by the
+ * number of requests waiting for a response from it. Slow endpoints hence get a smaller share
+ * of the load, in proportion to how slow they are. Ties are broken at random.
+ *
+ * @see LoadStatistics
+ */
+public class PeakEWMA extends LatencyAwareAlgorithm {
+
+    protected <T> T choose(List<T> candidates) {
+        T chosen = null;
+        double lowest = Double.MAX_VALUE;
+        int ties = 0;
+        for (T candidate : candidates) {
+            double load = getStatistics(candidate).getLoad();
+            if (load < lowest) {
+                chosen = candidate;
+                lowest = load;
+                ties = 1;
+            } else if (load == lowest && ThreadLocalRandom.current().nextInt(++ties) == 0) {
+                chosen = candidate;
+            }
+        }
+        return chosen;
+    }
+
+    public String getName() {
+        return "PeakEWMA";
+    }
+
+    @Override
+    public LoadbalanceAlgorithm clone() {
+        return new PeakEWMA();
+    }
+}
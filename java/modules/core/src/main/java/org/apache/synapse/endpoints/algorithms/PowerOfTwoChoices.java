@@ -0,0 +1,66 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints.algorithms;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A load balance algorithm which picks two of the endpoints (or application members) at random
+ * and sends the message to the one with fewer requests waiting for a response, breaking ties
+ * using the peak EWMA of the response time. This avoids both the herd behaviour of always
+ * choosing the least loaded endpoint based on stale information, and looking at the load of
+ * every endpoint for each message.
+ *
+ * @see LoadStatistics
+ */
+public class PowerOfTwoChoices extends LatencyAwareAlgorithm {
+
+    protected <T> T choose(List<T> candidates) {
+        int size = candidates.size();
+        if (size == 1) {
+            return candidates.get(0);
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+
+        LoadStatistics a = getStatistics(candidates.get(first));
+        LoadStatistics b = getStatistics(candidates.get(second));
+        int diff = a.getActiveRequests() - b.getActiveRequests();
+        if (diff == 0) {
+            return candidates.get(a.getResponseTime() <= b.getResponseTime() ? first : second);
+        }
+        return candidates.get(diff < 0 ? first : second);
+    }
+
+    public String getName() {
+        return "PowerOfTwoChoices";
+    }
+
+    @Override
+    public LoadbalanceAlgorithm clone() {
+        return new PowerOfTwoChoices();
+    }
+}
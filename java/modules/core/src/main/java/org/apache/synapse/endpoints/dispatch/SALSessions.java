@@ -26,6 +26,8 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseConstants;
 import org.apache.synapse.SynapseException;
+import org.apache.synapse.config.SynapsePropertiesLoader;
+import org.apache.synapse.core.axis2.TimingWheel;
 import org.apache.synapse.endpoints.Endpoint;
 import org.apache.synapse.endpoints.IndirectEndpoint;
 import org.apache.synapse.endpoints.SALoadbalanceEndpoint;
@@ -33,9 +35,17 @@ import org.apache.synapse.endpoints.DynamicLoadbalanceEndpoint;
 import org.apache.synapse.util.Replicator;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Keeps the states of the sessions
+ * Keeps the states of the sessions. In a non-clustered environment the established sessions are
+ * kept in a concurrent table, and are expired using a timing wheel so that clearing the expired
+ * sessions does not require scanning all of them. The number of sessions in the table can be
+ * limited using the <code>synapse.sal.sessions.max</code> property, beyond which new sessions
+ * are not established (messages are still load balanced, but without affinity).
  */
 public class SALSessions {
 
@@ -45,6 +55,11 @@ public class SALSessions {
 
     private final static String SESSION_IDS = "synapse.salep.sessionids.";
 
+    private static final String MAX_SESSIONS = "synapse.sal.sessions.max";
+
+    private static final long EXPIRY_TICK = 1000;
+    private static final int EXPIRY_WHEEL_SIZE = 512;
+
     private ConfigurationContext configCtx;
 
     /* Is this env. support clustering*/
@@ -54,14 +69,26 @@ public class SALSessions {
 
     /*Cache all path with its endpoint sequence. This is only need for a clustered environment */
     private final Map<List<String>, List<Endpoint>> namesToEndpointsMap =
-            new HashMap<List<String>, List<Endpoint>>();
+            new ConcurrentHashMap<List<String>, List<Endpoint>>();
 
     /* Non- clustered environment , all the established sessions*/
-    private final Map<String, SessionInformation> establishedSessions =
-            new HashMap<String, SessionInformation>();
+    private final ConcurrentMap<String, Session> establishedSessions =
+            new ConcurrentHashMap<String, Session>();
     /* all child endpoints .  This is only need for a clustered environment*/
-    private final Map<String, Map<String, Endpoint>> childEndpoints =
-            new HashMap<String, Map<String, Endpoint>>();
+    private final ConcurrentMap<String, Map<String, Endpoint>> childEndpoints =
+            new ConcurrentHashMap<String, Map<String, Endpoint>>();
+
+    /* Non- clustered environment , expiry times of the established sessions*/
+    private volatile TimingWheel<Session> expiryWheel = newExpiryWheel();
+
+    /* Non- clustered environment , live and expired session counts of each root endpoint*/
+    private final ConcurrentMap<Endpoint, SessionCounters> sessionCounters =
+            new ConcurrentHashMap<Endpoint, SessionCounters>();
+
+    /* counts of the sessions whose root endpoint is not known, which are not reported */
+    private static final SessionCounters UNKNOWN_ROOT = new SessionCounters();
+
+    private int maxSessions = -1;
 
     private SALSessions() {
     }
@@ -83,10 +110,18 @@ public class SALSessions {
                 log.debug("Initializing SALSessions instance. Environment : " +
                         (isClusteringEnable ? " clustered" : " local"));
             }
+            isClustered = isClusteringEnable;
             if (isClusteringEnable) {
-                isClustered = isClusteringEnable;
                 configCtx = cc;
             }
+            String max = SynapsePropertiesLoader.getPropertyValue(MAX_SESSIONS, "-1");
+            try {
+                maxSessions = Integer.parseInt(max.trim());
+            } catch (NumberFormatException e) {
+                log.warn("Invalid value specified for " + MAX_SESSIONS + " : " + max +
+                        ". The number of sessions will not be limited");
+                maxSessions = -1;
+            }
             initialized = true;
         }
     }
@@ -114,7 +149,7 @@ public class SALSessions {
                 Map<String, Endpoint> children = new HashMap<String, Endpoint>();
                 children.put(endpointName, endpoint);
                 fillMap(endpoints, children);
-                childEndpoints.put(endpointName, children);
+                childEndpoints.putIfAbsent(endpointName, children);
 
             }
         }
@@ -207,7 +242,10 @@ public class SALSessions {
             if (isClustered) {
                 Replicator.setAndReplicateState(SESSION_IDS + sessionID, newInformation, configCtx);
             } else {
-                establishedSessions.put(sessionID, newInformation);
+                List<Endpoint> path = endpoints != null ? endpoints : (List<Endpoint>)
+                        synCtx.getProperty(SynapseConstants.PROP_SAL_ENDPOINT_ENDPOINT_LIST);
+                establishSession(newInformation,
+                        path != null && !path.isEmpty() ? path.get(0) : null);
             }
         }
     }
@@ -244,7 +282,11 @@ public class SALSessions {
             if (log.isDebugEnabled()) {
                 log.debug("Session has been expired for session with id: " + sessionID);
             }
-            removeSession(sessionID);
+            if (isClustered) {
+                removeSession(sessionID);
+            } else {
+                expireSession(information);
+            }
             return null;
         }
 
@@ -306,10 +348,39 @@ public class SALSessions {
             Replicator.removeAndReplicateState(SESSION_IDS + sessionId, configCtx);
 
         } else {
-            establishedSessions.remove(sessionId);
+            Session session = establishedSessions.remove(sessionId);
+            if (session != null) {
+                session.timeout.cancel();
+                session.counters.live.decrementAndGet();
+            }
         }
     }
 
+    /**
+     * Returns the number of sessions currently established through the given endpoint, as the
+     * first endpoint of the session. Only the sessions of a non-clustered environment are counted.
+     *
+     * @param endpoint the root endpoint of the sessions
+     * @return number of live sessions
+     */
+    public int getLiveSessionCount(Endpoint endpoint) {
+        SessionCounters counters = sessionCounters.get(endpoint);
+        return counters != null ? counters.live.get() : 0;
+    }
+
+    /**
+     * Returns the number of sessions established through the given endpoint, as the first
+     * endpoint of the session, which have been expired. Only the sessions of a non-clustered
+     * environment are counted.
+     *
+     * @param endpoint the root endpoint of the sessions
+     * @return number of expired sessions
+     */
+    public long getExpiredSessionCount(Endpoint endpoint) {
+        SessionCounters counters = sessionCounters.get(endpoint);
+        return counters != null ? counters.expired.get() : 0;
+    }
+
     /**
      * Clear all the expired sessions
      */
@@ -353,23 +424,23 @@ public class SALSessions {
 
             } else {
 
-                List<String> toBeRemoved = new ArrayList<String>();
-                for (SessionInformation information : establishedSessions.values()) {
-
-                    if (information != null && information.isExpired()) {
-                        String id = information.getId();
-                        if (log.isDebugEnabled()) {
-                            log.debug("Expired session with id :" + id);
+                TimingWheel<Session> wheel = expiryWheel;
+                long now = System.currentTimeMillis();
+                for (Session session : wheel.advance(now)) {
+                    SessionInformation information = session.information;
+                    if (!information.isExpired()) {
+                        // the expiry time has been extended since the session was scheduled
+                        if (establishedSessions.get(information.getId()) == session) {
+                            session.timeout = wheel.schedule(session,
+                                    information.getExpiryTime());
                         }
-                        toBeRemoved.add(id);
+                        continue;
                     }
-                }
 
-                if (!toBeRemoved.isEmpty()) {
                     if (log.isDebugEnabled()) {
-                        log.debug("Clearing expired sessions");
+                        log.debug("Expired session with id :" + information.getId());
                     }
-                    establishedSessions.keySet().removeAll(toBeRemoved);
+                    expireSession(information);
                 }
             }
         } catch (Throwable ignored) {
@@ -400,9 +471,67 @@ public class SALSessions {
         log.info("Clearing all states ");
         initialized = false;
         establishedSessions.clear();
+        expiryWheel = newExpiryWheel();
+        sessionCounters.clear();
         namesToEndpointsMap.clear();
         childEndpoints.clear();
     }
+
+    /*
+     * Adds a session to the table of the non-clustered environment, replacing any session
+     * with the same id
+     */
+    private void establishSession(SessionInformation information, Endpoint rootEndpoint) {
+
+        if (maxSessions > 0 && establishedSessions.size() >= maxSessions &&
+                !establishedSessions.containsKey(information.getId())) {
+            if (log.isDebugEnabled()) {
+                log.debug("Maximum number of sessions : " + maxSessions + " reached. " +
+                        "Session with id : " + information.getId() + " will not be established");
+            }
+            return;
+        }
+
+        SessionCounters counters = rootEndpoint != null ?
+                sessionCounters.get(rootEndpoint) : UNKNOWN_ROOT;
+        if (counters == null) {
+            SessionCounters newCounters = new SessionCounters();
+            counters = sessionCounters.putIfAbsent(rootEndpoint, newCounters);
+            if (counters == null) {
+                counters = newCounters;
+            }
+        }
+
+        Session session = new Session(information, counters);
+        // schedule before publishing, so that a concurrent removal always finds the timeout
+        session.timeout = expiryWheel.schedule(session, information.getExpiryTime());
+        counters.live.incrementAndGet();
+
+        Session previous = establishedSessions.put(information.getId(), session);
+        if (previous != null) {
+            previous.timeout.cancel();
+            previous.counters.live.decrementAndGet();
+        }
+    }
+
+    /*
+     * Removes an expired session from the table of the non-clustered environment
+     */
+    private void expireSession(SessionInformation information) {
+
+        Session session = establishedSessions.get(information.getId());
+        if (session != null && session.information == information &&
+                establishedSessions.remove(information.getId(), session)) {
+            session.timeout.cancel();
+            session.counters.live.decrementAndGet();
+            session.counters.expired.incrementAndGet();
+        }
+    }
+
+    private static TimingWheel<Session> newExpiryWheel() {
+        return new TimingWheel<Session>(EXPIRY_TICK, EXPIRY_WHEEL_SIZE,
+                System.currentTimeMillis());
+    }
     /*
      * Helper method to get a map from a list - This is for clustered env.
      */
@@ -518,7 +647,8 @@ public class SALSessions {
             return (SessionInformation)
                     configCtx.getPropertyNonReplicable(SESSION_IDS + sessionID);
         } else {
-            return establishedSessions.get(sessionID);
+            Session session = establishedSessions.get(sessionID);
+            return session != null ? session.information : null;
         }
     }
 
@@ -634,4 +764,28 @@ public class SALSessions {
         }
         return information;
     }
-}
\ No newline at end of file
+
+    /*
+     * An established session of the non-clustered environment
+     */
+    private static final class Session {
+
+        private final SessionInformation information;
+        private final SessionCounters counters;
+        private volatile TimingWheel<Session>.Timeout timeout;
+
+        private Session(SessionInformation information, SessionCounters counters) {
+            this.information = information;
+            this.counters = counters;
+        }
+    }
+
+    /*
+     * Session counts of a root endpoint
+     */
+    private static final class SessionCounters {
+
+        private final AtomicInteger live = new AtomicInteger(0);
+        private final AtomicLong expired = new AtomicLong(0);
+    }
+}
@@ -24,8 +24,6 @@ import org.apache.axiom.soap.SOAP11Constants;
 import org.apache.axiom.soap.SOAP12Constants;
 import org.apache.axiom.soap.SOAPFactory;
 import org.apache.axis2.AxisFault;
-import org.apache.axis2.clustering.ClusteringFault;
-import org.apache.axis2.clustering.state.Replicator;
 import org.apache.axis2.context.ConfigurationContext;
 import org.apache.axis2.context.OperationContext;
 import org.apache.axis2.i18n.Messages;
@@ -38,10 +36,14 @@ import org.apache.synapse.core.axis2.Axis2MessageContext;
 import org.apache.synapse.core.axis2.Axis2Sender;
 import org.apache.synapse.mediators.AbstractMediator;
 import org.apache.synapse.mediators.base.SequenceMediator;
+import org.apache.synapse.mediators.builtin.cache.PendingResponse;
+import org.apache.synapse.mediators.builtin.cache.ResponseCache;
+import org.apache.synapse.mediators.builtin.cache.ResponseCacheRegistry;
+import org.apache.synapse.mediators.builtin.cache.StreamingDigestGenerator;
 import org.apache.synapse.util.FixedByteArrayOutputStream;
-import org.apache.synapse.util.MessageHelper;
 import org.apache.axiom.soap.SOAPEnvelope;
-import org.wso2.caching.*;
+import org.wso2.caching.CachingConstants;
+import org.wso2.caching.CachingException;
 import org.wso2.caching.util.SOAPMessageHelper;
 import org.wso2.caching.digest.DigestGenerator;
 
@@ -55,27 +57,45 @@ import java.io.IOException;
  * request message, and subsequent messages with the same request (request hash will be
  * generated and checked for the equality) within the cache expiration period will be served
  * from the stored responses in the cache
+ * <p/>
+ * Responses are kept in a {@link ResponseCache} shared by all the cache mediators with the
+ * same ID. The default cache implementation bounds the memory it uses both by the number of
+ * entries and by the number of bytes, and moves evicted responses to a memory mapped file
+ * when disk caching is enabled.
  *
  * @see org.apache.synapse.Mediator
  */
 public class CacheMediator extends AbstractMediator implements ManagedLifecycle {
 
+    /** Default upper bound for the disk cache in bytes */
+    public static final long DEFAULT_MAX_DISK_BYTES = 32 * 1024 * 1024;
+
     private String id = null;
     private String scope = CachingConstants.SCOPE_PER_HOST;// global
     private boolean collector = false;
     private DigestGenerator digestGenerator = CachingConstants.DEFAULT_XML_IDENTIFIER;
     private int inMemoryCacheSize = CachingConstants.DEFAULT_CACHE_SIZE;
+    // maximum number of bytes held in memory, 0 if only the number of entries is bounded
+    private long maxMemoryBytes = 0;
     // if this is 0 then no disk cache, and if there is no size specified in the config
     // factory will asign a default value to enable disk based caching
     private int diskCacheSize = 0;
+    private long maxDiskBytes = DEFAULT_MAX_DISK_BYTES;
+    private String engine = null;
     private long timeout = 0L;
     private SequenceMediator onCacheHitSequence = null;
     private String onCacheHitRef = null;
+    // size limit of both the requests looked up in and the responses stored in the cache
     private int maxMessageSize = 0;
     private static final String CACHE_KEY_PREFIX = "synapse.cache_key_";
 
     private String cacheKey = "synapse.cache_key";
 
+    /** The cache used by this mediator, looked up from the registry on first use */
+    private volatile ResponseCache responseCache = null;
+
+    private ResponseCacheRegistry cacheRegistry = null;
+
     public void init(SynapseEnvironment se) {
         if (onCacheHitSequence != null) {
             onCacheHitSequence.init(se);
@@ -86,6 +106,12 @@ public class CacheMediator extends AbstractMediator implements ManagedLifecycle
         if (onCacheHitSequence != null) {
             onCacheHitSequence.destroy();
         }
+        synchronized (this) {
+            if (responseCache != null) {
+                cacheRegistry.release(getCacheName());
+                responseCache = null;
+            }
+        }
     }
 
     public boolean mediate(MessageContext synCtx) {
@@ -100,70 +126,56 @@ public class CacheMediator extends AbstractMediator implements ManagedLifecycle
             }
         }
 
-        // if maxMessageSize is specified check for the message size before processing
-        if (maxMessageSize > 0) {
-            FixedByteArrayOutputStream fbaos = new FixedByteArrayOutputStream(maxMessageSize);
-            try {
-                MessageHelper.cloneSOAPEnvelope(synCtx.getEnvelope()).serialize(fbaos);
-            } catch (XMLStreamException e) {
-                handleException("Error in checking the message size", e, synCtx);
-            } catch (SynapseException syne) {
-                synLog.traceOrDebug("Message size exceeds the upper bound for caching, " +
-                            "request will not be cached");
-                return true;
-            }
-        }
+        boolean result = true;
+        if (synCtx.isResponse()) {
+            processResponseMessage(synCtx, synLog);
 
-        ConfigurationContext cfgCtx =
-            ((Axis2MessageContext) synCtx).getAxis2MessageContext().getConfigurationContext();
-        if (cfgCtx == null) {
-            handleException("Unable to perform caching, "
-                + " ConfigurationContext cannot be found", synCtx);
-            return false; // never executes.. but keeps IDE happy
+        } else {
+            result = processRequestMessage(synCtx, synLog);
         }
 
-        if (synLog.isTraceOrDebugEnabled()) {
-            synLog.traceOrDebug("Looking up cache at scope : " + scope + " with ID : "
-                    + cacheKey);
-        }
+        synLog.traceOrDebug("End : Cache mediator");
 
-        // look up cache
-        Object prop = cfgCtx.getPropertyNonReplicable(CachingConstants.CACHE_MANAGER);
-        CacheManager cacheManager;
-        if (prop != null && prop instanceof CacheManager) {
-            cacheManager = (CacheManager) prop;
-        } else {
-            synchronized (cfgCtx) {
-                // check again after taking the lock to make sure no one else did it before us
-                prop = cfgCtx.getPropertyNonReplicable(CachingConstants.CACHE_MANAGER);
-                if (prop != null && prop instanceof CacheManager) {
-                    cacheManager = (CacheManager) prop;
-
-                } else {
-                    synLog.traceOrDebug("Creating/recreating the cache object");
-                    cacheManager = new CacheManager();
-                    cfgCtx.setProperty(CachingConstants.CACHE_MANAGER, cacheManager);
-                }
-            }
-        }
+        return result;
+    }
 
-        boolean result = true;
-        try {
+    /**
+     * Get the cache used by this mediator, looking it up in the registry of the
+     * ConfigurationContext on the first invocation.
+     *
+     * @param synCtx the current message
+     * @param synLog the Synapse log to use
+     * @return the response cache
+     */
+    private ResponseCache getResponseCache(MessageContext synCtx, SynapseLog synLog) {
+        ResponseCache cache = responseCache;
+        if (cache != null) {
+            return cache;
+        }
 
-            if (synCtx.isResponse()) {
-                processResponseMessage(synCtx, synLog);
+        synchronized (this) {
+            if (responseCache == null) {
+                ConfigurationContext cfgCtx = ((Axis2MessageContext) synCtx).
+                        getAxis2MessageContext().getConfigurationContext();
+                if (cfgCtx == null) {
+                    handleException("Unable to perform caching, "
+                        + " ConfigurationContext cannot be found", synCtx);
+                }
 
-            } else {
-                result = processRequestMessage(synCtx, synLog, cacheManager);
+                if (synLog.isTraceOrDebugEnabled()) {
+                    synLog.traceOrDebug("Looking up cache at scope : " + scope + " with ID : "
+                            + getCacheName());
+                }
+                cacheRegistry = ResponseCacheRegistry.getRegistry(cfgCtx);
+                responseCache = cacheRegistry.acquire(getCacheName(), engine,
+                        inMemoryCacheSize, maxMemoryBytes, diskCacheSize, maxDiskBytes);
             }
-
-        } catch (ClusteringFault clusteringFault) {
-            synLog.traceOrDebug("Unable to replicate Cache mediator state among the cluster");
+            return responseCache;
         }
+    }
 
-        synLog.traceOrDebug("End : Cache mediator");
-
-        return result;
+    private String getCacheName() {
+        return id != null ? id : cacheKey;
     }
 
     /**
@@ -172,10 +184,8 @@ public class CacheMediator extends AbstractMediator implements ManagedLifecycle
      *
      * @param synLog         the Synapse log to use
      * @param synCtx         the current message (response)
-     * @throws ClusteringFault is there is an error in replicating the cfgCtx
      */
-    private void processResponseMessage(MessageContext synCtx,
-                                        SynapseLog synLog) throws ClusteringFault {
+    private void processResponseMessage(MessageContext synCtx, SynapseLog synLog) {
 
         if (!collector) {
             handleException("Response messages cannot be handled in a non collector cache", synCtx);
@@ -185,57 +195,33 @@ public class CacheMediator extends AbstractMediator implements ManagedLifecycle
                 ((Axis2MessageContext)synCtx).getAxis2MessageContext();
         OperationContext operationContext = msgCtx.getOperationContext();
 
-        CachableResponse response =
-                (CachableResponse) operationContext.getPropertyNonReplicable(CachingConstants.CACHED_OBJECT);
-        if (response != null) {
-            if (synLog.isTraceOrDebugEnabled()) {
-                synLog.traceOrDebug("Storing the response message into the cache at scope : " +
-                        scope + " with ID : " + cacheKey + " for request hash : " + response.getRequestHash());
-            }
+        Object pending = operationContext.getPropertyNonReplicable(CachingConstants.CACHED_OBJECT);
+        if (pending instanceof PendingResponse) {
+            PendingResponse response = (PendingResponse) pending;
             if (synLog.isTraceOrDebugEnabled()) {
                 synLog.traceOrDebug("Storing the response for the message with ID : " +
                         synCtx.getMessageID() + " with request hash ID : " +
-                        response.getRequestHash() + " in the cache : " + cacheKey);
+                        response.getRequestHash() + " in the cache");
             }
 
-            ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+            // the response has to be serialized to be stored anyway, so the size limit is
+            // enforced while serializing rather than in a separate pass
+            ByteArrayOutputStream outStream = maxMessageSize > 0 ?
+                    new FixedByteArrayOutputStream(maxMessageSize) : new ByteArrayOutputStream();
             try {
                 synCtx.getEnvelope().serialize(outStream);
-                response.setResponseEnvelope(outStream.toByteArray());
+                response.complete(outStream.toByteArray());
             } catch (XMLStreamException e) {
                 handleException("Unable to set the response to the Cache", e, synCtx);
+            } catch (SynapseException syne) {
+                synLog.traceOrDebug("Message size exceeds the upper bound for caching, " +
+                        "response will not be cached");
             }
-
-            // this is not required yet, can commented this for perf improvements
-            // in the future there can be a situation where user sends the request
-            // with the response hash (if client side caching is on) in which case
-            // we can compare that response hash with the given response hash and
-            // respond with not-modified http header */
-            // cachedObj.setResponseHash(cache.getGenerator().getDigest(
-            //     ((Axis2MessageContext) synCtx).getAxis2MessageContext()));
-
-            if (response.getTimeout() > 0) {
-                response.setExpireTimeMillis(System.currentTimeMillis() + response.getTimeout());
-            }
-
-            // Finally, we may need to replicate the changes in the cache
-            CacheReplicationCommand cacheReplicationCommand
-                    = (CacheReplicationCommand) msgCtx.getPropertyNonReplicable(
-                    CachingConstants.STATE_REPLICATION_OBJECT);
-            if (cacheReplicationCommand != null) {
-                try {
-                    Replicator.replicateState(cacheReplicationCommand,
-                            msgCtx.getRootContext().getAxisConfiguration());
-                } catch (ClusteringFault clusteringFault) {
-                    log.error("Cannot replicate cache changes");
-                }
-            }
+            operationContext.removeProperty(CachingConstants.CACHED_OBJECT);
         } else {
             synLog.auditWarn("A response message without a valid mapping to the " +
                     "request hash found. Unable to store the response in cache");
         }
-
-
     }
 
     /**
@@ -245,152 +231,133 @@ public class CacheMediator extends AbstractMediator implements ManagedLifecycle
      *
      * @param synCtx         incoming request message
      * @param synLog         the Synapse log to use
-     * @param cacheManager   the cache manager
      * @return should this mediator terminate further processing?
-     * @throws ClusteringFault if there is an error in replicating the cfgCtx
      */
-    private boolean processRequestMessage(MessageContext synCtx,
-        SynapseLog synLog, CacheManager cacheManager) throws ClusteringFault {
+    private boolean processRequestMessage(MessageContext synCtx, SynapseLog synLog) {
 
         if (collector) {
             handleException("Request messages cannot be handled in a collector cache", synCtx);
         }
-        OperationContext opCtx = ((Axis2MessageContext)synCtx).getAxis2MessageContext().
-                getOperationContext();
+        org.apache.axis2.context.MessageContext msgCtx =
+                ((Axis2MessageContext) synCtx).getAxis2MessageContext();
+        OperationContext opCtx = msgCtx.getOperationContext();
 
         String requestHash = null;
         try {
-            requestHash = digestGenerator.getDigest(
-                ((Axis2MessageContext) synCtx).getAxis2MessageContext());
-            synCtx.setProperty(CachingConstants.REQUEST_HASH, requestHash);
+            if (digestGenerator instanceof StreamingDigestGenerator) {
+                // the size limit is checked while computing the digest
+                requestHash = ((StreamingDigestGenerator) digestGenerator).getDigest(
+                        msgCtx, maxMessageSize);
+            } else if (isWithinMaxMessageSize(synCtx)) {
+                requestHash = digestGenerator.getDigest(msgCtx);
+            }
         } catch (CachingException e) {
             handleException("Error in calculating the hash value of the request", e, synCtx);
         }
 
-        if (synLog.isTraceOrDebugEnabled()) {
-            synLog.traceOrDebug("Generated request hash : " + requestHash);
+        if (requestHash == null) {
+            synLog.traceOrDebug("Message size exceeds the upper bound for caching, " +
+                    "request will not be cached");
+            return true;
         }
+        synCtx.setProperty(CachingConstants.REQUEST_HASH, requestHash);
 
-        ServiceName service;
-        if (id != null) {
-            service = new ServiceName(id);
-        } else {
-            service = new ServiceName(cacheKey);
+        if (synLog.isTraceOrDebugEnabled()) {
+            synLog.traceOrDebug("Generated request hash : " + requestHash);
         }
 
-        RequestHash hash = new RequestHash(requestHash);
-        CachableResponse cachedResponse =
-                cacheManager.getCachedResponse(service, hash);
+        ResponseCache cache = getResponseCache(synCtx, synLog);
 
-        org.apache.axis2.context.MessageContext msgCtx = ((Axis2MessageContext)synCtx).getAxis2MessageContext();
+        byte[] cachedResponse = cache.get(requestHash);
         opCtx.setNonReplicableProperty(CachingConstants.REQUEST_HASH, requestHash);
-        CacheReplicationCommand cacheReplicationCommand = new CacheReplicationCommand();
 
         if (cachedResponse != null) {
             // get the response from the cache and attach to the context and change the
             // direction of the message
-            if (!cachedResponse.isExpired()) {
-                if (synLog.isTraceOrDebugEnabled()) {
-                    synLog.traceOrDebug("Cache-hit for message ID : " + synCtx.getMessageID());
-                }
-                cachedResponse.setInUse(true);
-                // mark as a response and replace envelope from cache
-                synCtx.setResponse(true);
-                opCtx.setNonReplicableProperty(CachingConstants.CACHED_OBJECT, cachedResponse);
-
-                SOAPEnvelope omSOAPEnv;
-                try {
-                    omSOAPEnv = SOAPMessageHelper.buildSOAPEnvelopeFromBytes(
-                            cachedResponse.getResponseEnvelope());
-                    if (omSOAPEnv != null) {
-                        synCtx.setEnvelope(omSOAPEnv);
-                    }
-                } catch (AxisFault axisFault) {
-                    handleException("Error setting response envelope from cache : "
-                            + cacheKey, synCtx);
-                } catch (IOException ioe) {
-                    handleException("Error setting response envelope from cache : "
-                            + cacheKey, ioe, synCtx);
-                } catch (SOAPException soape) {
-                    handleException("Error setting response envelope from cache : "
-                            + cacheKey, soape, synCtx);
+            if (synLog.isTraceOrDebugEnabled()) {
+                synLog.traceOrDebug("Cache-hit for message ID : " + synCtx.getMessageID());
+            }
+            // mark as a response and replace envelope from cache
+            synCtx.setResponse(true);
+
+            SOAPEnvelope omSOAPEnv;
+            try {
+                omSOAPEnv = SOAPMessageHelper.buildSOAPEnvelopeFromBytes(cachedResponse);
+                if (omSOAPEnv != null) {
+                    synCtx.setEnvelope(omSOAPEnv);
                 }
+            } catch (AxisFault axisFault) {
+                handleException("Error setting response envelope from cache : "
+                        + cacheKey, synCtx);
+            } catch (IOException ioe) {
+                handleException("Error setting response envelope from cache : "
+                        + cacheKey, ioe, synCtx);
+            } catch (SOAPException soape) {
+                handleException("Error setting response envelope from cache : "
+                        + cacheKey, soape, synCtx);
+            }
+
+            // take specified action on cache hit
+            if (onCacheHitSequence != null) {
+                // if there is an onCacheHit use that for the mediation
+                synLog.traceOrDebug("Delegating message to the onCachingHit "
+                        + "Anonymous sequence");
+                onCacheHitSequence.mediate(synCtx);
 
-                // take specified action on cache hit
-                if (onCacheHitSequence != null) {
-                    // if there is an onCacheHit use that for the mediation
-                    synLog.traceOrDebug("Delegating message to the onCachingHit "
-                            + "Anonymous sequence");
-                    onCacheHitSequence.mediate(synCtx);
-
-                } else if (onCacheHitRef != null) {
-
-                    if (synLog.isTraceOrDebugEnabled()) {
-                        synLog.traceOrDebug("Delegating message to the onCachingHit " +
-                                "sequence : " + onCacheHitRef);
-                    }
-                    synCtx.getSequence(onCacheHitRef).mediate(synCtx);
-
-                } else {
-
-                    if (synLog.isTraceOrDebugEnabled()) {
-                        synLog.traceOrDebug("Request message " + synCtx.getMessageID() +
-                                " was served from the cache : " + cacheKey);
-                    }
-                    // send the response back if there is not onCacheHit is specified
-                    synCtx.setTo(null);
-                    Axis2Sender.sendBack(synCtx);
+            } else if (onCacheHitRef != null) {
+
+                if (synLog.isTraceOrDebugEnabled()) {
+                    synLog.traceOrDebug("Delegating message to the onCachingHit " +
+                            "sequence : " + onCacheHitRef);
                 }
-                // stop any following mediators from executing
-                return false;
+                synCtx.getSequence(onCacheHitRef).mediate(synCtx);
 
             } else {
-                cachedResponse.reincarnate(timeout);
+
                 if (synLog.isTraceOrDebugEnabled()) {
-                    synLog.traceOrDebug("Existing cached response has expired. Reset cache element");
+                    synLog.traceOrDebug("Request message " + synCtx.getMessageID() +
+                            " was served from the cache : " + cacheKey);
                 }
-                cacheManager.cacheResponse(service, hash, cachedResponse, cacheReplicationCommand);
-                opCtx.setNonReplicableProperty(CachingConstants.CACHED_OBJECT, cachedResponse);
-                opCtx.setNonReplicableProperty(CachingConstants.STATE_REPLICATION_OBJECT,
-                        cacheReplicationCommand);
-
-                Replicator.replicate(opCtx);
+                // send the response back if there is not onCacheHit is specified
+                synCtx.setTo(null);
+                Axis2Sender.sendBack(synCtx);
             }
+            // stop any following mediators from executing
+            return false;
+
         } else {
-            // if not found in cache, check if we can cache this request
-            if (cacheManager.getCacheSize(service) >= inMemoryCacheSize) { // If cache is full
-                cacheManager.removeExpiredResponses(service, cacheReplicationCommand); // try to remove expired responses
-                if (cacheManager.getCacheSize(service) >= inMemoryCacheSize) { // recheck if there is space
-                    if (log.isDebugEnabled()) {
-                        log.debug("In-memory cache is full. Unable to cache");
-                    }
-                } else { // if we managed to free up some space in the cache. Need state replication
-                    cacheNewResponse(msgCtx, service, hash, cacheManager,
-                                     cacheReplicationCommand);
-                }
-            } else { // if there is more space in the cache. Need state replication
-                cacheNewResponse(msgCtx, service, hash, cacheManager,
-                                 cacheReplicationCommand);
+            // not found in the cache (or expired), the response will be cached by the
+            // collector. The cache takes care of evicting entries to make room for it
+            if (synLog.isTraceOrDebugEnabled()) {
+                synLog.traceOrDebug("Cache-miss for message ID : " + synCtx.getMessageID());
             }
+            opCtx.setNonReplicableProperty(CachingConstants.CACHED_OBJECT,
+                    new PendingResponse(cache, requestHash, timeout));
         }
 
         return true;
     }
 
-    private void cacheNewResponse(org.apache.axis2.context.MessageContext msgContext,
-                                  ServiceName serviceName, RequestHash requestHash,
-                                  CacheManager cacheManager,
-                                  CacheReplicationCommand cacheReplicationCommand) throws ClusteringFault {
-        OperationContext opCtx = msgContext.getOperationContext();
-        CachableResponse response = new CachableResponse();
-        response.setRequestHash(requestHash.getRequestHash());
-        response.setTimeout(timeout);
-        cacheManager.cacheResponse(serviceName, requestHash, response, cacheReplicationCommand);
-        opCtx.setNonReplicableProperty(CachingConstants.CACHED_OBJECT, response);
-        opCtx.setNonReplicableProperty(CachingConstants.STATE_REPLICATION_OBJECT,
-                                       cacheReplicationCommand);
-
-        Replicator.replicate(opCtx);
+    /**
+     * Check whether the serialized message fits in the maxMessageSize. This is only used with
+     * digest generators which cannot enforce the limit themselves. The envelope is serialized
+     * with caching enabled, so that it does not have to be cloned.
+     *
+     * @param synCtx the current message
+     * @return true if the message is small enough to be cached
+     */
+    private boolean isWithinMaxMessageSize(MessageContext synCtx) {
+        if (maxMessageSize <= 0) {
+            return true;
+        }
+        try {
+            synCtx.getEnvelope().serialize(new FixedByteArrayOutputStream(maxMessageSize));
+        } catch (XMLStreamException e) {
+            handleException("Error in checking the message size", e, synCtx);
+        } catch (SynapseException syne) {
+            return false;
+        }
+        return true;
     }
 
     public String getId() {
@@ -444,6 +411,30 @@ public class CacheMediator extends AbstractMediator implements ManagedLifecycle
         this.diskCacheSize = diskCacheSize;
     }
 
+    public long getMaxMemoryBytes() {
+        return maxMemoryBytes;
+    }
+
+    public void setMaxMemoryBytes(long maxMemoryBytes) {
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+
+    public long getMaxDiskBytes() {
+        return maxDiskBytes;
+    }
+
+    public void setMaxDiskBytes(long maxDiskBytes) {
+        this.maxDiskBytes = maxDiskBytes;
+    }
+
+    public String getEngine() {
+        return engine;
+    }
+
+    public void setEngine(String engine) {
+        this.engine = engine;
+    }
+
     // change the variable to Timeout milis seconds
     public long getTimeout() {
         return timeout / 1000;
@@ -0,0 +1,46 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.builtin.cache;
+
+/**
+ * A cached response along with its expiry time
+ */
+class CacheEntry {
+
+    /** Approximate per entry overhead of the index structures in bytes */
+    static final int ENTRY_OVERHEAD = 96;
+
+    final byte[] value;
+
+    /** Time at which the entry expires, or 0 if it never expires */
+    final long expiresAt;
+
+    final int weight;
+
+    CacheEntry(String key, byte[] value, long expiresAt) {
+        this.value = value;
+        this.expiresAt = expiresAt;
+        this.weight = value.length + key.length() * 2 + ENTRY_OVERHEAD;
+    }
+
+    boolean isExpired(long now) {
+        return expiresAt > 0 && expiresAt <= now;
+    }
+}
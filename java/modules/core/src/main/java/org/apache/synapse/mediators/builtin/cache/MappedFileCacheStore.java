@@ -0,0 +1,251 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.builtin.cache;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Disk tier of the {@link TieredResponseCache}. Entries are appended to a memory mapped file
+ * used as a circular log, while the index is kept in memory. When the end of the file is
+ * reached, writing continues from the beginning of the file, overwriting the oldest entries.
+ * Readers do not take any locks - the write position is advanced before an entry is written,
+ * and a reader validates after copying an entry that its region has not been overwritten in
+ * the meantime.
+ * <p/>
+ * The store is not persistent - the file is unmapped and deleted when the store is closed.
+ * Closing waits for the readers in progress, so that none of them accesses the unmapped file.
+ */
+class MappedFileCacheStore {
+
+    private static final Log log = LogFactory.getLog(MappedFileCacheStore.class);
+
+    private final File file;
+
+    private final RandomAccessFile raf;
+
+    private final MappedByteBuffer buffer;
+
+    private final int capacity;
+
+    private final int maxEntries;
+
+    private final Map<String, Location> index = new ConcurrentHashMap<String, Location>();
+
+    /** Keys in the insertion order, used to enforce the entry count limit */
+    private final Queue<String> insertionOrder = new ConcurrentLinkedQueue<String>();
+
+    /** Number of keys in the insertion order queue, which may include removed keys */
+    private final AtomicInteger queued = new AtomicInteger(0);
+
+    /** Total number of bytes ever reserved in the log */
+    private volatile long head = 0;
+
+    /** Number of readers accessing the mapped file */
+    private final AtomicInteger readers = new AtomicInteger(0);
+
+    private volatile boolean closed = false;
+
+    MappedFileCacheStore(String name, int maxEntries, long maxBytes) throws IOException {
+        this.maxEntries = maxEntries;
+        this.capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(maxBytes, 1024));
+        this.file = File.createTempFile("synapse-cache-" + sanitize(name) + "-", ".dat");
+        this.file.deleteOnExit();
+        this.raf = new RandomAccessFile(file, "rw");
+        this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    /**
+     * Append an entry to the log
+     *
+     * @param key   request hash
+     * @param entry entry to be stored
+     */
+    void put(String key, CacheEntry entry) {
+        int length = entry.value.length;
+        if (length > capacity) {
+            return;
+        }
+
+        Location location;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            long start = head;
+            int offset = (int) (start % capacity);
+            if (offset + length > capacity) {
+                // do not split entries across the end of the file
+                start += capacity - offset;
+                offset = 0;
+            }
+            // publish the new head before writing, so that readers of overwritten
+            // entries can detect it
+            head = start + length;
+
+            ByteBuffer target = buffer.duplicate();
+            target.position(offset);
+            target.put(entry.value, 0, length);
+            location = new Location(start, length, entry.expiresAt);
+        }
+
+        if (index.put(key, location) == null) {
+            insertionOrder.offer(key);
+            queued.incrementAndGet();
+        }
+        // evict the oldest entries in FIFO order - the queue is also trimmed when it is
+        // mostly made up of keys which have already been removed from the index
+        while (index.size() > maxEntries || queued.get() > 2 * maxEntries) {
+            String eldest = insertionOrder.poll();
+            if (eldest == null) {
+                break;
+            }
+            queued.decrementAndGet();
+            index.remove(eldest);
+        }
+    }
+
+    /**
+     * Read an entry from the log
+     *
+     * @param key request hash
+     * @param now current time used to check the expiry of the entry
+     * @return the entry, or null if no valid entry could be found
+     */
+    CacheEntry get(String key, long now) {
+        Location location = index.get(key);
+        if (location == null) {
+            return null;
+        }
+        if (location.expiresAt > 0 && location.expiresAt <= now) {
+            index.remove(key, location);
+            return null;
+        }
+
+        byte[] value = new byte[location.length];
+        // the reader is counted before checking whether the store is closed, and the store is
+        // marked closed before the readers are waited for, so the file is never read unmapped
+        readers.incrementAndGet();
+        try {
+            if (closed) {
+                return null;
+            }
+            ByteBuffer source = buffer.duplicate();
+            source.position((int) (location.start % capacity));
+            source.get(value, 0, location.length);
+        } finally {
+            readers.decrementAndGet();
+        }
+
+        if (head > location.start + capacity) {
+            // the entry has been overwritten while (or before) we read it
+            index.remove(key, location);
+            return null;
+        }
+        return new CacheEntry(key, value, location.expiresAt);
+    }
+
+    void remove(String key) {
+        index.remove(key);
+    }
+
+    void clear() {
+        index.clear();
+        insertionOrder.clear();
+        queued.set(0);
+    }
+
+    int size() {
+        return index.size();
+    }
+
+    void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        clear();
+        while (readers.get() > 0) {
+            Thread.yield();
+        }
+        unmap(buffer);
+        try {
+            raf.close();
+        } catch (IOException e) {
+            log.warn("Error closing the cache file : " + file, e);
+        }
+        if (!file.delete()) {
+            log.debug("Unable to delete the cache file : " + file);
+        }
+    }
+
+    /**
+     * Release the mapping of the file right away rather than when the buffer is garbage
+     * collected, which may not happen for a long time as the buffer itself is small
+     *
+     * @param buffer the mapped buffer, which must not be accessed afterwards
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Unable to unmap the cache file, it will be unmapped when " +
+                        "garbage collected", e);
+            }
+        }
+    }
+
+    private static String sanitize(String name) {
+        return name == null ? "cache" : name.replaceAll("[^A-Za-z0-9_.-]", "_");
+    }
+
+    private static class Location {
+        private final long start;
+        private final int length;
+        private final long expiresAt;
+
+        private Location(long start, int length, long expiresAt) {
+            this.start = start;
+            this.length = length;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.builtin.cache;
+
+/**
+ * Links a request which missed the cache to the cache its response should be stored in. An
+ * instance is kept in the operation context until the response reaches the collector.
+ */
+public class PendingResponse {
+
+    private final ResponseCache cache;
+
+    private final String requestHash;
+
+    private final long timeToLive;
+
+    public PendingResponse(ResponseCache cache, String requestHash, long timeToLive) {
+        this.cache = cache;
+        this.requestHash = requestHash;
+        this.timeToLive = timeToLive;
+    }
+
+    public String getRequestHash() {
+        return requestHash;
+    }
+
+    /**
+     * Store the response in the cache
+     *
+     * @param response serialized response envelope
+     */
+    public void complete(byte[] response) {
+        cache.put(requestHash, response, timeToLive);
+    }
+}
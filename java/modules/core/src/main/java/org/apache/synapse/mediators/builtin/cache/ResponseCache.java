@@ -0,0 +1,89 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.builtin.cache;
+
+/**
+ * A store for the serialized response envelopes cached by the
+ * {@link org.apache.synapse.mediators.builtin.CacheMediator}, indexed by the hash of the
+ * corresponding request. Implementations must be thread safe, and are expected to bound the
+ * amount of memory they use by evicting entries as required. Custom implementations can be
+ * plugged in using the engine attribute of the cache mediator, in which case they must have a
+ * public no argument constructor.
+ */
+public interface ResponseCache {
+
+    /**
+     * Initialize the cache. This is called once, before the cache is used.
+     *
+     * @param name              name (ID) of the cache
+     * @param maxEntries        maximum number of entries kept in memory
+     * @param maxMemoryBytes    maximum number of bytes kept in memory, 0 to use the default
+     *                          of the implementation
+     * @param maxDiskEntries    maximum number of entries kept on disk, 0 if disk caching
+     *                          is disabled
+     * @param maxDiskBytes      maximum number of bytes kept on disk
+     */
+    public void init(String name, int maxEntries, long maxMemoryBytes,
+                     int maxDiskEntries, long maxDiskBytes);
+
+    /**
+     * Look up the response cached for the given request hash
+     *
+     * @param requestHash hash of the request
+     * @return the serialized response envelope or null if no valid response is cached
+     */
+    public byte[] get(String requestHash);
+
+    /**
+     * Cache a response
+     *
+     * @param requestHash hash of the request
+     * @param response    serialized response envelope
+     * @param timeToLive  time in milliseconds the response stays valid, a non positive
+     *                    value means the response never expires
+     */
+    public void put(String requestHash, byte[] response, long timeToLive);
+
+    public void remove(String requestHash);
+
+    public void clear();
+
+    public void destroy();
+
+    public String getName();
+
+    public long getHits();
+
+    public long getMisses();
+
+    public long getEvictions();
+
+    public long getExpirations();
+
+    public int getSize();
+
+    public long getMemoryBytes();
+
+    public int getDiskSize();
+
+    public long getDiskHits();
+
+    public void resetStatistics();
+}
@@ -0,0 +1,155 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.builtin.cache;
+
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.SynapseException;
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps track of the response caches created in a Synapse instance, so that cache mediators
+ * referring to the same cache share a single {@link ResponseCache}. A registry is stored as a
+ * non replicable property of the Axis2 ConfigurationContext. Caches are reference counted and
+ * destroyed once the last cache mediator using them is destroyed.
+ */
+public class ResponseCacheRegistry {
+
+    private static final Log log = LogFactory.getLog(ResponseCacheRegistry.class);
+
+    public static final String CACHE_REGISTRY = "synapse.response.cache.registry";
+
+    public static final String RESPONSE_CACHE_MBEAN_CATEGORY = "ResponseCache";
+
+    private final Map<String, Holder> caches = new HashMap<String, Holder>();
+
+    /**
+     * Get the registry of the given ConfigurationContext, creating it if required
+     *
+     * @param cfgCtx Axis2 ConfigurationContext
+     * @return the response cache registry
+     */
+    public static ResponseCacheRegistry getRegistry(ConfigurationContext cfgCtx) {
+        Object prop = cfgCtx.getPropertyNonReplicable(CACHE_REGISTRY);
+        if (prop instanceof ResponseCacheRegistry) {
+            return (ResponseCacheRegistry) prop;
+        }
+        synchronized (cfgCtx) {
+            prop = cfgCtx.getPropertyNonReplicable(CACHE_REGISTRY);
+            if (prop instanceof ResponseCacheRegistry) {
+                return (ResponseCacheRegistry) prop;
+            }
+            ResponseCacheRegistry registry = new ResponseCacheRegistry();
+            cfgCtx.setNonReplicableProperty(CACHE_REGISTRY, registry);
+            return registry;
+        }
+    }
+
+    /**
+     * Get the named cache, creating and initializing it if this is the first reference to
+     * the cache. The settings are only used when the cache is created.
+     *
+     * @param name           name of the cache
+     * @param engineClass    ResponseCache implementation class, null for the default
+     * @param maxEntries     maximum number of in-memory entries
+     * @param maxMemoryBytes maximum number of bytes kept in memory, 0 for the default
+     * @param maxDiskEntries maximum number of entries kept on disk
+     * @param maxDiskBytes   maximum number of bytes kept on disk
+     * @return the cache
+     */
+    public synchronized ResponseCache acquire(String name, String engineClass, int maxEntries,
+                                              long maxMemoryBytes, int maxDiskEntries,
+                                              long maxDiskBytes) {
+        Holder holder = caches.get(name);
+        if (holder == null) {
+            ResponseCache cache = createCache(engineClass);
+            cache.init(name, maxEntries, maxMemoryBytes, maxDiskEntries, maxDiskBytes);
+            holder = new Holder(cache);
+            caches.put(name, holder);
+            MBeanRegistrar.getInstance().registerMBean(new ResponseCacheView(cache),
+                    RESPONSE_CACHE_MBEAN_CATEGORY, name);
+            if (log.isDebugEnabled()) {
+                log.debug("Created the response cache : " + name);
+            }
+        }
+        holder.references++;
+        return holder.cache;
+    }
+
+    /**
+     * Release a reference to the named cache. The cache is destroyed when there are no
+     * more references to it.
+     *
+     * @param name name of the cache
+     */
+    public synchronized void release(String name) {
+        Holder holder = caches.get(name);
+        if (holder != null && --holder.references <= 0) {
+            caches.remove(name);
+            holder.cache.destroy();
+            MBeanRegistrar.getInstance().unRegisterMBean(RESPONSE_CACHE_MBEAN_CATEGORY, name);
+            if (log.isDebugEnabled()) {
+                log.debug("Destroyed the response cache : " + name);
+            }
+        }
+    }
+
+    public synchronized ResponseCache getCache(String name) {
+        Holder holder = caches.get(name);
+        return holder != null ? holder.cache : null;
+    }
+
+    private ResponseCache createCache(String engineClass) {
+        if (engineClass == null) {
+            return new TieredResponseCache();
+        }
+        try {
+            Class<?> clazz = Class.forName(engineClass);
+            Object o = clazz.newInstance();
+            if (o instanceof ResponseCache) {
+                return (ResponseCache) o;
+            }
+            throw new SynapseException("Cache engine class : " + engineClass +
+                    " does not implement " + ResponseCache.class.getName());
+        } catch (ClassNotFoundException e) {
+            throw new SynapseException("Unable to load the cache engine class : " +
+                    engineClass, e);
+        } catch (InstantiationException e) {
+            throw new SynapseException("Unable to instantiate the cache engine class : " +
+                    engineClass, e);
+        } catch (IllegalAccessException e) {
+            throw new SynapseException("Unable to access the cache engine class : " +
+                    engineClass, e);
+        }
+    }
+
+    private static class Holder {
+        private final ResponseCache cache;
+        private int references = 0;
+
+        private Holder(ResponseCache cache) {
+            this.cache = cache;
+        }
+    }
+}
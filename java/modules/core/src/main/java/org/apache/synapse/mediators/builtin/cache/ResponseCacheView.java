@@ -0,0 +1,78 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.builtin.cache;
+
+/**
+ * ResponseCacheView MBean exposes the hit, miss and eviction statistics of a response cache.
+ */
+public class ResponseCacheView implements ResponseCacheViewMBean {
+
+    private ResponseCache cache;
+
+    public ResponseCacheView(ResponseCache cache) {
+        this.cache = cache;
+    }
+
+    public long getHits() {
+        return cache.getHits();
+    }
+
+    public long getMisses() {
+        return cache.getMisses();
+    }
+
+    public long getDiskHits() {
+        return cache.getDiskHits();
+    }
+
+    public long getEvictions() {
+        return cache.getEvictions();
+    }
+
+    public long getExpirations() {
+        return cache.getExpirations();
+    }
+
+    public double getHitRatio() {
+        long hits = cache.getHits();
+        long total = hits + cache.getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public int getSize() {
+        return cache.getSize();
+    }
+
+    public int getDiskSize() {
+        return cache.getDiskSize();
+    }
+
+    public long getMemoryBytes() {
+        return cache.getMemoryBytes();
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public void reset() {
+        cache.resetStatistics();
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.builtin.cache;
+
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axis2.context.MessageContext;
+import org.wso2.caching.CachingException;
+import org.wso2.caching.digest.DigestGenerator;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * A {@link DigestGenerator} which computes the request hash and an estimate of the serialized
+ * size of the message in a single pass over the StAX event stream of the envelope. Unlike the
+ * DOMHASH generator it neither walks the object model recursively nor requires the envelope
+ * to be cloned and serialized to find out whether it is small enough to be cached, and it
+ * stops reading as soon as the size limit is exceeded.
+ * <p/>
+ * The digest covers the namespace URIs, local names, attributes (in a prefix independent
+ * order) and the character content of the SOAP body, so requests which differ only in the
+ * namespace prefixes or the SOAP headers hash to the same value.
+ */
+public class StreamingDigestGenerator implements DigestGenerator {
+
+    private static final String DIGEST_ALGORITHM = "MD5";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final byte START_ELEMENT = 1;
+    private static final byte END_ELEMENT = 2;
+    private static final byte TEXT = 3;
+    private static final byte SEPARATOR = 0;
+    private static final char SEPARATOR_CHAR = '\u0000';
+
+    public String getDigest(MessageContext msgCtx) throws CachingException {
+        return getDigest(msgCtx, 0);
+    }
+
+    /**
+     * Compute the digest of the given message, giving up as soon as the message is found to
+     * be larger than the given limit.
+     *
+     * @param msgCtx  the message to be hashed
+     * @param maxSize maximum size of the message in bytes, or 0 if the size is not limited
+     * @return the hex encoded digest, or null if the message is larger than maxSize
+     * @throws CachingException if the message cannot be read
+     */
+    public String getDigest(MessageContext msgCtx, int maxSize) throws CachingException {
+        SOAPEnvelope envelope = msgCtx.getEnvelope();
+        if (envelope == null) {
+            return null;
+        }
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new CachingException("Unable to create a " + DIGEST_ALGORITHM + " digest", e);
+        }
+
+        long size = 0;
+        int depth = 0;
+        // depth of the SOAP body element, or -1 while outside of the body
+        int bodyDepth = -1;
+        boolean inText = false;
+
+        try {
+            XMLStreamReader reader = envelope.getXMLStreamReader();
+            // depending on the Axiom version the reader may already be positioned at the
+            // envelope element, so the current event is processed before advancing
+            for (int event = reader.getEventType(); ; event = reader.next()) {
+                switch (event) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        depth++;
+                        size += startElementSize(reader);
+                        if (bodyDepth < 0 && depth == 2 && isBody(reader, envelope)) {
+                            bodyDepth = depth;
+                        } else if (bodyDepth > 0) {
+                            updateStartElement(digest, reader);
+                        }
+                        inText = false;
+                        break;
+
+                    case XMLStreamConstants.END_ELEMENT:
+                        size += nameSize(reader.getPrefix(), reader.getLocalName()) + 3;
+                        if (depth == bodyDepth) {
+                            bodyDepth = -1;
+                        } else if (bodyDepth > 0) {
+                            digest.update(END_ELEMENT);
+                        }
+                        depth--;
+                        inText = false;
+                        break;
+
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        byte[] text = reader.getText().getBytes(UTF8);
+                        size += text.length;
+                        if (bodyDepth > 0) {
+                            // adjacent text events are hashed as a single run so that the
+                            // digest does not depend on how the parser splits the content
+                            if (!inText) {
+                                digest.update(TEXT);
+                                inText = true;
+                            }
+                            digest.update(text);
+                        }
+                        break;
+
+                    default:
+                        break;
+                }
+
+                if (maxSize > 0 && size > maxSize) {
+                    return null;
+                }
+                if (!reader.hasNext()) {
+                    break;
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new CachingException("Error reading the message to compute the digest", e);
+        }
+
+        return toHex(digest.digest());
+    }
+
+    private static boolean isBody(XMLStreamReader reader, SOAPEnvelope envelope) {
+        return "Body".equals(reader.getLocalName()) &&
+                envelope.getNamespace().getNamespaceURI().equals(reader.getNamespaceURI());
+    }
+
+    private static void updateStartElement(MessageDigest digest, XMLStreamReader reader) {
+        digest.update(START_ELEMENT);
+        update(digest, reader.getNamespaceURI());
+        update(digest, reader.getLocalName());
+
+        int count = reader.getAttributeCount();
+        if (count == 0) {
+            return;
+        }
+
+        String[] attributes = new String[count];
+        for (int i = 0; i < count; i++) {
+            String ns = reader.getAttributeNamespace(i);
+            attributes[i] = (ns == null ? "" : ns) + SEPARATOR_CHAR +
+                    reader.getAttributeLocalName(i) + SEPARATOR_CHAR +
+                    reader.getAttributeValue(i);
+        }
+        if (count > 1) {
+            Arrays.sort(attributes);
+        }
+        for (String attribute : attributes) {
+            update(digest, attribute);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value != null) {
+            digest.update(value.getBytes(UTF8));
+        }
+        digest.update(SEPARATOR);
+    }
+
+    /**
+     * Estimate the number of bytes taken by the start tag at the current position, including
+     * the namespace declarations and attributes. Escaping is not taken into account.
+     */
+    private static long startElementSize(XMLStreamReader reader) {
+        long size = nameSize(reader.getPrefix(), reader.getLocalName()) + 2;
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            size += nameSize("xmlns", reader.getNamespacePrefix(i)) + 4 +
+                    length(reader.getNamespaceURI(i));
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            size += nameSize(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)) + 4 +
+                    length(reader.getAttributeValue(i));
+        }
+        return size;
+    }
+
+    private static int nameSize(String prefix, String localName) {
+        if (prefix == null || prefix.length() == 0) {
+            return length(localName);
+        }
+        return prefix.length() + 1 + length(localName);
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0x0f];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0x0f];
+        }
+        return new String(chars);
+    }
+}
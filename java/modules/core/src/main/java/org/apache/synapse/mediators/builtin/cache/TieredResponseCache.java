@@ -0,0 +1,368 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.builtin.cache;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The default {@link ResponseCache} implementation. The in-memory tier is divided into a number
+ * of independently locked segments (provided the limits are large enough to be shared), each of
+ * which maintains its entries in the least recently used order and evicts entries when either
+ * its share of the entry count or its share of the memory limit is exceeded. The size of an
+ * entry is its serialized response plus a fixed overhead, so the memory limit is enforced in
+ * bytes rather than in number of entries. Unless set, the memory limit is a tenth of the
+ * maximum heap size.
+ * <p/>
+ * When disk caching is enabled, entries evicted from memory are moved to a
+ * {@link MappedFileCacheStore}, and are moved back in to memory when they are hit again.
+ * Expired entries are removed when they are looked up or when they reach the tail of the
+ * LRU order.
+ */
+public class TieredResponseCache implements ResponseCache {
+
+    private static final Log log = LogFactory.getLog(TieredResponseCache.class);
+
+    private static final int MAX_SEGMENTS = 16;
+
+    /** Minimum number of entries a segment should be able to hold */
+    private static final int MIN_ENTRIES_PER_SEGMENT = 8;
+
+    /** Minimum share of the memory limit of a segment */
+    private static final long MIN_BYTES_PER_SEGMENT = 1024 * 1024;
+
+    /** Fraction of the maximum heap size used as the memory limit, unless one is given */
+    private static final int DEFAULT_HEAP_FRACTION = 10;
+
+    private String name;
+
+    private Segment[] segments;
+
+    private volatile MappedFileCacheStore diskStore;
+
+    private int maxDiskEntries;
+
+    private long maxDiskBytes;
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong diskHits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong evictions = new AtomicLong(0);
+    private final AtomicLong expirations = new AtomicLong(0);
+
+    public void init(String name, int maxEntries, long maxMemoryBytes,
+                     int maxDiskEntries, long maxDiskBytes) {
+        this.name = name;
+        if (maxMemoryBytes <= 0) {
+            maxMemoryBytes = Runtime.getRuntime().maxMemory() / DEFAULT_HEAP_FRACTION;
+        }
+
+        int segmentCount = 1;
+        while (segmentCount < MAX_SEGMENTS &&
+                segmentCount * 2 * MIN_ENTRIES_PER_SEGMENT <= maxEntries &&
+                maxMemoryBytes / (segmentCount * 2) >= MIN_BYTES_PER_SEGMENT) {
+            segmentCount *= 2;
+        }
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment((maxEntries + segmentCount - 1) / segmentCount,
+                    maxMemoryBytes / segmentCount);
+        }
+
+        if (maxDiskEntries > 0 && maxDiskBytes > 0) {
+            this.maxDiskEntries = maxDiskEntries;
+            this.maxDiskBytes = maxDiskBytes;
+            diskStore = createDiskStore();
+        }
+    }
+
+    private MappedFileCacheStore createDiskStore() {
+        try {
+            return new MappedFileCacheStore(name, maxDiskEntries, maxDiskBytes);
+        } catch (IOException e) {
+            log.warn("Unable to create the disk cache for : " + name +
+                    " - only in-memory caching will be used", e);
+            return null;
+        }
+    }
+
+    public byte[] get(String requestHash) {
+        long now = System.currentTimeMillis();
+        CacheEntry entry = segmentFor(requestHash).get(requestHash, now);
+        if (entry != null) {
+            hits.incrementAndGet();
+            return entry.value;
+        }
+
+        MappedFileCacheStore diskStore = this.diskStore;
+        if (diskStore != null) {
+            entry = diskStore.get(requestHash, now);
+            if (entry != null) {
+                diskStore.remove(requestHash);
+                hits.incrementAndGet();
+                diskHits.incrementAndGet();
+                store(requestHash, entry);
+                return entry.value;
+            }
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(String requestHash, byte[] response, long timeToLive) {
+        long expiresAt = timeToLive > 0 ? System.currentTimeMillis() + timeToLive : 0;
+        MappedFileCacheStore diskStore = this.diskStore;
+        if (diskStore != null) {
+            diskStore.remove(requestHash);
+        }
+        store(requestHash, new CacheEntry(requestHash, response, expiresAt));
+    }
+
+    private void store(String requestHash, CacheEntry entry) {
+        List<Map.Entry<String, CacheEntry>> evicted =
+                segmentFor(requestHash).put(requestHash, entry);
+        MappedFileCacheStore diskStore = this.diskStore;
+        if (evicted != null && diskStore != null) {
+            long now = System.currentTimeMillis();
+            for (Map.Entry<String, CacheEntry> e : evicted) {
+                if (!e.getValue().isExpired(now)) {
+                    diskStore.put(e.getKey(), e.getValue());
+                }
+            }
+        }
+    }
+
+    public void remove(String requestHash) {
+        segmentFor(requestHash).remove(requestHash);
+        MappedFileCacheStore diskStore = this.diskStore;
+        if (diskStore != null) {
+            diskStore.remove(requestHash);
+        }
+    }
+
+    public synchronized void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+        MappedFileCacheStore diskStore = this.diskStore;
+        if (diskStore != null) {
+            // start over with a new file, so that the mapping of the old one is released
+            this.diskStore = createDiskStore();
+            diskStore.close();
+        }
+    }
+
+    public synchronized void destroy() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+        MappedFileCacheStore diskStore = this.diskStore;
+        if (diskStore != null) {
+            this.diskStore = null;
+            diskStore.close();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public int getSize() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long getMemoryBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.bytes;
+        }
+        return bytes;
+    }
+
+    public int getDiskSize() {
+        MappedFileCacheStore diskStore = this.diskStore;
+        return diskStore != null ? diskStore.size() : 0;
+    }
+
+    public void resetStatistics() {
+        hits.set(0);
+        diskHits.set(0);
+        misses.set(0);
+        evictions.set(0);
+        expirations.set(0);
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (segments.length - 1)];
+    }
+
+    private class Segment {
+
+        private final LinkedHashMap<String, CacheEntry> entries =
+                new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final int maxEntries;
+
+        private final long maxBytes;
+
+        private volatile long bytes = 0;
+
+        private Segment(int maxEntries, long maxBytes) {
+            this.maxEntries = maxEntries;
+            this.maxBytes = maxBytes;
+        }
+
+        private CacheEntry get(String key, long now) {
+            lock.lock();
+            try {
+                CacheEntry entry = entries.get(key);
+                if (entry != null && entry.isExpired(now)) {
+                    entries.remove(key);
+                    bytes -= entry.weight;
+                    expirations.incrementAndGet();
+                    return null;
+                }
+                return entry;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Add an entry to the segment
+         *
+         * @param key   request hash
+         * @param entry entry to be added
+         * @return the unexpired entries evicted to make room for the new entry, or null
+         */
+        private List<Map.Entry<String, CacheEntry>> put(String key, CacheEntry entry) {
+            List<Map.Entry<String, CacheEntry>> evicted = null;
+            if (entry.weight > maxBytes) {
+                // too large to be kept in memory at all, only the disk tier may hold it
+                remove(key);
+                evicted = new ArrayList<Map.Entry<String, CacheEntry>>(1);
+                evicted.add(new AbstractMap.SimpleImmutableEntry<String, CacheEntry>(key, entry));
+                return evicted;
+            }
+
+            lock.lock();
+            try {
+                CacheEntry old = entries.put(key, entry);
+                long size = bytes + entry.weight;
+                if (old != null) {
+                    size -= old.weight;
+                }
+
+                long now = System.currentTimeMillis();
+                Iterator<Map.Entry<String, CacheEntry>> itr = entries.entrySet().iterator();
+                while ((size > maxBytes || entries.size() > maxEntries) && itr.hasNext()) {
+                    Map.Entry<String, CacheEntry> eldest = itr.next();
+                    CacheEntry value = eldest.getValue();
+                    itr.remove();
+                    size -= value.weight;
+                    if (value.isExpired(now)) {
+                        expirations.incrementAndGet();
+                    } else {
+                        evictions.incrementAndGet();
+                        if (evicted == null) {
+                            evicted = new ArrayList<Map.Entry<String, CacheEntry>>();
+                        }
+                        evicted.add(new AbstractMap.SimpleImmutableEntry<String, CacheEntry>(
+                                eldest.getKey(), value));
+                    }
+                }
+                bytes = size;
+            } finally {
+                lock.unlock();
+            }
+            return evicted;
+        }
+
+        private void remove(String key) {
+            lock.lock();
+            try {
+                CacheEntry entry = entries.remove(key);
+                if (entry != null) {
+                    bytes -= entry.weight;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void clear() {
+            lock.lock();
+            try {
+                entries.clear();
+                bytes = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int size() {
+            lock.lock();
+            try {
+                return entries.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -252,17 +252,56 @@ public abstract class AbstractDBMediator extends AbstractMediator implements Man
         PreparedStatement ps = con.prepareStatement(stmnt.getRawStatement());
 
         // set parameters if any
+        setParameters(ps, stmnt, getParameterValues(stmnt, msgCtx), msgCtx);
+
+        if (synLog.isTraceOrDebugEnabled()) {
+            synLog.traceOrDebug("Successfully prepared statement : " + stmnt.getRawStatement() +
+                " against DataSource : " + getDSName());
+        }
+        return ps;
+    }
+
+    /**
+     * Evaluate the parameters of the given Statement against the current message
+     * @param stmnt SQL statement to be executed
+     * @param msgCtx Current message context
+     * @return the parameter values, in the order of the statement parameters
+     */
+    protected List<String> getParameterValues(Statement stmnt, MessageContext msgCtx) {
+        List<String> values = new ArrayList<String>();
+        for (Statement.Parameter param : stmnt.getParameters()) {
+            if (param != null) {
+                values.add(param.getPropertyName() != null ?
+                        param.getPropertyName() : param.getXpath().stringValueOf(msgCtx));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Set the parameters of a prepared statement, converting the values to the JDBC types of
+     * the Statement parameters
+     * @param ps the prepared statement
+     * @param stmnt SQL statement the prepared statement was created for
+     * @param values the parameter values returned by getParameterValues
+     * @param msgCtx Current message context, or null if the values are set outside of mediation
+     * @throws SQLException on error
+     */
+    protected void setParameters(PreparedStatement ps, Statement stmnt, List<String> values,
+                                 MessageContext msgCtx) throws SQLException {
+
+        SynapseLog synLog = msgCtx != null ? getLog(msgCtx) : null;
         List<Statement.Parameter> params = stmnt.getParameters();
         int column = 1;
+        int index = 0;
 
         for (Statement.Parameter param : params) {
             if (param == null) {
                 continue;
             }
-            String value = (param.getPropertyName() != null ?
-                    param.getPropertyName() : param.getXpath().stringValueOf(msgCtx));
+            String value = values.get(index++);
 
-            if (synLog.isTraceOrDebugEnabled()) {
+            if (synLog != null && synLog.isTraceOrDebugEnabled()) {
                 synLog.traceOrDebug("Setting as parameter : " + column + " value : " + value +
                         " as JDBC Type : " + param.getType() + "(see java.sql.Types for valid " +
                         "types)");
@@ -385,16 +424,14 @@ public abstract class AbstractDBMediator extends AbstractMediator implements Man
                             stmnt.getRawStatement() +
                             " used by a DB mediator against DataSource : " + getDSName() +
                             " (see java.sql.Types for valid type values)";
-                    handleException(msg, msgCtx);
+                    if (msgCtx != null) {
+                        handleException(msg, msgCtx);
+                    } else {
+                        handleException(msg);
+                    }
                 }
             }
         }
-
-        if (synLog.isTraceOrDebugEnabled()) {
-            synLog.traceOrDebug("Successfully prepared statement : " + stmnt.getRawStatement() +
-                " against DataSource : " + getDSName());
-        }
-        return ps;
     }
 
     /**
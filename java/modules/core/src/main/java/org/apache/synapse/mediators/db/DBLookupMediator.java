@@ -39,10 +39,11 @@ public class DBLookupMediator extends AbstractDBMediator {
         // execute the prepared statement, and extract the first result row and
         // set as message context properties, any results that have been specified
         Connection con = null;
+        PreparedStatement ps = null;
         ResultSet rs = null;
         try {
             con = this.getDataSource().getConnection();
-            PreparedStatement ps = getPreparedStatement(stmnt, con, msgCtx);
+            ps = getPreparedStatement(stmnt, con, msgCtx);
             rs = ps.executeQuery();
 
             if (rs.next()) {
@@ -96,6 +97,12 @@ public class DBLookupMediator extends AbstractDBMediator {
                     rs.close();
                 } catch (SQLException ignore) {}
             }
+            // closing the statement returns it to the statement pool of the connection
+            if (ps != null) {
+                try {
+                    ps.close();
+                } catch (SQLException ignore) {}
+            }
             if (con != null) {
                 try {
                     con.close();
@@ -16,18 +16,34 @@
  *  specific language governing permissions and limitations
  *  under the License.
  */
-
 package org.apache.synapse.mediators.db;
 
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseLog;
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.util.concurrent.SynapseThreadFactory;
 
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * A mediator that writes (i.e. inserts one row) to a table using message information
+ * A mediator that writes (i.e. inserts one row) to a table using message information.
+ * When a batch size is set, the rows are queued and written asynchronously by a background
+ * writer, which executes them as JDBC batches once the batch size is reached or the batch
+ * interval elapses. The writer keeps its own connection and the statements prepared on it.
+ * When the queue is full, a mediating thread waits up to the batch interval for room, and then
+ * writes its row itself, ahead of the queued rows. The batch writer statistics are exposed
+ * through a {@link DBReportMediatorView} MBean.
  */
 public class DBReportMediator extends AbstractDBMediator {
 
@@ -43,15 +59,100 @@ public class DBReportMediator extends AbstractDBMediator {
     // default do not participate in a distribute tx
     boolean useTransaction = false;
 
-    protected void processStatement(Statement stmnt, MessageContext msgCtx) {
+    /** Maximum number of rows written in one batch, rows are written synchronously if 0 */
+    private int batchSize = 0;
+
+    /** Maximum time in milliseconds a row waits for its batch to fill up */
+    private long batchInterval = 1000;
+
+    /** Maximum number of rows waiting to be written */
+    private int batchQueueSize = 10000;
+
+    /** Rows waiting to be written by the batch writer */
+    private BlockingQueue<Row> queue;
+
+    private BatchWriter batchWriter;
+
+    private final AtomicLong writtenRows = new AtomicLong();
+    private final AtomicLong failedRows = new AtomicLong();
+    private final AtomicLong executedBatches = new AtomicLong();
+    private final AtomicLong overflowRows = new AtomicLong();
 
+    private static final String MBEAN_CATEGORY = "DBReportMediator";
+
+    /** Name of the MBean exposing the batch writer statistics, if it is registered */
+    private String mbeanName;
+
+    @Override
+    public void init(SynapseEnvironment se) {
+        super.init(se);
+        if (batchSize > 0) {
+            if (useTransaction) {
+                handleException("Batching cannot be used by a DBReport mediator which " +
+                        "participates in a distributed transaction");
+            }
+            queue = new ArrayBlockingQueue<Row>(batchQueueSize);
+            batchWriter = new BatchWriter();
+            Thread thread = new SynapseThreadFactory(new ThreadGroup("dbreport-batch-writer"),
+                    "dbreport-batch-writer-" + getDSName()).newThread(batchWriter);
+            batchWriter.thread = thread;
+            thread.start();
+
+            mbeanName = getDSName() + "-" + Integer.toHexString(System.identityHashCode(this));
+            MBeanRegistrar.getInstance().registerMBean(new DBReportMediatorView(this),
+                    MBEAN_CATEGORY, mbeanName);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (mbeanName != null) {
+            MBeanRegistrar.getInstance().unRegisterMBean(MBEAN_CATEGORY, mbeanName);
+            mbeanName = null;
+        }
+        if (batchWriter != null) {
+            // stop the writer and wait for it to write the queued rows before the data source
+            // is closed
+            batchWriter.shutdown();
+            batchWriter = null;
+        }
+        super.destroy();
+    }
+
+    protected void processStatement(Statement stmnt, MessageContext msgCtx) {
 
         SynapseLog synLog = getLog(msgCtx);
 
+        if (batchWriter != null) {
+            Row row = new Row(stmnt, getParameterValues(stmnt, msgCtx));
+            try {
+                // wait for the writer to make room, which slows down the mediating threads
+                // to the rate at which the rows can be written
+                if (queue.offer(row, batchInterval, TimeUnit.MILLISECONDS)) {
+                    if (synLog.isTraceOrDebugEnabled()) {
+                        synLog.traceOrDebug("Queued a row for statement : " +
+                                stmnt.getRawStatement());
+                    }
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // the writer has not taken a row for a whole batch interval, so it is stuck on the
+            // database. Write the row in the mediating thread rather than waiting any longer,
+            // it is written ahead of the queued rows
+            overflowRows.incrementAndGet();
+            if (synLog.isTraceOrDebugEnabled()) {
+                synLog.traceOrDebug("Batch queue is full, writing the row for statement : " +
+                        stmnt.getRawStatement());
+            }
+        }
+
         Connection con = null;
+        PreparedStatement ps = null;
         try {
             con = this.getDataSource().getConnection();
-            PreparedStatement ps = getPreparedStatement(stmnt, con, msgCtx);
+            ps = getPreparedStatement(stmnt, con, msgCtx);
             con = ps.getConnection();
             int count = ps.executeUpdate();
 
@@ -81,6 +182,13 @@ public class DBReportMediator extends AbstractDBMediator {
                     " against DataSource : " + getDSName(), e, msgCtx);
         }
         finally {
+            // closing the statement returns it to the statement pool of the connection
+            if (ps != null) {
+                try {
+                    ps.close();
+                } catch (SQLException ignore) {
+                }
+            }
             if (con != null) {
                 try {
                     con.close();
@@ -89,4 +197,245 @@ public class DBReportMediator extends AbstractDBMediator {
             }
         }
     }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getBatchInterval() {
+        return batchInterval;
+    }
+
+    public void setBatchInterval(long batchInterval) {
+        this.batchInterval = batchInterval;
+    }
+
+    public int getBatchQueueSize() {
+        return batchQueueSize;
+    }
+
+    public void setBatchQueueSize(int batchQueueSize) {
+        this.batchQueueSize = batchQueueSize;
+    }
+
+    /**
+     * @return the number of rows waiting to be written by the batch writer
+     */
+    public int getQueuedRowCount() {
+        return queue != null ? queue.size() : 0;
+    }
+
+    /**
+     * @return the number of rows written by the batch writer
+     */
+    public long getWrittenRowCount() {
+        return writtenRows.get();
+    }
+
+    /**
+     * @return the number of rows the batch writer failed to write
+     */
+    public long getFailedRowCount() {
+        return failedRows.get();
+    }
+
+    /**
+     * @return the number of batches executed by the batch writer
+     */
+    public long getExecutedBatchCount() {
+        return executedBatches.get();
+    }
+
+    /**
+     * @return the number of rows written synchronously since the batch queue stayed full for
+     * a whole batch interval
+     */
+    public long getOverflowRowCount() {
+        return overflowRows.get();
+    }
+
+    /**
+     * A row to be written, with the parameter values evaluated against the message
+     */
+    private static class Row {
+
+        private final Statement statement;
+        private final List<String> values;
+
+        private Row(Statement statement, List<String> values) {
+            this.statement = statement;
+            this.values = values;
+        }
+    }
+
+    /**
+     * Takes the queued rows and writes them as JDBC batches, using a connection it keeps open
+     * along with the statements prepared on it
+     */
+    private class BatchWriter implements Runnable {
+
+        private volatile boolean running = true;
+
+        private Thread thread;
+
+        private Connection connection;
+
+        /** Statements prepared on the connection, by Statement */
+        private final Map<Statement, PreparedStatement> statements =
+                new IdentityHashMap<Statement, PreparedStatement>();
+
+        public void run() {
+            List<Row> rows = new ArrayList<Row>(batchSize);
+            try {
+                while (running) {
+                    Row row = queue.poll(batchInterval, TimeUnit.MILLISECONDS);
+                    if (row == null) {
+                        continue;
+                    }
+                    rows.add(row);
+
+                    // wait for the batch to fill up, at most for the batch interval
+                    long deadline = System.currentTimeMillis() + batchInterval;
+                    while (rows.size() < batchSize) {
+                        queue.drainTo(rows, batchSize - rows.size());
+                        long wait = deadline - System.currentTimeMillis();
+                        if (rows.size() >= batchSize || wait <= 0) {
+                            break;
+                        }
+                        row = queue.poll(wait, TimeUnit.MILLISECONDS);
+                        if (row == null) {
+                            break;
+                        }
+                        rows.add(row);
+                    }
+
+                    write(rows);
+                    rows.clear();
+                }
+            } catch (InterruptedException e) {
+                log.warn("DBReport batch writer interrupted, writing the queued rows");
+            }
+
+            write(rows);
+            rows.clear();
+            while (queue.drainTo(rows, batchSize) > 0) {
+                write(rows);
+                rows.clear();
+            }
+            closeConnection();
+        }
+
+        private void shutdown() {
+            // the writer notices within the batch interval, and writes the queued rows
+            running = false;
+            try {
+                thread.join(batchInterval + 10000);
+                if (thread.isAlive()) {
+                    log.warn("DBReport batch writer did not stop in time, interrupting it");
+                    thread.interrupt();
+                    thread.join(10000);
+                }
+            } catch (InterruptedException e) {
+                thread.interrupt();
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Write the rows in a single transaction. If the kept connection fails, the rows are
+         * written again using a new connection, as the connection may have gone stale.
+         */
+        private void write(List<Row> rows) {
+            if (rows.isEmpty()) {
+                return;
+            }
+            boolean retry = connection != null;
+            try {
+                executeBatch(rows);
+                return;
+            } catch (Exception e) {
+                closeConnection();
+                if (!retry) {
+                    failed(rows, e);
+                    return;
+                }
+            }
+            try {
+                executeBatch(rows);
+            } catch (Exception e) {
+                closeConnection();
+                failed(rows, e);
+            }
+        }
+
+        private void executeBatch(List<Row> rows) throws SQLException {
+            if (connection == null) {
+                connection = getDataSource().getConnection();
+                connection.setAutoCommit(false);
+            }
+
+            // the batch of a statement is executed as soon as a row of another statement
+            // follows, so that the rows are written in the order they were reported
+            PreparedStatement current = null;
+            try {
+                for (Row row : rows) {
+                    PreparedStatement ps = statements.get(row.statement);
+                    if (ps == null) {
+                        ps = connection.prepareStatement(row.statement.getRawStatement());
+                        statements.put(row.statement, ps);
+                    }
+                    if (current != null && current != ps) {
+                        current.executeBatch();
+                    }
+                    current = ps;
+                    setParameters(ps, row.statement, row.values, null);
+                    ps.addBatch();
+                }
+                if (current != null) {
+                    current.executeBatch();
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } catch (RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+
+            writtenRows.addAndGet(rows.size());
+            executedBatches.incrementAndGet();
+            if (log.isDebugEnabled()) {
+                log.debug("Wrote a batch of " + rows.size() + " rows against DataSource : " +
+                        getDSName());
+            }
+        }
+
+        private void failed(List<Row> rows, Exception e) {
+            failedRows.addAndGet(rows.size());
+            log.error("Error writing a batch of " + rows.size() + " rows against DataSource : " +
+                    getDSName(), e);
+        }
+
+        private void closeConnection() {
+            for (PreparedStatement ps : statements.values()) {
+                try {
+                    ps.close();
+                } catch (SQLException ignore) {
+                }
+            }
+            statements.clear();
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException ignore) {
+                }
+                connection = null;
+            }
+        }
+    }
 }
@@ -0,0 +1,63 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.db;
+
+/**
+ * DBReportMediatorView MBean exposes the statistics of the batch writer of a DBReport
+ * mediator. Overflow rows are the rows written by the mediating threads, as the queue of the
+ * batch writer stayed full.
+ */
+public class DBReportMediatorView implements DBReportMediatorViewMBean {
+
+    private DBReportMediator mediator;
+
+    DBReportMediatorView(DBReportMediator mediator) {
+        this.mediator = mediator;
+    }
+
+    public int getBatchSize() {
+        return mediator.getBatchSize();
+    }
+
+    public int getQueuedRows() {
+        return mediator.getQueuedRowCount();
+    }
+
+    public long getWrittenRows() {
+        return mediator.getWrittenRowCount();
+    }
+
+    public long getFailedRows() {
+        return mediator.getFailedRowCount();
+    }
+
+    public long getExecutedBatches() {
+        return mediator.getExecutedBatchCount();
+    }
+
+    public long getOverflowRows() {
+        return mediator.getOverflowRowCount();
+    }
+
+    public double getAverageBatchSize() {
+        long batches = mediator.getExecutedBatchCount();
+        return batches == 0 ? 0 : (double) mediator.getWrittenRowCount() / batches;
+    }
+}
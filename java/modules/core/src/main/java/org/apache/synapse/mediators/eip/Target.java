@@ -24,9 +24,12 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseException;
 import org.apache.synapse.endpoints.Endpoint;
+import org.apache.synapse.mediators.MediatorWorker;
 import org.apache.synapse.mediators.base.SequenceMediator;
 import org.apache.axis2.addressing.EndpointReference;
 
+import java.util.concurrent.Executor;
+
 /**
  * A bean class that holds the target (i.e. sequence or endpoint) information for a message
  * as used by common EIP mediators
@@ -65,6 +68,20 @@ public class Target {
      * mediation returns <code>false</code>, <code>true</code> otherwise
      */
     public boolean mediate(MessageContext synCtx) {
+        return mediate(synCtx, null);
+    }
+
+    /**
+     * process the message through this target, running the target sequence with the given
+     * executor if the target is asynchronous
+     *
+     * @param synCtx - MessageContext to be mediated
+     * @param executor - executor used to mediate the message asynchronously, or null to inject
+     * the message in to the Synapse environment
+     * @return <code>false</code> if the target is mediated as synchronous and the sequence
+     * mediation returns <code>false</code>, <code>true</code> otherwise
+     */
+    public boolean mediate(MessageContext synCtx, Executor executor) {
 
         boolean returnValue = true;
 
@@ -97,7 +114,7 @@ public class Target {
                 if (log.isDebugEnabled()) {
                     log.debug("Asynchronously mediating using the in-lined anonymous sequence");
                 }
-                synCtx.getEnvironment().injectAsync(synCtx, sequence);
+                mediateAsync(synCtx, sequence, executor);
             } else {
                 if (log.isDebugEnabled()) {
                     log.debug("Synchronously mediating using the in-lined anonymous sequence");
@@ -112,7 +129,7 @@ public class Target {
                         log.debug("Asynchronously mediating using the sequence " +
                                 "named : " + sequenceRef);
                     }
-                    synCtx.getEnvironment().injectAsync(synCtx, refSequence);
+                    mediateAsync(synCtx, refSequence, executor);
                 } else {
                     if (log.isDebugEnabled()) {
                         log.debug("Synchronously mediating using the sequence " +
@@ -147,6 +164,15 @@ public class Target {
         return returnValue;
     }
 
+    private void mediateAsync(MessageContext synCtx, SequenceMediator sequence,
+                              Executor executor) {
+        if (executor == null) {
+            synCtx.getEnvironment().injectAsync(synCtx, sequence);
+        } else {
+            executor.execute(new MediatorWorker(sequence, synCtx));
+        }
+    }
+
     private void handleException(String message) {
         log.error(message);
         throw new SynapseException(message);
@@ -26,14 +26,15 @@ import org.apache.synapse.mediators.eip.EIPConstants;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import java.util.List;
-import java.util.ArrayList;
 import java.util.TimerTask;
+import java.util.concurrent.Future;
 
 /**
  * An instance of this class is created to manage each aggregation group, and it holds
- * the aggregation properties and the messages collected during aggregation. This class also
- * times out itself after the timeout expires it
+ * the aggregation properties and the message aggregated so far. Messages are merged in to the
+ * aggregated message as they are collected, and only the number of collected messages is kept
+ * for the others, so a collected message is not held until the aggregation completes. This
+ * class also times out itself after the timeout expires it
  */
 public class Aggregate extends TimerTask {
 
@@ -49,10 +50,16 @@ public class Aggregate extends TimerTask {
     private String correlation = null;
     /** The AggregateMediator that should be invoked on completion of the aggregation */
     private AggregateMediator aggregateMediator = null;
-    private List<MessageContext> messages = new ArrayList<MessageContext>();
-    private boolean locked = false;
-    private boolean completed = false;
+    /** The first collected message, in to which the other messages are merged */
+    private MessageContext aggregatedMessage = null;
+    /** The number of messages collected, and merged in to the aggregated message */
+    private int messageCount = 0;
+    /** The total number of messages of this group as set by the splitter, -1 if unknown */
+    private int expectedCount = -1;
+    private volatile boolean completed = false;
     private SynapseEnvironment synEnv = null;
+    /** Handle of the scheduled timeout of this aggregate, if any */
+    private volatile Future<?> timeoutFuture = null;
 
     /**
      * Save aggregation properties and timeout
@@ -81,18 +88,49 @@ public class Aggregate extends TimerTask {
     }
 
     /**
-     * Add a message to the interlan message list
+     * Add a message to this aggregation group, merging it in to the aggregated message
      *
      * @param synCtx message to be added into this aggregation group
-     * @return true if the message was added or false if not
+     * @return true if the message was added or false if not, either because the maximum
+     *         number of messages has been collected or because the aggregation has completed
      */
     public synchronized boolean addMessage(MessageContext synCtx) {
-        if (maxCount <= 0 || (maxCount > 0 && messages.size() < maxCount)) {
-            messages.add(synCtx);
-            return true;
-        } else {
+        if (completed || (maxCount > 0 && messageCount >= maxCount)) {
             return false;
         }
+
+        if (aggregatedMessage == null) {
+            expectedCount = getExpectedCount(synCtx);
+            aggregatedMessage = synCtx;
+        } else {
+            // a message which fails to merge is not counted, and is not merged again
+            aggregateMediator.mergeMessage(aggregatedMessage, synCtx);
+        }
+        messageCount++;
+        return true;
+    }
+
+    /**
+     * Get the total number of messages of the group from the message sequence property set
+     * by the splitter on a message
+     *
+     * @param synCtx a message of the group
+     * @return the total number of messages of the group, or -1 if it is not known
+     */
+    private int getExpectedCount(MessageContext synCtx) {
+        Object prop = synCtx.getProperty(EIPConstants.MESSAGE_SEQUENCE +
+                (aggregateMediator.getId() != null ? "." + aggregateMediator.getId() : ""));
+        if (prop instanceof String) {
+            String[] msgSequence = prop.toString().split(EIPConstants.MESSAGE_SEQUENCE_DELEMITER);
+            if (msgSequence.length > 1) {
+                try {
+                    return Integer.parseInt(msgSequence[1]);
+                } catch (NumberFormatException e) {
+                    log.warn("Invalid message sequence : " + prop);
+                }
+            }
+        }
+        return -1;
     }
 
     /**
@@ -107,24 +145,16 @@ public class Aggregate extends TimerTask {
         if (!completed) {
 
             // if any messages have been collected, check if the completion criteria is met
-            if (!messages.isEmpty()) {
-
-                // get total messages for this group, from the first message we have collected
-                MessageContext mc = messages.get(0);
-                Object prop = mc.getProperty(EIPConstants.MESSAGE_SEQUENCE +
-                        (aggregateMediator.getId() != null ? "." + aggregateMediator.getId() : ""));
-            
-                if (prop != null && prop instanceof String) {
-                    String[] msgSequence = prop.toString().split(
-                            EIPConstants.MESSAGE_SEQUENCE_DELEMITER);
-                    int total = Integer.parseInt(msgSequence[1]);
+            if (messageCount > 0) {
 
+                // total messages for this group, from the first message we have collected
+                if (expectedCount > 0) {
                     if (synLog.isTraceOrDebugEnabled()) {
-                        synLog.traceOrDebug(messages.size() +
-                                " messages of " + total + " collected in current aggregation");
+                        synLog.traceOrDebug(messageCount + " messages of " + expectedCount +
+                                " collected in current aggregation");
                     }
 
-                    if (messages.size() >= total) {
+                    if (messageCount >= expectedCount) {
                         synLog.traceOrDebug("Aggregation complete");
                         return true;
                     }
@@ -134,7 +164,7 @@ public class Aggregate extends TimerTask {
             }
 
             // if the minimum number of messages has been reached, its complete
-            if (minCount > 0 && messages.size() >= minCount) {
+            if (minCount > 0 && messageCount >= minCount) {
                 if (synLog.isTraceOrDebugEnabled()) {
                     synLog.traceOrDebug(
                             "Aggregation complete - the minimum : " + minCount
@@ -143,7 +173,7 @@ public class Aggregate extends TimerTask {
                 return true;
             }
 
-            if (maxCount > 0 && messages.size() >= maxCount) {
+            if (maxCount > 0 && messageCount >= maxCount) {
                 if (synLog.isTraceOrDebugEnabled()) {
                     synLog.traceOrDebug(
                             "Aggregation complete - the maximum : " + maxCount
@@ -199,12 +229,22 @@ public class Aggregate extends TimerTask {
         this.correlation = correlation;
     }
 
-    public synchronized List<MessageContext> getMessages() {
-        return new ArrayList<MessageContext>(messages);
+    /**
+     * Get the message in to which the collected messages have been merged
+     *
+     * @return the aggregated message, or null if no message has been collected
+     */
+    public synchronized MessageContext getAggregatedMessage() {
+        return aggregatedMessage;
     }
 
-    public void setMessages(List<MessageContext> messages) {
-        this.messages = messages;
+    /**
+     * Get the number of messages collected by this aggregation group
+     *
+     * @return the number of collected messages
+     */
+    public synchronized int getMessageCount() {
+        return messageCount;
     }
 
     public long getExpiryTimeMillis() {
@@ -216,18 +256,12 @@ public class Aggregate extends TimerTask {
     }
 
     public void run() {
-        while (true) {
-            if (completed) {
-                break;
-            }
-            if (getLock()) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Time : " + System.currentTimeMillis() + " and this aggregator " +
-                            "expired at : " + expiryTimeMillis);
-                }
-                synEnv.getExecutorService().execute(new AggregateTimeout(this));
-                break;
+        if (!completed) {
+            if (log.isDebugEnabled()) {
+                log.debug("Time : " + System.currentTimeMillis() + " and this aggregator " +
+                        "expired at : " + expiryTimeMillis);
             }
+            synEnv.getExecutorService().execute(new AggregateTimeout(this));
         }
     }
 
@@ -242,14 +276,6 @@ public class Aggregate extends TimerTask {
         }
     }
 
-    public synchronized boolean getLock() {
-        return !locked;
-    }
-
-    public void releaseLock() {
-        locked = false;
-    }
-
     public boolean isCompleted() {
         return completed;
     }
@@ -257,4 +283,20 @@ public class Aggregate extends TimerTask {
     public void setCompleted(boolean completed) {
         this.completed = completed;
     }
+
+    public void setTimeoutFuture(Future<?> timeoutFuture) {
+        this.timeoutFuture = timeoutFuture;
+    }
+
+    /**
+     * Cancel the scheduled timeout of this aggregate, if any
+     */
+    @Override
+    public boolean cancel() {
+        Future<?> future = timeoutFuture;
+        if (future != null) {
+            future.cancel(false);
+        }
+        return super.cancel();
+    }
 }
@@ -31,12 +31,15 @@ import org.apache.synapse.mediators.AbstractMediator;
 import org.apache.synapse.mediators.base.SequenceMediator;
 import org.apache.synapse.mediators.eip.EIPConstants;
 import org.apache.synapse.mediators.eip.EIPUtils;
+import org.apache.synapse.util.concurrent.SynapseThreadFactory;
 import org.apache.synapse.util.xpath.SynapseXPath;
 import org.jaxen.JaxenException;
 
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Aggregate a number of messages that are determined to be for a particular group, and combine
@@ -44,9 +47,9 @@ import java.util.Map;
  * an aggregator acts like a filter, and may look at a correlation XPath expression to select
  * messages for aggregation - or look at messageSequence number properties for aggregation or
  * let any other (i.e. non aggregatable) messages flow through
- * An instance of this mediator will register with a Timer to be notified after a specified timeout,
- * so that aggregations that never would complete could be timed out and cleared from memory and
- * any fault conditions handled
+ * An instance of this mediator will register with a scheduler to be notified after a specified
+ * timeout, so that aggregations that never would complete could be timed out and cleared from
+ * memory and any fault conditions handled
  */
 public class AggregateMediator extends AbstractMediator implements ManagedLifecycle {
 
@@ -78,13 +81,18 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
     private SequenceMediator onCompleteSequence = null;
 
     /** The active aggregates currently being processd */
-    private Map<String, Aggregate> activeAggregates =
-        Collections.synchronizedMap(new HashMap<String, Aggregate>());
+    private final ConcurrentMap<String, Aggregate> activeAggregates =
+        new ConcurrentHashMap<String, Aggregate>();
 
     private String id = null;
 
-    /** Lock object to provide the synchronized access to the activeAggregates on checking */
-    private final Object lock = new Object();
+    /**
+     * Scheduler used to time out the aggregates of this mediator. Timed out aggregates are
+     * handed over to the Synapse executor, so a single thread is enough, and cancelled timeouts
+     * are removed right away instead of being kept until they are due. Created on init and
+     * shut down on destroy.
+     */
+    private volatile ScheduledThreadPoolExecutor timeoutScheduler = null;
 
     public AggregateMediator() {
         try {
@@ -104,12 +112,30 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
         if (onCompleteSequence != null) {
             onCompleteSequence.init(se);
         }
+
+        if (completionTimeoutMillis > 0) {
+            timeoutScheduler = new ScheduledThreadPoolExecutor(1, new SynapseThreadFactory(
+                    new ThreadGroup("aggregate-timeout"),
+                    "aggregate-timeout" + (id != null ? "-" + id : "")));
+            timeoutScheduler.setRemoveOnCancelPolicy(true);
+        }
     }
 
     public void destroy() {
         if (onCompleteSequence != null) {
             onCompleteSequence.destroy();
         }
+
+        if (timeoutScheduler != null) {
+            timeoutScheduler.shutdownNow();
+            timeoutScheduler = null;
+        }
+
+        // drop the pending aggregates, so that they do not refer to a destroyed mediator
+        for (Aggregate aggregate : activeAggregates.values()) {
+            aggregate.cancel();
+        }
+        activeAggregates.clear();
     }
 
     /**
@@ -132,7 +158,7 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
         }
 
         try {
-            Aggregate aggregate = null;
+            String correlation;
             String correlationIdName = (id != null ? EIPConstants.AGGREGATE_CORRELATION + "." + id :
                     EIPConstants.AGGREGATE_CORRELATION);
             // if a correlateExpression is provided and there is a corresponding
@@ -140,44 +166,7 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
             if (correlateExpression != null
                     && correlateExpression.evaluate(synCtx) != null) {
 
-                while (aggregate == null) {
-
-                    synchronized (lock) {
-
-                        if (activeAggregates.containsKey(correlateExpression.toString())) {
-
-                            aggregate = activeAggregates.get(correlateExpression.toString());
-                            if (aggregate != null) {
-                                if (!aggregate.getLock()) {
-                                    aggregate = null;
-                                }
-                            }
-
-                        } else {
-
-                            if (synLog.isTraceOrDebugEnabled()) {
-                                synLog.traceOrDebug("Creating new Aggregator - " +
-                                        (completionTimeoutMillis > 0 ? "expires in : "
-                                                + (completionTimeoutMillis / 1000) + "secs" :
-                                                "without expiry time"));
-                            }
-
-                            aggregate = new Aggregate(
-                                    synCtx.getEnvironment(),
-                                    correlateExpression.toString(),
-                                    completionTimeoutMillis,
-                                    minMessagesToComplete,
-                                    maxMessagesToComplete, this);
-
-                            if (completionTimeoutMillis > 0) {
-                                synCtx.getConfiguration().getSynapseTimer().
-                                        schedule(aggregate, completionTimeoutMillis);
-                            }
-                            aggregate.getLock();
-                            activeAggregates.put(correlateExpression.toString(), aggregate);
-                        }
-                    }
-                }
+                correlation = correlateExpression.toString();
 
             } else if (synCtx.getProperty(correlationIdName) != null) {
                 // if the correlation cannot be found using the correlateExpression then
@@ -186,50 +175,8 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
                 // which thus can be used to uniquely group messages into aggregates
 
                 Object o = synCtx.getProperty(correlationIdName);
-                String correlation;
-
-                if (o != null && o instanceof String) {
+                if (o instanceof String) {
                     correlation = (String) o;
-                    while (aggregate == null) {
-                        synchronized (lock) {
-                            if (activeAggregates.containsKey(correlation)) {
-                                aggregate = activeAggregates.get(correlation);
-                                if (aggregate != null) {
-                                    if (!aggregate.getLock()) {
-                                        aggregate = null;
-                                    }
-                                } else {
-                                    break;
-                                }
-                            } else {
-                                if (synLog.isTraceOrDebugEnabled()) {
-                                    synLog.traceOrDebug("Creating new Aggregator - " +
-                                            (completionTimeoutMillis > 0 ? "expires in : "
-                                                    + (completionTimeoutMillis / 1000) + "secs" :
-                                                    "without expiry time"));
-                                }
-                        
-                                aggregate = new Aggregate(
-                                        synCtx.getEnvironment(),
-                                        correlation,
-                                        completionTimeoutMillis,
-                                        minMessagesToComplete,
-                                        maxMessagesToComplete, this);
-
-                                if (completionTimeoutMillis > 0) {
-                                    synchronized(aggregate) {
-                                        if (!aggregate.isCompleted()) {
-                                            synCtx.getConfiguration().getSynapseTimer().
-                                                schedule(aggregate, completionTimeoutMillis);
-                                        }
-                                    }
-                                }
-                                aggregate.getLock();
-                                activeAggregates.put(correlation, aggregate);
-                            }
-                        }
-                    }
-                    
                 } else {
                     synLog.traceOrDebug("Unable to find aggrgation correlation property");
                     return true;
@@ -239,36 +186,36 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
                 return true;
             }
 
-            // if there is an aggregate continue on aggregation
-            if (aggregate != null) {
-                boolean collected = aggregate.addMessage(synCtx);
-                if (synLog.isTraceOrDebugEnabled()) {
-                    if (collected) {
-                        synLog.traceOrDebug("Collected a message during aggregation");
-                        if (synLog.isTraceTraceEnabled()) {
-                            synLog.traceTrace("Collected message : " + synCtx);
-                        }
-                    }
+            Aggregate aggregate;
+            boolean collected;
+            while (true) {
+                aggregate = getAggregate(correlation, synCtx, synLog);
+                collected = aggregate.addMessage(synCtx);
+                if (collected || !aggregate.isCompleted()) {
+                    break;
                 }
-                
-                // check the completeness of the aggregate and if completed aggregate the messages
-                // if not completed return false and block the message sequence till it completes
-
-                if (aggregate.isComplete(synLog)) {
-                    synLog.traceOrDebug("Aggregation completed - invoking onComplete");
-                    completeAggregate(aggregate);
-                    
-                    synLog.traceOrDebug("End : Aggregate mediator");
-                    return true;
-                } else {
-                    aggregate.releaseLock();
+                // the aggregate completed concurrently, make sure it is no longer used for
+                // this correlation and start a new one
+                activeAggregates.remove(correlation, aggregate);
+            }
+
+            if (synLog.isTraceOrDebugEnabled()) {
+                if (collected) {
+                    synLog.traceOrDebug("Collected a message during aggregation");
+                    if (synLog.isTraceTraceEnabled()) {
+                        synLog.traceTrace("Collected message : " + synCtx);
+                    }
                 }
+            }
 
-            } else {
-                // if the aggregation correlation cannot be found then continue the message on the
-                // normal path by returning true
+            // check the completeness of the aggregate and if completed aggregate the messages
+            // if not completed return false and block the message sequence till it completes
+
+            if (aggregate.isComplete(synLog)) {
+                synLog.traceOrDebug("Aggregation completed - invoking onComplete");
+                completeAggregate(aggregate);
 
-                synLog.traceOrDebug("Unable to find an aggregate for this message - skip");
+                synLog.traceOrDebug("End : Aggregate mediator");
                 return true;
             }
 
@@ -281,6 +228,87 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
         return true;
     }
 
+    /**
+     * Find the active aggregate for the given correlation, creating and registering a new one
+     * if there is none. The lookup does not take any lock other than the internal locks of
+     * the concurrent map, so messages of different correlations do not contend with each other.
+     *
+     * @param correlation the correlation of the message
+     * @param synCtx      the message being aggregated
+     * @param synLog      the Synapse log to use
+     * @return the aggregate for the correlation
+     */
+    private Aggregate getAggregate(String correlation, MessageContext synCtx, SynapseLog synLog) {
+
+        Aggregate aggregate = activeAggregates.get(correlation);
+        if (aggregate != null) {
+            return aggregate;
+        }
+
+        Aggregate newAggregate = new Aggregate(
+                synCtx.getEnvironment(),
+                correlation,
+                completionTimeoutMillis,
+                minMessagesToComplete,
+                maxMessagesToComplete, this);
+
+        aggregate = activeAggregates.putIfAbsent(correlation, newAggregate);
+        if (aggregate != null) {
+            return aggregate;
+        }
+
+        if (synLog.isTraceOrDebugEnabled()) {
+            synLog.traceOrDebug("Creating new Aggregator - " +
+                    (completionTimeoutMillis > 0 ? "expires in : "
+                            + (completionTimeoutMillis / 1000) + "secs" :
+                            "without expiry time"));
+        }
+
+        if (completionTimeoutMillis > 0) {
+            ScheduledThreadPoolExecutor scheduler = timeoutScheduler;
+            if (scheduler != null) {
+                newAggregate.setTimeoutFuture(scheduler.schedule(
+                        newAggregate, completionTimeoutMillis, TimeUnit.MILLISECONDS));
+            } else {
+                // not initialized as a managed mediator, fall back to the Synapse timer
+                synCtx.getConfiguration().getSynapseTimer().schedule(
+                        newAggregate, completionTimeoutMillis);
+            }
+            if (newAggregate.isCompleted()) {
+                // completed before the timeout was registered
+                newAggregate.cancel();
+            }
+        }
+        return newAggregate;
+    }
+
+    /**
+     * Merge a collected message in to the aggregated message using the aggregation expression.
+     * This is invoked by the Aggregate as messages are collected.
+     *
+     * @param aggregatedMessage the message aggregated so far
+     * @param synCtx            the message to be merged
+     */
+    void mergeMessage(MessageContext aggregatedMessage, MessageContext synCtx) {
+        try {
+            if (log.isDebugEnabled()) {
+                log.debug("Merging message : " + synCtx.getEnvelope() + " using XPath : " +
+                        aggregationExpression);
+            }
+
+            EIPUtils.enrichEnvelope(aggregatedMessage.getEnvelope(), synCtx.getEnvelope(),
+                    synCtx, aggregationExpression);
+
+            if (log.isDebugEnabled()) {
+                log.debug("Merged result : " + aggregatedMessage.getEnvelope());
+            }
+
+        } catch (JaxenException e) {
+            handleException("Error merging aggregation results using XPath : " +
+                    aggregationExpression.toString(), e, synCtx);
+        }
+    }
+
     /**
      * Invoked by the Aggregate objects that are timed out, to signal timeout/completion of
      * itself
@@ -299,7 +327,7 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
         }
 
         // cancel the timer
-        synchronized(this) {
+        synchronized(aggregate) {
             if (!aggregate.isCompleted()) {
                 aggregate.cancel();
                 aggregate.setCompleted(true);
@@ -311,13 +339,17 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
             return;
         }
         
-        MessageContext newSynCtx = getAggregatedMessage(aggregate);
+        activeAggregates.remove(aggregate.getCorrelation(), aggregate);
+
+        MessageContext newSynCtx = aggregate.getAggregatedMessage();
         if (newSynCtx == null) {
             log.warn("An aggregation of messages timed out with no aggregated messages", null);
             return;
         }
 
-        activeAggregates.remove(aggregate.getCorrelation());
+        if (log.isDebugEnabled()) {
+            log.debug("Aggregated message : " + newSynCtx.getEnvelope());
+        }
 
         if ((correlateExpression != null &&
             !correlateExpression.toString().equals(aggregate.getCorrelation())) ||
@@ -337,49 +369,6 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
         }
     }
 
-    /**
-     * Get the aggregated message from the specified Aggregate instance
-     *
-     * @param aggregate the Aggregate object that holds collected messages and properties of the
-     * aggregation
-     * @return the aggregated message context
-     */
-    private MessageContext getAggregatedMessage(Aggregate aggregate) {
-
-        MessageContext newCtx = null;
-
-        for (MessageContext synCtx : aggregate.getMessages()) {
-            
-            if (newCtx == null) {
-                newCtx = synCtx;
-
-                if (log.isDebugEnabled()) {
-                    log.debug("Generating Aggregated message from : " + newCtx.getEnvelope());
-                }
-
-            } else {
-                try {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Merging message : " + synCtx.getEnvelope() + " using XPath : " +
-                                aggregationExpression);
-                    }
-
-                    EIPUtils.enrichEnvelope(
-                            newCtx.getEnvelope(), synCtx.getEnvelope(), synCtx, aggregationExpression);
-
-                    if (log.isDebugEnabled()) {
-                        log.debug("Merged result : " + newCtx.getEnvelope());
-                    }
-
-                } catch (JaxenException e) {
-                    handleException("Error merging aggregation results using XPath : " +
-                            aggregationExpression.toString(), e, synCtx);
-                }
-            }
-        }
-        return newCtx;
-    }
-
     public SynapseXPath getCorrelateExpression() {
         return correlateExpression;
     }
@@ -25,10 +25,13 @@ import org.apache.synapse.SynapseLog;
 import org.apache.synapse.endpoints.Endpoint;
 import org.apache.synapse.core.axis2.Axis2MessageContext;
 import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.util.EnvelopeSnapshot;
 import org.apache.synapse.util.MessageHelper;
 import org.apache.synapse.mediators.AbstractMediator;
 import org.apache.synapse.mediators.eip.Target;
 import org.apache.synapse.mediators.eip.EIPConstants;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axiom.soap.SOAPFactory;
 import org.apache.axis2.AxisFault;
 import org.apache.axis2.Constants;
 import org.apache.axis2.context.OperationContext;
@@ -80,6 +83,7 @@ public class CloneMediator extends AbstractMediator implements ManagedLifecycle
         // get the targets list, clone the message for the number of targets and then
         // mediate the cloned messages using the targets
         Iterator<Target> iter = targets.iterator();
+        EnvelopeSnapshot snapshot = null;
         int i = 0;
         while (iter.hasNext()) {
             if (synLog.isTraceOrDebugEnabled()) {
@@ -87,7 +91,32 @@ public class CloneMediator extends AbstractMediator implements ManagedLifecycle
                     " messages for processing in parallel");
             }
 
-            iter.next().mediate(getClonedMessageContext(synCtx, i++, targets.size()));
+            // the envelope of the parent can be handed over to the last message, if the parent
+            // is not going to be mediated any further, others get a copy of the envelope
+            SOAPEnvelope envelope;
+            boolean handOver = i == targets.size() - 1 && !continueParent;
+            if (handOver) {
+                envelope = synCtx.getEnvelope();
+            } else {
+                if (snapshot == null) {
+                    snapshot = new EnvelopeSnapshot(synCtx);
+                }
+                envelope = snapshot.newEnvelope();
+            }
+
+            MessageContext newCtx = getClonedMessageContext(synCtx, envelope, i++, targets.size());
+            if (handOver) {
+                // the parent gets an empty envelope, so that it does not share the handed over
+                // envelope with the message, which is mediated in parallel
+                SOAPFactory factory = (SOAPFactory) envelope.getOMFactory();
+                try {
+                    synCtx.setEnvelope(factory.getDefaultEnvelope());
+                } catch (AxisFault axisFault) {
+                    handleException("Error detaching the envelope from the message", axisFault,
+                            synCtx);
+                }
+            }
+            iter.next().mediate(newCtx);
         }
 
         // if the continuation of the parent message is stopped from here set the RESPONSE_WRITTEN
@@ -111,17 +140,18 @@ public class CloneMediator extends AbstractMediator implements ManagedLifecycle
      * message context of a total of messageCount messages
      *
      * @param synCtx          - MessageContext which is subjected to the cloning
+     * @param envelope        - the envelope of the cloned message
      * @param messageSequence - the position of this message of the cloned set
      * @param messageCount    - total of cloned copies
      *
      * @return MessageContext the cloned message context
      */
-    private MessageContext getClonedMessageContext(MessageContext synCtx, int messageSequence,
-                                                   int messageCount) {
+    private MessageContext getClonedMessageContext(MessageContext synCtx, SOAPEnvelope envelope,
+                                                   int messageSequence, int messageCount) {
 
         MessageContext newCtx = null;
         try {
-            newCtx = MessageHelper.cloneMessageContext(synCtx);
+            newCtx = MessageHelper.cloneMessageContext(synCtx, envelope);
             // Set isServerSide property in the cloned message context
             ((Axis2MessageContext) newCtx).getAxis2MessageContext().setServerSide(
                     ((Axis2MessageContext) synCtx).getAxis2MessageContext().isServerSide());
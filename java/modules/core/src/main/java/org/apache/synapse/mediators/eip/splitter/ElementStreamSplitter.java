@@ -0,0 +1,229 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.eip.splitter;
+
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMFactory;
+import org.apache.axiom.om.OMNamespace;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pulls the elements selected by a path of child element steps out of a stream of XML events,
+ * one at a time. Only the element being returned is held in memory, everything else in the
+ * stream is skipped over. The elements returned carry the declarations of all the namespaces
+ * in scope at their position in the stream, so that they can stand on their own.
+ */
+final class ElementStreamSplitter {
+
+    private final XMLStreamReader reader;
+
+    /** Element name tests from the root of the stream, a null name matches any element */
+    private final QName[] steps;
+
+    private final OMFactory factory;
+
+    /** Namespace declarations of the current element and its ancestors, outermost first */
+    private final List<Map<String, String>> namespaces = new ArrayList<Map<String, String>>();
+
+    /** Depth of the current element, the root element being at depth 0 */
+    private int depth = -1;
+
+    /** Number of steps matched by the current element and its ancestors */
+    private int matched = -1;
+
+    private boolean started = false;
+    private boolean finished = false;
+
+    /**
+     * @param reader       the stream, positioned before or on the root element
+     * @param steps        the names of the elements to be selected from the root element
+     * @param factory      the factory to create the elements with
+     * @param inScope      namespaces declared outside of the root element, by prefix
+     */
+    ElementStreamSplitter(XMLStreamReader reader, QName[] steps, OMFactory factory,
+                          Map<String, String> inScope) {
+        this.reader = reader;
+        this.steps = steps;
+        this.factory = factory;
+        this.namespaces.add(inScope);
+    }
+
+    /**
+     * @return the next selected element, or null if there are no more
+     * @throws XMLStreamException if the stream cannot be read
+     */
+    OMElement next() throws XMLStreamException {
+        while (!finished) {
+            int event;
+            if (!started) {
+                started = true;
+                event = reader.getEventType();
+            } else if (reader.hasNext()) {
+                event = reader.next();
+            } else {
+                break;
+            }
+
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                if (depth > 0 && matched == depth - 1 && matches(steps[depth - 1])) {
+                    if (depth == steps.length) {
+                        depth--;
+                        return copyElement();
+                    }
+                    matched = depth;
+                } else if (depth == 0) {
+                    matched = 0;
+                }
+                if (matched == depth) {
+                    // only the ancestors of selected elements contribute namespaces
+                    namespaces.add(getDeclaredNamespaces());
+                }
+
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (matched == depth) {
+                    namespaces.remove(namespaces.size() - 1);
+                    matched--;
+                }
+                if (--depth < 0) {
+                    finished = true;
+                }
+
+            } else if (event == XMLStreamConstants.END_DOCUMENT) {
+                finished = true;
+            }
+        }
+        return null;
+    }
+
+    private boolean matches(QName name) {
+        return name == null || (name.getLocalPart().equals(reader.getLocalName()) &&
+                name.getNamespaceURI().equals(nullToEmpty(reader.getNamespaceURI())));
+    }
+
+    private Map<String, String> getDeclaredNamespaces() {
+        Map<String, String> declared = new LinkedHashMap<String, String>();
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            declared.put(nullToEmpty(reader.getNamespacePrefix(i)),
+                    nullToEmpty(reader.getNamespaceURI(i)));
+        }
+        return declared;
+    }
+
+    /**
+     * Build the element the reader is positioned on, leaving the reader on its end tag.
+     */
+    private OMElement copyElement() throws XMLStreamException {
+        OMElement root = createElement(null);
+
+        // declare the namespaces inherited from the ancestors, unless declared locally
+        Map<String, String> inherited = new LinkedHashMap<String, String>();
+        for (Map<String, String> declared : namespaces) {
+            inherited.putAll(declared);
+        }
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            inherited.remove(nullToEmpty(reader.getNamespacePrefix(i)));
+        }
+        for (Map.Entry<String, String> ns : inherited.entrySet()) {
+            if (ns.getKey().length() == 0) {
+                if (ns.getValue().length() > 0 && root.getNamespace() != null) {
+                    root.declareDefaultNamespace(ns.getValue());
+                }
+            } else if (root.findNamespaceURI(ns.getKey()) == null) {
+                root.declareNamespace(ns.getValue(), ns.getKey());
+            }
+        }
+
+        OMElement current = root;
+        int level = 1;
+        while (level > 0) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    current = createElement(current);
+                    level++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    if (--level > 0) {
+                        current = (OMElement) current.getParent();
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    factory.createOMText(current, reader.getText());
+                    break;
+                case XMLStreamConstants.CDATA:
+                    factory.createOMText(current, reader.getText(), XMLStreamConstants.CDATA);
+                    break;
+                case XMLStreamConstants.COMMENT:
+                    factory.createOMComment(current, reader.getText());
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    factory.createOMProcessingInstruction(current, reader.getPITarget(),
+                            reader.getPIData());
+                    break;
+                default:
+                    break;
+            }
+        }
+        return root;
+    }
+
+    private OMElement createElement(OMElement parent) {
+        String namespaceURI = nullToEmpty(reader.getNamespaceURI());
+        OMNamespace ns = namespaceURI.length() > 0 ?
+                factory.createOMNamespace(namespaceURI, nullToEmpty(reader.getPrefix())) : null;
+        OMElement element = parent != null ?
+                factory.createOMElement(reader.getLocalName(), ns, parent) :
+                factory.createOMElement(reader.getLocalName(), ns);
+
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = nullToEmpty(reader.getNamespacePrefix(i));
+            String uri = nullToEmpty(reader.getNamespaceURI(i));
+            if (prefix.length() == 0) {
+                element.declareDefaultNamespace(uri);
+            } else {
+                element.declareNamespace(uri, prefix);
+            }
+        }
+
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String attributeNamespaceURI = nullToEmpty(reader.getAttributeNamespace(i));
+            OMNamespace attributeNamespace = attributeNamespaceURI.length() > 0 ?
+                    factory.createOMNamespace(attributeNamespaceURI,
+                            nullToEmpty(reader.getAttributePrefix(i))) : null;
+            element.addAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i),
+                    attributeNamespace);
+        }
+        return element;
+    }
+
+    private static String nullToEmpty(String s) {
+        return s != null ? s : "";
+    }
+}
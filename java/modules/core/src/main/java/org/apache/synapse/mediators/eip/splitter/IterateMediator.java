@@ -19,9 +19,13 @@
 
 package org.apache.synapse.mediators.eip.splitter;
 
+import org.apache.axiom.om.OMCloneOptions;
 import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMNamespace;
 import org.apache.axiom.om.OMNode;
 import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axiom.soap.SOAPFactory;
+import org.apache.axiom.soap.SOAPHeader;
 import org.apache.axis2.AxisFault;
 import org.apache.axis2.Constants;
 import org.apache.axis2.context.OperationContext;
@@ -39,15 +43,77 @@ import org.apache.synapse.util.MessageHelper;
 import org.apache.synapse.util.xpath.SynapseXPath;
 import org.jaxen.JaxenException;
 
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Splits a message using an XPath expression and creates a new message to hold
  * each resulting element. This is very much similar to the clone mediator, and
  * hands over the newly created messages to a target for processing
+ * <p/>
+ * In the streaming mode the elements are pulled out of the message stream one at a time,
+ * without building (or copying) the whole message, so that arbitrarily large messages can be
+ * split in bounded memory. This requires the expression to be a path of child elements from
+ * the SOAP body (e.g. <code>s11:Body/m0:orders/m0:order</code>), otherwise the message is split
+ * as usual. As the stream is consumed, the payload cannot be preserved nor can the mediation
+ * of the parent message continue. Also the number of resulting messages is not known until the
+ * end of the stream, hence the messages do not carry the message sequence used by the aggregate
+ * mediator to detect the completion of an aggregation. At most {@link #getMaxPending()} messages
+ * are handed over to the worker pool at any time, beyond which the messages are mediated in
+ * the thread doing the split.
  */
 public class IterateMediator extends AbstractMediator implements ManagedLifecycle {
 
+    /** Default maximum number of split messages in the worker pool in the streaming mode */
+    public static final int DEFAULT_MAX_PENDING = 20;
+
+    /**
+     * Runs tasks with a given executor, as long as no more than a given number of tasks started
+     * through this executor are queued or running. Beyond that, tasks are run by the caller.
+     */
+    private static class BoundedExecutor implements Executor {
+
+        private final Executor executor;
+        private final int maxPending;
+        private final AtomicInteger pending = new AtomicInteger(0);
+
+        BoundedExecutor(Executor executor, int maxPending) {
+            this.executor = executor;
+            this.maxPending = maxPending;
+        }
+
+        public void execute(final Runnable task) {
+            if (pending.incrementAndGet() > maxPending) {
+                pending.decrementAndGet();
+                task.run();
+                return;
+            }
+
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            task.run();
+                        } finally {
+                            pending.decrementAndGet();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                pending.decrementAndGet();
+                task.run();
+            }
+        }
+    }
+
     /** Continue mediation on the parent message or not? */
     private boolean continueParent = false;
 
@@ -72,6 +138,12 @@ public class IterateMediator extends AbstractMediator implements ManagedLifecycl
 
     private String id = null;
 
+    /** Split the message as it is streamed, rather than building it first? */
+    private boolean streaming = false;
+
+    /** The maximum number of split messages in the worker pool in the streaming mode */
+    private int maxPending = DEFAULT_MAX_PENDING;
+
     /**
      * Splits the message by iterating over the results of the given XPath expression
      *
@@ -91,52 +163,19 @@ public class IterateMediator extends AbstractMediator implements ManagedLifecycl
         }
 
         try {
-            // get a copy of the message for the processing, if the continueParent is set to true
-            // this original message can go in further mediations and hence we should not change
-            // the original message context
-            SOAPEnvelope envelope = MessageHelper.cloneSOAPEnvelope(synCtx.getEnvelope());
-
-            // get the iteration elements and iterate through the list,
-            // this call will also detach all the iteration elements 
-            List splitElements = EIPUtils.getDetachedMatchingElements(envelope, synCtx, expression);
-
-            if (synLog.isTraceOrDebugEnabled()) {
-                synLog.traceOrDebug("Splitting with XPath : " + expression + " resulted in " +
-                    splitElements.size() + " elements");
-            }
-
-            // if not preservePayload remove all the child elements
-            if (!preservePayload && envelope.getBody() != null) {
-                envelope.getBody().removeChildren();
-            }
-
-            int msgCount = splitElements.size();
-            int msgNumber = 0;
-
-            // iterate through the list
-            for (Object o : splitElements) {
-
-                // for the moment iterator will look for an OMNode as the iteration element
-                if (!(o instanceof OMNode)) {
-                    handleException("Error splitting message with XPath : "
-                        + expression + " - result not an OMNode", synCtx);
-                }
-
-                if (synLog.isTraceOrDebugEnabled()) {
-                    synLog.traceOrDebug("Submitting " + (msgNumber + 1) + " of " + msgNumber +
-                            (target.isAsynchronous() ?
-                                    " messages for processing in parallel" :
-                                    " messages for processing sequentially"));
-                }
-
-                target.mediate(
-                    getIteratedMessage(synCtx, msgNumber++, msgCount, envelope, (OMNode) o));
+            QName[] steps = streaming ? getStreamingSteps(synCtx) : null;
+            if (steps != null) {
+                splitMessageStream(synCtx, synLog, steps);
+            } else {
+                splitMessage(synCtx, synLog);
             }
 
         } catch (JaxenException e) {
             handleException("Error evaluating split XPath expression : " + expression, e, synCtx);
         } catch (AxisFault af) {
             handleException("Error creating an iterated copy of the message", af, synCtx);
+        } catch (XMLStreamException e) {
+            handleException("Error reading the message to be split", e, synCtx);
         }
 
         // if the continuation of the parent message is stopped from here set the RESPONSE_WRITTEN
@@ -153,6 +192,184 @@ public class IterateMediator extends AbstractMediator implements ManagedLifecycl
         return continueParent;
     }
 
+    /**
+     * Split the built message, by evaluating the expression against a copy of it
+     *
+     * @param synCtx - MessageContext to be split
+     * @param synLog - the Synapse log to use
+     * @throws AxisFault if there is a message creation failure
+     * @throws JaxenException if the expression evaluation failure
+     */
+    private void splitMessage(MessageContext synCtx, SynapseLog synLog)
+            throws AxisFault, JaxenException {
+
+        // get a copy of the message for the processing, if the continueParent is set to true
+        // this original message can go in further mediations and hence we should not change
+        // the original message context, otherwise the original envelope can be split as it is
+        SOAPEnvelope envelope = continueParent ?
+                MessageHelper.cloneSOAPEnvelope(synCtx.getEnvelope()) : synCtx.getEnvelope();
+
+        // get the iteration elements and iterate through the list,
+        // this call will also detach all the iteration elements 
+        List splitElements = EIPUtils.getDetachedMatchingElements(envelope, synCtx, expression);
+
+        if (synLog.isTraceOrDebugEnabled()) {
+            synLog.traceOrDebug("Splitting with XPath : " + expression + " resulted in " +
+                splitElements.size() + " elements");
+        }
+
+        // if not preservePayload remove all the child elements
+        if (!preservePayload && envelope.getBody() != null) {
+            envelope.getBody().removeChildren();
+        }
+
+        int msgCount = splitElements.size();
+        int msgNumber = 0;
+
+        // iterate through the list
+        for (Object o : splitElements) {
+
+            // for the moment iterator will look for an OMNode as the iteration element
+            if (!(o instanceof OMNode)) {
+                handleException("Error splitting message with XPath : "
+                    + expression + " - result not an OMNode", synCtx);
+            }
+
+            if (synLog.isTraceOrDebugEnabled()) {
+                synLog.traceOrDebug("Submitting " + (msgNumber + 1) + " of " + msgNumber +
+                        (target.isAsynchronous() ?
+                                " messages for processing in parallel" :
+                                " messages for processing sequentially"));
+            }
+
+            target.mediate(
+                getIteratedMessage(synCtx, msgNumber++, msgCount, envelope, (OMNode) o));
+        }
+    }
+
+    /**
+     * Split the message by pulling the selected elements out of the body as it is streamed.
+     * The body of the message is consumed in the process.
+     *
+     * @param synCtx - MessageContext to be split
+     * @param synLog - the Synapse log to use
+     * @param steps  - names of the elements to be selected from the SOAP body
+     * @throws AxisFault if there is a message creation failure
+     * @throws XMLStreamException if the message cannot be read
+     */
+    private void splitMessageStream(MessageContext synCtx, SynapseLog synLog, QName[] steps)
+            throws AxisFault, XMLStreamException {
+
+        SOAPEnvelope envelope = synCtx.getEnvelope();
+        SOAPEnvelope template = getTemplateEnvelope(envelope);
+
+        Map<String, String> inScope = new LinkedHashMap<String, String>();
+        for (Iterator itr = envelope.getAllDeclaredNamespaces(); itr.hasNext(); ) {
+            OMNamespace ns = (OMNamespace) itr.next();
+            inScope.put(ns.getPrefix(), ns.getNamespaceURI());
+        }
+
+        ElementStreamSplitter splitter = new ElementStreamSplitter(
+                envelope.getBody().getXMLStreamReaderWithoutCaching(), steps,
+                template.getOMFactory(), inScope);
+        Executor executor = new BoundedExecutor(
+                synCtx.getEnvironment().getExecutorService(), maxPending);
+
+        int msgNumber = 0;
+        OMElement element;
+        while ((element = splitter.next()) != null) {
+            if (synLog.isTraceOrDebugEnabled()) {
+                synLog.traceOrDebug("Submitting message " + (msgNumber + 1) +
+                        " split from the message stream for processing");
+            }
+            target.mediate(getStreamedMessage(synCtx, template, element), executor);
+            msgNumber++;
+        }
+
+        if (synLog.isTraceOrDebugEnabled()) {
+            synLog.traceOrDebug("Splitting the message stream with XPath : " + expression +
+                    " resulted in " + msgNumber + " elements");
+        }
+    }
+
+    /**
+     * Gives the element names selected by the expression from the SOAP body, if the message
+     * can be split as it is streamed.
+     *
+     * @param synCtx - MessageContext to be split
+     * @return the element names selected from the SOAP body, or null
+     */
+    private QName[] getStreamingSteps(MessageContext synCtx) {
+        QName[] steps = expression.getChildElementSteps();
+        if (steps != null && steps.length > 1 &&
+                synCtx.getEnvelope().getBody().getQName().equals(steps[0])) {
+            return Arrays.copyOfRange(steps, 1, steps.length);
+        }
+
+        SynapseLog synLog = getLog(synCtx);
+        if (synLog.isTraceOrDebugEnabled()) {
+            synLog.traceOrDebug("XPath : " + expression + " does not select child elements " +
+                    "of the SOAP body, splitting the built message");
+        }
+        return null;
+    }
+
+    /**
+     * Create an envelope holding the headers of the given envelope and an empty body, which is
+     * copied for each of the messages split from the stream
+     *
+     * @param envelope - the envelope of the message being split
+     * @return the template envelope
+     */
+    private SOAPEnvelope getTemplateEnvelope(SOAPEnvelope envelope) {
+        SOAPFactory factory = (SOAPFactory) envelope.getOMFactory();
+        SOAPEnvelope template = factory.getDefaultEnvelope();
+
+        for (Iterator itr = envelope.getAllDeclaredNamespaces(); itr.hasNext(); ) {
+            OMNamespace ns = (OMNamespace) itr.next();
+            if (template.findNamespaceURI(ns.getPrefix()) == null) {
+                template.declareNamespace(ns);
+            }
+        }
+
+        SOAPHeader header = envelope.getHeader();
+        if (header != null) {
+            SOAPHeader templateHeader = template.getHeader() != null ?
+                    template.getHeader() : factory.createSOAPHeader(template);
+            OMCloneOptions options = new OMCloneOptions();
+            options.setPreserveModel(true);
+            for (Iterator itr = header.getChildren(); itr.hasNext(); ) {
+                templateHeader.addChild((OMNode) ((OMNode) itr.next()).clone(options));
+            }
+        }
+        return template;
+    }
+
+    /**
+     * Create a new message context holding the given element in its body
+     *
+     * @param synCtx   - original message context
+     * @param template - envelope to be copied for the new message
+     * @param element  - element which participates in the iteration
+     * @return newCtx created by the iteration
+     * @throws AxisFault if there is a message creation failure
+     */
+    private MessageContext getStreamedMessage(MessageContext synCtx, SOAPEnvelope template,
+                                              OMElement element) throws AxisFault {
+
+        SOAPEnvelope newEnvelope = MessageHelper.cloneSOAPEnvelope(template);
+        newEnvelope.getBody().addChild(element);
+
+        MessageContext newCtx = MessageHelper.cloneMessageContext(synCtx, newEnvelope);
+        if (id != null) {
+            // set the parent correlation details to the cloned MC -
+            //                              for the use of aggregation like tasks
+            newCtx.setProperty(EIPConstants.AGGREGATE_CORRELATION + "." + id,
+                    synCtx.getMessageID());
+        }
+        return newCtx;
+    }
+
     /**
      * Create a new message context using the given original message context, the envelope
      * and the split result element.
@@ -168,9 +385,13 @@ public class IterateMediator extends AbstractMediator implements ManagedLifecycl
      */
     private MessageContext getIteratedMessage(MessageContext synCtx, int msgNumber, int msgCount,
         SOAPEnvelope envelope, OMNode o) throws AxisFault, JaxenException {
-        
-        // clone the message for the mediation in iteration
-        MessageContext newCtx = MessageHelper.cloneMessageContext(synCtx);
+
+        // get a clone of the envelope to be attached
+        SOAPEnvelope newEnvelope = MessageHelper.cloneSOAPEnvelope(envelope);
+
+        // clone the message for the mediation in iteration, with the new envelope rather than
+        // a copy of the whole original envelope
+        MessageContext newCtx = MessageHelper.cloneMessageContext(synCtx, newEnvelope);
 
         if (id != null) {
             // set the parent correlation details to the cloned MC -
@@ -187,9 +408,6 @@ public class IterateMediator extends AbstractMediator implements ManagedLifecycl
                     msgNumber + EIPConstants.MESSAGE_SEQUENCE_DELEMITER + msgCount);
         }
 
-        // get a clone of the envelope to be attached
-        SOAPEnvelope newEnvelope = MessageHelper.cloneSOAPEnvelope(envelope);
-
         // if payload should be preserved then attach the iteration element to the
         // node specified by the attachPath
         if (preservePayload) {
@@ -214,9 +432,6 @@ public class IterateMediator extends AbstractMediator implements ManagedLifecycl
             newEnvelope.getBody().addChild(o);
         }
 
-        // set the envelope and mediate as specified in the target
-        newCtx.setEnvelope(newEnvelope);
-
         return newCtx;
     }
 
@@ -272,7 +487,32 @@ public class IterateMediator extends AbstractMediator implements ManagedLifecycl
         this.id = id;
     }
 
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    public void setMaxPending(int maxPending) {
+        this.maxPending = maxPending;
+    }
+
     public void init(SynapseEnvironment se) {
+        if (streaming) {
+            QName[] steps = expression != null ? expression.getChildElementSteps() : null;
+            if (steps == null || steps.length < 2) {
+                log.warn("XPath : " + expression + " of the streaming iterate mediator does " +
+                        "not select child elements of the SOAP body, messages will be built " +
+                        "before they are split");
+            }
+        }
+
         if (target != null) {
             Endpoint endpoint = target.getEndpoint();
             if (endpoint != null) {
@@ -23,11 +23,14 @@ import org.apache.axiom.om.OMElement;
 import org.apache.axiom.om.OMNode;
 import org.apache.axiom.soap.SOAPEnvelope;
 import org.apache.axis2.AxisFault;
+import org.apache.commons.logging.Log;
+import org.apache.synapse.ManagedLifecycle;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseException;
 import org.apache.synapse.SynapseLog;
 import org.apache.synapse.config.Entry;
 import org.apache.synapse.config.SynapseConfigUtils;
+import org.apache.synapse.config.SynapseConfiguration;
 import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.mediators.AbstractMediator;
 import org.apache.synapse.mediators.Value;
@@ -41,6 +44,10 @@ import org.apache.synapse.util.xpath.SynapseXPath;
 import javax.xml.transform.*;
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The XSLT mediator performs an XSLT transformation requested, using
@@ -57,36 +64,128 @@ import java.util.*;
  *
  * <p> Note: Set the TransformerFactory system property to generate and use translets
  *  -Djavax.xml.transform.TransformerFactory=org.apache.xalan.xsltc.trax.TransformerFactoryImpl
- * 
+ *
+ * <p>Compiled stylesheets are cached per resolved key, and recompiled only when a dynamic
+ * resource expires and the registry hands out a new version of it. Stylesheets referred by a
+ * static key are compiled when the mediator is initialized. The {@link Transformer} instances
+ * created from a cached stylesheet are reset after every transformation and kept in a small pool
+ * for reuse, which is dropped when the mediator is destroyed.
  */
-public class XSLTMediator extends AbstractMediator {
+public class XSLTMediator extends AbstractMediator implements ManagedLifecycle {
 
     private static class ErrorListenerImpl implements ErrorListener {
         private final SynapseLog synLog;
+        private final Log log;
         private final String activity;
         
         public ErrorListenerImpl(SynapseLog synLog, String activity) {
             this.synLog = synLog;
+            this.log = null;
+            this.activity = activity;
+        }
+
+        /**
+         * Create an error listener used outside of the mediation of a message
+         */
+        public ErrorListenerImpl(Log log, String activity) {
+            this.synLog = null;
+            this.log = log;
             this.activity = activity;
         }
         
         public void warning(TransformerException e) throws TransformerException {
-            if (synLog.isTraceOrDebugEnabled()) {
+            if (synLog == null) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Warning encountered during " + activity + " : " + e);
+                }
+            } else if (synLog.isTraceOrDebugEnabled()) {
                 synLog.traceOrDebugWarn("Warning encountered during " + activity + " : " + e);
             }
         }
         
         public void error(TransformerException e) throws TransformerException {
-            synLog.error("Error occurred in " + activity + " : " + e);
+            logError("Error occurred in " + activity + " : " + e);
             throw e;
         }
         
         public void fatalError(TransformerException e) throws TransformerException {
-            synLog.error("Fatal error occurred in " + activity + " : " + e);
+            logError("Fatal error occurred in " + activity + " : " + e);
             throw e;
         }
+
+        private void logError(String msg) {
+            if (synLog == null) {
+                log.error(msg);
+            } else {
+                synLog.error(msg);
+            }
+        }
     }
     
+    /** Maximum number of idle Transformer instances kept for each cached stylesheet */
+    private static final int MAX_IDLE_TRANSFORMERS =
+            Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    /**
+     * A compiled stylesheet along with a pool of the Transformer instances created from it. A
+     * Transformer is not thread-safe, so it is taken out of the pool for the duration of a
+     * transformation. At most {@link #MAX_IDLE_TRANSFORMERS} idle instances are kept, any
+     * others are discarded once used.
+     */
+    private static class CachedTemplates {
+        private final Templates templates;
+        /** Version of the entry the stylesheet was compiled from */
+        private final long version;
+
+        private final Queue<Transformer> idle = new ConcurrentLinkedQueue<Transformer>();
+        private final AtomicInteger idleCount = new AtomicInteger(0);
+
+        CachedTemplates(Templates templates, long version) {
+            this.templates = templates;
+            this.version = version;
+        }
+
+        Transformer getTransformer() throws TransformerConfigurationException {
+            Transformer transformer = idle.poll();
+            if (transformer != null) {
+                idleCount.decrementAndGet();
+                return transformer;
+            }
+            return templates.newTransformer();
+        }
+
+        /**
+         * Reset a Transformer for the next message and return it to the pool, or discard it if
+         * it cannot be reset (i.e. the transformation failed half way through) or the pool is
+         * full.
+         */
+        void releaseTransformer(Transformer transformer, boolean reuse) {
+            if (!reuse) {
+                return;
+            }
+            try {
+                transformer.reset();
+            } catch (UnsupportedOperationException ignored) {
+                // the processor cannot reset a transformer, use a fresh one each time
+                return;
+            }
+            if (idleCount.incrementAndGet() <= MAX_IDLE_TRANSFORMERS) {
+                idle.offer(transformer);
+            } else {
+                idleCount.decrementAndGet();
+            }
+        }
+
+        /**
+         * Drop the idle Transformer instances
+         */
+        void clear() {
+            while (idle.poll() != null) {
+                idleCount.decrementAndGet();
+            }
+        }
+    }
+
     /**
      * The feature for which deciding switching between DOM and Stream during the
      * transformation process
@@ -148,7 +247,8 @@ public class XSLTMediator extends AbstractMediator {
      * Unique string used as a key for each template
      * The Template instance used to create a Transformer object. This is  thread-safe
      */
-    private Map<String, Templates> cachedTemplatesMap = new Hashtable<String, Templates>();
+    private final ConcurrentMap<String, CachedTemplates> cachedTemplatesMap =
+            new ConcurrentHashMap<String, CachedTemplates>();
 
     /**
      * The TransformerFactory instance which use to create Templates. This is not thread-safe.
@@ -157,7 +257,8 @@ public class XSLTMediator extends AbstractMediator {
     private final TransformerFactory transFact = TransformerFactory.newInstance();
 
     /**
-     * Lock used to ensure thread-safe creation and use of the above Transformer
+     * Lock used to ensure thread-safe use of the above TransformerFactory, only taken when
+     * a template has to be created
      */
     private final Object transformerLock = new Object();
 
@@ -216,40 +317,41 @@ public class XSLTMediator extends AbstractMediator {
         // Derive actual key from message context
         String generatedXsltKey = xsltKey.evaluateValue(synCtx);
 
-        // get templates from generatedXsltKey
-        Templates cachedTemplates = null;
-
         if (synLog.isTraceTraceEnabled()) {
             synLog.traceTrace("Transformation source : " + sourceNode.toString());
         }
 
+        // get templates from generatedXsltKey
+        CachedTemplates cachedTemplates = cachedTemplatesMap.get(generatedXsltKey);
+
         // determine if it is needed to create or create the template
-        if (isCreationOrRecreationRequired(synCtx)) {
+        if (isCreationOrRecreationRequired(synCtx, generatedXsltKey, cachedTemplates)) {
             // many threads can see this and come here for acquiring the lock
             synchronized (transformerLock) {
                 // only first thread should create the template
-                if (isCreationOrRecreationRequired(synCtx)) {
-                    cachedTemplates = createTemplate(synCtx, synLog, generatedXsltKey);
-                } else {
-                    cachedTemplates = cachedTemplatesMap.get(generatedXsltKey);
+                cachedTemplates = cachedTemplatesMap.get(generatedXsltKey);
+                if (isCreationOrRecreationRequired(synCtx, generatedXsltKey, cachedTemplates)) {
+                    try {
+                        cachedTemplates = createTemplate(synCtx.getConfiguration(),
+                                new ErrorListenerImpl(synLog, "stylesheet parsing"),
+                                generatedXsltKey, cachedTemplates);
+                    } catch (Exception e) {
+                        handleException("Error creating XSLT transformer using : " + xsltKey,
+                                e, synCtx);
+                    }
                 }
             }
         }
-        else{
-            //If already cached template then load it from cachedTemplatesMap
-            synchronized (transformerLock){
-                cachedTemplates = cachedTemplatesMap.get(generatedXsltKey);
-            }
+
+        if (cachedTemplates == null) {
+            handleException("Unable to create Transformer using cached template", synCtx);
         }
 
+        boolean transformed = false;
+        Transformer transformer = null;
         try {
             // perform transformation
-            Transformer transformer = null;
-            try {
-                transformer = cachedTemplates.newTransformer();
-            } catch (NullPointerException ex) {
-                handleException("Unable to create Transformer using cached template", ex, synCtx);
-            }
+            transformer = cachedTemplates.getTransformer();
             if (!properties.isEmpty()) {
                 // set the parameters which will pass to the Transformation
                 applyProperties(transformer, synCtx, synLog);
@@ -353,41 +455,61 @@ public class XSLTMediator extends AbstractMediator {
                 }
             }
 
+            transformed = true;
+
         } catch (TransformerException e) {
             handleException("Error performing XSLT transformation using : " + xsltKey, e, synCtx);
+        } finally {
+            if (transformer != null) {
+                cachedTemplates.releaseTransformer(transformer, transformed);
+            }
         }
     }
 
     /**
-     * Create a XSLT template object and assign it to the cachedTemplates variable
-     * @param synCtx current message
-     * @param synLog logger to use
-     * @param generatedXsltKey evaluated xslt key(real key value) for dynamic or static key 
+     * Create a XSLT template object and put it in to the cachedTemplatesMap. Must be called
+     * holding the transformerLock, as the TransformerFactory is not thread-safe.
+     *
+     * @param synCfg the configuration to load the stylesheet from
+     * @param errorListener listener for the errors encountered while parsing the stylesheet
+     * @param generatedXsltKey evaluated xslt key(real key value) for dynamic or static key
+     * @param previous the template currently cached for the key, or null
      * @return cached template
+     * @throws Exception if the stylesheet cannot be loaded or compiled
      */
-    private Templates createTemplate(MessageContext synCtx, SynapseLog synLog, String generatedXsltKey) {
-        // Assign created template
-        Templates cachedTemplates = null;
+    private CachedTemplates createTemplate(SynapseConfiguration synCfg,
+                                           ErrorListener errorListener,
+                                           String generatedXsltKey,
+                                           CachedTemplates previous) throws Exception {
+
+        // Loading the entry refreshes its definition from the registry, if it is dynamic
+        Object xslt = synCfg.getEntry(generatedXsltKey);
+        Entry dp = synCfg.getEntryDefinition(generatedXsltKey);
+        long version = dp != null ? dp.getVersion() : Long.MIN_VALUE;
+
+        if (previous != null && version != Long.MIN_VALUE && version == previous.version) {
+            // the cache of the resource expired, but the registry still has the same version
+            if (log.isDebugEnabled()) {
+                log.debug("Version " + version + " of the XSLT with key : " +
+                        generatedXsltKey + " has not changed, reusing the compiled template");
+            }
+            return previous;
+        }
 
         // Set an error listener (SYNAPSE-307).
-        transFact.setErrorListener(new ErrorListenerImpl(synLog, "stylesheet parsing"));
+        transFact.setErrorListener(errorListener);
         // Allow xsl:import and xsl:include resolution
-        transFact.setURIResolver(new CustomJAXPURIResolver(resourceMap,
-                synCtx.getConfiguration()));
+        transFact.setURIResolver(new CustomJAXPURIResolver(resourceMap, synCfg));
 
-        try {
-            cachedTemplates = transFact.newTemplates(
-                    SynapseConfigUtils.getStreamSource(synCtx.getEntry(generatedXsltKey)));
-            if (cachedTemplates == null) {
-                // if cached template creation failed
-                handleException("Error compiling the XSLT with key : " + xsltKey, synCtx);
-            } else {
-                // if cached template is created then put it in to cachedTemplatesMap
-                cachedTemplatesMap.put(generatedXsltKey, cachedTemplates);
-            }
-        } catch (Exception e) {
-            handleException("Error creating XSLT transformer using : " + xsltKey, e, synCtx);
+        Templates templates = transFact.newTemplates(SynapseConfigUtils.getStreamSource(xslt));
+        if (templates == null) {
+            // if cached template creation failed
+            throw new SynapseException("Error compiling the XSLT with key : " + xsltKey);
         }
+
+        // if cached template is created then put it in to cachedTemplatesMap
+        CachedTemplates cachedTemplates = new CachedTemplates(templates, version);
+        cachedTemplatesMap.put(generatedXsltKey, cachedTemplates);
         return cachedTemplates;
     }
 
@@ -395,17 +517,16 @@ public class XSLTMediator extends AbstractMediator {
      * Utility method to determine weather it is needed to create a XSLT template
      *
      * @param synCtx current message
+     * @param generatedXsltKey evaluated xslt key
+     * @param cachedTemplates the template currently cached for the key, or null
      * @return true if it is needed to create a new XSLT template
      */
-    private boolean isCreationOrRecreationRequired(MessageContext synCtx) {
+    private boolean isCreationOrRecreationRequired(MessageContext synCtx, String generatedXsltKey,
+                                                   CachedTemplates cachedTemplates) {
 
-        // Derive actual key from message context
-        String generatedXsltKey = xsltKey.evaluateValue(synCtx);
-
-        // if there are no cachedTemplates inside cachedTemplatesMap or
         // if the template related to this generated key is not cached
         // then it need to be cached
-        if (cachedTemplatesMap.isEmpty() || !cachedTemplatesMap.containsKey(generatedXsltKey)) {
+        if (cachedTemplates == null) {
             // this is a creation case
             return true;
         } else {
@@ -417,6 +538,40 @@ public class XSLTMediator extends AbstractMediator {
         }
     }
 
+    /**
+     * Compile the stylesheet up front if it is referred by a static key, so that the first
+     * messages do not have to wait for it. A stylesheet which cannot be loaded at this point
+     * (e.g. the registry is not reachable yet) is compiled with the first message instead.
+     *
+     * @param se the Synapse environment
+     */
+    public void init(SynapseEnvironment se) {
+        String staticKey = xsltKey != null ? xsltKey.getKeyValue() : null;
+        if (staticKey == null || se.getSynapseConfiguration() == null) {
+            return;
+        }
+
+        synchronized (transformerLock) {
+            if (cachedTemplatesMap.containsKey(staticKey)) {
+                return;
+            }
+            try {
+                createTemplate(se.getSynapseConfiguration(),
+                        new ErrorListenerImpl(log, "stylesheet parsing"), staticKey, null);
+            } catch (Exception e) {
+                log.warn("Unable to compile the XSLT with key : " + staticKey + " at " +
+                        "initialization, it will be compiled when it is first used", e);
+            }
+        }
+    }
+
+    public void destroy() {
+        for (CachedTemplates cachedTemplates : cachedTemplatesMap.values()) {
+            cachedTemplates.clear();
+        }
+        cachedTemplatesMap.clear();
+    }
+
     public SynapseXPath getSource() {
         return source.getXPath();
     }
@@ -0,0 +1,573 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.message.processors.forward;
+
+import org.apache.axis2.description.Parameter;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.synapse.Mediator;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseConstants;
+import org.apache.synapse.SynapseException;
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.core.axis2.Axis2BlockingClient;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+import org.apache.synapse.endpoints.AbstractEndpoint;
+import org.apache.synapse.endpoints.Endpoint;
+import org.apache.synapse.message.processors.AbstractMessageProcessor;
+import org.apache.synapse.message.processors.MessageProcessorConsents;
+import org.apache.synapse.message.store.MessageStore;
+import org.apache.synapse.message.store.MessageStoreObserver;
+import org.apache.synapse.util.concurrent.SynapseThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Message forwarding processor which is driven by the message store rather than by a Quartz
+ * trigger. The processor observes its message store and starts forwarding as soon as a message
+ * is added to it, so that a message does not wait for the next trigger to be delivered.
+ * <p/>
+ * When the <code>preserve.order</code> parameter is true (default) the messages are forwarded
+ * one after the other, and a message that cannot be delivered holds back the messages behind
+ * it, same as with the <code>ScheduledMessageForwardingProcessor</code>. Otherwise the store is
+ * drained in batches of <code>batch.size</code> messages which are forwarded by
+ * <code>concurrency</code> parallel senders, and a failed message is retried without holding
+ * back the rest. Failed deliveries are retried after <code>interval</code> milliseconds.
+ */
+public class EventDrivenMessageForwardingProcessor extends AbstractMessageProcessor
+        implements MessageForwardingProcessor, MessageStoreObserver {
+
+    /** The result of an attempt to forward a message */
+    private enum Outcome {
+        /** The message was delivered, remove it from the store */
+        DELIVERED,
+        /** The message can never be delivered, remove it from the store */
+        DISCARDED,
+        /** The delivery failed, the attempt counts towards the max delivery attempts */
+        FAILED,
+        /** The message cannot be forwarded now, retry later */
+        DEFERRED
+    }
+
+    private int batchSize = 100;
+
+    private int concurrency = 1;
+
+    private boolean preserveOrder = true;
+
+    private long retryInterval = 1000;
+
+    private int maxDeliverAttempts = -1;
+
+    private boolean dropAfterMaxAttempts = false;
+
+    private MessageStore store;
+
+    private Axis2BlockingClient sender;
+
+    private MessageForwardingProcessorView view;
+
+    /** Runs the task which drains the message store, one task at a time */
+    private ScheduledExecutorService dispatcher;
+
+    /** Forwards the messages of a batch in parallel, null when they are sent one by one */
+    private ExecutorService senders;
+
+    private volatile State state = State.DESTROY;
+
+    private final AtomicBoolean active = new AtomicBoolean(true);
+
+    /** Whether a drain task has been scheduled and not yet completed */
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+
+    /** Delivery attempts of the messages that could not be forwarded yet, by message ID */
+    private final Map<String, AtomicInteger> sendAttempts =
+            new ConcurrentHashMap<String, AtomicInteger>();
+
+    private final Runnable drainTask = new Runnable() {
+        public void run() {
+            drain();
+        }
+    };
+
+    @Override
+    public void setParameters(Map<String, Object> parameters) {
+        super.setParameters(parameters);
+        if (parameters == null) {
+            return;
+        }
+
+        Object o = parameters.get(ForwardingProcessorConstants.BATCH_SIZE);
+        if (o != null) {
+            batchSize = Integer.parseInt(o.toString());
+        }
+        o = parameters.get(ForwardingProcessorConstants.CONCURRENCY);
+        if (o != null) {
+            concurrency = Integer.parseInt(o.toString());
+        }
+        o = parameters.get(ForwardingProcessorConstants.PRESERVE_ORDER);
+        if (o != null) {
+            preserveOrder = Boolean.parseBoolean(o.toString());
+        }
+        o = parameters.get(MessageProcessorConsents.INTERVAL);
+        if (o != null) {
+            retryInterval = Long.parseLong(o.toString());
+        }
+        o = parameters.get(MessageProcessorConsents.MAX_DELIVER_ATTEMPTS);
+        if (o != null) {
+            maxDeliverAttempts = Integer.parseInt(o.toString());
+            if (maxDeliverAttempts == 0) {
+                active.set(false);
+            }
+        }
+        o = parameters.get(ForwardingProcessorConstants.MAX_DELIVER_DROP);
+        if (o != null) {
+            dropAfterMaxAttempts = Boolean.parseBoolean(o.toString());
+        }
+    }
+
+    @Override
+    public void init(SynapseEnvironment se) {
+        super.init(se);
+        store = configuration.getMessageStore(messageStore);
+        if (store == null) {
+            handleException("Message store : " + messageStore + " used by the message " +
+                    "processor : " + name + " does not exist");
+        }
+        if (batchSize < 1 || concurrency < 1) {
+            handleException("The batch size and the concurrency of the message processor : " +
+                    name + " must be positive");
+        }
+
+        sender = createSender();
+        ThreadGroup group = new ThreadGroup(name + "-forwarding-processor");
+        dispatcher = Executors.newSingleThreadScheduledExecutor(
+                new SynapseThreadFactory(group, name + "-dispatcher"));
+        if (!preserveOrder && concurrency > 1) {
+            senders = Executors.newFixedThreadPool(concurrency,
+                    new SynapseThreadFactory(group, name + "-sender"));
+        } else if (concurrency > 1) {
+            log.warn("Message processor : " + name + " preserves the message order, hence " +
+                    "the messages are forwarded one at a time");
+        }
+
+        view = new MessageForwardingProcessorView(store, sender, this);
+        MBeanRegistrar.getInstance().registerMBean(view,
+                "Message Forwarding Processor view", getName());
+        start();
+    }
+
+    public void start() {
+        if (state == State.START) {
+            return;
+        }
+        state = State.START;
+        store.registerObserver(this);
+        // forward the messages that were stored while the processor was not running
+        scheduleDrain(0);
+    }
+
+    public void stop() {
+        if (state == State.START) {
+            store.unregisterObserver(this);
+            state = State.STOP;
+        }
+    }
+
+    public void destroy() {
+        stop();
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+            if (senders != null) {
+                senders.shutdown();
+            }
+            try {
+                dispatcher.awaitTermination(10, TimeUnit.SECONDS);
+                if (senders != null) {
+                    senders.awaitTermination(10, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (sender != null) {
+            try {
+                sender.cleanup();
+            } catch (Exception e) {
+                log.error("Error while cleaning up the message sender of the processor : " +
+                        name, e);
+            }
+        }
+        MBeanRegistrar.getInstance().unRegisterMBean(
+                "Message Forwarding Processor view", getName());
+        state = State.DESTROY;
+    }
+
+    @Override
+    public boolean isStarted() {
+        return state == State.START;
+    }
+
+    public boolean isActive() {
+        return active.get();
+    }
+
+    public void activate() {
+        active.set(true);
+        if (state == State.START) {
+            scheduleDrain(0);
+        }
+    }
+
+    public void deactivate() {
+        active.set(false);
+    }
+
+    public void resetSentAttemptCount() {
+        sendAttempts.clear();
+    }
+
+    public void messageAdded(String messageId) {
+        if (isRunning()) {
+            scheduleDrain(0);
+        }
+    }
+
+    public void messageRemoved(String messageId) {
+        // nothing to do, the processor removes the messages it forwards
+    }
+
+    /**
+     * Return the JMX view of the message processor
+     *
+     * @return MessageForwardingProcessorView
+     */
+    public MessageForwardingProcessorView getView() {
+        return view;
+    }
+
+    /**
+     * Create the client used to forward the messages
+     *
+     * @return a blocking client configured by the axis2 repository parameters
+     */
+    protected Axis2BlockingClient createSender() {
+        String axis2repo = null;
+        String axis2Config = null;
+        if (parameters != null) {
+            axis2repo = (String) parameters.get(ForwardingProcessorConstants.AXIS2_REPO);
+            axis2Config = (String) parameters.get(ForwardingProcessorConstants.AXIS2_CONFIG);
+        }
+        return new Axis2BlockingClient(axis2repo, axis2Config);
+    }
+
+    /**
+     * Send a message to its target endpoint and wait for the response
+     *
+     * @param endpoint leaf endpoint the message is forwarded to
+     * @param synCtx   message to be forwarded
+     * @return the response message, or null for an out only message
+     * @throws Exception if the message could not be sent
+     */
+    protected MessageContext send(Endpoint endpoint, MessageContext synCtx) throws Exception {
+        return sender.send(endpoint, synCtx);
+    }
+
+    private boolean isRunning() {
+        return state == State.START && active.get();
+    }
+
+    private void scheduleDrain(long delay) {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                dispatcher.schedule(drainTask, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // the processor is being destroyed
+                draining.set(false);
+            }
+        }
+    }
+
+    private void drain() {
+        boolean completed;
+        try {
+            completed = forwardMessages();
+        } catch (Throwable t) {
+            log.error("Error while forwarding the messages in the store : " + messageStore, t);
+            completed = false;
+        } finally {
+            draining.set(false);
+        }
+
+        if (!isRunning()) {
+            return;
+        }
+        if (!completed) {
+            scheduleDrain(retryInterval);
+        } else if (store.size() > 0) {
+            // a message may have been added after the store was found empty, while the
+            // notification about it was ignored since a drain was in progress
+            scheduleDrain(0);
+        }
+    }
+
+    /**
+     * Forward the messages in the store until it is empty, or until all the messages left in
+     * it have to be retried later
+     *
+     * @return false if some of the messages have to be retried later
+     * @throws InterruptedException if interrupted while waiting for a batch to be forwarded
+     */
+    private boolean forwardMessages() throws InterruptedException {
+        if (preserveOrder) {
+            while (isRunning()) {
+                MessageContext synCtx = store.peek();
+                if (synCtx == null) {
+                    return true;
+                }
+                if (!complete(synCtx, forward(synCtx), true)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // number of messages at the head of the store which could not be forwarded, they are
+        // skipped until the next retry
+        int retained = 0;
+        while (isRunning()) {
+            List<MessageContext> batch = store.get(retained, retained + batchSize);
+            if (batch.isEmpty()) {
+                break;
+            }
+            retained += forwardBatch(batch);
+        }
+        return retained == 0;
+    }
+
+    /**
+     * Forward a batch of messages, in parallel if the processor has a pool of senders
+     *
+     * @param batch messages to be forwarded
+     * @return the number of messages in the batch which are left in the store
+     * @throws InterruptedException if interrupted while waiting for the batch to be forwarded
+     */
+    private int forwardBatch(List<MessageContext> batch) throws InterruptedException {
+        int retained = 0;
+        if (senders == null) {
+            for (MessageContext synCtx : batch) {
+                if (!complete(synCtx, forward(synCtx), false)) {
+                    retained++;
+                }
+            }
+            return retained;
+        }
+
+        List<Future<Outcome>> results = new ArrayList<Future<Outcome>>(batch.size());
+        for (final MessageContext synCtx : batch) {
+            results.add(senders.submit(new Callable<Outcome>() {
+                public Outcome call() {
+                    return forward(synCtx);
+                }
+            }));
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            Outcome outcome;
+            try {
+                outcome = results.get(i).get();
+            } catch (ExecutionException e) {
+                log.error("Error forwarding message : " + batch.get(i).getMessageID(),
+                        e.getCause());
+                outcome = Outcome.FAILED;
+            }
+            if (!complete(batch.get(i), outcome, false)) {
+                retained++;
+            }
+        }
+        return retained;
+    }
+
+    /**
+     * Try to forward a message to the endpoint named by its target endpoint property
+     *
+     * @param synCtx message to be forwarded
+     * @return the outcome of the attempt
+     */
+    private Outcome forward(MessageContext synCtx) {
+        // messages which belong to another server are left for that server
+        if (!isLocalMessage(synCtx)) {
+            return Outcome.DEFERRED;
+        }
+
+        Set keys = synCtx.getPropertyKeySet();
+        if (keys != null) {
+            keys.remove(SynapseConstants.BLOCKING_CLIENT_ERROR);
+        }
+
+        String targetEp = (String) synCtx.getProperty(
+                ForwardingProcessorConstants.TARGET_ENDPOINT);
+        if (targetEp == null) {
+            log.warn("Property " + ForwardingProcessorConstants.TARGET_ENDPOINT +
+                    " not found in the message context , Hence removing the message ");
+            return Outcome.DISCARDED;
+        }
+
+        Endpoint ep = synCtx.getEndpoint(targetEp);
+        if (ep == null) {
+            log.warn("Endpoint named " + targetEp + " not found.Hence removing " +
+                    "the message form store");
+            return Outcome.DISCARDED;
+        }
+        if (!(ep instanceof AbstractEndpoint) || !((AbstractEndpoint) ep).isLeafEndpoint()) {
+            log.warn("Unsupported endpoint type. Only address/wsdl/default " +
+                    "endpoint types supported");
+            return Outcome.DISCARDED;
+        }
+        if (!((AbstractEndpoint) ep).readyToSend()) {
+            return Outcome.DEFERRED;
+        }
+
+        MessageContext outCtx;
+        try {
+            outCtx = send(ep, synCtx);
+        } catch (Exception e) {
+            log.error("Error Forwarding Message : " + synCtx.getMessageID(), e);
+            return Outcome.FAILED;
+        }
+
+        if (outCtx != null &&
+                "true".equals(outCtx.getProperty(SynapseConstants.BLOCKING_CLIENT_ERROR))) {
+            mediate(outCtx, ForwardingProcessorConstants.FAULT_SEQUENCE);
+            return Outcome.FAILED;
+        } else if (outCtx != null) {
+            mediate(outCtx, ForwardingProcessorConstants.REPLY_SEQUENCE);
+        }
+        return Outcome.DELIVERED;
+    }
+
+    /**
+     * Remove the message from the store or count the failed attempt, depending on the outcome
+     *
+     * @param synCtx  the message that was forwarded
+     * @param outcome outcome of the attempt to forward it
+     * @param head    whether the message is the head of the store
+     * @return true if the message has been removed from the store
+     */
+    private boolean complete(MessageContext synCtx, Outcome outcome, boolean head) {
+        switch (outcome) {
+            case DELIVERED:
+            case DISCARDED:
+                remove(synCtx, head);
+                return true;
+            case FAILED:
+                if (maxDeliverAttempts > 0 && incrementSendAttempts(synCtx) >= maxDeliverAttempts) {
+                    if (dropAfterMaxAttempts) {
+                        log.warn("Message : " + synCtx.getMessageID() + " could not be " +
+                                "delivered after " + maxDeliverAttempts + " attempts, hence " +
+                                "removing it from the store");
+                        remove(synCtx, head);
+                        return true;
+                    }
+                    deactivate(synCtx);
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private void remove(MessageContext synCtx, boolean head) {
+        if (head) {
+            store.poll();
+        } else {
+            store.remove(synCtx.getMessageID());
+        }
+        sendAttempts.remove(getAttemptsKey(synCtx));
+    }
+
+    private int incrementSendAttempts(MessageContext synCtx) {
+        String key = getAttemptsKey(synCtx);
+        AtomicInteger attempts = sendAttempts.get(key);
+        if (attempts == null) {
+            attempts = new AtomicInteger();
+            AtomicInteger existing = sendAttempts.putIfAbsent(key, attempts);
+            if (existing != null) {
+                attempts = existing;
+            }
+        }
+        return attempts.incrementAndGet();
+    }
+
+    private String getAttemptsKey(MessageContext synCtx) {
+        String messageId = synCtx.getMessageID();
+        return messageId != null ? messageId : "";
+    }
+
+    private void deactivate(MessageContext synCtx) {
+        deactivate();
+        mediate(synCtx, ForwardingProcessorConstants.DEACTIVATE_SEQUENCE);
+    }
+
+    private void mediate(MessageContext synCtx, String sequenceParameter) {
+        String seq = parameters != null ? (String) parameters.get(sequenceParameter) : null;
+        if (seq == null) {
+            return;
+        }
+        Mediator mediator = synCtx.getSequence(seq);
+        if (mediator != null) {
+            mediator.mediate(synCtx);
+        } else {
+            log.warn("Sequence : " + seq + " used by the message processor : " + name +
+                    " does not exist");
+        }
+    }
+
+    private boolean isLocalMessage(MessageContext synCtx) {
+        String serverName = (String)
+                synCtx.getProperty(SynapseConstants.Axis2Param.SYNAPSE_SERVER_NAME);
+        if (serverName == null || !(synCtx instanceof Axis2MessageContext)) {
+            return true;
+        }
+
+        AxisConfiguration axisConfig = ((Axis2MessageContext) synCtx).getAxis2MessageContext().
+                getConfigurationContext().getAxisConfiguration();
+        Parameter parameter = axisConfig.getParameter(
+                SynapseConstants.Axis2Param.SYNAPSE_SERVER_NAME);
+        return parameter != null && serverName.equals(parameter.getValue());
+    }
+
+    private void handleException(String msg) {
+        log.error(msg);
+        throw new SynapseException(msg);
+    }
+}
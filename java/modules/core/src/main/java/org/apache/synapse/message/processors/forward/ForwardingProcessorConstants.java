@@ -65,4 +65,19 @@ public final class ForwardingProcessorConstants {
      */
     public static final String MAX_DELIVER_DROP = "max.deliver.drop";
 
+    /**
+     * Maximum number of messages taken from the store at once by the event driven processor
+     */
+    public static final String BATCH_SIZE = "batch.size";
+
+    /**
+     * Number of messages the event driven processor sends in parallel
+     */
+    public static final String CONCURRENCY = "concurrency";
+
+    /**
+     * Whether the event driven processor delivers the messages in the order they were stored
+     */
+    public static final String PRESERVE_ORDER = "preserve.order";
+
 }
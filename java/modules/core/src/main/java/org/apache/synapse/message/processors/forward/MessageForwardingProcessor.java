@@ -0,0 +1,51 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.message.processors.forward;
+
+import org.apache.synapse.message.processors.MessageProcessor;
+
+/**
+ * Message processors that forward the stored messages to their target endpoints. Exposes the
+ * operations that are used to manage such a processor through the
+ * <code>MessageForwardingProcessorView</code>
+ */
+public interface MessageForwardingProcessor extends MessageProcessor {
+
+    /**
+     * Check whether the processor forwards the messages in the store
+     *
+     * @return true if the processor is active
+     */
+    public boolean isActive();
+
+    /**
+     * Resume forwarding messages
+     */
+    public void activate();
+
+    /**
+     * Stop forwarding messages, so that they can be managed manually
+     */
+    public void deactivate();
+
+    /**
+     * Forget the delivery attempts made so far
+     */
+    public void resetSentAttemptCount();
+}
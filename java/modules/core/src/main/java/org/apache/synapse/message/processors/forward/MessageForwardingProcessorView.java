@@ -41,10 +41,10 @@ public class MessageForwardingProcessorView implements MessageForwardingProcesso
 
     private MessageStore messageStore;
     private Axis2BlockingClient sender;
-    private ScheduledMessageForwardingProcessor processor;
+    private MessageForwardingProcessor processor;
 
     public MessageForwardingProcessorView(MessageStore messageStore, Axis2BlockingClient sender,
-                                          ScheduledMessageForwardingProcessor processor) {
+                                          MessageForwardingProcessor processor) {
         if (messageStore != null) {
             this.messageStore = messageStore;
         } else {
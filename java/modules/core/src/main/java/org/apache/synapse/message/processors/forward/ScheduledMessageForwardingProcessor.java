@@ -31,7 +31,8 @@ import java.util.concurrent.atomic.AtomicInteger;
  * Redelivery processor is the Message processor which implements the Dead letter channel EIP
  * It will Time to time Redeliver the Messages to a given target.
  */
-public class ScheduledMessageForwardingProcessor extends ScheduledMessageProcessor {
+public class ScheduledMessageForwardingProcessor extends ScheduledMessageProcessor
+        implements MessageForwardingProcessor {
 
     public static final String BLOCKING_SENDER = "blocking.sender";
 
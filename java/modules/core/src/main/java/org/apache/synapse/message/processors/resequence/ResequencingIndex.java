@@ -0,0 +1,152 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.message.processors.resequence;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Index of the messages waiting to be resequenced, sorted by their sequence numbers. It lets the
+ * resequencer find the next message to send without evaluating the sequence number XPath over
+ * every message in the store.
+ */
+class ResequencingIndex {
+
+    /**
+     * A message waiting in the message store, or in the spill store, to be resequenced
+     */
+    static class Entry {
+
+        final int sequenceNo;
+
+        final String messageId;
+
+        /** Time at which the message was indexed */
+        final long indexedAt;
+
+        /** Whether the message has been moved to the spill store */
+        boolean spilled;
+
+        Entry(int sequenceNo, String messageId, long indexedAt) {
+            this.sequenceNo = sequenceNo;
+            this.messageId = messageId;
+            this.indexedAt = indexedAt;
+        }
+    }
+
+    private final TreeMap<Integer, Entry> entries = new TreeMap<Integer, Entry>();
+
+    /** Messages carrying a sequence number which has already been indexed or sent */
+    private final List<String> duplicates = new ArrayList<String>();
+
+    private int spilledCount = 0;
+
+    /**
+     * Index a message
+     *
+     * @param sequenceNo sequence number of the message
+     * @param messageId  ID of the message
+     * @param nextSeqNo  sequence number of the message to be sent next, messages with a smaller
+     *                   sequence number are treated as duplicates
+     * @return true if the message was indexed, false if it is a duplicate or already indexed
+     */
+    synchronized boolean add(int sequenceNo, String messageId, int nextSeqNo) {
+        Entry existing = entries.get(sequenceNo);
+        if (existing != null && existing.messageId.equals(messageId)) {
+            return false;
+        }
+        if (existing != null || sequenceNo < nextSeqNo) {
+            duplicates.add(messageId);
+            return false;
+        }
+        entries.put(sequenceNo, new Entry(sequenceNo, messageId, System.currentTimeMillis()));
+        return true;
+    }
+
+    synchronized Entry get(int sequenceNo) {
+        return entries.get(sequenceNo);
+    }
+
+    synchronized Entry remove(int sequenceNo) {
+        Entry entry = entries.remove(sequenceNo);
+        if (entry != null && entry.spilled) {
+            spilledCount--;
+        }
+        return entry;
+    }
+
+    /**
+     * @return the smallest sequence number in the index, or null if the index is empty
+     */
+    synchronized Integer firstSequenceNo() {
+        return entries.isEmpty() ? null : entries.firstKey();
+    }
+
+    /**
+     * @return the message with the smallest sequence number, or null if the index is empty
+     */
+    synchronized Entry first() {
+        return entries.isEmpty() ? null : entries.firstEntry().getValue();
+    }
+
+    /**
+     * Get the messages which have not been spilled yet, starting from a sequence number
+     *
+     * @param sequenceNo smallest sequence number to return
+     * @return entries of the messages that are still in the message store
+     */
+    synchronized List<Entry> getUnspilled(int sequenceNo) {
+        List<Entry> list = new ArrayList<Entry>();
+        for (Entry entry : entries.tailMap(sequenceNo).values()) {
+            if (!entry.spilled) {
+                list.add(entry);
+            }
+        }
+        return list;
+    }
+
+    synchronized void markSpilled(Entry entry) {
+        if (!entry.spilled && entries.get(entry.sequenceNo) == entry) {
+            entry.spilled = true;
+            spilledCount++;
+        }
+    }
+
+    /**
+     * @return the IDs of the duplicate messages found since the last call
+     */
+    synchronized List<String> takeDuplicates() {
+        if (duplicates.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> list = new ArrayList<String>(duplicates);
+        duplicates.clear();
+        return list;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized int getSpilledCount() {
+        return spilledCount;
+    }
+}
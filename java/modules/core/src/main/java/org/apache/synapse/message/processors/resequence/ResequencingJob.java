@@ -26,7 +26,6 @@ import org.apache.synapse.SynapseException;
 import org.apache.synapse.message.processors.MessageProcessorConsents;
 import org.apache.synapse.message.processors.ScheduledMessageProcessor;
 import org.apache.synapse.message.store.MessageStore;
-import org.apache.synapse.util.xpath.SynapseXPath;
 import org.quartz.Job;
 import org.quartz.JobDataMap;
 import org.quartz.JobExecutionContext;
@@ -35,6 +34,7 @@ import org.quartz.JobExecutionException;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * All necessary logic for Resequencing is implemented with in this class.
@@ -49,8 +49,9 @@ public class ResequencingJob implements Job {
 
     /**
      * This method will takes the necessary parameters from parameter list and do the resequencing
-     * Resequencing is done through reading messages until the next-to-send message is found
-     * If required is not found then waits until the next instance is created.
+     * Resequencing is done through sending the indexed messages until the next-to-send message
+     * is not in the store. Then it waits until the message arrives and triggers the job, or until
+     * the next instance is created.
      *
      * @param jobExecutionContext - a bundle with information related to environment
      * @throws JobExecutionException - to indicate Quartz scheduler that an error occurred while executing the job
@@ -65,18 +66,11 @@ public class ResequencingJob implements Job {
         final Map<String, Object> parameters = (Map<String, Object>) jdm.get(MessageProcessorConsents.PARAMETERS);
         final String sequence = (String) parameters.get(ResequencingProcessor.NEXT_SEQUENCE);
 
-        SynapseXPath seqNoxPath = null;
-
         /** Checking for activation of processor or existence of message store  */
         if (!processor.isActive() || messageStore == null) {
             return;
         }
 
-        /** Extract the SynapseXpath object from parameters to identify the sequence number of the message */
-        if (parameters.get(ResequencingProcessor.SEQUENCE_NUMBER_XPATH) != null) {
-            seqNoxPath = (SynapseXPath) parameters.get(ResequencingProcessor.SEQUENCE_NUMBER_XPATH);
-        }
-
         /** Extract the number of messages interested to come */
         if (parameters.get(ResequencingProcessor.REQ_INIT_MSGS) != null) {
             processor.setRequiredInitMsgs(new AtomicInteger(Integer.parseInt((String) parameters.get(
@@ -98,148 +92,146 @@ public class ResequencingJob implements Job {
 
 
         if (!processor.isInitSeqNo().get()) {
-            /** Deactivating Resequencing processor to avoid executing multiple Job instances */
-            processor.deactivate();
-
-            do {
-                delay(ResequencingProcessor.STARTING_NUMBER_INIT_DELAY);
-
-                if (messageStore.size() >= processor.getRequiredInitMsgs().get()) {
-                    selectStartingSeqNo(processor, messageStore, seqNoxPath);
-                    break;
-                }
-                processor.tried++;
-            } while (processor.tried < processor.getRequiredInitMsgsDelay().get());
-
-        }
 
-        if (!processor.isInitSeqNo().get()) {
-
-            while (true) {
-
-                if (messageStore.size() > 0) {
-                    selectStartingSeqNo(processor, messageStore, seqNoxPath);
+            if (messageStore.size() == 0) {
+                /** Select the starting sequence number once a message arrives */
+                return;
+            }
 
-                    if (!processor.isInitSeqNo().get()) {
-                        log.warn("Resequencer failed to select starting sequence number with in given timeout !");
-                    }
+            /** Wait for the required number of messages on later runs of the job, rather than
+             * holding the scheduler thread */
+            if (messageStore.size() < processor.getRequiredInitMsgs().get() &&
+                    processor.getInitWaitTime() < (long) processor.getRequiredInitMsgsDelay().get() *
+                            ResequencingProcessor.STARTING_NUMBER_INIT_DELAY) {
+                return;
+            }
 
-                    break;
-                }
+            selectStartingSeqNo(processor);
 
+            if (!processor.isInitSeqNo().get()) {
+                log.warn("Resequencer failed to select starting sequence number with in given timeout !");
             }
 
         }
 
         /** Continue to this section happens only after initializing the starting sequence number */
-        boolean errorStop = false;
-        while (!errorStop) {
-
-            /** Iterate through message store */
-            for (int messageIndex = 0; ; messageIndex++) {
-                MessageContext messageContext = messageStore.get(messageIndex);
-
-                if (messageContext == null) {
-                    errorStop = true;
-                    break;
-                }
-
-                /** Extract the sequence number from the message */
-                int sequenceNo;
-                try {
-                    sequenceNo = Integer.parseInt(seqNoxPath.stringValueOf(messageContext));
-                } catch (Exception e) {
-                    log.warn("Can't Find sequence number from message " + e.getMessage());
-                    continue;
-                }
-
-                String messageId = messageContext.getMessageID();
-
-                /** Remove messages which have less sequence number than required */
-                if(sequenceNo<processor.getNextSeqNo() && processor.getDeleteDuplicates()){
-                    messageStore.remove(messageId);
-                }
-
-                /** Compare the next-to-go sequence number with current message sequence number */
-                if (sequenceNo == processor.getNextSeqNo()) {
+        ReentrantLock releaseLock = processor.getReleaseLock();
+        do {
+            /** If another job instance is sending messages, it takes care of this run as well */
+            if (!releaseLock.tryLock()) {
+                break;
+            }
+            try {
+                processor.clearReleasePending();
+                removeDuplicates(processor, messageStore);
+                release(processor, messageStore, sequence);
+                spill(processor, messageStore);
+            } finally {
+                releaseLock.unlock();
+            }
+        } while (processor.isReleasePending());
 
-                    /** Remove selected message from store */
+    }
 
-                    messageStore.remove(messageId);
-                    /** If sending does not failed increase sequence number */
-                    if (send(messageContext, sequence)) {
+    /**
+     * Send the messages in the order of their sequence numbers, until the message with the next
+     * sequence number is not in the store
+     *
+     * @param processor    - Resequencing processor holding the index of the stored messages
+     * @param messageStore - Message store that contains messages
+     * @param sequence     - the sequence name that the messages should be passed
+     */
+    private void release(ResequencingProcessor processor, MessageStore messageStore,
+                         String sequence) {
+        ResequencingIndex index = processor.getIndex();
+        while (true) {
+            int nextSeqNo = processor.getNextSeqNo();
+            ResequencingIndex.Entry entry = index.remove(nextSeqNo);
+            if (entry == null) {
+                break;
+            }
 
-                        processor.incrementNextSeqNo();
-                    }
-                    /** Break and start searching from beginning */
-                    break;
-                }
+            MessageStore source = entry.spilled ? processor.getSpillStore() : messageStore;
+            MessageContext messageContext = source.get(entry.messageId);
+            if (messageContext == null) {
+                log.warn("Message " + entry.messageId + " with sequence number " + nextSeqNo +
+                        " has been removed from the message store");
+                break;
+            }
 
+            /** Remove selected message from store */
+            source.remove(entry.messageId);
+            processor.messageReleased(System.currentTimeMillis() - entry.indexedAt);
 
+            /** If sending does not failed increase sequence number */
+            if (send(messageContext, sequence)) {
+                processor.incrementNextSeqNo();
+            } else {
+                break;
             }
-
         }
+    }
 
-        /** Reactivating Processor after selecting initial sequence number */
-        if (!processor.isActive()) {
-            processor.activate();
+    /**
+     * Move the messages which are far ahead of the next sequence number to the spill store,
+     * to bound the number of messages held by the message store
+     *
+     * @param processor    - Resequencing processor holding the index of the stored messages
+     * @param messageStore - Message store that contains messages
+     */
+    private void spill(ResequencingProcessor processor, MessageStore messageStore) {
+        MessageStore spillStore = processor.getSpillStore();
+        if (spillStore == null || processor.getWindow() <= 0) {
+            return;
         }
 
+        ResequencingIndex index = processor.getIndex();
+        long from = (long) processor.getNextSeqNo() + processor.getWindow();
+        if (from > Integer.MAX_VALUE) {
+            return;
+        }
+        for (ResequencingIndex.Entry entry : index.getUnspilled((int) from)) {
+            MessageContext messageContext = messageStore.get(entry.messageId);
+            if (messageContext != null) {
+                spillStore.offer(messageContext);
+                messageStore.remove(entry.messageId);
+                index.markSpilled(entry);
+            }
+        }
     }
 
     /**
-     * Selects the smallest sequence number as the starting sequence number from a given message store
+     * Remove the messages carrying a sequence number that has already been sent or is already
+     * waiting, if the processor is configured to delete duplicates
      *
-     * @param processor    - Resequencing processor which is interested to know starting sequence number
+     * @param processor    - Resequencing processor holding the index of the stored messages
      * @param messageStore - Message store that contains messages
-     * @param seqNoxPath   - SynapseXpath object which contains the xpath to find the sequence number from a message
      */
-    private void selectStartingSeqNo(ResequencingProcessor processor, MessageStore messageStore,
-                                     SynapseXPath seqNoxPath) {
-        /** Iterate through message store */
-        for (int messageIndex = 0; ; messageIndex++) {
-            try {
-                MessageContext messageContext = messageStore.get(messageIndex);
-                if (messageContext == null) {
-                    break;
-                }
-                /** Extract the sequence number from the message */
-                int sequenceNo;
-
-                sequenceNo = Integer.parseInt(seqNoxPath.stringValueOf(messageContext));
-
-
-                /** If the sequence number is smaller that current next-sequence number, current next-sequence number get replaced */
-                if (sequenceNo < processor.getNextSeqNo()) {
-                    processor.setNextSeqNo(sequenceNo);
-                    processor.setInitSeqNo(new AtomicBoolean(true));
-                }
-
-
-            } catch (NumberFormatException e) {
-                handleException("Invalid xPath parameter - Sequence number specified is not an integer ");
-            } catch (Exception e) {
-                handleException("Failed to initialize starting sequence number at startup: " + e.getMessage());
+    private void removeDuplicates(ResequencingProcessor processor, MessageStore messageStore) {
+        for (String messageId : processor.getIndex().takeDuplicates()) {
+            if (processor.getDeleteDuplicates() && messageStore.remove(messageId) == null &&
+                    processor.getSpillStore() != null) {
+                processor.getSpillStore().remove(messageId);
             }
         }
-
-
     }
 
     /**
-     * To timePeriod the processor until next checking up
-     * This method is in use wen initializing the starting sequence number of the resequencer
+     * Selects the smallest sequence number among the stored messages as the starting sequence number
      *
-     * @param timePeriod - the time period which waits before a single cycle
+     * @param processor    - Resequencing processor which is interested to know starting sequence number
      */
-    private void delay(long timePeriod) {
-        try {
-            Thread.sleep(timePeriod);
-        } catch (InterruptedException e) {
-            log.error("Interrupted while thread sleeping in resequencer", e);
+    private void selectStartingSeqNo(ResequencingProcessor processor) {
+        Integer first = processor.getIndex().firstSequenceNo();
+
+        /** If the sequence number is smaller that current next-sequence number, current next-sequence number get replaced */
+        if (first != null && first < processor.getNextSeqNo()) {
+            processor.setNextSeqNo(first);
+            processor.setInitSeqNo(new AtomicBoolean(true));
         }
     }
 
+
     /**
      * Transmit the message in to a given sequence
      * This method will takes the sequence given in sequence parameter. If no sequence is given this will return false     *
@@ -22,22 +22,31 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseException;
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
+import org.apache.synapse.config.SynapseConfiguration;
 import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.message.processors.ScheduledMessageProcessor;
 import org.apache.synapse.message.store.MessageStore;
+import org.apache.synapse.message.store.MessageStoreObserver;
 import org.apache.synapse.util.xpath.SynapseXPath;
 import org.quartz.*;
 
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This class will be used as the processor of the resequencer and set up
  * the necessary environment for the ResequencingJob.
  * This should be run periodically after given time interval and
- * for that this should be inherited from ScheduledMessageProcessor class
+ * for that this should be inherited from ScheduledMessageProcessor class.
+ * The processor observes the message store and keeps an index of the stored messages by their
+ * sequence numbers, so that the job finds the next message without scanning the store, and is
+ * triggered right away when the message it waits for arrives.
  */
-public class ResequencingProcessor extends ScheduledMessageProcessor {
+public class ResequencingProcessor extends ScheduledMessageProcessor
+        implements MessageStoreObserver {
 
     /**
      * Log is set to the current class
@@ -97,15 +106,57 @@ public class ResequencingProcessor extends ScheduledMessageProcessor {
     public static final int STARTING_NUMBER_INIT_DELAY = 6000;
 
     /**
-     * Number of times currently processor waited until required number of messages come
-     * Max value is determined by   requiredInitMsgs variable value
+     * Time at which the processor started waiting for the required number of messages, or 0
+     * if it has not started waiting
      */
-    public int tried = 0;
+    private long initWaitStarted = 0;
 
     public static final String DELETE_DUPLICATES="deleteDuplicateMessages";
 
     private AtomicBoolean deleteDuplicates=new AtomicBoolean(false);
 
+    /**
+     * Message store that the messages far ahead of the next sequence number are moved to
+     */
+    public static final String SPILL_MESSAGE_STORE = "spillMessageStore";
+
+    /**
+     * Number of sequence numbers after the next one for which the messages are kept in the
+     * message store, messages beyond it are moved to the spill message store
+     */
+    public static final String RESEQUENCING_WINDOW = "resequencingWindow";
+
+    /**
+     * Index of the messages waiting to be sent, by sequence number
+     */
+    private final ResequencingIndex index = new ResequencingIndex();
+
+    private MessageStore store;
+
+    private MessageStore spillStore;
+
+    private int window = -1;
+
+    private SynapseXPath seqNoxPath;
+
+    /**
+     * Held by the job while it sends messages, so that only one job instance sends at a time
+     */
+    private final ReentrantLock releaseLock = new ReentrantLock();
+
+    /**
+     * Set when the job is triggered, so that a running job instance looks for messages again
+     */
+    private final AtomicBoolean releasePending = new AtomicBoolean(false);
+
+    private final AtomicLong releasedCount = new AtomicLong(0);
+
+    private final AtomicLong totalWaitTime = new AtomicLong(0);
+
+    private final AtomicLong maxWaitTime = new AtomicLong(0);
+
+    private ResequencingProcessorView view;
+
 
     /**
      * Initiate the processor with SynapseEnvironment
@@ -114,55 +165,132 @@ public class ResequencingProcessor extends ScheduledMessageProcessor {
      */
     @Override
     public void init(SynapseEnvironment se) {
-        super.init(se);
+        /** Index the stored messages and set the initial sequence number before the job runs */
+        buildIndex(se.getSynapseConfiguration());
 
-        /** Set the initial sequence number */
-        findFirstSeqNum();
+        super.init(se);
 
+        view = new ResequencingProcessorView(this);
+        MBeanRegistrar.getInstance().registerMBean(view,
+                "Message Resequencing Processor view", getName());
     }
 
 
     /**
-     * This method use to find the minimum sequence number in the message store at the startup
+     * Index the messages in the message store and the spill store, and set the minimum
+     * sequence number among them as the starting sequence number
+     *
+     * @param synapseConfig - configuration holding the message stores
      */
-    private void findFirstSeqNum() {
-        MessageStore store = configuration.getMessageStore(messageStore);
-        SynapseXPath seqNoxPath = null;
+    private void buildIndex(SynapseConfiguration synapseConfig) {
+        store = synapseConfig.getMessageStore(messageStore);
 
-        /** Extract the SynapseXpath configuration.getMessageStore(messageStore)object from parameters to
-         * identify the sequence number of the message */
+        /** Extract the SynapseXpath object from parameters to identify the sequence number of the message */
         if (parameters != null && parameters.get(ResequencingProcessor.SEQUENCE_NUMBER_XPATH) != null) {
             seqNoxPath = (SynapseXPath) parameters.get(ResequencingProcessor.SEQUENCE_NUMBER_XPATH);
         }
+        if (parameters != null && parameters.get(RESEQUENCING_WINDOW) != null) {
+            window = Integer.parseInt((String) parameters.get(RESEQUENCING_WINDOW));
+        }
+        if (parameters != null && parameters.get(SPILL_MESSAGE_STORE) != null) {
+            String spillStoreName = (String) parameters.get(SPILL_MESSAGE_STORE);
+            spillStore = synapseConfig.getMessageStore(spillStoreName);
+            if (spillStore == null) {
+                handleException("Spill message store " + spillStoreName + " does not exist");
+            }
+        }
 
+        if (store == null) {
+            return;
+        }
 
-        /** Iterate through message store */
-        for (int messageIndex = 0; ; messageIndex++) {
+        /** Observe the store first, so that no message added while indexing is missed */
+        store.registerObserver(this);
+        indexMessages(store, false);
+        if (spillStore != null) {
+            indexMessages(spillStore, true);
+        }
 
-            try {
-                MessageContext messageContext = store.get(messageIndex);
-                if (messageContext == null) {
-                    break;
-                }
+        Integer first = index.firstSequenceNo();
+        if (first != null) {
+            setNextSeqNo(first);
+            /** To indicate that starting sequence number is initialized */
+            initSeqNo = new AtomicBoolean(true);
+        }
+    }
 
+    private void indexMessages(MessageStore messageStore, boolean spilled) {
+        for (MessageContext messageContext : messageStore.getAll()) {
+            try {
                 /** Extract the sequence number from the message */
                 int sequenceNo = Integer.parseInt(seqNoxPath.stringValueOf(messageContext));
-
-                /** If the sequence number is smaller that current next-sequence number, current next-sequence
-                 * number get replaced */
-                if (sequenceNo < getNextSeqNo()) {
-                    setNextSeqNo(sequenceNo);
-                    /** To indicate that starting sequence number is initialized */
-                    initSeqNo = new AtomicBoolean(true);
+                if (index.add(sequenceNo, messageContext.getMessageID(), Integer.MIN_VALUE) &&
+                        spilled) {
+                    index.markSpilled(index.get(sequenceNo));
                 }
-
             } catch (NumberFormatException e) {
                 handleException("Invalid xPath parameter - Sequence number specified is not an integer ");
             } catch (Exception e) {
                 handleException("Failed to initialize starting sequence number at startup: " + e.getMessage());
             }
         }
+    }
 
+    /**
+     * Index a message added to the message store, reading it from the store. Used only by
+     * stores that do not pass the message to their observers
+     *
+     * @param messageId - ID of the message added to the store
+     */
+    public void messageAdded(String messageId) {
+        MessageContext messageContext = store.get(messageId);
+        if (messageContext != null) {
+            messageAdded(messageContext);
+        }
+    }
+
+    /**
+     * Index a message added to the message store, and trigger the job if it is the message
+     * the resequencer is waiting for
+     *
+     * @param messageContext - the message added to the store
+     */
+    public void messageAdded(MessageContext messageContext) {
+        int sequenceNo;
+        try {
+            sequenceNo = Integer.parseInt(seqNoxPath.stringValueOf(messageContext));
+        } catch (Exception e) {
+            log.warn("Can't Find sequence number from message " + e.getMessage());
+            return;
+        }
+
+        int nextSeqNo = initSeqNo.get() ? getNextSeqNo() : Integer.MIN_VALUE;
+        if (index.add(sequenceNo, messageContext.getMessageID(), nextSeqNo) &&
+                sequenceNo == nextSeqNo && isActive()) {
+            triggerJob();
+        } else if (!initSeqNo.get() && isActive() &&
+                store.size() >= requiredInitMsgs.get()) {
+            /** Select the starting sequence number as soon as enough messages have arrived */
+            triggerJob();
+        }
+    }
+
+    public void messageRemoved(String messageId) {
+        /** Messages are removed from the index when they are sent */
+    }
+
+    /**
+     * Run the resequencing job now, instead of waiting for the next scheduled run
+     */
+    private void triggerJob() {
+        releasePending.set(true);
+        try {
+            scheduler.triggerJob(new JobKey(name + "-resequencing-job",
+                    SCHEDULED_MESSAGE_PROCESSOR_GROUP));
+        } catch (SchedulerException e) {
+            log.warn("Failed to trigger the resequencing job, messages will be sent on its " +
+                    "next run", e);
+        }
     }
 
     /**
@@ -193,6 +321,11 @@ public class ResequencingProcessor extends ScheduledMessageProcessor {
      */
     @Override
     public void destroy() {
+        if (store != null) {
+            store.unregisterObserver(this);
+        }
+        MBeanRegistrar.getInstance().unRegisterMBean("Message Resequencing Processor view",
+                getName());
         try {
             scheduler.deleteJob(new JobKey(name + "-resequencing-job",
                     ScheduledMessageProcessor.SCHEDULED_MESSAGE_PROCESSOR_GROUP));
@@ -306,6 +439,20 @@ public class ResequencingProcessor extends ScheduledMessageProcessor {
         this.requiredInitMsgsDelay = requiredInitMsgsDelay;
     }
 
+    /**
+     * Get the time waited for the required number of messages before selecting the starting
+     * sequence number. The wait starts on the first call
+     *
+     * @return milliseconds since the processor started waiting
+     */
+    public synchronized long getInitWaitTime() {
+        long now = System.currentTimeMillis();
+        if (initWaitStarted == 0) {
+            initWaitStarted = now;
+        }
+        return now - initWaitStarted;
+    }
+
     /**
      * Check whether to delete duplicate messages or not
      * @return   value of deleteDuplicates
@@ -323,6 +470,146 @@ public class ResequencingProcessor extends ScheduledMessageProcessor {
     }
 
 
+    /**
+     * Index of the messages waiting to be sent
+     *
+     * @return the index of the stored messages by sequence number
+     */
+    ResequencingIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Message store that the messages far ahead of the next sequence number are moved to
+     *
+     * @return the spill message store, or null if the messages are not spilled
+     */
+    MessageStore getSpillStore() {
+        return spillStore;
+    }
+
+    /**
+     * Number of sequence numbers after the next one for which the messages are kept in the
+     * message store
+     *
+     * @return the resequencing window, or a non positive value if there is no window
+     */
+    int getWindow() {
+        return window;
+    }
+
+    ReentrantLock getReleaseLock() {
+        return releaseLock;
+    }
+
+    /**
+     * Check whether the job has been triggered since the pending flag was last cleared
+     *
+     * @return true if the job has to look for messages to send again
+     */
+    boolean isReleasePending() {
+        return releasePending.get();
+    }
+
+    void clearReleasePending() {
+        releasePending.set(false);
+    }
+
+    /**
+     * Record a message sent by the resequencer
+     *
+     * @param waitTime - time the message waited in the store, in milliseconds
+     */
+    void messageReleased(long waitTime) {
+        releasedCount.incrementAndGet();
+        totalWaitTime.addAndGet(waitTime);
+        long max = maxWaitTime.get();
+        while (waitTime > max && !maxWaitTime.compareAndSet(max, waitTime)) {
+            max = maxWaitTime.get();
+        }
+    }
+
+    /**
+     * Number of messages sent by the resequencer
+     *
+     * @return released message count
+     */
+    public long getReleasedCount() {
+        return releasedCount.get();
+    }
+
+    /**
+     * Number of messages waiting for the messages before them
+     *
+     * @return waiting message count
+     */
+    public int getWaitingCount() {
+        return index.size();
+    }
+
+    /**
+     * Number of waiting messages that are in the spill message store
+     *
+     * @return spilled message count
+     */
+    public int getSpilledCount() {
+        return index.getSpilledCount();
+    }
+
+    /**
+     * Number of missing sequence numbers before the first waiting message
+     *
+     * @return the size of the current gap
+     */
+    public int getGap() {
+        Integer first = index.firstSequenceNo();
+        if (first == null || !initSeqNo.get()) {
+            return 0;
+        }
+        return Math.max(0, first - getNextSeqNo());
+    }
+
+    /**
+     * Time the first waiting message has waited for the messages before it
+     *
+     * @return wait time in milliseconds, or 0 if there is no gap
+     */
+    public long getGapWaitTime() {
+        ResequencingIndex.Entry first = index.first();
+        if (first == null || getGap() == 0) {
+            return 0;
+        }
+        return System.currentTimeMillis() - first.indexedAt;
+    }
+
+    /**
+     * Longest time a message waited in the store before it was sent
+     *
+     * @return maximum wait time in milliseconds
+     */
+    public long getMaxWaitTime() {
+        return maxWaitTime.get();
+    }
+
+    /**
+     * Average time a message waited in the store before it was sent
+     *
+     * @return average wait time in milliseconds
+     */
+    public double getAverageWaitTime() {
+        long released = releasedCount.get();
+        return released == 0 ? 0 : (double) totalWaitTime.get() / released;
+    }
+
+    /**
+     * Get the JMX view of the processor
+     *
+     * @return ResequencingProcessorView
+     */
+    public ResequencingProcessorView getView() {
+        return view;
+    }
+
     /**
      * Handling errors are done here.
      * This will log the error messages and throws SynapseException
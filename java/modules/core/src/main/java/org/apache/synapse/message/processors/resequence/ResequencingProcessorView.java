@@ -0,0 +1,75 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.message.processors.resequence;
+
+public class ResequencingProcessorView implements ResequencingProcessorViewMBean {
+
+    private ResequencingProcessor processor;
+
+    public ResequencingProcessorView(ResequencingProcessor processor) {
+        this.processor = processor;
+    }
+
+    public void activate() {
+        assert processor != null;
+        processor.activate();
+    }
+
+    public void deactivate() {
+        assert processor != null;
+        processor.deactivate();
+    }
+
+    public boolean isActive() {
+        assert processor != null;
+        return processor.isActive();
+    }
+
+    public int getNextSequenceNumber() {
+        return processor.getNextSeqNo();
+    }
+
+    public int getWaitingMessageCount() {
+        return processor.getWaitingCount();
+    }
+
+    public int getSpilledMessageCount() {
+        return processor.getSpilledCount();
+    }
+
+    public long getReleasedMessageCount() {
+        return processor.getReleasedCount();
+    }
+
+    public int getGap() {
+        return processor.getGap();
+    }
+
+    public long getGapWaitTime() {
+        return processor.getGapWaitTime();
+    }
+
+    public long getMaxWaitTime() {
+        return processor.getMaxWaitTime();
+    }
+
+    public double getAverageWaitTime() {
+        return processor.getAverageWaitTime();
+    }
+}
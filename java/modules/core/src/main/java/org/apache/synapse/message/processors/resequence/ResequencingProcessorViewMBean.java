@@ -0,0 +1,90 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.message.processors.resequence;
+
+/**
+ * JMX MBean interface of <code>ResequencingProcessor</code>
+ * This will expose the JMX operations and the gap statistics of the resequencer
+ */
+public interface ResequencingProcessorViewMBean {
+
+    /**
+     * Activate the Resequencing processor instance
+     */
+    public void activate();
+
+    /**
+     * De activate the Resequencing processor instance
+     */
+    public void deactivate();
+
+    /**
+     * Get the active status of Resequencing processor
+     * @return true if the processor is active
+     */
+    public boolean isActive();
+
+    /**
+     * Get the sequence number of the message to be sent next
+     * @return next sequence number
+     */
+    public int getNextSequenceNumber();
+
+    /**
+     * Get the number of stored messages waiting for the messages before them
+     * @return waiting message count
+     */
+    public int getWaitingMessageCount();
+
+    /**
+     * Get the number of waiting messages moved to the spill message store
+     * @return spilled message count
+     */
+    public int getSpilledMessageCount();
+
+    /**
+     * Get the number of messages sent by the resequencer
+     * @return released message count
+     */
+    public long getReleasedMessageCount();
+
+    /**
+     * Get the number of missing sequence numbers before the first waiting message
+     * @return size of the current gap
+     */
+    public int getGap();
+
+    /**
+     * Get the time the first waiting message has been waiting for the gap to be filled
+     * @return wait time in milliseconds
+     */
+    public long getGapWaitTime();
+
+    /**
+     * Get the longest time a message waited in the store before it was sent
+     * @return maximum wait time in milliseconds
+     */
+    public long getMaxWaitTime();
+
+    /**
+     * Get the average time a message waited in the store before it was sent
+     * @return average wait time in milliseconds
+     */
+    public double getAverageWaitTime();
+}
@@ -19,13 +19,14 @@
 
 package org.apache.synapse.message.store;
 
+import org.apache.synapse.MessageContext;
 import org.apache.synapse.commons.jmx.MBeanRegistrar;
 import org.apache.synapse.config.SynapseConfiguration;
 import org.apache.synapse.core.SynapseEnvironment;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -75,7 +76,7 @@ public abstract class AbstractMessageStore implements MessageStore {
      * List that holds the MessageStore observers registered with the Message Store
      */
     protected List<MessageStoreObserver> messageStoreObservers =
-            new ArrayList<MessageStoreObserver>();
+            new CopyOnWriteArrayList<MessageStoreObserver>();
 
     protected Lock lock = new ReentrantLock();
 
@@ -92,12 +93,22 @@ public abstract class AbstractMessageStore implements MessageStore {
 
     public void setName(String name) {
         this.name = name;
-        messageStoreMBean = new MessageStoreView(name, this);
+        messageStoreMBean = createMessageStoreView(name);
         MBeanRegistrar.getInstance().registerMBean(messageStoreMBean,
                 "MessageStore", this.name);
     }
 
 
+    /**
+     * Create the JMX view of this message store
+     *
+     * @param name name of the message store
+     * @return the view to be registered
+     */
+    protected MessageStoreView createMessageStoreView(String name) {
+        return new MessageStoreView(name, this);
+    }
+
     public void registerObserver(MessageStoreObserver observer) {
         if(observer != null && !messageStoreObservers.contains(observer)) {
             messageStoreObservers.add(observer);
@@ -120,6 +131,16 @@ public abstract class AbstractMessageStore implements MessageStore {
         }
     }
 
+    /**
+     * Notify Message Addition to the observers, passing them the Message itself
+     * @param messageContext the Message added.
+     */
+    protected void notifyMessageAddition(MessageContext messageContext) {
+        for(MessageStoreObserver o : messageStoreObservers) {
+            o.messageAdded(messageContext);
+        }
+    }
+
     /**
      * Notify Message removal to the observers
      * @param messageId of the Message added
@@ -47,7 +47,7 @@ public class InMemoryMessageStore extends AbstractMessageStore {
                 messageContext.getEnvelope().build();
                 messageList.offer(messageContext);
                 // Notify observers
-                notifyMessageAddition(messageContext.getMessageID());
+                notifyMessageAddition(messageContext);
                 if (log.isDebugEnabled()) {
                     log.debug("Message with id " + messageContext.getMessageID() + " stored");
                 }
@@ -108,6 +108,25 @@ public class InMemoryMessageStore extends AbstractMessageStore {
         }
     }
 
+    public List<MessageContext> get(int from, int to) {
+        lock.lock();
+        try {
+            List<MessageContext> returnList = new ArrayList<MessageContext>();
+            int i = 0;
+            for (MessageContext msgCtx : messageList) {
+                if (i >= to) {
+                    break;
+                }
+                if (i++ >= from) {
+                    returnList.add(msgCtx);
+                }
+            }
+            return returnList;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     public MessageContext remove(String messageID) {
         lock.lock();
         try {
@@ -0,0 +1,610 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.message.store;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseException;
+import org.apache.synapse.core.SynapseEnvironment;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+/**
+ * A message store which keeps the messages in a journal on the disk, so that the stored
+ * messages survive a restart of Synapse, and a large number of stored messages does not take up
+ * the heap. Only the locations of the messages in the journal are kept in memory, and a message
+ * is read back from the journal when it is taken from the store.
+ * <p/>
+ * Storing a message appends it to the journal, and removing a message appends a record of the
+ * removal. Parts of the journal are deleted once all the messages in them have been removed.
+ * When the oldest part of the journal is mostly made of removed messages, or the journal as a
+ * whole is, the messages left in it are copied to the end of the journal so that it can be
+ * deleted. Hence a message which stays in the store for long does not keep the journal
+ * written after it on the disk.
+ * By default a message is flushed to the disk before it is accepted by the store. Messages
+ * stored concurrently are flushed together. The following parameters are supported.
+ * <ul>
+ * <li>store.directory - directory of the journal, by default repository/message-stores/[name]
+ * in the Synapse home directory</li>
+ * <li>store.segment.size - size of the journal files in bytes, 16MB by default</li>
+ * <li>store.sync - whether messages are flushed to the disk before they are accepted, true by
+ * default</li>
+ * </ul>
+ * Messages are converted to a compact binary form when stored, which keeps the envelope, the
+ * addressing and transport information, and the properties with string, number or boolean
+ * values. Other properties are lost.
+ */
+public class JournaledMessageStore extends AbstractMessageStore {
+
+    private static final Log log = LogFactory.getLog(JournaledMessageStore.class);
+
+    public static final String STORE_DIRECTORY = "store.directory";
+    public static final String SEGMENT_SIZE = "store.segment.size";
+    public static final String SYNC = "store.sync";
+
+    private static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+
+    private volatile MessageJournal journal;
+
+    private boolean sync = true;
+
+    /** The stored messages by sequence number, in the order they were stored */
+    private final LinkedHashMap<Long, StoredMessage> messages =
+            new LinkedHashMap<Long, StoredMessage>();
+
+    private long nextSequence = 1;
+
+    /** Bytes taken by the stored messages in each journal segment, by segment id */
+    private final Map<Integer, Long> liveBytes = new HashMap<Integer, Long>();
+
+    /** Bytes taken by the stored messages in the journal */
+    private long totalLiveBytes = 0;
+
+    /** The message last returned by peek, so that it is not read again from the journal */
+    private long peekedSequence = -1;
+    private MessageContext peekedMessage;
+
+    public void init(SynapseEnvironment se) {
+        super.init(se);
+
+        File directory = getDirectory(se);
+        int segmentSize = DEFAULT_SEGMENT_SIZE;
+        if (parameters != null && parameters.get(SEGMENT_SIZE) != null) {
+            String value = parameters.get(SEGMENT_SIZE).toString().trim();
+            try {
+                segmentSize = Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                handleException("Invalid value specified for the parameter " + SEGMENT_SIZE +
+                        " of the message store : " + name + " : " + value, e);
+            }
+            if (segmentSize <= MessageJournal.HEADER_SIZE) {
+                handleException("The parameter " + SEGMENT_SIZE + " of the message store : " +
+                        name + " must be larger than " + MessageJournal.HEADER_SIZE +
+                        " bytes : " + value);
+            }
+        }
+        if (parameters != null && parameters.get(SYNC) != null) {
+            sync = Boolean.parseBoolean(parameters.get(SYNC).toString());
+        }
+
+        lock.lock();
+        try {
+            journal = new MessageJournal(directory, segmentSize,
+                    new MessageJournal.RecordHandler() {
+                        public void handle(MessageJournal.Location location, ByteBuffer record) {
+                            recover(location, record);
+                        }
+                    });
+            // messages copied while compacting are found after the messages stored later,
+            // restore the order in which they were stored
+            Map<Long, StoredMessage> recovered = new TreeMap<Long, StoredMessage>(messages);
+            messages.clear();
+            messages.putAll(recovered);
+            compactJournal();
+        } catch (IOException e) {
+            handleException("Error opening the journal of the message store : " + name +
+                    " in : " + directory, e);
+        } finally {
+            lock.unlock();
+        }
+
+        log.info("Message store : " + name + " recovered " + messages.size() +
+                " message(s) from : " + directory);
+    }
+
+    public void destroy() {
+        lock.lock();
+        try {
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+            messages.clear();
+            liveBytes.clear();
+            totalLiveBytes = 0;
+            clearPeeked();
+        } finally {
+            lock.unlock();
+        }
+        super.destroy();
+    }
+
+    public boolean offer(MessageContext messageContext) {
+        if (messageContext == null) {
+            return true;
+        }
+
+        String messageId = messageContext.getMessageID();
+        byte[] message = MessageCodec.encode(messageContext);
+        byte[] id = toBytes(messageId);
+        ByteBuffer record = ByteBuffer.allocate(1 + 8 + 4 + id.length + message.length);
+        record.put(ADD).putLong(0).putInt(id.length).put(id).put(message);
+
+        lock.lock();
+        try {
+            long sequence = nextSequence++;
+            record.putLong(1, sequence);
+            MessageJournal.Location location = getJournal().append(record.array());
+            messages.put(sequence, new StoredMessage(messageId, location));
+            addLiveBytes(location);
+        } catch (IOException e) {
+            handleException("Error storing the message with id : " + messageId, e);
+        } finally {
+            lock.unlock();
+        }
+
+        if (sync) {
+            try {
+                getJournal().sync();
+            } catch (IOException e) {
+                handleException("Error flushing the message with id : " + messageId, e);
+            }
+        }
+
+        notifyMessageAddition(messageContext);
+        if (log.isDebugEnabled()) {
+            log.debug("Message with id " + messageId + " stored");
+        }
+        return true;
+    }
+
+    public MessageContext poll() {
+        MessageContext synCtx;
+        lock.lock();
+        try {
+            Map.Entry<Long, StoredMessage> head = getHead();
+            if (head == null) {
+                return null;
+            }
+            synCtx = read(head.getKey(), head.getValue());
+            removeMessage(head.getKey());
+        } finally {
+            lock.unlock();
+        }
+        notifyMessageRemoval(synCtx.getMessageID());
+        return synCtx;
+    }
+
+    public MessageContext peek() {
+        lock.lock();
+        try {
+            Map.Entry<Long, StoredMessage> head = getHead();
+            if (head == null) {
+                return null;
+            }
+            if (peekedSequence != head.getKey()) {
+                peekedMessage = read(head.getKey(), head.getValue());
+                peekedSequence = head.getKey();
+            }
+            return peekedMessage;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public MessageContext remove() throws NoSuchElementException {
+        MessageContext synCtx = poll();
+        if (synCtx == null) {
+            throw new NoSuchElementException("Message store : " + name + " is empty");
+        }
+        return synCtx;
+    }
+
+    public void clear() {
+        List<String> removed = new ArrayList<String>();
+        lock.lock();
+        try {
+            for (StoredMessage message : messages.values()) {
+                removed.add(message.messageId);
+            }
+            for (Long sequence : new ArrayList<Long>(messages.keySet())) {
+                removeMessage(sequence);
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (String messageId : removed) {
+            notifyMessageRemoval(messageId);
+        }
+    }
+
+    public MessageContext remove(String messageID) {
+        if (messageID == null) {
+            return null;
+        }
+
+        MessageContext synCtx = null;
+        lock.lock();
+        try {
+            for (Map.Entry<Long, StoredMessage> entry : messages.entrySet()) {
+                if (messageID.equals(entry.getValue().messageId)) {
+                    synCtx = read(entry.getKey(), entry.getValue());
+                    removeMessage(entry.getKey());
+                    break;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (synCtx != null) {
+            notifyMessageRemoval(messageID);
+        }
+        return synCtx;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return messages.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public MessageContext get(int index) {
+        lock.lock();
+        try {
+            if (index >= 0 && index < messages.size()) {
+                int i = 0;
+                for (Map.Entry<Long, StoredMessage> entry : messages.entrySet()) {
+                    if (i++ == index) {
+                        return read(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public List<MessageContext> get(int from, int to) {
+        lock.lock();
+        try {
+            List<MessageContext> list = new ArrayList<MessageContext>();
+            int i = 0;
+            for (Map.Entry<Long, StoredMessage> entry : messages.entrySet()) {
+                if (i >= to) {
+                    break;
+                }
+                if (i++ >= from) {
+                    list.add(read(entry.getKey(), entry.getValue()));
+                }
+            }
+            return list;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public List<MessageContext> getAll() {
+        lock.lock();
+        try {
+            List<MessageContext> list = new ArrayList<MessageContext>(messages.size());
+            for (Map.Entry<Long, StoredMessage> entry : messages.entrySet()) {
+                list.add(read(entry.getKey(), entry.getValue()));
+            }
+            return list;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public MessageContext get(String messageId) {
+        if (messageId == null) {
+            return null;
+        }
+        lock.lock();
+        try {
+            for (Map.Entry<Long, StoredMessage> entry : messages.entrySet()) {
+                if (messageId.equals(entry.getValue().messageId)) {
+                    return read(entry.getKey(), entry.getValue());
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the ids of the stored messages, without reading the messages
+     */
+    public List<String> getMessageIds() {
+        lock.lock();
+        try {
+            List<String> ids = new ArrayList<String>(messages.size());
+            for (StoredMessage message : messages.values()) {
+                ids.add(message.messageId);
+            }
+            return ids;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of files in the journal
+     */
+    public int getSegmentCount() {
+        return journal != null ? journal.getSegmentCount() : 0;
+    }
+
+    /**
+     * @return size of the journal on the disk in bytes
+     */
+    public long getJournalSize() {
+        return journal != null ? journal.getSize() : 0;
+    }
+
+    /**
+     * @return number of records (stored and removed messages) written to the journal
+     */
+    public long getJournalWriteCount() {
+        return journal != null ? journal.getAppendCount() : 0;
+    }
+
+    /**
+     * @return number of times the journal has been flushed to the disk
+     */
+    public long getJournalSyncCount() {
+        return journal != null ? journal.getSyncCount() : 0;
+    }
+
+    @Override
+    protected MessageStoreView createMessageStoreView(String name) {
+        return new JournaledMessageStoreView(name, this);
+    }
+
+    private void recover(MessageJournal.Location location, ByteBuffer record) {
+        byte type = record.get();
+        long sequence = record.getLong();
+        if (type == ADD) {
+            byte[] id = new byte[record.getInt()];
+            record.get(id);
+            // a message found again has been copied while compacting the journal
+            StoredMessage previous = messages.put(sequence,
+                    new StoredMessage(fromBytes(id), location));
+            if (previous != null) {
+                removeLiveBytes(previous.location);
+            }
+            addLiveBytes(location);
+        } else if (type == REMOVE) {
+            StoredMessage removed = messages.remove(sequence);
+            if (removed != null) {
+                removeLiveBytes(removed.location);
+            }
+        }
+        nextSequence = Math.max(nextSequence, sequence + 1);
+    }
+
+    /*
+     * Remove a message, the lock must be held
+     */
+    private void removeMessage(long sequence) {
+        StoredMessage removed = messages.remove(sequence);
+        if (removed != null) {
+            removeLiveBytes(removed.location);
+        }
+        if (sequence == peekedSequence) {
+            clearPeeked();
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(1 + 8);
+        record.put(REMOVE).putLong(sequence);
+        try {
+            // removals are flushed along with the next stored message, a removal which is lost
+            // in a crash only means that the message is delivered again
+            getJournal().append(record.array());
+        } catch (IOException e) {
+            handleException("Error removing the message with sequence : " + sequence, e);
+        }
+        compactJournal();
+    }
+
+    /*
+     * Delete the oldest segments of the journal which hold no stored messages. The messages
+     * left in the oldest segment are copied to the end of the journal first, if the segment
+     * or the journal as a whole is mostly taken by removed messages. The lock must be held.
+     */
+    private void compactJournal() {
+        while (true) {
+            int first = journal.getFirstSegment();
+            if (first == journal.getActiveSegment()) {
+                return;
+            }
+            long live = getLiveBytes(first);
+            if (live > 0 && live * 2 > journal.getSegmentCapacity(first) &&
+                    totalLiveBytes * 2 > journal.getSize()) {
+                return;
+            }
+            if (live > 0) {
+                try {
+                    moveMessages(first);
+                } catch (IOException e) {
+                    log.warn("Error compacting the journal of the message store : " + name, e);
+                    return;
+                }
+            }
+            if (!journal.deleteFirstSegment()) {
+                return;
+            }
+            liveBytes.remove(first);
+        }
+    }
+
+    /*
+     * Copy the messages in the given segment to the end of the journal, the lock must be held
+     */
+    private void moveMessages(int segment) throws IOException {
+        int moved = 0;
+        for (Map.Entry<Long, StoredMessage> entry : messages.entrySet()) {
+            StoredMessage message = entry.getValue();
+            if (message.location.segment == segment) {
+                MessageJournal.Location location =
+                        journal.append(journal.read(message.location));
+                entry.setValue(new StoredMessage(message.messageId, location));
+                removeLiveBytes(message.location);
+                addLiveBytes(location);
+                moved++;
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Moved " + moved + " message(s) out of the journal segment : " + segment +
+                    " of the message store : " + name);
+        }
+    }
+
+    private long getLiveBytes(int segment) {
+        Long bytes = liveBytes.get(segment);
+        return bytes != null ? bytes : 0;
+    }
+
+    private void addLiveBytes(MessageJournal.Location location) {
+        int size = MessageJournal.HEADER_SIZE + location.length;
+        liveBytes.put(location.segment, getLiveBytes(location.segment) + size);
+        totalLiveBytes += size;
+    }
+
+    private void removeLiveBytes(MessageJournal.Location location) {
+        int size = MessageJournal.HEADER_SIZE + location.length;
+        liveBytes.put(location.segment, getLiveBytes(location.segment) - size);
+        totalLiveBytes -= size;
+    }
+
+    private Map.Entry<Long, StoredMessage> getHead() {
+        Iterator<Map.Entry<Long, StoredMessage>> it = messages.entrySet().iterator();
+        return it.hasNext() ? it.next() : null;
+    }
+
+    private MessageContext read(long sequence, StoredMessage message) {
+        if (sequence == peekedSequence) {
+            return peekedMessage;
+        }
+        ByteBuffer record = ByteBuffer.wrap(getJournal().read(message.location));
+        record.position(1 + 8);
+        record.position(record.position() + 4 + record.getInt());
+        byte[] data = new byte[record.remaining()];
+        record.get(data);
+        return MessageCodec.decode(data, synapseEnvironment);
+    }
+
+    private void clearPeeked() {
+        peekedSequence = -1;
+        peekedMessage = null;
+    }
+
+    private MessageJournal getJournal() {
+        MessageJournal current = journal;
+        if (current == null) {
+            handleException("Message store : " + name + " has not been initialized");
+        }
+        return current;
+    }
+
+    private File getDirectory(SynapseEnvironment se) {
+        if (parameters != null && parameters.get(STORE_DIRECTORY) != null) {
+            return new File(parameters.get(STORE_DIRECTORY).toString());
+        }
+
+        String synapseHome = null;
+        if (se.getServerContextInformation() != null &&
+                se.getServerContextInformation().getServerConfigurationInformation() != null) {
+            synapseHome = se.getServerContextInformation().getServerConfigurationInformation().
+                    getSynapseHome();
+        }
+        File repository = synapseHome != null ?
+                new File(synapseHome, "repository") : new File("repository");
+        return new File(new File(repository, "message-stores"), name);
+    }
+
+    private static byte[] toBytes(String s) {
+        try {
+            return s != null ? s.getBytes("UTF-8") : new byte[0];
+        } catch (IOException e) {
+            throw new SynapseException("UTF-8 is not supported", e);
+        }
+    }
+
+    private static String fromBytes(byte[] bytes) {
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (IOException e) {
+            throw new SynapseException("UTF-8 is not supported", e);
+        }
+    }
+
+    private static void handleException(String msg) {
+        log.error(msg);
+        throw new SynapseException(msg);
+    }
+
+    private static void handleException(String msg, Exception e) {
+        log.error(msg, e);
+        throw new SynapseException(msg, e);
+    }
+
+    /**
+     * A stored message, as kept in memory
+     */
+    private static final class StoredMessage {
+
+        private final String messageId;
+        private final MessageJournal.Location location;
+
+        private StoredMessage(String messageId, MessageJournal.Location location) {
+            this.messageId = messageId;
+            this.location = location;
+        }
+    }
+}
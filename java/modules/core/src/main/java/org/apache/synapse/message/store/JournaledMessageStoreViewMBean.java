@@ -0,0 +1,42 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.message.store;
+
+public interface JournaledMessageStoreViewMBean extends MessageStoreViewMBean {
+
+    /**
+     * @return the number of files in the journal of the store
+     */
+    public int getSegmentCount();
+
+    /**
+     * @return the size of the journal on the disk in bytes
+     */
+    public long getJournalSize();
+
+    /**
+     * @return the number of records (stored and removed messages) written to the journal
+     */
+    public long getJournalWriteCount();
+
+    /**
+     * @return the number of times the journal has been flushed to the disk
+     */
+    public long getJournalSyncCount();
+}
@@ -0,0 +1,301 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.message.store;
+
+import org.apache.axiom.om.OMOutputFormat;
+import org.apache.axiom.om.OMXMLBuilderFactory;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axis2.Constants;
+import org.apache.axis2.addressing.EndpointReference;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseException;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+import org.apache.synapse.transport.nhttp.NhttpConstants;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Converts messages to and from the compact binary form in which they are kept by the
+ * {@link JournaledMessageStore}. The stored form holds the envelope as serialized XML, the
+ * addressing and transport information needed to send the message on, and the message
+ * properties with a simple (string, number or boolean) value. Properties with other values
+ * cannot be restored, and are not stored.
+ */
+class MessageCodec {
+
+    private static final Log log = LogFactory.getLog(MessageCodec.class);
+
+    private static final String ENCODING = "UTF-8";
+
+    private static final byte VERSION = 1;
+
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_INTEGER = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_DOUBLE = 4;
+    private static final byte TYPE_BOOLEAN = 5;
+
+    /** Axis2 properties which are kept along with the message */
+    private static final String[] AXIS2_PROPERTIES = {
+            Constants.Configuration.HTTP_METHOD,
+            Constants.Configuration.MESSAGE_TYPE,
+            Constants.Configuration.CONTENT_TYPE,
+            NhttpConstants.REST_URL_POSTFIX
+    };
+
+    private MessageCodec() {
+    }
+
+    /**
+     * Convert a message to the stored form.
+     *
+     * @param synCtx the message
+     * @return the stored form of the message
+     */
+    static byte[] encode(MessageContext synCtx) {
+        org.apache.axis2.context.MessageContext axis2Ctx =
+                ((Axis2MessageContext) synCtx).getAxis2MessageContext();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VERSION);
+            writeString(out, synCtx.getMessageID());
+            out.writeBoolean(synCtx.isResponse());
+            out.writeBoolean(synCtx.isFaultResponse());
+
+            writeString(out, axis2Ctx.getTo() != null ? axis2Ctx.getTo().getAddress() : null);
+            writeString(out, axis2Ctx.getReplyTo() != null ?
+                    axis2Ctx.getReplyTo().getAddress() : null);
+            writeString(out, axis2Ctx.getWSAAction());
+            writeString(out, axis2Ctx.getSoapAction());
+            out.writeBoolean(axis2Ctx.isDoingREST());
+            out.writeBoolean(axis2Ctx.isDoingPOX());
+            out.writeBoolean(axis2Ctx.isDoingMTOM());
+
+            for (String name : AXIS2_PROPERTIES) {
+                Object value = axis2Ctx.getProperty(name);
+                writeString(out, value != null ? value.toString() : null);
+            }
+
+            Map<String, String> headers = new TreeMap<String, String>();
+            Object transportHeaders = axis2Ctx.getProperty(
+                    org.apache.axis2.context.MessageContext.TRANSPORT_HEADERS);
+            if (transportHeaders instanceof Map) {
+                for (Object o : ((Map) transportHeaders).entrySet()) {
+                    Map.Entry entry = (Map.Entry) o;
+                    if (entry.getKey() != null && entry.getValue() != null) {
+                        headers.put(entry.getKey().toString(), entry.getValue().toString());
+                    }
+                }
+            }
+            out.writeInt(headers.size());
+            for (Map.Entry<String, String> entry : headers.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+
+            writeProperties(out, synCtx);
+
+            ByteArrayOutputStream envelope = new ByteArrayOutputStream(1024);
+            OMOutputFormat format = new OMOutputFormat();
+            format.setCharSetEncoding(ENCODING);
+            synCtx.getEnvelope().serialize(envelope, format);
+            out.writeInt(envelope.size());
+            envelope.writeTo(out);
+
+            out.flush();
+            return bytes.toByteArray();
+        } catch (Exception e) {
+            throw new SynapseException("Error while serializing the message with id : " +
+                    synCtx.getMessageID(), e);
+        }
+    }
+
+    /**
+     * Create a message from its stored form.
+     *
+     * @param data the stored form of the message
+     * @param se   the environment in which the message is created
+     * @return the message
+     */
+    static MessageContext decode(byte[] data, SynapseEnvironment se) {
+        MessageContext synCtx = se.createMessageContext();
+        org.apache.axis2.context.MessageContext axis2Ctx =
+                ((Axis2MessageContext) synCtx).getAxis2MessageContext();
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new SynapseException("Unsupported stored message version : " + version);
+            }
+            synCtx.setMessageID(readString(in));
+            synCtx.setResponse(in.readBoolean());
+            synCtx.setFaultResponse(in.readBoolean());
+
+            String to = readString(in);
+            if (to != null) {
+                axis2Ctx.setTo(new EndpointReference(to));
+            }
+            String replyTo = readString(in);
+            if (replyTo != null) {
+                axis2Ctx.setReplyTo(new EndpointReference(replyTo));
+            }
+            axis2Ctx.setWSAAction(readString(in));
+            axis2Ctx.setSoapAction(readString(in));
+            axis2Ctx.setDoingREST(in.readBoolean());
+            axis2Ctx.setDoingPOX(in.readBoolean());
+            axis2Ctx.setDoingMTOM(in.readBoolean());
+
+            for (String name : AXIS2_PROPERTIES) {
+                String value = readString(in);
+                if (value != null) {
+                    axis2Ctx.setProperty(name, value);
+                }
+            }
+
+            int headerCount = in.readInt();
+            Map<String, String> headers = new TreeMap<String, String>(
+                    String.CASE_INSENSITIVE_ORDER);
+            for (int i = 0; i < headerCount; i++) {
+                headers.put(readString(in), readString(in));
+            }
+            axis2Ctx.setProperty(org.apache.axis2.context.MessageContext.TRANSPORT_HEADERS,
+                    headers);
+
+            readProperties(in, synCtx);
+
+            byte[] envelope = new byte[in.readInt()];
+            in.readFully(envelope);
+            SOAPEnvelope soapEnvelope = OMXMLBuilderFactory.createSOAPModelBuilder(
+                    new ByteArrayInputStream(envelope), ENCODING).getSOAPEnvelope();
+            soapEnvelope.build();
+            synCtx.setEnvelope(soapEnvelope);
+            return synCtx;
+        } catch (IOException e) {
+            throw new SynapseException("Error while reading a stored message", e);
+        } catch (SynapseException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SynapseException("Error while restoring a stored message", e);
+        }
+    }
+
+    private static void writeProperties(DataOutputStream out,
+                                        MessageContext synCtx) throws IOException {
+        Set keys = synCtx.getPropertyKeySet();
+        Map<String, Object> properties = new TreeMap<String, Object>();
+        if (keys != null) {
+            for (Object key : keys) {
+                if (!(key instanceof String)) {
+                    continue;
+                }
+                Object value = synCtx.getProperty((String) key);
+                if (value instanceof String || value instanceof Integer ||
+                        value instanceof Long || value instanceof Double ||
+                        value instanceof Boolean) {
+                    properties.put((String) key, value);
+                } else if (value != null && log.isDebugEnabled()) {
+                    log.debug("Property : " + key + " of message : " + synCtx.getMessageID() +
+                            " has a value of type : " + value.getClass().getName() +
+                            " and will not be stored");
+                }
+            }
+        }
+
+        out.writeInt(properties.size());
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            writeString(out, entry.getKey());
+            Object value = entry.getValue();
+            if (value instanceof String) {
+                out.writeByte(TYPE_STRING);
+                writeString(out, (String) value);
+            } else if (value instanceof Integer) {
+                out.writeByte(TYPE_INTEGER);
+                out.writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                out.writeByte(TYPE_LONG);
+                out.writeLong((Long) value);
+            } else if (value instanceof Double) {
+                out.writeByte(TYPE_DOUBLE);
+                out.writeDouble((Double) value);
+            } else {
+                out.writeByte(TYPE_BOOLEAN);
+                out.writeBoolean((Boolean) value);
+            }
+        }
+    }
+
+    private static void readProperties(DataInputStream in,
+                                       MessageContext synCtx) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String key = readString(in);
+            byte type = in.readByte();
+            switch (type) {
+                case TYPE_STRING:
+                    synCtx.setProperty(key, readString(in));
+                    break;
+                case TYPE_INTEGER:
+                    synCtx.setProperty(key, in.readInt());
+                    break;
+                case TYPE_LONG:
+                    synCtx.setProperty(key, in.readLong());
+                    break;
+                case TYPE_DOUBLE:
+                    synCtx.setProperty(key, in.readDouble());
+                    break;
+                case TYPE_BOOLEAN:
+                    synCtx.setProperty(key, in.readBoolean());
+                    break;
+                default:
+                    throw new IOException("Unknown property type : " + type);
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes(ENCODING);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, ENCODING);
+    }
+}
@@ -0,0 +1,439 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.message.store;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of records, kept in a directory as a sequence of memory mapped segment
+ * files of a fixed size. Records are appended to the last segment, and a new segment is started
+ * once it is full. Segments are deleted from the head of the journal once the records in them
+ * are no longer needed, which is decided by the user of the journal. The user may copy the
+ * records still needed out of the oldest segment, by appending them again, so that the segment
+ * can be deleted.
+ * <p/>
+ * Each record is written with its length and checksum, so that a record which was only partly
+ * written when the process stopped is detected, and ignored along with anything after it, when
+ * the journal is opened again. Appended records reach the disk when {@link #sync()} is called.
+ * Threads which call sync at the same time share a single flush of the segment (group commit),
+ * hence the cost of flushing is spread over all the records appended in the meantime.
+ */
+class MessageJournal {
+
+    private static final Log log = LogFactory.getLog(MessageJournal.class);
+
+    /** Length and checksum of a record */
+    static final int HEADER_SIZE = 8;
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("(\\d+)\\.journal");
+
+    /**
+     * Receives the records found in the journal when it is opened
+     */
+    interface RecordHandler {
+        void handle(Location location, ByteBuffer record);
+    }
+
+    /**
+     * Position of a record in the journal
+     */
+    static final class Location {
+
+        final int segment;
+        final int offset;
+        final int length;
+
+        private Location(int segment, int offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final File directory;
+    private final int segmentSize;
+
+    /** The segments of the journal, by id */
+    private final TreeMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+
+    private Segment active;
+
+    private final CRC32 crc = new CRC32();
+
+    /** Number of records appended, guarded by this journal */
+    private long appendCount = 0;
+
+    private final Object syncLock = new Object();
+    private boolean syncing = false;
+    private long syncedCount = 0;
+    private long syncCount = 0;
+
+    /**
+     * Open the journal in the given directory, creating it if it does not exist.
+     *
+     * @param directory   the directory holding the segment files
+     * @param segmentSize size of a segment file in bytes
+     * @param handler     receives the records already in the journal, in the order they were
+     *                    appended
+     * @throws IOException if the journal cannot be read
+     */
+    MessageJournal(File directory, int segmentSize, RecordHandler handler) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Unable to create the directory : " + directory);
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getName());
+                if (matcher.matches()) {
+                    int id = Integer.parseInt(matcher.group(1));
+                    segments.put(id, new Segment(id, file, (int) file.length()));
+                }
+            }
+        }
+
+        for (Segment segment : segments.values()) {
+            segment.recover(handler);
+            active = segment;
+        }
+        if (active == null) {
+            active = createSegment(1, segmentSize);
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Opened the journal in : " + directory + " with " + segments.size() +
+                    " segment(s)");
+        }
+    }
+
+    /**
+     * Append a record to the journal. The record is not guaranteed to be on the disk until
+     * {@link #sync()} is called.
+     *
+     * @param record the record
+     * @return the location of the record
+     * @throws IOException if a new segment file cannot be created
+     */
+    synchronized Location append(byte[] record) throws IOException {
+        int size = HEADER_SIZE + record.length;
+        if (active.position + size > active.capacity) {
+            // the segment is full, start a new one large enough to hold the record
+            active.force();
+            active = createSegment(active.id + 1, Math.max(segmentSize, size));
+        }
+
+        crc.reset();
+        crc.update(record, 0, record.length);
+
+        ByteBuffer buffer = active.buffer;
+        int offset = active.position;
+        buffer.position(offset + 4);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(record);
+        // the length is written last, a record without a length is ignored when recovering
+        buffer.putInt(offset, record.length);
+
+        active.position = offset + size;
+        appendCount++;
+        return new Location(active.id, offset, record.length);
+    }
+
+    /**
+     * Read a record from the journal.
+     *
+     * @param location location of the record, as returned by {@link #append(byte[])}
+     * @return the record
+     */
+    synchronized byte[] read(Location location) {
+        Segment segment = segments.get(location.segment);
+        if (segment == null) {
+            throw new IllegalStateException("Segment : " + location.segment +
+                    " of the journal in : " + directory + " has been deleted");
+        }
+        byte[] record = new byte[location.length];
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(location.offset + HEADER_SIZE);
+        buffer.get(record);
+        return record;
+    }
+
+    /**
+     * Make sure that all the records appended so far are on the disk. If another thread is
+     * already flushing the journal, this waits for it, and then flushes the records appended
+     * while it did, if any.
+     *
+     * @throws IOException if interrupted while waiting for the journal to be flushed
+     */
+    void sync() throws IOException {
+        long target;
+        synchronized (this) {
+            target = appendCount;
+        }
+
+        while (true) {
+            synchronized (syncLock) {
+                while (syncing && syncedCount < target) {
+                    try {
+                        syncLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while flushing the journal");
+                    }
+                }
+                if (syncedCount >= target) {
+                    return;
+                }
+                syncing = true;
+            }
+
+            Segment segment;
+            long upTo;
+            synchronized (this) {
+                segment = active;
+                upTo = appendCount;
+            }
+
+            boolean flushed = false;
+            try {
+                // earlier segments were flushed when they became full
+                segment.force();
+                flushed = true;
+            } finally {
+                synchronized (syncLock) {
+                    syncing = false;
+                    if (flushed) {
+                        syncedCount = Math.max(syncedCount, upTo);
+                        syncCount++;
+                    }
+                    syncLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Delete the oldest segment of the journal, unless it is the segment being appended to.
+     * The segment being appended to is flushed first, so that the records copied out of the
+     * deleted segment are not lost.
+     *
+     * @return true if the segment was deleted
+     */
+    synchronized boolean deleteFirstSegment() {
+        Segment segment = segments.firstEntry().getValue();
+        if (segment == active) {
+            return false;
+        }
+        active.force();
+        segments.remove(segment.id);
+        segment.delete();
+        return true;
+    }
+
+    /**
+     * @return id of the oldest segment
+     */
+    synchronized int getFirstSegment() {
+        return segments.firstKey();
+    }
+
+    /**
+     * @return id of the segment being appended to
+     */
+    synchronized int getActiveSegment() {
+        return active.id;
+    }
+
+    /**
+     * @param segmentId id of a segment
+     * @return size of the segment file in bytes, or 0 if there is no such segment
+     */
+    synchronized int getSegmentCapacity(int segmentId) {
+        Segment segment = segments.get(segmentId);
+        return segment != null ? segment.capacity : 0;
+    }
+
+    synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * @return the size of the segment files in bytes
+     */
+    synchronized long getSize() {
+        long size = 0;
+        for (Segment segment : segments.values()) {
+            size += segment.capacity;
+        }
+        return size;
+    }
+
+    synchronized long getAppendCount() {
+        return appendCount;
+    }
+
+    long getSyncCount() {
+        synchronized (syncLock) {
+            return syncCount;
+        }
+    }
+
+    /**
+     * Flush and close the journal
+     */
+    synchronized void close() {
+        active.force();
+        for (Segment segment : segments.values()) {
+            segment.close();
+        }
+        segments.clear();
+    }
+
+    private Segment createSegment(int id, int capacity) throws IOException {
+        Segment segment = new Segment(id, new File(directory,
+                String.format("%010d.journal", id)), capacity);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    /**
+     * A memory mapped segment file
+     */
+    private static final class Segment {
+
+        private final int id;
+        private final File file;
+        private final int capacity;
+        private final RandomAccessFile raf;
+        private final MappedByteBuffer buffer;
+
+        /** Position at which the next record will be written */
+        private int position = 0;
+
+        /** Set once the file is unmapped, guarded by this segment */
+        private boolean closed = false;
+
+        private Segment(int id, File file, int capacity) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.capacity = capacity;
+            this.raf = new RandomAccessFile(file, "rw");
+            if (raf.length() < capacity) {
+                raf.setLength(capacity);
+            }
+            this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+
+        /**
+         * Read the records of the segment, up to the first record which is not complete
+         */
+        private void recover(RecordHandler handler) {
+            CRC32 crc = new CRC32();
+            ByteBuffer in = buffer.duplicate();
+            while (position + HEADER_SIZE <= capacity) {
+                int length = in.getInt(position);
+                if (length <= 0 || position + HEADER_SIZE + length > capacity) {
+                    break;
+                }
+
+                byte[] record = new byte[length];
+                in.position(position + HEADER_SIZE);
+                in.get(record);
+                crc.reset();
+                crc.update(record, 0, length);
+                if ((int) crc.getValue() != in.getInt(position + 4)) {
+                    log.warn("Ignoring an incomplete record at : " + position + " of the " +
+                            "journal segment : " + file);
+                    break;
+                }
+
+                handler.handle(new Location(id, position, length), ByteBuffer.wrap(record));
+                position += HEADER_SIZE + length;
+            }
+        }
+
+        /*
+         * Synchronized with close, as a segment may be flushed by sync while it is deleted
+         */
+        private synchronized void force() {
+            if (!closed) {
+                buffer.force();
+            }
+        }
+
+        private synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            unmap(buffer);
+            try {
+                raf.close();
+            } catch (IOException e) {
+                log.warn("Error closing the journal segment : " + file, e);
+            }
+        }
+
+        private void delete() {
+            close();
+            if (!file.delete()) {
+                log.warn("Unable to delete the journal segment : " + file);
+            } else if (log.isDebugEnabled()) {
+                log.debug("Deleted the journal segment : " + file);
+            }
+        }
+
+        /**
+         * Release the mapping of the file right away rather than when the buffer is garbage
+         * collected, which may not happen before many more segments have been mapped
+         *
+         * @param buffer the mapped buffer, which must not be accessed afterwards
+         */
+        private static void unmap(MappedByteBuffer buffer) {
+            try {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            } catch (Exception e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Unable to unmap the journal segment, it will be unmapped when " +
+                            "garbage collected", e);
+                }
+            }
+        }
+    }
+}
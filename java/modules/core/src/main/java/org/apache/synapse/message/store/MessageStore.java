@@ -26,6 +26,7 @@ import org.apache.synapse.SynapseArtifact;
 import org.apache.synapse.Nameable;
 import org.apache.synapse.message.processors.MessageProcessor;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -99,6 +100,26 @@ public interface MessageStore extends SynapseArtifact, Nameable, ManagedLifecycl
      */
     public MessageContext get(int index);
 
+    /**
+     * Return the Messages in the given range of index positions. The default implementation
+     * reads the messages one position at a time, stores that can read the range at once
+     * should override it
+     * @param from position of the first message, inclusive
+     * @param to position after the last message, exclusive
+     * @return List of the Messages in the range, which is shorter if the store has less messages
+     */
+    default List<MessageContext> get(int from, int to) {
+        List<MessageContext> messages = new ArrayList<MessageContext>();
+        for (int i = from; i < to; i++) {
+            MessageContext messageContext = get(i);
+            if (messageContext == null) {
+                break;
+            }
+            messages.add(messageContext);
+        }
+        return messages;
+    }
+
     /**
      * Get the All messages in the Message store without removing them from the queue
      * @return List of all Messages
@@ -18,6 +18,7 @@
  */
 package org.apache.synapse.message.store;
 
+import org.apache.synapse.MessageContext;
 
 /**
  * An implementation of this interface can be registered with a Message store instance to receive
@@ -28,10 +29,19 @@ public interface MessageStoreObserver {
 
     /**
      * Method invoked when a message is added to the store
-     * @param messageId of the message that was added to the Message store
+     * @param messageId of the Message that was added to the Message store
      */
     public void messageAdded(String messageId);
 
+    /**
+     * Method invoked when a message is added to the store, with the message itself. Observers
+     * that need the message should override this, rather than reading it back from the store
+     * @param messageContext the message that was added to the Message store
+     */
+    default void messageAdded(MessageContext messageContext) {
+        messageAdded(messageContext.getMessageID());
+    }
+
     /**
      * Method invoked when a message is removed from the store
      * @param messageId of the Message that was removed
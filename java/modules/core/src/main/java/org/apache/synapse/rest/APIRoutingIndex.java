@@ -0,0 +1,154 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.rest;
+
+import org.apache.synapse.config.xml.rest.VersionStrategyFactory;
+
+import java.util.*;
+
+/**
+ * An immutable routing index over a set of APIs. API contexts (followed by the version
+ * segment for URL based versioning) are compiled into a trie of path segments, so locating
+ * the APIs which may accept a given request path only costs a walk over the segments of
+ * that path, regardless of how many APIs are deployed. The APIs returned by this index are
+ * only candidates - host, port, protocol and header based version checks are still carried
+ * out by the API itself. A new index should be built whenever the set of APIs changes.
+ */
+public class APIRoutingIndex {
+
+    private final Node root = new Node();
+    private final List<API> defaultAPIs = new ArrayList<API>();
+    private final Map<String,List<API>> apisByName = new HashMap<String,List<API>>();
+    private final int size;
+
+    public APIRoutingIndex(Collection<API> apis) {
+        int count = 0;
+        for (API api : apis) {
+            String apiName = api.getAPIName();
+            List<API> named = apisByName.get(apiName);
+            if (named == null) {
+                named = new ArrayList<API>(1);
+                apisByName.put(apiName, named);
+            }
+            named.add(api);
+
+            if ("/".equals(api.getContext())) {
+                defaultAPIs.add(api);
+            } else {
+                Node node = root;
+                for (String segment : getSegments(api.getContext())) {
+                    node = node.getOrCreateChild(segment);
+                }
+                if (VersionStrategyFactory.TYPE_URL.equals(
+                        api.getVersionStrategy().getVersionType())) {
+                    node = node.getOrCreateChild(api.getVersion());
+                }
+                node.apis.add(api);
+            }
+            count++;
+        }
+        size = count;
+    }
+
+    /**
+     * Find the non-default APIs whose context (and URL version, if any) is a segment
+     * prefix of the given request path. Candidates with longer contexts are returned first.
+     *
+     * @param path Full request path, possibly including a query string
+     * @return List of candidate APIs, which may be empty
+     */
+    public List<API> getCandidates(String path) {
+        if (path == null || !path.startsWith("/")) {
+            return Collections.emptyList();
+        }
+
+        int index = path.indexOf('?');
+        if (index != -1) {
+            path = path.substring(0, index);
+        }
+
+        LinkedList<API> candidates = new LinkedList<API>();
+        Node node = root;
+        for (String segment : getSegments(path)) {
+            node = node.children.get(segment);
+            if (node == null) {
+                break;
+            }
+            for (int i = node.apis.size() - 1; i >= 0; i--) {
+                candidates.addFirst(node.apis.get(i));
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Get the APIs deployed on the root ('/') context. These should only be considered
+     * after all the candidates returned by getCandidates have been rejected.
+     *
+     * @return List of default APIs
+     */
+    public List<API> getDefaultAPIs() {
+        return defaultAPIs;
+    }
+
+    /**
+     * Get all the APIs (of any version) with the given name
+     *
+     * @param apiName Name of the API, excluding any version information
+     * @return List of matching APIs, which may be empty
+     */
+    public List<API> getAPIsByName(String apiName) {
+        List<API> apis = apisByName.get(apiName);
+        if (apis == null) {
+            return Collections.emptyList();
+        }
+        return apis;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static String[] getSegments(String path) {
+        path = RESTUtils.trimTrailingSlashes(path);
+        if (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        if ("".equals(path)) {
+            return new String[] {};
+        }
+        return path.split("/");
+    }
+
+    private static class Node {
+
+        private final Map<String,Node> children = new HashMap<String,Node>();
+        private final List<API> apis = new ArrayList<API>(1);
+
+        private Node getOrCreateChild(String segment) {
+            Node child = children.get(segment);
+            if (child == null) {
+                child = new Node();
+                children.put(segment, child);
+            }
+            return child;
+        }
+    }
+}
@@ -25,8 +25,6 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.core.axis2.Axis2MessageContext;
 
-import java.util.*;
-
 /**
  * This class is responsible for receiving requests from various sources and dispatching
  * them to a suitable REST API for further processing. This is the main entry point for
@@ -65,12 +63,29 @@ public class RESTRequestHandler {
     }
 
     private boolean dispatchToAPI(MessageContext synCtx) {
-        Collection<API> apiSet = synCtx.getEnvironment().getSynapseConfiguration().getAPIs();
-        API defaultAPI = null;
-        for (API api : apiSet) {
-            if ("/".equals(api.getContext())) {
-                defaultAPI = api;
-            } else if (api.canProcess(synCtx)) {
+        APIRoutingIndex index = synCtx.getEnvironment().getSynapseConfiguration().
+                getAPIRoutingIndex();
+        if (index.size() == 0) {
+            return false;
+        }
+
+        if (synCtx.isResponse()) {
+            String apiName = (String) synCtx.getProperty(RESTConstants.SYNAPSE_REST_API);
+            if (apiName == null) {
+                return false;
+            }
+            for (API api : index.getAPIsByName(apiName)) {
+                if (api.canProcess(synCtx)) {
+                    api.process(synCtx);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        String path = RESTUtils.getFullRequestPath(synCtx);
+        for (API api : index.getCandidates(path)) {
+            if (api.canProcess(synCtx)) {
                 if (log.isDebugEnabled()) {
                     log.debug("Located specific API: " + api.getName() + " for processing message");
                 }
@@ -79,9 +94,11 @@ public class RESTRequestHandler {
             }
         }
 
-        if (defaultAPI != null && defaultAPI.canProcess(synCtx)) {
-            defaultAPI.process(synCtx);
-            return true;
+        for (API api : index.getDefaultAPIs()) {
+            if (api.canProcess(synCtx)) {
+                api.process(synCtx);
+                return true;
+            }
         }
 
         return false;
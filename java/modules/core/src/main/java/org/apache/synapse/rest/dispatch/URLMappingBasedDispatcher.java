@@ -57,10 +57,11 @@ public class URLMappingBasedDispatcher implements RESTDispatcher {
             }
         }
 
+        String[] segments = URLMappingHelper.getPathSegments(url);
         int maxLength = 0;
         Resource matchedResource = null;
         for (int i = 0; i < count; i++) {
-            int length = mappings.get(i).getPrefixMatchingLength(url);
+            int length = mappings.get(i).getPrefixMatchingLength(segments);
             if (length > maxLength) {
                 maxLength = length;
                 matchedResource = filteredResources.get(i);
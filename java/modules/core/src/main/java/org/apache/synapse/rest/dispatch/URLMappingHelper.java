@@ -63,17 +63,26 @@ public class URLMappingHelper implements DispatcherHelper {
     }
 
     public int getPrefixMatchingLength(String url) {
+        if (pathSegments != null) {
+            return getPrefixMatchingLength(getPathSegments(url));
+        }
+        return 0;
+    }
+
+    /**
+     * Same as getPrefixMatchingLength(String), but operates on a request path which has
+     * already been broken into segments using getPathSegments, so a dispatcher can split
+     * the path once and match it against many mappings.
+     *
+     * @param segments Segments of the request path
+     * @return Number of matching path segments or 0 if the mapping does not match
+     */
+    public int getPrefixMatchingLength(String[] segments) {
         if (pathSegments != null) {
             if (pathSegments.length == 0) {
                 return 1;
             }
 
-            url = RESTUtils.trimSlashes(url);
-            int index = url.indexOf('?');
-            if (index != -1) {
-                url = url.substring(0, index);
-            }
-            String[] segments = url.split("/");
             int matchingLength = 0;
             for (int i = 0; i < pathSegments.length; i++) {
                 if (segments.length > i) {
@@ -91,6 +100,15 @@ public class URLMappingHelper implements DispatcherHelper {
         return 0;
     }
 
+    public static String[] getPathSegments(String url) {
+        url = RESTUtils.trimSlashes(url);
+        int index = url.indexOf('?');
+        if (index != -1) {
+            url = url.substring(0, index);
+        }
+        return url.split("/");
+    }
+
     public String getString() {
         if (pathSegments != null) {
             StringBuilder str = new StringBuilder("");
@@ -0,0 +1,123 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.util;
+
+import org.apache.axiom.om.OMAbstractFactory;
+import org.apache.axiom.om.OMOutputFormat;
+import org.apache.axiom.om.OMXMLBuilderFactory;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axis2.Constants;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A point in time copy of the envelope of a message, from which any number of independent
+ * envelopes can be created, as needed when a message is fanned out to several targets.
+ * <p/>
+ * Where possible the snapshot holds the serialized envelope, shared by all the envelopes
+ * created from it. Those envelopes are built from the shared content on demand, as they are
+ * accessed, hence a copy which is only relayed is streamed out without ever being built, while
+ * a copy which is modified gets a tree of its own. Messages with content which does not
+ * survive a round trip through XML text (attachments, binary or non XML payloads) are copied
+ * by cloning the envelope instead, as {@link MessageHelper#cloneSOAPEnvelope} does.
+ */
+public class EnvelopeSnapshot {
+
+    private static final Log log = LogFactory.getLog(EnvelopeSnapshot.class);
+
+    private static final String ENCODING = "UTF-8";
+
+    /** Message types whose payload is plain XML */
+    private static final Set<String> XML_MESSAGE_TYPES = new HashSet<String>(Arrays.asList(
+            "text/xml", "application/soap+xml", "application/xml"));
+
+    private final SOAPEnvelope envelope;
+
+    /** The serialized envelope, or null if the copies are made by cloning the envelope */
+    private final byte[] content;
+
+    /**
+     * Take a snapshot of the envelope of the given message. The message may be modified
+     * freely once this returns.
+     *
+     * @param synCtx the message
+     */
+    public EnvelopeSnapshot(MessageContext synCtx) {
+        byte[] serialized = null;
+        if (isSerializable(synCtx)) {
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                OMOutputFormat format = new OMOutputFormat();
+                format.setCharSetEncoding(ENCODING);
+                synCtx.getEnvelope().serialize(out, format);
+                serialized = out.toByteArray();
+            } catch (Exception e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Unable to serialize the envelope, it will be cloned instead", e);
+                }
+            }
+        }
+
+        this.content = serialized;
+        this.envelope = serialized == null ?
+                MessageHelper.cloneSOAPEnvelope(synCtx.getEnvelope()) : null;
+    }
+
+    /**
+     * @return a new envelope holding the content of the snapshot
+     */
+    public SOAPEnvelope newEnvelope() {
+        if (content == null) {
+            return MessageHelper.cloneSOAPEnvelope(envelope);
+        }
+        return OMXMLBuilderFactory.createSOAPModelBuilder(
+                new ByteArrayInputStream(content), ENCODING).getSOAPEnvelope();
+    }
+
+    private static boolean isSerializable(MessageContext synCtx) {
+        SOAPEnvelope envelope = synCtx.getEnvelope();
+        if (envelope == null ||
+                envelope.getOMFactory().getMetaFactory() != OMAbstractFactory.getMetaFactory()) {
+            // keep envelopes of other object models (e.g. DOOM) as they are
+            return false;
+        }
+
+        if (synCtx instanceof Axis2MessageContext) {
+            org.apache.axis2.context.MessageContext mc =
+                    ((Axis2MessageContext) synCtx).getAxis2MessageContext();
+            if (mc.isDoingMTOM() || mc.isDoingSwA()) {
+                return false;
+            }
+            Object messageType = mc.getProperty(Constants.Configuration.MESSAGE_TYPE);
+            if (messageType != null && !XML_MESSAGE_TYPES.contains(messageType)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
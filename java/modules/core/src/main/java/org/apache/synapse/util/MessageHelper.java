@@ -80,13 +80,30 @@ public class MessageHelper {
      * @see MessageHelper#cloneAxis2MessageContext 
      */
     public static MessageContext cloneMessageContext(MessageContext synCtx) throws AxisFault {
+        return cloneMessageContext(synCtx, null);
+    }
+
+    /**
+     * Clone the message context as {@link #cloneMessageContext(MessageContext)} does, but give
+     * the new message the given envelope instead of a copy of the envelope of the original.
+     * This avoids copying (and building) a payload which is going to be replaced anyway.
+     *
+     * @param synCtx - this will be cloned
+     * @param envelope - the envelope of the new message, or null to use a clone of the
+     *          envelope of the original message
+     * @return cloned Synapse MessageContext
+     * @throws AxisFault if there is a failure in creating the new Synapse MC or in a failure in
+     *          cloning the underlying axis2 MessageContext
+     */
+    public static MessageContext cloneMessageContext(MessageContext synCtx, SOAPEnvelope envelope)
+            throws AxisFault {
 
         // creates the new MessageContext and clone the internal axis2 MessageContext
         // inside the synapse message context and place that in the new one
         MessageContext newCtx = synCtx.getEnvironment().createMessageContext();
         Axis2MessageContext axis2MC = (Axis2MessageContext) newCtx;
-        axis2MC.setAxis2MessageContext(
-            cloneAxis2MessageContext(((Axis2MessageContext) synCtx).getAxis2MessageContext()));
+        axis2MC.setAxis2MessageContext(cloneAxis2MessageContext(
+                ((Axis2MessageContext) synCtx).getAxis2MessageContext(), envelope));
 
         newCtx.setConfiguration(synCtx.getConfiguration());
         newCtx.setEnvironment(synCtx.getEnvironment());
@@ -167,9 +184,25 @@ public class MessageHelper {
      */
     public static org.apache.axis2.context.MessageContext cloneAxis2MessageContext(
         org.apache.axis2.context.MessageContext mc) throws AxisFault {
+        return cloneAxis2MessageContext(mc, null);
+    }
+
+    /**
+     * Clone the axis2 message context as {@link #cloneAxis2MessageContext(
+     * org.apache.axis2.context.MessageContext)} does, but give the new message the given envelope.
+     *
+     * @param mc - this will be cloned
+     * @param envelope - the envelope of the new message, or null to use a clone of the
+     *          envelope of the original message
+     * @return cloned MessageContext from the given mc
+     * @throws AxisFault if there is a failure in copying the certain attributes of the
+     *          provided message context
+     */
+    public static org.apache.axis2.context.MessageContext cloneAxis2MessageContext(
+        org.apache.axis2.context.MessageContext mc, SOAPEnvelope envelope) throws AxisFault {
 
         org.apache.axis2.context.MessageContext newMC = clonePartially(mc);
-        newMC.setEnvelope(cloneSOAPEnvelope(mc.getEnvelope()));
+        newMC.setEnvelope(envelope != null ? envelope : cloneSOAPEnvelope(mc.getEnvelope()));
         newMC.setOptions(cloneOptions(mc.getOptions()));
         
         newMC.setServiceContext(mc.getServiceContext());
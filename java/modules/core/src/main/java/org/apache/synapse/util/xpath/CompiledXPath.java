@@ -0,0 +1,450 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.util.xpath;
+
+import org.apache.axiom.om.OMAttribute;
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMNamespace;
+import org.apache.axiom.om.OMNode;
+import org.apache.axiom.om.OMText;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.config.xml.XMLConfigConstants;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+import org.apache.synapse.mediators.GetPropertyFunction;
+import org.jaxen.NamespaceContext;
+import org.jaxen.Navigator;
+import org.jaxen.expr.EqualityExpr;
+import org.jaxen.expr.Expr;
+import org.jaxen.expr.FunctionCallExpr;
+import org.jaxen.expr.LiteralExpr;
+import org.jaxen.expr.LocationPath;
+import org.jaxen.expr.NameStep;
+import org.jaxen.expr.Step;
+import org.jaxen.expr.TextNodeStep;
+import org.jaxen.expr.VariableReferenceExpr;
+import org.jaxen.saxpath.Axis;
+
+import javax.xml.namespace.QName;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A specialised evaluator for the common shapes of the expressions used in the Synapse
+ * configuration, which evaluates them directly against the message instead of interpreting the
+ * Jaxen expression tree through a freshly created Jaxen context. The supported shapes are
+ * <ul>
+ *   <li>relative location paths made of child element steps without predicates, optionally
+ *   ending with an attribute or a <code>text()</code> step, e.g.
+ *   <code>s11:Body/m0:getQuote/m0:request/@id</code></li>
+ *   <li><code>get-property('name')</code> and <code>get-property('scope', 'name')</code> with
+ *   literal arguments</li>
+ *   <li>the <code>$ctx:</code>, <code>$axis2:</code> and <code>$trp:</code> variables</li>
+ *   <li>equality comparisons of one of the above with a string literal</li>
+ * </ul>
+ * Evaluators return the same value the Jaxen expression would have returned. Where this cannot
+ * be guaranteed for a particular message (e.g. a property value which is not a string used in a
+ * comparison) they return {@link #NOT_APPLICABLE}, and the caller falls back to Jaxen.
+ */
+abstract class CompiledXPath {
+
+    /** Returned when the expression has to be evaluated by Jaxen for the given message */
+    static final Object NOT_APPLICABLE = new Object();
+
+    /**
+     * Evaluate the expression against the given message, with the envelope as the context node.
+     *
+     * @param synCtx    the message
+     * @param navigator the navigator of the XPath, used to compute the string values of nodes
+     * @return the value of the expression, a List in the case of node sets, or
+     *         {@link #NOT_APPLICABLE}
+     */
+    abstract Object evaluate(MessageContext synCtx, Navigator navigator);
+
+    /**
+     * @return an evaluator of the expression over the raw content of unbuilt messages, or null
+     *         if the expression can only be evaluated against the envelope
+     */
+    StreamingXPathEvaluator getStreamingEvaluator() {
+        return null;
+    }
+
+    /**
+     * @return the element names of the steps if the expression is a path of child element
+     *         steps only, or null
+     */
+    QName[] getChildElementSteps() {
+        return null;
+    }
+
+    /**
+     * Compile the given Jaxen expression.
+     *
+     * @param expr             the (simplified) root expression of the XPath
+     * @param namespaceContext namespace context used to resolve the prefixes in the expression
+     * @return the compiled expression, or null if the expression has to be evaluated by Jaxen
+     */
+    static CompiledXPath compile(Expr expr, NamespaceContext namespaceContext) {
+        if (expr instanceof EqualityExpr) {
+            EqualityExpr equality = (EqualityExpr) expr;
+            boolean negate = "!=".equals(equality.getOperator());
+            if (equality.getRHS() instanceof LiteralExpr) {
+                return compileComparison(equality.getLHS(),
+                        ((LiteralExpr) equality.getRHS()).getLiteral(), negate, namespaceContext);
+            } else if (equality.getLHS() instanceof LiteralExpr) {
+                return compileComparison(equality.getRHS(),
+                        ((LiteralExpr) equality.getLHS()).getLiteral(), negate, namespaceContext);
+            }
+            return null;
+        }
+        return compileOperand(expr, namespaceContext);
+    }
+
+    private static CompiledXPath compileComparison(Expr operand, String literal, boolean negate,
+                                                   NamespaceContext namespaceContext) {
+        CompiledXPath compiled = compileOperand(operand, namespaceContext);
+        return compiled != null ? new Comparison(compiled, literal, negate) : null;
+    }
+
+    private static CompiledXPath compileOperand(Expr expr, NamespaceContext namespaceContext) {
+        if (expr instanceof LocationPath) {
+            return ChildPath.compile((LocationPath) expr, namespaceContext);
+        } else if (expr instanceof FunctionCallExpr) {
+            return PropertyLookup.compile((FunctionCallExpr) expr);
+        } else if (expr instanceof VariableReferenceExpr) {
+            return VariableLookup.compile((VariableReferenceExpr) expr, namespaceContext);
+        }
+        return null;
+    }
+
+    /**
+     * <code>get-property</code> with literal arguments
+     */
+    private static final class PropertyLookup extends CompiledXPath {
+
+        private final String scope;
+        private final String key;
+
+        private PropertyLookup(String scope, String key) {
+            this.scope = scope;
+            this.key = key;
+        }
+
+        static CompiledXPath compile(FunctionCallExpr function) {
+            if (!SynapseXPathConstants.GET_PROPERTY_FUNCTION.equals(function.getFunctionName()) ||
+                    (function.getPrefix() != null && function.getPrefix().length() > 0)) {
+                return null;
+            }
+
+            List parameters = function.getParameters();
+            for (Object parameter : parameters) {
+                if (!(parameter instanceof LiteralExpr)) {
+                    return null;
+                }
+            }
+
+            if (parameters.size() == 1) {
+                return new PropertyLookup(XMLConfigConstants.SCOPE_DEFAULT,
+                        ((LiteralExpr) parameters.get(0)).getLiteral());
+
+            } else if (parameters.size() == 2) {
+                String scope = ((LiteralExpr) parameters.get(0)).getLiteral();
+                String key = ((LiteralExpr) parameters.get(1)).getLiteral();
+                // the two argument form with an unknown scope is the date format form,
+                // which is left to the function itself
+                if (XMLConfigConstants.SCOPE_AXIS2.equals(scope) ||
+                        XMLConfigConstants.SCOPE_DEFAULT.equals(scope) ||
+                        XMLConfigConstants.SCOPE_TRANSPORT.equals(scope) ||
+                        XMLConfigConstants.SCOPE_REGISTRY.equals(scope) ||
+                        XMLConfigConstants.SCOPE_FUNC.equals(scope) ||
+                        XMLConfigConstants.SCOPE_SYSTEM.equals(scope)) {
+                    return new PropertyLookup(scope, key);
+                }
+            }
+            return null;
+        }
+
+        Object evaluate(MessageContext synCtx, Navigator navigator) {
+            return new GetPropertyFunction(synCtx).evaluate(scope, key, null, navigator);
+        }
+    }
+
+    /**
+     * <code>$ctx:</code>, <code>$axis2:</code> and <code>$trp:</code> variables
+     */
+    private static final class VariableLookup extends CompiledXPath {
+
+        private final String prefix;
+        private final String name;
+
+        private VariableLookup(String prefix, String name) {
+            this.prefix = prefix;
+            this.name = name;
+        }
+
+        static CompiledXPath compile(VariableReferenceExpr variable,
+                                     NamespaceContext namespaceContext) {
+            String prefix = variable.getPrefix();
+            String name = variable.getVariableName();
+
+            // the body and header variables take precedence over the prefixes, and the
+            // prefixes are only treated as variable prefixes while they are not bound
+            if (SynapseXPathConstants.SOAP_BODY_VARIABLE.equals(name) ||
+                    SynapseXPathConstants.SOAP_HEADER_VARIABLE.equals(name) ||
+                    namespaceContext.translateNamespacePrefixToUri(prefix) != null) {
+                return null;
+            }
+
+            if (SynapseXPathConstants.MESSAGE_CONTEXT_VARIABLE_PREFIX.equals(prefix) ||
+                    SynapseXPathConstants.AXIS2_CONTEXT_VARIABLE_PREFIX.equals(prefix) ||
+                    SynapseXPathConstants.TRANSPORT_VARIABLE_PREFIX.equals(prefix)) {
+                return new VariableLookup(prefix, name);
+            }
+            return null;
+        }
+
+        Object evaluate(MessageContext synCtx, Navigator navigator) {
+            if (SynapseXPathConstants.MESSAGE_CONTEXT_VARIABLE_PREFIX.equals(prefix)) {
+                return synCtx.getProperty(name);
+            }
+
+            if (!(synCtx instanceof Axis2MessageContext)) {
+                return NOT_APPLICABLE;
+            }
+            org.apache.axis2.context.MessageContext axis2MessageCtx =
+                    ((Axis2MessageContext) synCtx).getAxis2MessageContext();
+
+            if (SynapseXPathConstants.AXIS2_CONTEXT_VARIABLE_PREFIX.equals(prefix)) {
+                return axis2MessageCtx.getProperty(name);
+            }
+
+            Object headers = axis2MessageCtx.getProperty(
+                    org.apache.axis2.context.MessageContext.TRANSPORT_HEADERS);
+            return headers instanceof Map ? ((Map) headers).get(name) : null;
+        }
+    }
+
+    /**
+     * Relative location paths made of child element steps
+     */
+    private static final class ChildPath extends CompiledXPath {
+
+        /** Element name tests, a null local part matches any local name */
+        private final QName[] elements;
+
+        /** Name of the final attribute step, if any */
+        private final QName attribute;
+
+        /** Whether the path ends with a text() step */
+        private final boolean text;
+
+        private final StreamingXPathEvaluator streamingEvaluator;
+
+        private ChildPath(QName[] elements, QName attribute, boolean text) {
+            this.elements = elements;
+            this.attribute = attribute;
+            this.text = text;
+            // text nodes may be split differently by the parser and the builder
+            this.streamingEvaluator = text ? null : new StreamingXPathEvaluator(elements, attribute);
+        }
+
+        @Override
+        StreamingXPathEvaluator getStreamingEvaluator() {
+            return streamingEvaluator;
+        }
+
+        @Override
+        QName[] getChildElementSteps() {
+            return attribute == null && !text ? elements.clone() : null;
+        }
+
+        static CompiledXPath compile(LocationPath path, NamespaceContext namespaceContext) {
+            if (path.isAbsolute()) {
+                return null;
+            }
+
+            List steps = path.getSteps();
+            if (steps.isEmpty()) {
+                return null;
+            }
+
+            List<QName> elements = new ArrayList<QName>();
+            QName attribute = null;
+            boolean text = false;
+
+            for (int i = 0; i < steps.size(); i++) {
+                Step step = (Step) steps.get(i);
+                boolean last = i == steps.size() - 1;
+                if (!step.getPredicates().isEmpty()) {
+                    return null;
+                }
+
+                if (step instanceof NameStep) {
+                    NameStep nameStep = (NameStep) step;
+                    String namespaceURI = "";
+                    if (nameStep.getPrefix() != null && nameStep.getPrefix().length() > 0) {
+                        namespaceURI = namespaceContext.translateNamespacePrefixToUri(
+                                nameStep.getPrefix());
+                        if (namespaceURI == null) {
+                            return null;
+                        }
+                    }
+                    String localName = nameStep.getLocalName();
+
+                    if (step.getAxis() == Axis.CHILD) {
+                        if ("*".equals(localName)) {
+                            if (namespaceURI.length() > 0) {
+                                // prefix:* is left to Jaxen
+                                return null;
+                            }
+                            elements.add(null);
+                        } else {
+                            elements.add(new QName(namespaceURI, localName));
+                        }
+                    } else if (step.getAxis() == Axis.ATTRIBUTE && last &&
+                            !"*".equals(localName)) {
+                        attribute = new QName(namespaceURI, localName);
+                    } else {
+                        return null;
+                    }
+
+                } else if (step instanceof TextNodeStep && step.getAxis() == Axis.CHILD && last) {
+                    text = true;
+
+                } else {
+                    return null;
+                }
+            }
+            return new ChildPath(elements.toArray(new QName[elements.size()]), attribute, text);
+        }
+
+        Object evaluate(MessageContext synCtx, Navigator navigator) {
+            List<Object> current = new ArrayList<Object>(1);
+            current.add(synCtx.getEnvelope());
+
+            for (QName name : elements) {
+                List<Object> next = new ArrayList<Object>();
+                for (Object node : current) {
+                    Iterator children = ((OMElement) node).getChildElements();
+                    while (children.hasNext()) {
+                        OMElement child = (OMElement) children.next();
+                        if (name == null || matches(child, name)) {
+                            next.add(child);
+                        }
+                    }
+                }
+                if (next.isEmpty()) {
+                    return Collections.EMPTY_LIST;
+                }
+                current = next;
+            }
+
+            if (attribute != null) {
+                List<Object> attributes = new ArrayList<Object>(current.size());
+                for (Object node : current) {
+                    OMAttribute attr = ((OMElement) node).getAttribute(attribute);
+                    if (attr != null) {
+                        attributes.add(attr);
+                    }
+                }
+                return attributes;
+
+            } else if (text) {
+                List<Object> texts = new ArrayList<Object>();
+                for (Object node : current) {
+                    Iterator children = ((OMElement) node).getChildren();
+                    while (children.hasNext()) {
+                        OMNode child = (OMNode) children.next();
+                        if (child instanceof OMText) {
+                            texts.add(child);
+                        }
+                    }
+                }
+                return texts;
+            }
+            return current;
+        }
+
+        private static boolean matches(OMElement element, QName name) {
+            if (!name.getLocalPart().equals(element.getLocalName())) {
+                return false;
+            }
+            OMNamespace ns = element.getNamespace();
+            String namespaceURI = ns != null ? ns.getNamespaceURI() : "";
+            return name.getNamespaceURI().equals(namespaceURI == null ? "" : namespaceURI);
+        }
+    }
+
+    /**
+     * Equality comparison of a compiled operand with a string literal
+     */
+    private static final class Comparison extends CompiledXPath {
+
+        private final CompiledXPath operand;
+        private final String literal;
+        private final boolean negate;
+
+        private final StreamingXPathEvaluator streamingEvaluator;
+
+        private Comparison(CompiledXPath operand, String literal, boolean negate) {
+            this.operand = operand;
+            this.literal = literal;
+            this.negate = negate;
+            StreamingXPathEvaluator path = operand.getStreamingEvaluator();
+            this.streamingEvaluator = path != null ? path.compareWith(literal, negate) : null;
+        }
+
+        @Override
+        StreamingXPathEvaluator getStreamingEvaluator() {
+            return streamingEvaluator;
+        }
+
+        Object evaluate(MessageContext synCtx, Navigator navigator) {
+            Object value = operand.evaluate(synCtx, navigator);
+
+            if (value instanceof String) {
+                return literal.equals(value) != negate ? Boolean.TRUE : Boolean.FALSE;
+
+            } else if (value instanceof List) {
+                // a node set is equal (or not equal) to a string if the string value of any
+                // of its nodes is equal (or not equal) to it
+                for (Object node : (List) value) {
+                    String stringValue;
+                    if (navigator.isElement(node)) {
+                        stringValue = navigator.getElementStringValue(node);
+                    } else if (navigator.isAttribute(node)) {
+                        stringValue = navigator.getAttributeStringValue(node);
+                    } else if (navigator.isText(node)) {
+                        stringValue = navigator.getTextStringValue(node);
+                    } else {
+                        return NOT_APPLICABLE;
+                    }
+                    if (literal.equals(stringValue) != negate) {
+                        return Boolean.TRUE;
+                    }
+                }
+                return Boolean.FALSE;
+            }
+            return NOT_APPLICABLE;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.util.xpath;
+
+import org.apache.axiom.om.util.StAXUtils;
+import org.apache.axiom.soap.SOAP11Constants;
+import org.apache.axiom.soap.SOAP12Constants;
+import org.apache.axiom.soap.SOAPConstants;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+import org.apache.synapse.transport.passthru.util.PeekInputStream;
+import org.apache.synapse.transport.passthru.util.RelayUtils;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Evaluates a forward-only subset of XPath over the raw content of a pass-through message which
+ * has not been built. The supported expressions are child element paths from the envelope,
+ * optionally ending with an attribute step, and equality comparisons of those with a string
+ * literal - i.e. the usual content based routing conditions. Only as much of the message as
+ * needed to answer the expression is read, and the content read is handed back to the pipe
+ * afterwards so that the message can still be relayed as raw bytes (or built later on).
+ * <p/>
+ * Results are only given where they are known to be the same as the result of evaluating the
+ * expression against the built envelope. Otherwise (e.g. the message is not a SOAP message
+ * received through the pass-through transport, or the answer lies too far in to the message)
+ * the evaluation methods return null, and the message has to be built.
+ */
+final class StreamingXPathEvaluator {
+
+    private static final Log log = LogFactory.getLog(StreamingXPathEvaluator.class);
+
+    private static final int EXISTS = 0;
+    private static final int COMPARE = 1;
+    private static final int STRING = 2;
+
+    /** Element name tests from the envelope, a null name matches any element */
+    private final QName[] elements;
+
+    /** Name of the final attribute step, if any */
+    private final QName attribute;
+
+    /** The literal to compare with, or null if this is not a comparison */
+    private final String literal;
+
+    private final boolean negate;
+
+    StreamingXPathEvaluator(QName[] elements, QName attribute) {
+        this(elements, attribute, null, false);
+    }
+
+    private StreamingXPathEvaluator(QName[] elements, QName attribute,
+                                    String literal, boolean negate) {
+        this.elements = elements;
+        this.attribute = attribute;
+        this.literal = literal;
+        this.negate = negate;
+    }
+
+    /**
+     * @param literal the string literal
+     * @param negate  whether the comparison is a <code>!=</code> comparison
+     * @return an evaluator of the comparison of this path with the given literal
+     */
+    StreamingXPathEvaluator compareWith(String literal, boolean negate) {
+        return new StreamingXPathEvaluator(elements, attribute, literal, negate);
+    }
+
+    /**
+     * @param synCtx the message
+     * @return the boolean value of the expression, or null if the message has to be built
+     */
+    Boolean booleanValueOf(MessageContext synCtx) {
+        return (Boolean) evaluate(synCtx, literal != null ? COMPARE : EXISTS);
+    }
+
+    /**
+     * @param synCtx the message
+     * @return the string value of the expression as given by
+     *         {@link SynapseXPath#stringValueOf(MessageContext)}, or null if the message has to
+     *         be built
+     */
+    String stringValueOf(MessageContext synCtx) {
+        if (literal != null) {
+            Boolean result = booleanValueOf(synCtx);
+            return result != null ? result.toString() : null;
+        }
+        return (String) evaluate(synCtx, STRING);
+    }
+
+    private Object evaluate(MessageContext synCtx, int mode) {
+        if (!(synCtx instanceof Axis2MessageContext)) {
+            return null;
+        }
+
+        PeekInputStream in = RelayUtils.peekMessage(
+                ((Axis2MessageContext) synCtx).getAxis2MessageContext());
+        if (in == null) {
+            return null;
+        }
+
+        XMLStreamReader reader = null;
+        try {
+            reader = StAXUtils.createXMLStreamReader(in, in.getCharSetEncoding());
+            return scan(reader, mode);
+        } catch (Exception e) {
+            // the message is malformed or too large to be examined, leave it to the builder
+            if (log.isDebugEnabled()) {
+                log.debug("Unable to evaluate the expression over the message stream", e);
+            }
+            return null;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ignored) {
+                }
+            }
+            in.close();
+        }
+    }
+
+    private Object scan(XMLStreamReader reader, int mode) throws XMLStreamException {
+        StringBuilder result = new StringBuilder();
+        StringBuilder text = null;
+
+        // depth of the current element, the envelope being at depth 0
+        int depth = -1;
+        // number of steps matched by the current element and its ancestors
+        int matched = -1;
+        // depth of the element being selected, while its text is being collected
+        int selectedDepth = -1;
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                if (depth == 0) {
+                    if (!isEnvelope(reader)) {
+                        return null;
+                    }
+                    matched = 0;
+                } else if (matched == depth - 1 && depth <= elements.length &&
+                        matches(reader, elements[depth - 1])) {
+                    matched = depth;
+                } else {
+                    continue;
+                }
+
+                if (matched == elements.length) {
+                    if (attribute != null) {
+                        String value = getAttributeValue(reader);
+                        if (value != null) {
+                            Object answer = select(value, mode, result);
+                            if (answer != null) {
+                                return answer;
+                            }
+                        }
+                    } else if (mode == EXISTS) {
+                        return Boolean.TRUE;
+                    } else {
+                        selectedDepth = depth;
+                        text = new StringBuilder();
+                    }
+                }
+
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (depth == selectedDepth) {
+                    selectedDepth = -1;
+                    if (mode == STRING && text.toString().trim().length() == 0) {
+                        // the element would be given as serialized XML
+                        return null;
+                    }
+                    Object answer = select(text.toString(), mode, result);
+                    if (answer != null) {
+                        return answer;
+                    }
+                }
+                if (matched == depth) {
+                    matched--;
+                }
+                if (--depth < 0) {
+                    break;
+                }
+
+            } else if (selectedDepth != -1 && (event == XMLStreamConstants.CHARACTERS ||
+                    event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE)) {
+                // comparisons use the XPath string value (all the descendant text), while the
+                // string value of an element is its own text
+                if (mode == COMPARE || depth == selectedDepth) {
+                    text.append(reader.getText());
+                }
+            }
+        }
+
+        return mode == STRING ? result.toString() : Boolean.FALSE;
+    }
+
+    /**
+     * Handle the string value of a selected node.
+     *
+     * @return the result of the expression if it is known at this point, or null
+     */
+    private Object select(String value, int mode, StringBuilder result) {
+        if (mode == COMPARE) {
+            return literal.equals(value) != negate ? Boolean.TRUE : null;
+        } else if (mode == STRING) {
+            result.append(value);
+            return null;
+        }
+        return Boolean.TRUE;
+    }
+
+    private String getAttributeValue(XMLStreamReader reader) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (attribute.getLocalPart().equals(reader.getAttributeLocalName(i)) &&
+                    attribute.getNamespaceURI().equals(
+                            nullToEmpty(reader.getAttributeNamespace(i)))) {
+                return reader.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches(XMLStreamReader reader, QName name) {
+        return name == null || (name.getLocalPart().equals(reader.getLocalName()) &&
+                name.getNamespaceURI().equals(nullToEmpty(reader.getNamespaceURI())));
+    }
+
+    private static boolean isEnvelope(XMLStreamReader reader) {
+        String namespaceURI = reader.getNamespaceURI();
+        return SOAPConstants.SOAPENVELOPE_LOCAL_NAME.equals(reader.getLocalName()) &&
+                (SOAP11Constants.SOAP_ENVELOPE_NAMESPACE_URI.equals(namespaceURI) ||
+                SOAP12Constants.SOAP_ENVELOPE_NAMESPACE_URI.equals(namespaceURI));
+    }
+
+    private static String nullToEmpty(String s) {
+        return s != null ? s : "";
+    }
+}
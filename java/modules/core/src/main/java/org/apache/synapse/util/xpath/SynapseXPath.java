@@ -30,9 +30,13 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseException;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+import org.apache.synapse.transport.passthru.util.RelayUtils;
 import org.jaxen.*;
+import org.jaxen.function.BooleanFunction;
 import org.jaxen.util.SingletonList;
 
+import javax.xml.namespace.QName;
 import java.util.*;
 
 /**
@@ -83,6 +87,12 @@ public class SynapseXPath extends AXIOMXPath {
 
     private boolean contentAware;
 
+    /** Marks an expression which cannot be compiled, see {@link #getCompiledXPath()} */
+    private static final Object NOT_COMPILABLE = new Object();
+
+    /** The compiled form of this expression, created on the first evaluation */
+    private transient volatile Object compiledXPath;
+
     /**
      * <p>Initializes the <code>SynapseXPath</code> with the given <code>xpathString</code> as the
      * XPath</p>
@@ -185,6 +195,14 @@ public class SynapseXPath extends AXIOMXPath {
      */
     public String stringValueOf(MessageContext synCtx) {
 
+        StreamingXPathEvaluator streamingEvaluator = getStreamingEvaluator();
+        if (streamingEvaluator != null) {
+            String value = streamingEvaluator.stringValueOf(synCtx);
+            if (value != null) {
+                return value;
+            }
+        }
+
         try {
 
             Object result = evaluate(synCtx);
@@ -273,6 +291,127 @@ public class SynapseXPath extends AXIOMXPath {
         addNamespace(ns.getPrefix(), ns.getNamespaceURI());
     }
 
+    @Override
+    public void addNamespace(String prefix, String uri) throws JaxenException {
+        super.addNamespace(prefix, uri);
+        compiledXPath = null;
+    }
+
+    @Override
+    public void setNamespaceContext(NamespaceContext namespaceContext) {
+        super.setNamespaceContext(namespaceContext);
+        compiledXPath = null;
+    }
+
+    /**
+     * Evaluates the expression. Expressions of the common shapes evaluated against a
+     * {@link MessageContext} are evaluated by their compiled form (see {@link CompiledXPath}),
+     * while any other expression is evaluated by Jaxen. Both give the same result.
+     *
+     * @param context the node, node set or message to evaluate the expression against
+     * @return the result of the evaluation
+     * @throws JaxenException if the evaluation fails
+     */
+    @Override
+    public Object evaluate(Object context) throws JaxenException {
+        if (context instanceof MessageContext) {
+            ensureBuilt((MessageContext) context);
+            Object result = evaluateCompiled((MessageContext) context);
+            if (result != CompiledXPath.NOT_APPLICABLE) {
+                // same conversion as BaseXPath#evaluate
+                List list = toList(result);
+                if (list.size() == 1) {
+                    Object first = list.get(0);
+                    if (first instanceof String || first instanceof Boolean ||
+                            first instanceof Number) {
+                        return first;
+                    }
+                }
+                return list;
+            }
+        }
+        return super.evaluate(context);
+    }
+
+    @Override
+    public boolean booleanValueOf(Object context) throws JaxenException {
+        if (context instanceof MessageContext) {
+            StreamingXPathEvaluator streamingEvaluator = getStreamingEvaluator();
+            if (streamingEvaluator != null) {
+                Boolean value = streamingEvaluator.booleanValueOf((MessageContext) context);
+                if (value != null) {
+                    return value;
+                }
+            }
+
+            ensureBuilt((MessageContext) context);
+            Object result = evaluateCompiled((MessageContext) context);
+            if (result != CompiledXPath.NOT_APPLICABLE) {
+                return BooleanFunction.evaluate(toList(result), getNavigator());
+            }
+        }
+        return super.booleanValueOf(context);
+    }
+
+    /**
+     * Gives the element names selected by the steps of this expression, if the expression is a
+     * relative location path made of child element steps only, such as
+     * <code>s11:Body/m0:orders/m0:order</code>. Such expressions select the same elements
+     * whether evaluated against the envelope or over the message stream.
+     *
+     * @return the element names of the steps, a null name standing for a <code>*</code> step,
+     *         or null if the expression is not a path of child element steps
+     */
+    public QName[] getChildElementSteps() {
+        CompiledXPath compiled = getCompiledXPath();
+        return compiled != null ? compiled.getChildElementSteps() : null;
+    }
+
+    private Object evaluateCompiled(MessageContext synCtx) {
+        CompiledXPath compiled = getCompiledXPath();
+        return compiled != null ?
+                compiled.evaluate(synCtx, getNavigator()) : CompiledXPath.NOT_APPLICABLE;
+    }
+
+    private CompiledXPath getCompiledXPath() {
+        Object compiled = compiledXPath;
+        if (compiled == null) {
+            compiled = CompiledXPath.compile(getRootExpr(), getNamespaceContext());
+            if (compiled == null) {
+                compiled = NOT_COMPILABLE;
+            }
+            compiledXPath = compiled;
+        }
+        return compiled != NOT_COMPILABLE ? (CompiledXPath) compiled : null;
+    }
+
+    private StreamingXPathEvaluator getStreamingEvaluator() {
+        CompiledXPath compiled = getCompiledXPath();
+        return compiled != null ? compiled.getStreamingEvaluator() : null;
+    }
+
+    /**
+     * Build the message if it may have been left unbuilt for this expression, i.e. if the
+     * expression can be evaluated over the message stream (see {@link #isContentAware()}).
+     *
+     * @param synCtx the message
+     */
+    private void ensureBuilt(MessageContext synCtx) {
+        if (contentAware && getStreamingEvaluator() != null &&
+                synCtx instanceof Axis2MessageContext) {
+            try {
+                RelayUtils.buildMessage(((Axis2MessageContext) synCtx).getAxis2MessageContext(),
+                        false);
+            } catch (Exception e) {
+                handleException("Error while building message", e);
+            }
+        }
+    }
+
+    private static List toList(Object result) {
+        return result instanceof List ? (List) result : new SingletonList(result);
+    }
+
     /**
      * Create a {@link Context} wrapper for the provided object.
      * This methods implements the following class specific behavior:
@@ -301,6 +440,7 @@ public class SynapseXPath extends AXIOMXPath {
     protected Context getContext(Object obj) {
         if (obj instanceof MessageContext) {
             MessageContext synCtx = (MessageContext)obj;
+            ensureBuilt(synCtx);
             ContextSupport baseContextSupport = getContextSupport();
             ContextSupport contextSupport =
                 new ContextSupport(baseContextSupport.getNamespaceContext(),
@@ -338,8 +478,16 @@ public class SynapseXPath extends AXIOMXPath {
         }
     }
 
+    /**
+     * Whether the message has to be built before evaluating this expression. Expressions which
+     * can be evaluated over the raw content of pass-through messages are not content aware, as
+     * they build the message themselves only when the content cannot be examined in its raw
+     * form.
+     *
+     * @return true if the message has to be built before evaluating this expression
+     */
     public boolean isContentAware() {
-        return contentAware;
+        return contentAware && getStreamingEvaluator() == null;
     }
 
     private void handleException(String msg, Throwable e) {
@@ -53,6 +53,19 @@ public class CacheMediatorSerializationTest extends AbstractTestCase {
         assertTrue(serialization(inputXml, cacheMediatorSerializer));
     }
 
+    public void testCacheMediatorSerializationScenarioThree() {
+        String inputXml = "<cache xmlns=\"http://ws.apache.org/ns/synapse\" " +
+                          "id=\"string\" hashGenerator=\"org.wso2.caching.digest.DOMHASHGenerator\" " +
+                          "timeout=\"10\" scope=\"per-host\" collector=\"false\" " +
+                          "engine=\"org.apache.synapse.mediators.builtin.cache.TieredResponseCache\" " +
+                          "maxMessageSize=\"10000\"><onCacheHit><send/></onCacheHit>" +
+                          "<implementation type=\"memory\" maxSize=\"10\" maxBytes=\"65536\"/>" +
+                          "<implementation type=\"disk\" maxSize=\"100\" maxBytes=\"1048576\"/>" +
+                          "</cache>";
+        assertTrue(serialization(inputXml, cacheMediatorFactory, cacheMediatorSerializer));
+        assertTrue(serialization(inputXml, cacheMediatorSerializer));
+    }
+
     public void testCacheMediatorSerializationResponseCache() {
         String inputXml = "<cache xmlns=\"http://ws.apache.org/ns/synapse\" " +
                           "id=\"string\" scope=\"per-host\" collector=\"true\" />";
@@ -45,6 +45,18 @@ public class DBReportMediatorSerializationTest extends AbstractTestCase {
         assertTrue(serialization(inputXml, dbReportMediatorSerializer));
     }
 
+    public void testDBReportMediatorSerializationWithBatching() throws Exception {
+        String inputXml = "<dbreport xmlns=\"http://ws.apache.org/ns/synapse\" batchSize=\"100\" " +
+                          "batchInterval=\"500\" batchQueueSize=\"5000\">" +
+                          "<connection><pool>" +
+                          "<dsName>DataServiceName</dsName></pool>" +
+                          "</connection><statement><sql><![CDATA[insert into audit values(?)]]></sql>" +
+                          "<parameter expression=\"//m0:return/m0:symbol/child::text()\" " +
+                          "xmlns:m0=\"http://services.samples/xsd\" type=\"VARCHAR\"/></statement></dbreport>";
+        assertTrue(serialization(inputXml, dbReportMediatorFactory, dbReportMediatorSerializer));
+        assertTrue(serialization(inputXml, dbReportMediatorSerializer));
+    }
+
     public void testDBReportMediatorSerializationWithExternalDataSource() throws Exception {
         String inputXml = "<dbreport xmlns=\"http://ws.apache.org/ns/synapse\">" +
                           "<connection><pool><icClass>ClassName</icClass>" +
@@ -68,6 +68,27 @@ public class IterateMediatorSerializationTest extends AbstractTestCase {
         assertTrue(serialization(inputXml, iterateMediatorSerializer));
     }
 
+    public void testIterateMediatorSerializationStreaming() throws Exception {
+        String inputXml = "<iterate xmlns=\"http://ws.apache.org/ns/synapse\" " +
+            "expression=\"s11:Body/m0:orders/m0:order\" streaming=\"true\" maxPending=\"5\" " +
+            "xmlns:s11=\"http://schemas.xmlsoap.org/soap/envelope/\" " +
+            "xmlns:m0=\"http://services.samples\"><target sequence=\"sequenceRef1\"/>" +
+            "</iterate>";
+        assertTrue(serialization(inputXml, iterateMediatorFactory, iterateMediatorSerializer));
+        assertTrue(serialization(inputXml, iterateMediatorSerializer));
+    }
+
+    public void testIterateMediatorSerializationStreamingContinueParent() throws Exception {
+        String inputXml = "<iterate xmlns=\"http://ws.apache.org/ns/synapse\" " +
+            "continueParent=\"true\" expression=\".\" streaming=\"true\">" +
+            "<target sequence=\"sequenceRef1\"/></iterate>";
+        try {
+            serialization(inputXml, iterateMediatorFactory, iterateMediatorSerializer);
+            fail("A streaming iterate mediator cannot continue the parent");
+        } catch (SynapseException expected) {
+        }
+    }
+
     public void testIterateMediatorSerializationScenarioFive() throws Exception {
         String inputXml = "<iterate xmlns=\"http://ws.apache.org/ns/synapse\" expression=\".\" " +
             "attachPath=\".\" preservePayload=\"false\"><target to=\"http://localhost:7777\">" +
@@ -120,4 +120,30 @@ public class AddressEndpointSerializationTest extends AbstractTestCase {
         // the generated name should not show up in the serialization
         assertTrue(compare(serializedOut,inputElement));
     }
+
+    public void testAddressEndpointWithCircuitBreaker() throws Exception {
+        String inputXML =
+                "<endpoint name=\"BreakerEp\" xmlns=\"http://ws.apache.org/ns/synapse\">" +
+                "<address uri=\"http://localhost:9000/services/SimpleStockQuoteService\" >" +
+                "<suspendOnFailure><initialDuration>5000</initialDuration></suspendOnFailure>" +
+                "<circuitBreaker>" +
+                "<windowSize>50</windowSize>" +
+                "<minimumCalls>10</minimumCalls>" +
+                "<failureRateThreshold>40.0</failureRateThreshold>" +
+                "<slowCallDuration>2000</slowCallDuration>" +
+                "<slowCallRateThreshold>60.0</slowCallRateThreshold>" +
+                "<halfOpenCalls>3</halfOpenCalls>" +
+                "</circuitBreaker>" +
+                "</address>" +
+                "</endpoint>" ;
+
+        OMElement inputElement = createOMElement(inputXML);
+        AddressEndpoint endpoint = (AddressEndpoint) AddressEndpointFactory.getEndpointFromElement(
+                inputElement, false, null);
+        assertTrue(endpoint.getDefinition().isCircuitBreakerEnabled());
+        assertEquals(2000, endpoint.getDefinition().getCircuitBreakerSlowCallDuration());
+
+        OMElement serializedOut = AddressEndpointSerializer.getElementFromEndpoint(endpoint);
+        assertTrue(compare(serializedOut,inputElement));
+    }
 }
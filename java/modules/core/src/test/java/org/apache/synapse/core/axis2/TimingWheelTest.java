@@ -0,0 +1,98 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.core.axis2;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class TimingWheelTest extends TestCase {
+
+    public void testExpiry() {
+        TimingWheel<String> wheel = new TimingWheel<String>(10, 8, 1000);
+        wheel.schedule("a", 1025);
+        wheel.schedule("b", 1050);
+
+        assertTrue(wheel.advance(1020).isEmpty());
+        assertEquals(Collections.singletonList("a"), wheel.advance(1030));
+        assertTrue(wheel.advance(1040).isEmpty());
+        assertEquals(Collections.singletonList("b"), wheel.advance(1050));
+        assertTrue(wheel.advance(2000).isEmpty());
+    }
+
+    public void testNeverExpiresEarly() {
+        TimingWheel<String> wheel = new TimingWheel<String>(100, 8, 0);
+        wheel.schedule("a", 250);
+
+        // the slot of the timeout is due at 200, but the deadline is not
+        assertTrue(wheel.advance(200).isEmpty());
+        assertTrue(wheel.advance(249).isEmpty());
+        assertEquals(Collections.singletonList("a"), wheel.advance(250));
+    }
+
+    public void testOverflowLevels() {
+        TimingWheel<Long> wheel = new TimingWheel<Long>(10, 4, 0);
+        List<Long> deadlines = new ArrayList<Long>();
+        for (long deadline = 15; deadline < 5000; deadline += 37) {
+            wheel.schedule(deadline, deadline);
+            deadlines.add(deadline);
+        }
+
+        List<Long> expired = new ArrayList<Long>();
+        for (long now = 0; now <= 5000; now += 7) {
+            for (Long deadline : wheel.advance(now)) {
+                assertTrue(deadline <= now);
+                assertTrue(deadline > now - 7);
+                expired.add(deadline);
+            }
+        }
+        Collections.sort(expired);
+        assertEquals(deadlines, expired);
+    }
+
+    public void testInfrequentAdvance() {
+        TimingWheel<Long> wheel = new TimingWheel<Long>(10, 4, 0);
+        for (long deadline = 15; deadline < 1000; deadline += 15) {
+            wheel.schedule(deadline, deadline);
+        }
+        assertEquals(33, wheel.advance(500).size());
+        assertEquals(33, wheel.advance(1000).size());
+    }
+
+    public void testCancel() {
+        TimingWheel<String> wheel = new TimingWheel<String>(10, 8, 0);
+        TimingWheel<String>.Timeout a = wheel.schedule("a", 50);
+        TimingWheel<String>.Timeout b = wheel.schedule("b", 500);
+        wheel.schedule("c", 500);
+        a.cancel();
+        b.cancel();
+
+        assertTrue(wheel.advance(100).isEmpty());
+        assertEquals(Collections.singletonList("c"), wheel.advance(1000));
+    }
+
+    public void testAlreadyExpired() {
+        TimingWheel<String> wheel = new TimingWheel<String>(10, 8, 1000);
+        wheel.schedule("a", 500);
+        assertEquals(Collections.singletonList("a"), wheel.advance(1000));
+    }
+}
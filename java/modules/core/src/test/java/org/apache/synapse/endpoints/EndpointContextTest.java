@@ -0,0 +1,107 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints;
+
+import junit.framework.TestCase;
+
+public class EndpointContextTest extends TestCase {
+
+    public void testCircuitBreakerOpensOnFailureRate() throws Exception {
+        EndpointDefinition def = getDefinition();
+        EndpointContext context = new EndpointContext("ep", def, false, null, null);
+
+        for (int i = 0; i < 5; i++) {
+            context.onSuccess(10);
+        }
+        for (int i = 0; i < 4; i++) {
+            context.onFault();
+            assertTrue(context.readyToSend());
+        }
+
+        // the fifth failure makes half of the last ten calls failures
+        context.onFault();
+        assertTrue(context.isState(EndpointContext.ST_SUSPENDED));
+        assertFalse(context.readyToSend());
+    }
+
+    public void testCircuitBreakerOpensOnSlowCallRate() throws Exception {
+        EndpointDefinition def = getDefinition();
+        def.setCircuitBreakerSlowCallDuration(1000);
+        def.setCircuitBreakerSlowCallRateThreshold(80);
+        EndpointContext context = new EndpointContext("ep", def, false, null, null);
+
+        for (int i = 0; i < 2; i++) {
+            context.onSuccess(10);
+        }
+        for (int i = 0; i < 8; i++) {
+            assertTrue(context.readyToSend());
+            context.onSuccess(1500);
+        }
+        assertTrue(context.isState(EndpointContext.ST_SUSPENDED));
+    }
+
+    public void testHalfOpenProbes() throws Exception {
+        EndpointDefinition def = getDefinition();
+        def.setInitialSuspendDuration(100);
+        def.setCircuitBreakerHalfOpenCalls(2);
+        EndpointContext context = new EndpointContext("ep", def, false, null, null);
+
+        for (int i = 0; i < 10; i++) {
+            context.onTimeout();
+        }
+        assertTrue(context.isState(EndpointContext.ST_SUSPENDED));
+        assertFalse(context.readyToSend());
+
+        Thread.sleep(150);
+        // two probes are let through after the suspension
+        assertTrue(context.readyToSend());
+        assertTrue(context.readyToSend());
+        assertFalse(context.readyToSend());
+
+        context.onSuccess(10);
+        assertTrue(context.isState(EndpointContext.ST_SUSPENDED));
+        context.onSuccess(10);
+        assertTrue(context.isState(EndpointContext.ST_ACTIVE));
+        assertTrue(context.readyToSend());
+    }
+
+    public void testFailedProbeReopens() throws Exception {
+        EndpointDefinition def = getDefinition();
+        def.setInitialSuspendDuration(100);
+        EndpointContext context = new EndpointContext("ep", def, false, null, null);
+
+        for (int i = 0; i < 10; i++) {
+            context.onFault();
+        }
+        Thread.sleep(150);
+        assertTrue(context.readyToSend());
+        context.onFault();
+        assertTrue(context.isState(EndpointContext.ST_SUSPENDED));
+        assertFalse(context.readyToSend());
+    }
+
+    private EndpointDefinition getDefinition() {
+        EndpointDefinition def = new EndpointDefinition();
+        def.setCircuitBreakerWindowSize(10);
+        def.setCircuitBreakerMinimumCalls(10);
+        def.setCircuitBreakerFailureRateThreshold(50);
+        return def;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints.algorithms;
+
+import junit.framework.TestCase;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseConstants;
+import org.apache.synapse.SynapseException;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.endpoints.AddressEndpoint;
+import org.apache.synapse.endpoints.Endpoint;
+import org.apache.synapse.endpoints.LoadbalanceEndpoint;
+import org.apache.synapse.mediators.MediatorProperty;
+import org.apache.synapse.mediators.TestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LatencyAwareAlgorithmTest extends TestCase {
+
+    private SynapseEnvironment env;
+    private List<Endpoint> endpoints;
+    private AlgorithmContext context;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        AxisConfiguration axisConfig = new AxisConfiguration();
+        ConfigurationContext configContext = new ConfigurationContext(axisConfig);
+        SynapseConfiguration synapseConfig = new SynapseConfiguration();
+        env = new Axis2SynapseEnvironment(configContext, synapseConfig);
+
+        endpoints = new ArrayList<Endpoint>();
+        endpoints.add(getEndpoint("ep1", env));
+        endpoints.add(getEndpoint("ep2", env));
+        context = new AlgorithmContext(false, configContext, "ep");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (Endpoint endpoint : endpoints) {
+            endpoint.destroy();
+        }
+    }
+
+    public void testPeakEWMAAvoidsSlowEndpoint() throws Exception {
+        PeakEWMA algorithm = new PeakEWMA();
+        algorithm.setEndpoints(endpoints);
+
+        record(algorithm.getStatistics(endpoints.get(0)), 500, true);
+        record(algorithm.getStatistics(endpoints.get(1)), 10, true);
+
+        for (int i = 0; i < 10; i++) {
+            MessageContext synCtx = TestUtils.createLightweightSynapseMessageContext("<test/>");
+            Endpoint endpoint = algorithm.getNextEndpoint(synCtx, context);
+            assertEquals("ep2", endpoint.getName());
+            assertSame(algorithm.getStatistics(endpoint),
+                    synCtx.getProperty(SynapseConstants.LOADBALANCE_STATISTICS));
+        }
+    }
+
+    public void testPeakEWMAPenalizesFailures() throws Exception {
+        PeakEWMA algorithm = new PeakEWMA();
+        algorithm.setEndpoints(endpoints);
+
+        record(algorithm.getStatistics(endpoints.get(0)), 1, false);
+        record(algorithm.getStatistics(endpoints.get(1)), 50, true);
+
+        MessageContext synCtx = TestUtils.createLightweightSynapseMessageContext("<test/>");
+        assertEquals("ep2", algorithm.getNextEndpoint(synCtx, context).getName());
+        assertEquals(1, algorithm.getStatistics(endpoints.get(0)).getFailureCount());
+    }
+
+    public void testPowerOfTwoChoicesPrefersFewerActiveRequests() throws Exception {
+        PowerOfTwoChoices algorithm = new PowerOfTwoChoices();
+        algorithm.setEndpoints(endpoints);
+
+        LoadStatistics stats = algorithm.getStatistics(endpoints.get(0));
+        stats.requestStarted();
+        stats.requestStarted();
+
+        for (int i = 0; i < 10; i++) {
+            MessageContext synCtx = TestUtils.createLightweightSynapseMessageContext("<test/>");
+            assertEquals("ep2", algorithm.getNextEndpoint(synCtx, context).getName());
+        }
+
+        stats.requestCompleted(10, true);
+        stats.requestCompleted(10, true);
+        assertEquals(0, stats.getActiveRequests());
+        assertEquals(2, stats.getRequestCount());
+    }
+
+    public void testDecayTimeProperty() throws Exception {
+        PeakEWMA algorithm = new PeakEWMA();
+        algorithm.setLoadBalanceEndpoint(getLoadbalanceEndpoint("2000"));
+        algorithm.init(env);
+        assertEquals(2000, algorithm.getDecayTime());
+    }
+
+    public void testInvalidDecayTime() throws Exception {
+        PeakEWMA algorithm = new PeakEWMA();
+        algorithm.setLoadBalanceEndpoint(getLoadbalanceEndpoint("ten seconds"));
+        try {
+            algorithm.init(env);
+            fail("An invalid decay time must be rejected");
+        } catch (SynapseException expected) {
+        }
+
+        algorithm.setLoadBalanceEndpoint(getLoadbalanceEndpoint("0"));
+        try {
+            algorithm.init(env);
+            fail("A decay time of zero must be rejected");
+        } catch (SynapseException expected) {
+        }
+    }
+
+    private LoadbalanceEndpoint getLoadbalanceEndpoint(String decayTime) {
+        LoadbalanceEndpoint endpoint = new LoadbalanceEndpoint();
+        MediatorProperty property = new MediatorProperty();
+        property.setName(LatencyAwareAlgorithm.LB_DECAY_TIME);
+        property.setValue(decayTime);
+        endpoint.addProperty(property);
+        return endpoint;
+    }
+
+    private void record(LoadStatistics stats, long time, boolean success) {
+        stats.requestStarted();
+        stats.requestCompleted(time, success);
+    }
+
+    private Endpoint getEndpoint(String name, SynapseEnvironment env) {
+        AddressEndpoint endpoint = new AddressEndpoint();
+        endpoint.setEnableMBeanStats(false);
+        endpoint.setName(name);
+        endpoint.init(env);
+        return endpoint;
+    }
+}
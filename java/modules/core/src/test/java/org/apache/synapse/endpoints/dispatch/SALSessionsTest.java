@@ -0,0 +1,112 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.endpoints.dispatch;
+
+import junit.framework.TestCase;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseConstants;
+import org.apache.synapse.endpoints.AddressEndpoint;
+import org.apache.synapse.endpoints.Endpoint;
+import org.apache.synapse.endpoints.SALoadbalanceEndpoint;
+import org.apache.synapse.mediators.TestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SALSessionsTest extends TestCase {
+
+    private SALSessions sessions = SALSessions.getInstance();
+
+    @Override
+    protected void setUp() throws Exception {
+        sessions.initialize(false, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        sessions.reset();
+    }
+
+    public void testSessionRemoval() throws Exception {
+        SALoadbalanceEndpoint root = createRootEndpoint(60000);
+        List<Endpoint> endpoints = createEndpointList(root);
+
+        sessions.updateSession(createMessageContext(endpoints), "session1");
+        sessions.updateSession(createMessageContext(endpoints), "session2");
+        assertNotNull(sessions.getSession("session1"));
+        assertEquals(2, root.getLiveSessionCount());
+
+        sessions.removeSession("session1");
+        assertNull(sessions.getSession("session1"));
+        assertNotNull(sessions.getSession("session2"));
+        assertEquals(1, root.getLiveSessionCount());
+        assertEquals(0, root.getExpiredSessionCount());
+
+        sessions.clearSessions();
+        assertNotNull(sessions.getSession("session2"));
+        assertEquals(1, root.getLiveSessionCount());
+    }
+
+    public void testSessionExpiry() throws Exception {
+        SALoadbalanceEndpoint root = createRootEndpoint(10);
+        List<Endpoint> endpoints = createEndpointList(root);
+
+        sessions.updateSession(createMessageContext(endpoints), "session1");
+        assertEquals(1, root.getLiveSessionCount());
+
+        long waitUntil = System.currentTimeMillis() + 5000;
+        while (root.getExpiredSessionCount() == 0 && System.currentTimeMillis() < waitUntil) {
+            Thread.sleep(50);
+            sessions.clearSessions();
+        }
+        assertEquals(1, root.getExpiredSessionCount());
+        assertEquals(0, root.getLiveSessionCount());
+        assertNull(sessions.getSession("session1"));
+
+        // a removed session is not expired again
+        sessions.updateSession(createMessageContext(endpoints), "session2");
+        sessions.removeSession("session2");
+        Thread.sleep(1500);
+        sessions.clearSessions();
+        assertEquals(1, root.getExpiredSessionCount());
+        assertEquals(0, root.getLiveSessionCount());
+    }
+
+    private SALoadbalanceEndpoint createRootEndpoint(long sessionTimeout) {
+        SALoadbalanceEndpoint root = new SALoadbalanceEndpoint();
+        root.setName("salb");
+        root.setSessionTimeout(sessionTimeout);
+        return root;
+    }
+
+    private List<Endpoint> createEndpointList(SALoadbalanceEndpoint root) {
+        AddressEndpoint child = new AddressEndpoint();
+        child.setName("ep1");
+        List<Endpoint> endpoints = new ArrayList<Endpoint>();
+        endpoints.add(root);
+        endpoints.add(child);
+        return endpoints;
+    }
+
+    private MessageContext createMessageContext(List<Endpoint> endpoints) throws Exception {
+        MessageContext synCtx = TestUtils.createLightweightSynapseMessageContext("<test/>");
+        synCtx.setProperty(SynapseConstants.PROP_SAL_ENDPOINT_ENDPOINT_LIST, endpoints);
+        return synCtx;
+    }
+}
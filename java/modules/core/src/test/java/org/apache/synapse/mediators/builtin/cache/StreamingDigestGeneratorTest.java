@@ -0,0 +1,64 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.builtin.cache;
+
+import junit.framework.TestCase;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+import org.apache.synapse.mediators.TestUtils;
+
+public class StreamingDigestGeneratorTest extends TestCase {
+
+    private StreamingDigestGenerator generator = new StreamingDigestGenerator();
+
+    public void testEquivalentMessages() throws Exception {
+        String first = digest("<m:getQuote xmlns:m=\"http://services.samples\" a=\"1\" b=\"2\">" +
+                "<m:symbol>IBM</m:symbol></m:getQuote>", 0);
+        String second = digest("<q:getQuote xmlns:q=\"http://services.samples\" b=\"2\" a=\"1\">" +
+                "<q:symbol>IBM</q:symbol></q:getQuote>", 0);
+        assertNotNull(first);
+        assertEquals(first, second);
+    }
+
+    public void testDifferentMessages() throws Exception {
+        String first = digest("<m:getQuote xmlns:m=\"http://services.samples\">" +
+                "<m:symbol>IBM</m:symbol></m:getQuote>", 0);
+        String second = digest("<m:getQuote xmlns:m=\"http://services.samples\">" +
+                "<m:symbol>MSFT</m:symbol></m:getQuote>", 0);
+        String third = digest("<m:getQuote xmlns:m=\"http://services.samples/v2\">" +
+                "<m:symbol>IBM</m:symbol></m:getQuote>", 0);
+        assertFalse(first.equals(second));
+        assertFalse(first.equals(third));
+    }
+
+    public void testMaxSize() throws Exception {
+        String payload = "<m:getQuote xmlns:m=\"http://services.samples\">" +
+                "<m:symbol>IBM</m:symbol></m:getQuote>";
+        assertNotNull(digest(payload, 10000));
+        assertNull(digest(payload, 50));
+        assertEquals(digest(payload, 0), digest(payload, 10000));
+    }
+
+    private String digest(String payload, int maxSize) throws Exception {
+        MessageContext synCtx = TestUtils.createLightweightSynapseMessageContext(payload);
+        return generator.getDigest(((Axis2MessageContext) synCtx).getAxis2MessageContext(),
+                maxSize);
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.builtin.cache;
+
+import junit.framework.TestCase;
+
+public class TieredResponseCacheTest extends TestCase {
+
+    private TieredResponseCache cache;
+
+    protected void tearDown() throws Exception {
+        if (cache != null) {
+            cache.destroy();
+        }
+    }
+
+    public void testGetAndPut() {
+        cache = new TieredResponseCache();
+        cache.init("test", 10, Long.MAX_VALUE, 0, 0);
+
+        assertNull(cache.get("hash1"));
+        cache.put("hash1", "response1".getBytes(), 0);
+        assertEquals("response1", new String(cache.get("hash1")));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getSize());
+    }
+
+    public void testEntryCountBound() {
+        cache = new TieredResponseCache();
+        cache.init("test", 4, Long.MAX_VALUE, 0, 0);
+
+        for (int i = 0; i < 5; i++) {
+            cache.put("hash" + i, new byte[10], 0);
+        }
+        assertEquals(4, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get("hash0"));
+    }
+
+    public void testLeastRecentlyUsedEntryIsEvicted() {
+        cache = new TieredResponseCache();
+        cache.init("test", 2, Long.MAX_VALUE, 0, 0);
+
+        cache.put("hash1", new byte[10], 0);
+        cache.put("hash2", new byte[10], 0);
+        assertNotNull(cache.get("hash1"));
+        cache.put("hash3", new byte[10], 0);
+
+        assertNotNull(cache.get("hash1"));
+        assertNull(cache.get("hash2"));
+        assertNotNull(cache.get("hash3"));
+    }
+
+    public void testMemoryBound() {
+        cache = new TieredResponseCache();
+        int weight = new CacheEntry("hash0", new byte[1000], 0).weight;
+        cache.init("test", 100, weight * 3, 0, 0);
+
+        for (int i = 0; i < 10; i++) {
+            cache.put("hash" + i, new byte[1000], 0);
+        }
+        assertEquals(3, cache.getSize());
+        assertTrue(cache.getMemoryBytes() <= weight * 3);
+
+        // a response larger than the whole cache is never kept in memory
+        cache.put("large", new byte[weight * 4], 0);
+        assertNull(cache.get("large"));
+        assertEquals(3, cache.getSize());
+    }
+
+    public void testExpiry() throws Exception {
+        cache = new TieredResponseCache();
+        cache.init("test", 10, Long.MAX_VALUE, 0, 0);
+
+        cache.put("hash1", new byte[10], 50);
+        cache.put("hash2", new byte[10], 0);
+        assertNotNull(cache.get("hash1"));
+        Thread.sleep(100);
+        assertNull(cache.get("hash1"));
+        assertNotNull(cache.get("hash2"));
+        assertEquals(1, cache.getExpirations());
+    }
+
+    public void testDiskTier() {
+        cache = new TieredResponseCache();
+        cache.init("test", 2, Long.MAX_VALUE, 10, 64 * 1024);
+
+        for (int i = 0; i < 5; i++) {
+            cache.put("hash" + i, ("response" + i).getBytes(), 0);
+        }
+        assertEquals(2, cache.getSize());
+        assertEquals(3, cache.getDiskSize());
+
+        // evicted responses are served from the disk, and moved back in to memory
+        assertEquals("response0", new String(cache.get("hash0")));
+        assertEquals(1, cache.getDiskHits());
+        assertEquals(2, cache.getSize());
+        assertEquals(3, cache.getDiskSize());
+    }
+
+    public void testDiskTierEntryBound() {
+        cache = new TieredResponseCache();
+        cache.init("test", 1, Long.MAX_VALUE, 2, 64 * 1024);
+
+        for (int i = 0; i < 5; i++) {
+            cache.put("hash" + i, ("response" + i).getBytes(), 0);
+        }
+        assertEquals(2, cache.getDiskSize());
+        assertNull(cache.get("hash0"));
+        assertEquals("response3", new String(cache.get("hash3")));
+    }
+
+    public void testOverwrittenDiskEntriesAreDiscarded() {
+        cache = new TieredResponseCache();
+        cache.init("test", 1, Long.MAX_VALUE, 100, 1024);
+
+        for (int i = 0; i < 10; i++) {
+            cache.put("hash" + i, new byte[300], 0);
+        }
+        // the 1 KB file can only hold the last three evicted responses
+        assertNull(cache.get("hash0"));
+        assertNotNull(cache.get("hash8"));
+    }
+
+    public void testDefaultMemoryBound() {
+        cache = new TieredResponseCache();
+        cache.init("test", 10, 0, 0, 0);
+
+        // the memory limit defaults to a share of the heap rather than being unbounded
+        cache.put("large", new byte[(int) Math.min(Integer.MAX_VALUE - 8,
+                Runtime.getRuntime().maxMemory() / 10 + 1)], 0);
+        assertNull(cache.get("large"));
+        assertEquals(0, cache.getSize());
+    }
+
+    public void testClearDiskTier() {
+        cache = new TieredResponseCache();
+        cache.init("test", 1, Long.MAX_VALUE, 10, 64 * 1024);
+
+        for (int i = 0; i < 5; i++) {
+            cache.put("hash" + i, ("response" + i).getBytes(), 0);
+        }
+        assertEquals(4, cache.getDiskSize());
+
+        // clearing discards the disk tier, which keeps working with a new file
+        cache.clear();
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getDiskSize());
+        assertNull(cache.get("hash0"));
+
+        cache.put("hash5", "response5".getBytes(), 0);
+        cache.put("hash6", "response6".getBytes(), 0);
+        assertEquals(1, cache.getDiskSize());
+        assertEquals("response5", new String(cache.get("hash5")));
+    }
+}
@@ -55,6 +55,104 @@ public class DBReportMediatorTest extends AbstractMediatorTestCase {
         }
     }
 
+    public void testBatchedReport() throws Exception {
+        DBReportMediator batchReport = (DBReportMediator)
+            new DBReportMediatorFactory().createMediator(createOMElement(
+                "<dbreport xmlns=\"http://ws.apache.org/ns/synapse\" batchSize=\"10\" " +
+                    "batchInterval=\"100\">\n" +
+                    "  <connection>\n" +
+                    "    <pool>\n" +
+                    "      <driver>org.apache.derby.jdbc.EmbeddedDriver</driver>\n" +
+                    "      <url>jdbc:derby:" + getBaseDir() + "/target/derbyDB;create=true</url>\n" +
+                    "      <user>user</user>\n" +
+                    "      <password>pass</password>\n" +
+                    "    </pool>\n" +
+                    "  </connection>\n" +
+                    "  <statement>\n" +
+                    "    <sql>insert into batchaudit values(?, ?)</sql>\n" +
+                    "    <parameter expression=\"//from\" type=\"VARCHAR\"/>\n" +
+                    "    <parameter expression=\"//count\" type=\"INTEGER\"/>\n" +
+                    "  </statement>\n" +
+                    "</dbreport>"
+            ), new Properties());
+        batchReport.init(new Axis2SynapseEnvironment(new SynapseConfiguration()));
+
+        for (int i = 0; i < 25; i++) {
+            MessageContext synCtx = TestUtils.getTestContext(
+                "<dummy><from>me</from><count>" + i + "</count></dummy>");
+            assertTrue(batchReport.mediate(synCtx));
+        }
+        // the queued rows are written before the mediator is destroyed
+        batchReport.destroy();
+
+        assertEquals(25, batchReport.getWrittenRowCount());
+        assertEquals(0, batchReport.getFailedRowCount());
+        assertTrue(batchReport.getExecutedBatchCount() >= 3);
+        assertEquals(0, batchReport.getOverflowRowCount());
+
+        Connection con = report.getDataSource().getConnection();
+        ResultSet rs = con.createStatement().executeQuery(
+            "select count(*), sum(cnt) from batchaudit");
+        assertTrue(rs.next());
+        assertEquals(25, rs.getInt(1));
+        assertEquals(300, rs.getInt(2));
+        con.close();
+    }
+
+    public void testBatchedReportKeepsRowOrder() throws Exception {
+        DBReportMediator batchReport = (DBReportMediator)
+            new DBReportMediatorFactory().createMediator(createOMElement(
+                "<dbreport xmlns=\"http://ws.apache.org/ns/synapse\" batchSize=\"100\" " +
+                    "batchInterval=\"100\">\n" +
+                    "  <connection>\n" +
+                    "    <pool>\n" +
+                    "      <driver>org.apache.derby.jdbc.EmbeddedDriver</driver>\n" +
+                    "      <url>jdbc:derby:" + getBaseDir() + "/target/derbyDB;create=true</url>\n" +
+                    "      <user>user</user>\n" +
+                    "      <password>pass</password>\n" +
+                    "    </pool>\n" +
+                    "  </connection>\n" +
+                    "  <statement>\n" +
+                    "    <sql>insert into orderaudit(tag, cnt) values('A', ?)</sql>\n" +
+                    "    <parameter expression=\"//count\" type=\"INTEGER\"/>\n" +
+                    "  </statement>\n" +
+                    "  <statement>\n" +
+                    "    <sql>insert into orderaudit(tag, cnt) values('B', ?)</sql>\n" +
+                    "    <parameter expression=\"//count\" type=\"INTEGER\"/>\n" +
+                    "  </statement>\n" +
+                    "</dbreport>"
+            ), new Properties());
+        batchReport.init(new Axis2SynapseEnvironment(new SynapseConfiguration()));
+
+        for (int i = 0; i < 5; i++) {
+            MessageContext synCtx = TestUtils.getTestContext(
+                "<dummy><count>" + i + "</count></dummy>");
+            assertTrue(batchReport.mediate(synCtx));
+        }
+        batchReport.destroy();
+        assertEquals(10, batchReport.getWrittenRowCount());
+
+        // rows of different statements must not be reordered by the batching
+        Connection con = report.getDataSource().getConnection();
+        ResultSet rs = con.createStatement().executeQuery(
+            "select tag, cnt from orderaudit order by id");
+        for (int i = 0; i < 5; i++) {
+            assertTrue(rs.next());
+            assertEquals("A", rs.getString("tag"));
+            assertEquals(i, rs.getInt("cnt"));
+            assertTrue(rs.next());
+            assertEquals("B", rs.getString("tag"));
+            assertEquals(i, rs.getInt("cnt"));
+        }
+        assertFalse(rs.next());
+        con.close();
+    }
+
+    private static String getBaseDir() {
+        String baseDir = System.getProperty("basedir");
+        return baseDir != null ? baseDir : ".";
+    }
+
     public static Test suite() {
         return new TestSetup(new TestSuite(DBReportMediatorTest.class)) {
 
@@ -96,6 +194,15 @@ public class DBReportMediatorTest extends AbstractMediatorTestCase {
                     s.execute("drop table audit");
                 } catch (SQLException ignore) {}
                 s.execute("create table audit(fromepr varchar(10), cnt int, toepr varchar(10), category varchar(10))");
+                try {
+                    s.execute("drop table batchaudit");
+                } catch (SQLException ignore) {}
+                s.execute("create table batchaudit(fromepr varchar(10), cnt int)");
+                try {
+                    s.execute("drop table orderaudit");
+                } catch (SQLException ignore) {}
+                s.execute("create table orderaudit(id int generated always as identity, " +
+                        "tag varchar(10), cnt int)");
                 s.close();
             }
 
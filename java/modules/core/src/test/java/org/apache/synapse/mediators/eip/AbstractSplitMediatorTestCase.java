@@ -20,6 +20,7 @@
 package org.apache.synapse.mediators.eip;
 
 import org.apache.axiom.om.OMAbstractFactory;
+import org.apache.axiom.om.OMElement;
 import org.apache.axiom.soap.SOAPEnvelope;
 import org.apache.axis2.context.ConfigurationContext;
 import org.apache.axis2.engine.AxisConfiguration;
@@ -28,15 +29,21 @@ import org.apache.synapse.config.SynapseConfiguration;
 import org.apache.synapse.config.xml.MediatorFactory;
 import org.apache.synapse.core.axis2.Axis2MessageContext;
 import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.mediators.AbstractMediator;
 import org.apache.synapse.mediators.AbstractMediatorTestCase;
 import org.apache.synapse.mediators.base.SequenceMediator;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
 /**
  * Preperation of the split mediator test cases 
  */
 public abstract class AbstractSplitMediatorTestCase extends AbstractMediatorTestCase {
 
     SplitTestHelperMediator helperMediator;
+    MarkingMediator markingMediator;
     MessageContext testCtx;
     MediatorFactory fac;
 
@@ -56,6 +63,10 @@ public abstract class AbstractSplitMediatorTestCase extends AbstractMediatorTest
         helperMediator.init(testCtx.getEnvironment());
         seqMed.addChild(helperMediator);
         testCtx.getConfiguration().addSequence("seqRef", seqMed);
+        SequenceMediator markSeq = new SequenceMediator();
+        markingMediator = new MarkingMediator();
+        markSeq.addChild(markingMediator);
+        testCtx.getConfiguration().addSequence("markRef", markSeq);
         testCtx.getConfiguration().addSequence("main", new SequenceMediator());
         testCtx.getConfiguration().addSequence("fault", new SequenceMediator());
     }
@@ -64,6 +75,51 @@ public abstract class AbstractSplitMediatorTestCase extends AbstractMediatorTest
         super.tearDown();
         helperMediator.destroy();
         helperMediator = null;
+        markingMediator = null;
         testCtx = null;
     }
+
+    /**
+     * Wait for the given number of messages to be marked by the marking mediator
+     */
+    void waitForMarkedMessages(int count) throws InterruptedException {
+        for (int i = 0; i < 100 && markingMediator.getMessages().size() < count; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(count, markingMediator.getMessages().size());
+    }
+
+    static int countMarkers(SOAPEnvelope envelope) {
+        int count = 0;
+        for (Iterator itr = envelope.getBody().getChildElements(); itr.hasNext(); ) {
+            if ("marker".equals(((OMElement) itr.next()).getLocalName())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Records the messages it mediates, and changes each of them by adding a marker element
+     * to the SOAP body, so that tests can check that messages do not share their envelopes
+     */
+    static class MarkingMediator extends AbstractMediator {
+
+        private final List<MessageContext> messages = new ArrayList<MessageContext>();
+
+        public boolean mediate(MessageContext synCtx) {
+            synCtx.getEnvelope().getBody().addChild(
+                    OMAbstractFactory.getOMFactory().createOMElement("marker", null));
+            synchronized (messages) {
+                messages.add(synCtx);
+            }
+            return false;
+        }
+
+        List<MessageContext> getMessages() {
+            synchronized (messages) {
+                return new ArrayList<MessageContext>(messages);
+            }
+        }
+    }
 }
@@ -0,0 +1,255 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.eip;
+
+import org.apache.axiom.om.OMAbstractFactory;
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseException;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.mediators.AbstractMediator;
+import org.apache.synapse.mediators.AbstractMediatorTestCase;
+import org.apache.synapse.mediators.base.SequenceMediator;
+import org.apache.synapse.mediators.eip.aggregator.Aggregate;
+import org.apache.synapse.mediators.eip.aggregator.AggregateMediator;
+import org.apache.synapse.util.xpath.SynapseXPath;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the correlation, completion and merging of the aggregate mediator
+ */
+public class AggregateMediatorTest extends AbstractMediatorTestCase {
+
+    private static final String CORRELATION = "test-correlation";
+
+    private SynapseConfiguration synCfg;
+    private SynapseEnvironment synEnv;
+    private CollectingMediator collector;
+    private AggregateMediator aggregate;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        synCfg = new SynapseConfiguration();
+        synEnv = new Axis2SynapseEnvironment(
+                new ConfigurationContext(new AxisConfiguration()), synCfg);
+
+        collector = new CollectingMediator();
+        SequenceMediator onComplete = new SequenceMediator();
+        onComplete.addChild(collector);
+
+        aggregate = new AggregateMediator();
+        aggregate.setOnCompleteSequence(onComplete);
+    }
+
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        aggregate.destroy();
+        aggregate = null;
+        collector = null;
+    }
+
+    public void testCompletionByCount() throws Exception {
+        aggregate.setMinMessagesToComplete(3);
+        aggregate.init(synEnv);
+
+        aggregate.mediate(createMessage(0));
+        aggregate.mediate(createMessage(1));
+
+        assertEquals(0, collector.getMessages().size());
+        Aggregate active = (Aggregate) aggregate.getActiveAggregates().get(CORRELATION);
+        assertNotNull(active);
+        assertEquals(2, active.getMessageCount());
+
+        aggregate.mediate(createMessage(2));
+
+        assertEquals(1, collector.getMessages().size());
+        assertEquals(3, countParts(collector.getMessages().get(0)));
+        assertTrue(aggregate.getActiveAggregates().isEmpty());
+    }
+
+    public void testCompletionByTimeout() throws Exception {
+        aggregate.setMinMessagesToComplete(5);
+        aggregate.setCompletionTimeoutMillis(200);
+        aggregate.init(synEnv);
+
+        aggregate.mediate(createMessage(0));
+        aggregate.mediate(createMessage(1));
+        assertEquals(0, collector.getMessages().size());
+
+        assertTrue("Aggregate should time out", collector.await(10, TimeUnit.SECONDS));
+        assertEquals(1, collector.getMessages().size());
+        assertEquals(2, countParts(collector.getMessages().get(0)));
+        assertTrue(aggregate.getActiveAggregates().isEmpty());
+    }
+
+    public void testConcurrentMessagesForSameCorrelation() throws Exception {
+        final int threads = 10;
+        final int messagesPerThread = 5;
+        aggregate.setMinMessagesToComplete(threads * messagesPerThread);
+        aggregate.init(synEnv);
+
+        final List<MessageContext> messages = new ArrayList<MessageContext>();
+        for (int i = 0; i < threads * messagesPerThread; i++) {
+            messages.add(createMessage(i));
+        }
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int offset = t * messagesPerThread;
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < messagesPerThread; i++) {
+                            aggregate.mediate(messages.get(offset + i));
+                        }
+                    } catch (InterruptedException ignored) {
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        start.countDown();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+
+        // every message is merged in to a single aggregated message which completes once
+        assertEquals(1, collector.getMessages().size());
+        assertEquals(threads * messagesPerThread, countParts(collector.getMessages().get(0)));
+        assertTrue(aggregate.getActiveAggregates().isEmpty());
+    }
+
+    public void testLateMessageAfterCompletion() throws Exception {
+        aggregate.setMinMessagesToComplete(2);
+        aggregate.init(synEnv);
+
+        aggregate.mediate(createMessage(0));
+        aggregate.mediate(createMessage(1));
+        assertEquals(1, collector.getMessages().size());
+
+        // a late message must not be merged in to the completed aggregate
+        aggregate.mediate(createMessage(2));
+
+        assertEquals(1, collector.getMessages().size());
+        assertEquals(2, countParts(collector.getMessages().get(0)));
+
+        Aggregate active = (Aggregate) aggregate.getActiveAggregates().get(CORRELATION);
+        assertNotNull("Late message should start a new aggregate", active);
+        assertFalse(active.isCompleted());
+        assertEquals(1, active.getMessageCount());
+    }
+
+    public void testFailedMergeIsNotRetried() throws Exception {
+        aggregate.setMinMessagesToComplete(2);
+        aggregate.init(synEnv);
+        SynapseXPath aggregationExpression = aggregate.getAggregationExpression();
+
+        aggregate.mediate(createMessage(0));
+
+        // the aggregation expression fails to evaluate when merging this message
+        aggregate.setAggregationExpression(new SynapseXPath("//part[no-such-function()]"));
+        try {
+            aggregate.mediate(createMessage(1));
+            fail("The failed merge should be reported");
+        } catch (SynapseException expected) {
+        }
+        Aggregate active = (Aggregate) aggregate.getActiveAggregates().get(CORRELATION);
+        assertEquals(1, active.getMessageCount());
+
+        // the failed message is not merged again with the next message
+        aggregate.setAggregationExpression(aggregationExpression);
+        aggregate.mediate(createMessage(2));
+
+        assertEquals(1, collector.getMessages().size());
+        assertEquals(2, countParts(collector.getMessages().get(0)));
+    }
+
+    public void testExpectedCountFromMessageSequence() throws Exception {
+        aggregate.init(synEnv);
+
+        for (int i = 0; i < 3; i++) {
+            MessageContext synCtx = createMessage(i);
+            synCtx.setProperty(EIPConstants.MESSAGE_SEQUENCE,
+                    i + EIPConstants.MESSAGE_SEQUENCE_DELEMITER + 3);
+            aggregate.mediate(synCtx);
+            assertEquals(i == 2 ? 1 : 0, collector.getMessages().size());
+        }
+        assertEquals(3, countParts(collector.getMessages().get(0)));
+    }
+
+    private MessageContext createMessage(int index) throws Exception {
+        MessageContext synCtx = new Axis2MessageContext(
+                new org.apache.axis2.context.MessageContext(), synCfg, synEnv);
+        SOAPEnvelope envelope = OMAbstractFactory.getSOAP11Factory().getDefaultEnvelope();
+        envelope.getBody().addChild(createOMElement("<part>" + index + "</part>"));
+        synCtx.setEnvelope(envelope);
+        synCtx.setProperty(EIPConstants.AGGREGATE_CORRELATION, CORRELATION);
+        return synCtx;
+    }
+
+    private int countParts(MessageContext synCtx) {
+        int count = 0;
+        Iterator it = synCtx.getEnvelope().getBody().getChildElements();
+        while (it.hasNext()) {
+            if ("part".equals(((OMElement) it.next()).getLocalName())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static class CollectingMediator extends AbstractMediator {
+
+        private final List<MessageContext> messages = new ArrayList<MessageContext>();
+
+        private final CountDownLatch completed = new CountDownLatch(1);
+
+        public boolean mediate(MessageContext synCtx) {
+            synchronized (messages) {
+                messages.add(synCtx);
+            }
+            completed.countDown();
+            return true;
+        }
+
+        List<MessageContext> getMessages() {
+            synchronized (messages) {
+                return new ArrayList<MessageContext>(messages);
+            }
+        }
+
+        boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+            return completed.await(timeout, unit);
+        }
+    }
+}
@@ -19,6 +19,7 @@
 
 package org.apache.synapse.mediators.eip;
 
+import org.apache.axiom.soap.SOAPEnvelope;
 import org.apache.synapse.Mediator;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.config.xml.CloneMediatorFactory;
@@ -82,4 +83,49 @@ public class CloneMediatorTest extends AbstractSplitMediatorTestCase {
         assertEquals(testCtx.getSoapAction(), "urn:test");
         assertEquals(testCtx.getTo(), null);
     }
+
+    public void testLastTargetGetsParentEnvelope() throws Exception {
+        Mediator clone = fac.createMediator(createOMElement("<clone " +
+            "xmlns=\"http://ws.apache.org/ns/synapse\"><target soapAction=\"urn:first\" " +
+            "sequence=\"markRef\"/><target soapAction=\"urn:last\" sequence=\"markRef\"/>" +
+            "</clone>"), new Properties());
+        SOAPEnvelope parentEnvelope = testCtx.getEnvelope();
+        assertFalse(clone.mediate(testCtx));
+        waitForMarkedMessages(2);
+
+        for (MessageContext mediatedCtx : markingMediator.getMessages()) {
+            // the parent is not continued, so the last target takes over its envelope
+            if ("urn:last".equals(mediatedCtx.getSoapAction())) {
+                assertSame(parentEnvelope, mediatedCtx.getEnvelope());
+            } else {
+                assertNotSame(parentEnvelope, mediatedCtx.getEnvelope());
+            }
+            // the targets do not see the changes made by each other
+            assertEquals(1, countMarkers(mediatedCtx.getEnvelope()));
+            assertEquals("test-split-context",
+                mediatedCtx.getEnvelope().getBody().getFirstElement().getText());
+        }
+        // the parent no longer refers to the envelope it handed over
+        assertNotSame(parentEnvelope, testCtx.getEnvelope());
+        assertNull(testCtx.getEnvelope().getBody().getFirstElement());
+    }
+
+    public void testParentIsUntouchedWithContinueParent() throws Exception {
+        Mediator clone = fac.createMediator(createOMElement("<clone continueParent=\"true\" " +
+            "xmlns=\"http://ws.apache.org/ns/synapse\"><target soapAction=\"urn:first\" " +
+            "sequence=\"markRef\"/><target soapAction=\"urn:last\" sequence=\"markRef\"/>" +
+            "</clone>"), new Properties());
+        SOAPEnvelope parentEnvelope = testCtx.getEnvelope();
+        assertTrue(clone.mediate(testCtx));
+        waitForMarkedMessages(2);
+
+        for (MessageContext mediatedCtx : markingMediator.getMessages()) {
+            assertNotSame(parentEnvelope, mediatedCtx.getEnvelope());
+            assertEquals(1, countMarkers(mediatedCtx.getEnvelope()));
+        }
+        assertSame(parentEnvelope, testCtx.getEnvelope());
+        assertEquals(0, countMarkers(testCtx.getEnvelope()));
+        assertEquals("test-split-context",
+            testCtx.getEnvelope().getBody().getFirstElement().getText());
+    }
 }
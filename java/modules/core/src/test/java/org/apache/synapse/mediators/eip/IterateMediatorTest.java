@@ -26,6 +26,7 @@ import org.apache.axiom.soap.SOAPEnvelope;
 import org.apache.axiom.om.OMAbstractFactory;
 import org.apache.axiom.om.OMElement;
 
+import java.util.Iterator;
 import java.util.Properties;
 
 /**
@@ -68,6 +69,54 @@ public class IterateMediatorTest extends AbstractSplitMediatorTestCase {
         }
     }
 
+    public void testIterationSplitsParentInPlace() throws Exception {
+        Mediator iterate = fac.createMediator(createOMElement("<iterate " +
+            "expression=\"//original/itr\" xmlns=\"http://ws.apache.org/ns/synapse\">" +
+            "<target soapAction=\"urn:iterate\" sequence=\"markRef\"/></iterate>"),
+            new Properties());
+        SOAPEnvelope parentEnvelope = testCtx.getEnvelope();
+        assertFalse(iterate.mediate(testCtx));
+        waitForMarkedMessages(2);
+
+        // the parent is not continued, so its envelope is split rather than copied
+        assertFalse(parentEnvelope.getBody().getChildElements().hasNext());
+
+        boolean first = false;
+        boolean second = false;
+        for (MessageContext mediatedCtx : markingMediator.getMessages()) {
+            SOAPEnvelope envelope = mediatedCtx.getEnvelope();
+            assertNotSame(parentEnvelope, envelope);
+            assertEquals(1, countMarkers(envelope));
+            OMElement itr = envelope.getBody().getFirstElement();
+            assertEquals("itr", itr.getLocalName());
+            first |= "test-split-context-itr1-body".equals(itr.getText());
+            second |= "test-split-context-itr2-body".equals(itr.getText());
+        }
+        assertTrue(first && second);
+    }
+
+    public void testParentIsUntouchedWithContinueParent() throws Exception {
+        Mediator iterate = fac.createMediator(createOMElement("<iterate " +
+            "expression=\"//original/itr\" continueParent=\"true\" " +
+            "xmlns=\"http://ws.apache.org/ns/synapse\">" +
+            "<target soapAction=\"urn:iterate\" sequence=\"markRef\"/></iterate>"),
+            new Properties());
+        assertTrue(iterate.mediate(testCtx));
+        waitForMarkedMessages(2);
+
+        for (MessageContext mediatedCtx : markingMediator.getMessages()) {
+            assertEquals(1, countMarkers(mediatedCtx.getEnvelope()));
+        }
+        assertEquals(0, countMarkers(testCtx.getEnvelope()));
+        OMElement original = testCtx.getEnvelope().getBody().getFirstElement();
+        assertEquals("original", original.getLocalName());
+        int count = 0;
+        for (Iterator itr = original.getChildElements(); itr.hasNext(); itr.next()) {
+            count++;
+        }
+        assertEquals(2, count);
+    }
+
     public void testIterationWithPreservePayload() throws Exception {
         Mediator iterate = fac.createMediator(createOMElement("<iterate " +
             "expression=\"//original/itr\" preservePayload=\"true\" attachPath=\"//original\" " +
@@ -87,4 +136,38 @@ public class IterateMediatorTest extends AbstractSplitMediatorTestCase {
                 .getFirstElement().getFirstElement().getText(), helperMediator.getCheckString());
         }
     }
+
+    public void testStreamingIteration() throws Exception {
+        Mediator iterate = fac.createMediator(createOMElement("<iterate " +
+            "expression=\"s11:Body/original/itr\" streaming=\"true\" sequential=\"true\" " +
+            "xmlns=\"http://ws.apache.org/ns/synapse\" " +
+            "xmlns:s11=\"http://schemas.xmlsoap.org/soap/envelope/\">" +
+            "<target soapAction=\"urn:iterate\" sequence=\"seqRef\"/></iterate>"),
+            new Properties());
+        helperMediator.clearMediatedContexts();
+        iterate.mediate(testCtx);
+
+        assertNotNull(helperMediator.getMediatedContext(1));
+        assertNull(helperMediator.getMediatedContext(2));
+        MessageContext mediatedCtx = helperMediator.getMediatedContext(1);
+        assertEquals("urn:iterate", mediatedCtx.getSoapAction());
+        assertEquals("itr", mediatedCtx.getEnvelope().getBody().getFirstElement().getLocalName());
+        assertEquals("test-split-context-itr2-body", helperMediator.getCheckString());
+    }
+
+    public void testStreamingIterationWithMaxPending() throws Exception {
+        Mediator iterate = fac.createMediator(createOMElement("<iterate " +
+            "expression=\"s11:Body/original/itr\" streaming=\"true\" maxPending=\"1\" " +
+            "xmlns=\"http://ws.apache.org/ns/synapse\" " +
+            "xmlns:s11=\"http://schemas.xmlsoap.org/soap/envelope/\">" +
+            "<target soapAction=\"urn:iterate\" sequence=\"seqRef\"/></iterate>"),
+            new Properties());
+        helperMediator.clearMediatedContexts();
+        iterate.mediate(testCtx);
+        while(helperMediator.getMediatedContext(1) == null) {
+            Thread.sleep(100);
+        }
+        assertEquals("urn:iterate", helperMediator.getMediatedContext(0).getSoapAction());
+        assertEquals("urn:iterate", helperMediator.getMediatedContext(1).getSoapAction());
+    }
 }
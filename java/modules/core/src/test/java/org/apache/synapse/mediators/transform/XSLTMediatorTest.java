@@ -26,6 +26,7 @@ import org.apache.axis2.transport.base.BaseConstants;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseException;
 import org.apache.synapse.TestMessageContextBuilder;
+import org.apache.synapse.mediators.MediatorProperty;
 import org.apache.synapse.mediators.Value;
 import org.apache.synapse.util.jaxp.*;
 import org.apache.synapse.util.xpath.SynapseXPath;
@@ -364,6 +365,45 @@ public class XSLTMediatorTest extends TestCase {
         }
     }
 
+    /**
+     * Test that the parameters of a transformation do not leak in to the next transformation
+     * performed with the same (reused) transformer
+     *
+     * @throws Exception Exception in case of an error in tests
+     */
+    public void testTransformerReuseWithParameters() throws Exception {
+        XSLTMediator transformMediator = new XSLTMediator();
+        setXsltTransformationURL(transformMediator, "xslt-key");
+
+        MediatorProperty symbol = new MediatorProperty();
+        symbol.setName("symbol");
+        symbol.setExpression(new SynapseXPath("get-property('symbol')"));
+        transformMediator.addProperty(symbol);
+
+        String[] symbols = { "IBM", "MSFT", "IBM" };
+        for (String value : symbols) {
+            MessageContext synCtx = new TestMessageContextBuilder().addEntry("xslt-key",
+                    getClass().getResource("parameters.xslt")).setBodyFromString(SOURCE).build();
+            synCtx.setProperty("symbol", value);
+            transformMediator.mediate(synCtx);
+
+            OMElement result = synCtx.getEnvelope().getBody().getFirstElement();
+            assertEquals("GetQuote", result.getLocalName());
+            assertEquals(value, result.getFirstElement().getText());
+        }
+
+        // a reused transformer must not keep the parameter set for a previous message
+        MessageContext synCtx = new TestMessageContextBuilder().addEntry("xslt-key",
+                getClass().getResource("parameters.xslt")).setBodyFromString(SOURCE).build();
+        transformMediator.mediate(synCtx);
+
+        OMElement result = synCtx.getEnvelope().getBody().getFirstElement();
+        assertEquals("GetQuote", result.getLocalName());
+        assertEquals("", result.getFirstElement().getText());
+
+        transformMediator.destroy();
+    }
+
     /**
      * Test with multiple keys including static and dynamic keys
      *
@@ -0,0 +1,200 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.message.processors.forward;
+
+import junit.framework.TestCase;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.axis2.Axis2BlockingClient;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.endpoints.AddressEndpoint;
+import org.apache.synapse.endpoints.Endpoint;
+import org.apache.synapse.endpoints.EndpointDefinition;
+import org.apache.synapse.mediators.TestUtils;
+import org.apache.synapse.message.processors.MessageProcessorConsents;
+import org.apache.synapse.message.store.InMemoryMessageStore;
+import org.apache.synapse.message.store.MessageStore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class EventDrivenMessageForwardingProcessorTest extends TestCase {
+
+    private SynapseConfiguration config;
+    private Axis2SynapseEnvironment environment;
+    private MessageStore store;
+    private TestProcessor processor;
+
+    @Override
+    protected void setUp() throws Exception {
+        config = new SynapseConfiguration();
+        AxisConfiguration axisConfig = new AxisConfiguration();
+        config.setAxisConfiguration(axisConfig);
+        environment = new Axis2SynapseEnvironment(new ConfigurationContext(axisConfig), config);
+
+        AddressEndpoint endpoint = new AddressEndpoint();
+        endpoint.setDefinition(new EndpointDefinition());
+        endpoint.init(environment);
+        config.addEndpoint("target", endpoint);
+
+        store = new InMemoryMessageStore();
+        store.init(environment);
+        config.addMessageStore("store", store);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (processor != null) {
+            processor.destroy();
+        }
+    }
+
+    public void testForwardInOrder() throws Exception {
+        createProcessor(null);
+        // fails twice before it is delivered, holding back the messages behind it
+        processor.failures.put("ID3", new AtomicInteger(2));
+        populateStore(20);
+        waitUntilEmpty();
+
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 20; i++) {
+            expected.add("ID" + i);
+        }
+        assertEquals(expected, processor.delivered);
+        assertEquals(22, processor.attempts.get());
+    }
+
+    public void testForwardConcurrently() throws Exception {
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(ForwardingProcessorConstants.PRESERVE_ORDER, "false");
+        parameters.put(ForwardingProcessorConstants.CONCURRENCY, "4");
+        parameters.put(ForwardingProcessorConstants.BATCH_SIZE, "5");
+        parameters.put(MessageProcessorConsents.MAX_DELIVER_ATTEMPTS, "3");
+        parameters.put(ForwardingProcessorConstants.MAX_DELIVER_DROP, "true");
+        createProcessor(parameters);
+        // never delivered, dropped after three attempts without holding back the rest
+        processor.failures.put("ID7", new AtomicInteger(Integer.MAX_VALUE));
+        populateStore(50);
+        waitUntilEmpty();
+
+        Set<String> delivered = new HashSet<String>(processor.delivered);
+        assertEquals(49, processor.delivered.size());
+        assertEquals(49, delivered.size());
+        assertFalse(delivered.contains("ID7"));
+        assertEquals(52, processor.attempts.get());
+    }
+
+    public void testDeactivateAfterMaxAttempts() throws Exception {
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(MessageProcessorConsents.MAX_DELIVER_ATTEMPTS, "2");
+        createProcessor(parameters);
+        processor.failures.put("ID0", new AtomicInteger(Integer.MAX_VALUE));
+        populateStore(5);
+
+        for (int i = 0; i < 500 && processor.isActive(); i++) {
+            Thread.sleep(10);
+        }
+        assertFalse(processor.isActive());
+        assertEquals(5, store.size());
+        assertEquals(2, processor.attempts.get());
+        assertTrue(processor.delivered.isEmpty());
+
+        processor.failures.clear();
+        processor.getView().activate();
+        waitUntilEmpty();
+        assertEquals(5, processor.delivered.size());
+    }
+
+    public void testForwardStoredMessagesOnStart() throws Exception {
+        populateStore(10);
+        createProcessor(null);
+        waitUntilEmpty();
+        assertEquals(10, processor.delivered.size());
+
+        processor.stop();
+        populateStore(5);
+        Thread.sleep(100);
+        assertEquals(5, store.size());
+
+        processor.start();
+        waitUntilEmpty();
+        assertEquals(15, processor.delivered.size());
+    }
+
+    private void createProcessor(Map<String, Object> parameters) {
+        if (parameters == null) {
+            parameters = new HashMap<String, Object>();
+        }
+        parameters.put(MessageProcessorConsents.INTERVAL, "10");
+        processor = new TestProcessor();
+        processor.setName("EventDrivenForwardingProcessor");
+        processor.setMessageStoreName("store");
+        processor.setParameters(parameters);
+        processor.init(environment);
+    }
+
+    private void populateStore(int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            MessageContext msg = TestUtils.createSynapseMessageContext("<test/>", config);
+            msg.setMessageID("ID" + i);
+            msg.setProperty(ForwardingProcessorConstants.TARGET_ENDPOINT, "target");
+            store.offer(msg);
+        }
+    }
+
+    private void waitUntilEmpty() throws Exception {
+        for (int i = 0; i < 1000 && store.size() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, store.size());
+    }
+
+    private static class TestProcessor extends EventDrivenMessageForwardingProcessor {
+
+        private final List<String> delivered = new CopyOnWriteArrayList<String>();
+        private final Map<String, AtomicInteger> failures =
+                new ConcurrentHashMap<String, AtomicInteger>();
+        private final AtomicInteger attempts = new AtomicInteger();
+
+        @Override
+        protected Axis2BlockingClient createSender() {
+            return new Axis2BlockingClient(new ConfigurationContext(new AxisConfiguration()));
+        }
+
+        @Override
+        protected MessageContext send(Endpoint endpoint, MessageContext synCtx) throws Exception {
+            attempts.incrementAndGet();
+            AtomicInteger remaining = failures.get(synCtx.getMessageID());
+            if (remaining != null && remaining.getAndDecrement() > 0) {
+                throw new Exception("Simulated failure");
+            }
+            delivered.add(synCtx.getMessageID());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.message.processors.resequence;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ResequencingIndexTest extends TestCase {
+
+    public void testOrdering() {
+        ResequencingIndex index = new ResequencingIndex();
+        assertNull(index.firstSequenceNo());
+        assertNull(index.first());
+
+        int[] sequenceNumbers = {7, 3, 9, 4, 5};
+        for (int sequenceNo : sequenceNumbers) {
+            assertTrue(index.add(sequenceNo, "ID" + sequenceNo, Integer.MIN_VALUE));
+        }
+        assertEquals(5, index.size());
+        assertEquals(3, index.firstSequenceNo().intValue());
+        assertEquals("ID3", index.first().messageId);
+
+        int released = 0;
+        for (int next = 3; index.get(next) != null; next++) {
+            assertEquals("ID" + next, index.remove(next).messageId);
+            released++;
+        }
+        assertEquals(3, released);
+        assertEquals(7, index.firstSequenceNo().intValue());
+        assertEquals(2, index.size());
+    }
+
+    public void testDuplicates() {
+        ResequencingIndex index = new ResequencingIndex();
+        assertTrue(index.add(5, "ID1", 3));
+        // the same message indexed twice is not a duplicate
+        assertFalse(index.add(5, "ID1", 3));
+        assertTrue(index.takeDuplicates().isEmpty());
+
+        assertFalse(index.add(5, "ID2", 3));
+        assertFalse(index.add(2, "ID3", 3));
+        assertEquals(Arrays.asList("ID2", "ID3"), index.takeDuplicates());
+        assertEquals(Collections.<String>emptyList(), index.takeDuplicates());
+        assertEquals(1, index.size());
+    }
+
+    public void testSpilling() {
+        ResequencingIndex index = new ResequencingIndex();
+        for (int i = 0; i < 10; i++) {
+            index.add(i, "ID" + i, 0);
+        }
+
+        List<ResequencingIndex.Entry> entries = index.getUnspilled(6);
+        assertEquals(4, entries.size());
+        for (ResequencingIndex.Entry entry : entries) {
+            index.markSpilled(entry);
+        }
+        assertEquals(4, index.getSpilledCount());
+        assertTrue(index.getUnspilled(6).isEmpty());
+        assertEquals(2, index.getUnspilled(4).size());
+
+        assertTrue(index.remove(6).spilled);
+        assertEquals(3, index.getSpilledCount());
+        assertFalse(index.remove(0).spilled);
+        assertEquals(3, index.getSpilledCount());
+    }
+}
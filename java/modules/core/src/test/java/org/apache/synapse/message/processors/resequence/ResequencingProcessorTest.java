@@ -0,0 +1,182 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.processors.resequence;
+
+import junit.framework.TestCase;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.mediators.AbstractMediator;
+import org.apache.synapse.mediators.TestUtils;
+import org.apache.synapse.mediators.base.SequenceMediator;
+import org.apache.synapse.message.processors.MessageProcessorConsents;
+import org.apache.synapse.message.store.InMemoryMessageStore;
+import org.apache.synapse.message.store.MessageStore;
+import org.apache.synapse.util.xpath.SynapseXPath;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class ResequencingProcessorTest extends TestCase {
+
+    private SynapseConfiguration config;
+    private Axis2SynapseEnvironment environment;
+    private MessageStore store;
+    private MessageStore spillStore;
+    private ResequencingProcessor processor;
+    private final List<String> released = new CopyOnWriteArrayList<String>();
+
+    @Override
+    protected void setUp() throws Exception {
+        config = new SynapseConfiguration();
+        AxisConfiguration axisConfig = new AxisConfiguration();
+        config.setAxisConfiguration(axisConfig);
+        environment = new Axis2SynapseEnvironment(new ConfigurationContext(axisConfig), config);
+
+        SequenceMediator sequence = new SequenceMediator();
+        sequence.addChild(new AbstractMediator() {
+            public boolean mediate(MessageContext synCtx) {
+                released.add(synCtx.getMessageID());
+                return true;
+            }
+        });
+        config.addSequence("next", sequence);
+
+        store = new InMemoryMessageStore();
+        store.init(environment);
+        config.addMessageStore("store", store);
+        spillStore = new InMemoryMessageStore();
+        spillStore.init(environment);
+        config.addMessageStore("spill", spillStore);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (processor != null) {
+            processor.destroy();
+        }
+    }
+
+    public void testReleaseInOrder() throws Exception {
+        populateStore(5, 3, 1, 4, 2);
+        createProcessor(null);
+        waitForReleased(5);
+
+        assertEquals(Arrays.asList("ID1", "ID2", "ID3", "ID4", "ID5"), released);
+        assertEquals(0, store.size());
+        assertEquals(6, processor.getNextSeqNo());
+        assertEquals(5, processor.getReleasedCount());
+    }
+
+    public void testMissingMessageTriggersRelease() throws Exception {
+        populateStore(1, 2, 4, 5);
+        createProcessor(null);
+        waitForReleased(2);
+
+        // the job is not run again before the interval, so only the message with the
+        // missing sequence number can release the messages waiting behind it
+        Thread.sleep(100);
+        assertEquals(Arrays.asList("ID1", "ID2"), released);
+        assertEquals(2, processor.getWaitingCount());
+        assertEquals(1, processor.getGap());
+
+        populateStore(3);
+        waitForReleased(5);
+        assertEquals(Arrays.asList("ID1", "ID2", "ID3", "ID4", "ID5"), released);
+        assertEquals(0, processor.getWaitingCount());
+        assertEquals(0, processor.getGap());
+        assertEquals(0, store.size());
+    }
+
+    public void testWaitForRequiredInitMessages() throws Exception {
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(ResequencingProcessor.REQ_INIT_MSGS, "3");
+        populateStore(3, 2);
+        createProcessor(parameters);
+
+        // the first run finds less messages than required and leaves them for a later run
+        Thread.sleep(100);
+        assertTrue(released.isEmpty());
+
+        populateStore(1);
+        waitForReleased(3);
+        assertEquals(Arrays.asList("ID1", "ID2", "ID3"), released);
+    }
+
+    public void testSpillMessagesBeyondWindow() throws Exception {
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(ResequencingProcessor.SPILL_MESSAGE_STORE, "spill");
+        parameters.put(ResequencingProcessor.RESEQUENCING_WINDOW, "2");
+        populateStore(1, 5, 6, 7);
+        createProcessor(parameters);
+        waitForReleased(1);
+
+        // the next sequence number is 2, so the messages from 4 are moved to the spill store
+        for (int i = 0; i < 100 && processor.getSpilledCount() < 3; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(3, processor.getSpilledCount());
+        assertEquals(0, store.size());
+        assertEquals(3, spillStore.size());
+
+        populateStore(3, 2, 4);
+        waitForReleased(7);
+        assertEquals(Arrays.asList("ID1", "ID2", "ID3", "ID4", "ID5", "ID6", "ID7"), released);
+        assertEquals(0, processor.getSpilledCount());
+        assertEquals(0, store.size());
+        assertEquals(0, spillStore.size());
+    }
+
+    private void createProcessor(Map<String, Object> parameters) throws Exception {
+        if (parameters == null) {
+            parameters = new HashMap<String, Object>();
+        }
+        // run the job once at start up, and then only when it is triggered
+        parameters.put(MessageProcessorConsents.INTERVAL, "600000");
+        parameters.put(ResequencingProcessor.SEQUENCE_NUMBER_XPATH, new SynapseXPath("//seq"));
+        parameters.put(ResequencingProcessor.NEXT_SEQUENCE, "next");
+        processor = new ResequencingProcessor();
+        processor.setName("ResequencingProcessor");
+        processor.setMessageStoreName("store");
+        processor.setParameters(parameters);
+        processor.init(environment);
+    }
+
+    private void populateStore(int... sequenceNumbers) throws Exception {
+        for (int sequenceNo : sequenceNumbers) {
+            MessageContext msg = TestUtils.createSynapseMessageContext(
+                    "<test><seq>" + sequenceNo + "</seq></test>", config);
+            msg.setMessageID("ID" + sequenceNo);
+            store.offer(msg);
+        }
+    }
+
+    private void waitForReleased(int count) throws Exception {
+        for (int i = 0; i < 500 && released.size() < count; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, released.size());
+    }
+}
@@ -40,6 +40,15 @@ public class InMemoryMessageStoreTest extends TestCase {
             assertEquals("ID" + i, store.get(i).getMessageID());
         }
 
+        // test get(from, to)
+        List<MessageContext> range = store.get(3, 6);
+        assertEquals(3, range.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals("ID" + (i + 3), range.get(i).getMessageID());
+        }
+        assertEquals(2, store.get(8, 12).size());
+        assertTrue(store.get(10, 12).isEmpty());
+
         // test get(messageId)
         for (int i = 0; i < 10; i++) {
             assertEquals("ID" + i, store.get("ID" + i).getMessageID());
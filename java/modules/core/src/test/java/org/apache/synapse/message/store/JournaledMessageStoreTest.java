@@ -0,0 +1,231 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.message.store;
+
+import junit.framework.TestCase;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseException;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.mediators.TestUtils;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+public class JournaledMessageStoreTest extends TestCase {
+
+    private File directory;
+    private SynapseEnvironment environment;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = new File(System.getProperty("java.io.tmpdir"),
+                "journaled-store-" + System.nanoTime());
+        SynapseConfiguration synapseConfig = new SynapseConfiguration();
+        environment = new Axis2SynapseEnvironment(
+                new ConfigurationContext(new AxisConfiguration()), synapseConfig);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    public void testBasics() throws Exception {
+        JournaledMessageStore store = createStore("1024");
+        populateStore(store, 10);
+        assertEquals(10, store.size());
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("ID" + i, store.get(i).getMessageID());
+            assertEquals("ID" + i, store.get("ID" + i).getMessageID());
+        }
+        List<MessageContext> list = store.getAll();
+        assertEquals(10, list.size());
+        assertEquals("ID9", list.get(9).getMessageID());
+
+        List<MessageContext> range = store.get(3, 6);
+        assertEquals(3, range.size());
+        assertEquals("ID3", range.get(0).getMessageID());
+        assertEquals("ID5", range.get(2).getMessageID());
+        assertEquals(2, store.get(8, 12).size());
+        assertTrue(store.get(10, 12).isEmpty());
+
+        MessageContext peeked = store.peek();
+        assertEquals("ID0", peeked.getMessageID());
+        assertSame(peeked, store.peek());
+        assertSame(peeked, store.poll());
+
+        assertEquals("ID5", store.remove("ID5").getMessageID());
+        assertNull(store.get("ID5"));
+        assertEquals(8, store.size());
+
+        for (int i = 1; i < 10; i++) {
+            if (i != 5) {
+                assertEquals("ID" + i, store.remove().getMessageID());
+            }
+        }
+        try {
+            store.remove();
+            fail();
+        } catch (NoSuchElementException expected) {
+
+        }
+
+        populateStore(store, 10);
+        store.clear();
+        assertEquals(0, store.size());
+        store.destroy();
+    }
+
+    public void testMessageContent() throws Exception {
+        JournaledMessageStore store = createStore(null);
+        MessageContext msg = TestUtils.createLightweightSynapseMessageContext(
+                "<test><value>content</value></test>");
+        msg.setMessageID("ID0");
+        msg.setProperty("target.endpoint", "StockQuoteEP");
+        msg.setProperty("count", 3);
+        msg.setProperty("flag", Boolean.TRUE);
+        msg.setProperty("object", new Object());
+        store.offer(msg);
+        store.destroy();
+
+        store = createStore(null);
+        MessageContext restored = store.poll();
+        assertEquals("ID0", restored.getMessageID());
+        assertEquals("StockQuoteEP", restored.getProperty("target.endpoint"));
+        assertEquals(3, restored.getProperty("count"));
+        assertEquals(Boolean.TRUE, restored.getProperty("flag"));
+        assertNull(restored.getProperty("object"));
+        assertEquals("content", restored.getEnvelope().getBody().getFirstElement().
+                getFirstElement().getText());
+        store.destroy();
+    }
+
+    public void testRecovery() throws Exception {
+        // small segments, so that the messages are spread over several files
+        JournaledMessageStore store = createStore("1024");
+        populateStore(store, 100);
+        int segments = store.getSegmentCount();
+        assertTrue(segments > 1);
+
+        for (int i = 0; i < 60; i++) {
+            assertEquals("ID" + i, store.poll().getMessageID());
+        }
+        assertTrue(store.getSegmentCount() < segments);
+        store.destroy();
+
+        store = createStore("1024");
+        assertEquals(40, store.size());
+        for (int i = 60; i < 100; i++) {
+            assertEquals("ID" + i, store.poll().getMessageID());
+        }
+        assertNull(store.poll());
+        assertEquals(1, store.getSegmentCount());
+        store.destroy();
+    }
+
+    public void testCompaction() throws Exception {
+        JournaledMessageStore store = createStore("1024");
+        // the first message is never removed, so its segment is only reclaimed by compaction
+        populateStore(store, 1);
+        for (int i = 1; i <= 200; i++) {
+            MessageContext msg = TestUtils.createLightweightSynapseMessageContext("<test/>");
+            msg.setMessageID("ID" + i);
+            store.offer(msg);
+            assertEquals("ID" + i, store.remove("ID" + i).getMessageID());
+            assertTrue(store.getSegmentCount() <= 3);
+        }
+        MessageContext msg = TestUtils.createLightweightSynapseMessageContext("<test/>");
+        msg.setMessageID("ID201");
+        store.offer(msg);
+        store.destroy();
+
+        store = createStore("1024");
+        assertEquals(2, store.size());
+        assertEquals("ID0", store.poll().getMessageID());
+        assertEquals("ID201", store.poll().getMessageID());
+        assertNull(store.poll());
+        store.destroy();
+    }
+
+    public void testInvalidSegmentSize() throws Exception {
+        String[] values = {"16MB", "-1", "8"};
+        for (String value : values) {
+            try {
+                createStore(value);
+                fail("Segment size : " + value + " should be rejected");
+            } catch (SynapseException expected) {
+                assertTrue(expected.getMessage().contains(JournaledMessageStore.SEGMENT_SIZE));
+            }
+        }
+    }
+
+    public void testStoreObserver() throws Exception {
+        JournaledMessageStore store = createStore(null);
+        final int[] count = new int[1];
+        store.registerObserver(new MessageStoreObserver() {
+            public void messageAdded(String messageId) {
+                count[0]++;
+            }
+
+            public void messageRemoved(String messageId) {
+                count[0]--;
+            }
+        });
+
+        populateStore(store, 10);
+        assertEquals(10, count[0]);
+        store.clear();
+        assertEquals(0, count[0]);
+        store.destroy();
+    }
+
+    private JournaledMessageStore createStore(String segmentSize) {
+        JournaledMessageStore store = new JournaledMessageStore();
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(JournaledMessageStore.STORE_DIRECTORY, directory.getPath());
+        if (segmentSize != null) {
+            parameters.put(JournaledMessageStore.SEGMENT_SIZE, segmentSize);
+        }
+        store.setParameters(parameters);
+        store.init(environment);
+        return store;
+    }
+
+    private void populateStore(MessageStore store, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            MessageContext msg = TestUtils.createLightweightSynapseMessageContext("<test/>");
+            msg.setMessageID("ID" + i);
+            store.offer(msg);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.rest;
+
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.rest.version.URLBasedVersionStrategy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class APIRoutingIndexTest extends RESTMediationTestCase {
+
+    public void testCandidateLookup() throws Exception {
+        API api1 = new API("API1", "/test");
+        API api2 = new API("API2", "/test/foo");
+        API api3 = new API("API3", "/bar");
+        api3.setVersionStrategy(new URLBasedVersionStrategy(api3, "1.0.0", null));
+        API api4 = new API("API4", "/");
+
+        List<API> apis = new ArrayList<API>();
+        apis.add(api1);
+        apis.add(api2);
+        apis.add(api3);
+        apis.add(api4);
+        APIRoutingIndex index = new APIRoutingIndex(apis);
+        assertEquals(4, index.size());
+
+        List<API> candidates = index.getCandidates("/test/foo/bar?a=5");
+        assertEquals(2, candidates.size());
+        assertSame(api2, candidates.get(0));
+        assertSame(api1, candidates.get(1));
+
+        candidates = index.getCandidates("/test?a=5");
+        assertEquals(1, candidates.size());
+        assertSame(api1, candidates.get(0));
+
+        assertTrue(index.getCandidates("/test1/foo").isEmpty());
+        assertTrue(index.getCandidates("/bar/foo").isEmpty());
+        assertTrue(index.getCandidates("/bar?a=1.0.0").isEmpty());
+        assertSame(api3, index.getCandidates("/bar/1.0.0/foo").get(0));
+        assertTrue(index.getCandidates("/").isEmpty());
+
+        assertEquals(1, index.getDefaultAPIs().size());
+        assertSame(api4, index.getDefaultAPIs().get(0));
+        assertSame(api3, index.getAPIsByName("API3").get(0));
+        assertTrue(index.getAPIsByName("API5").isEmpty());
+    }
+
+    public void testIndexUpdates() throws Exception {
+        SynapseConfiguration synapseConfig = new SynapseConfiguration();
+        assertEquals(0, synapseConfig.getAPIRoutingIndex().size());
+
+        API api = new API("TestAPI", "/test");
+        synapseConfig.addAPI("TestAPI", api);
+        assertSame(api, synapseConfig.getAPIRoutingIndex().getCandidates("/test/foo").get(0));
+
+        API newAPI = new API("TestAPI", "/test2");
+        synapseConfig.updateAPI("TestAPI", newAPI);
+        assertTrue(synapseConfig.getAPIRoutingIndex().getCandidates("/test/foo").isEmpty());
+        assertSame(newAPI, synapseConfig.getAPIRoutingIndex().getCandidates("/test2").get(0));
+
+        synapseConfig.removeAPI("TestAPI");
+        assertEquals(0, synapseConfig.getAPIRoutingIndex().size());
+    }
+
+    public void testDispatchWithManyAPIs() throws Exception {
+        SynapseConfiguration synapseConfig = new SynapseConfiguration();
+        for (int i = 0; i < 1000; i++) {
+            synapseConfig.addAPI("API" + i, new API("API" + i, "/service" + i + "/api"));
+        }
+        synapseConfig.addAPI("DefaultAPI", new API("DefaultAPI", "/"));
+
+        APIRoutingIndex index = synapseConfig.getAPIRoutingIndex();
+        assertEquals(1001, index.size());
+        assertEquals(1, index.getCandidates("/service999/api/foo").size());
+
+        RESTRequestHandler handler = new RESTRequestHandler();
+        MessageContext synCtx = getMessageContext(synapseConfig, false,
+                "/service999/api/foo?a=5", "GET");
+        handler.process(synCtx);
+        assertEquals("API999", synCtx.getProperty(RESTConstants.SYNAPSE_REST_API));
+
+        synCtx = getMessageContext(synapseConfig, false, "/service999/foo", "GET");
+        handler.process(synCtx);
+        assertEquals("DefaultAPI", synCtx.getProperty(RESTConstants.SYNAPSE_REST_API));
+    }
+}
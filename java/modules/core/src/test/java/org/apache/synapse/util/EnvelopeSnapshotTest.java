@@ -0,0 +1,52 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.util;
+
+import junit.framework.TestCase;
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.TestMessageContextBuilder;
+
+public class EnvelopeSnapshotTest extends TestCase {
+
+    public void testEnvelopesAreIndependent() throws Exception {
+        MessageContext synCtx = new TestMessageContextBuilder()
+                .setBodyFromString("<m:getQuote xmlns:m=\"http://services.samples\">" +
+                        "<m:symbol>IBM</m:symbol></m:getQuote>").build();
+
+        EnvelopeSnapshot snapshot = new EnvelopeSnapshot(synCtx);
+
+        // changes to the original after the snapshot do not show up in the copies
+        synCtx.getEnvelope().getBody().getFirstElement().getFirstElement().setText("MSFT");
+
+        SOAPEnvelope first = snapshot.newEnvelope();
+        SOAPEnvelope second = snapshot.newEnvelope();
+        assertNotSame(first, second);
+
+        OMElement symbol = first.getBody().getFirstElement().getFirstElement();
+        assertEquals("IBM", symbol.getText());
+        symbol.setText("SUN");
+
+        assertEquals("IBM", second.getBody().getFirstElement().getFirstElement().getText());
+        assertEquals("MSFT",
+                synCtx.getEnvelope().getBody().getFirstElement().getFirstElement().getText());
+    }
+}
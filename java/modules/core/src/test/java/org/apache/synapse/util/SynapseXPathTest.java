@@ -135,4 +135,58 @@ public class SynapseXPathTest extends TestCase {
         xpath.setVariableContext(variableContext);
         assertEquals("myvalue", xpath.evaluate(TestUtils.getTestContext("<test/>")));
     }
+
+    public void testCompiledChildPaths() throws Exception {
+        MessageContext ctx = TestUtils.getTestContext("<m0:getQuote xmlns:m0=\"http://services.samples\">" +
+                "<m0:request id=\"r1\"><m0:symbol>IBM</m0:symbol></m0:request>" +
+                "<m0:request id=\"r2\"><m0:symbol>MSFT</m0:symbol></m0:request></m0:getQuote>");
+
+        String[] expressions = {
+                "s11:Body/m0:getQuote/m0:request/m0:symbol",
+                "s11:Body/m0:getQuote/m0:request/@id",
+                "s11:Body/m0:getQuote/*/m0:symbol/text()",
+                "s11:Body/m0:getQuote/m0:missing",
+                "s11:Body/m0:getQuote/m0:request/m0:symbol = 'MSFT'",
+                "'IBM' != s11:Body/m0:getQuote/m0:request/m0:symbol",
+                "s11:Body/m0:getQuote/m0:request/@id = 'r3'"
+        };
+
+        for (String expression : expressions) {
+            SynapseXPath xpath = new SynapseXPath(expression);
+            xpath.addNamespace("s11", "http://schemas.xmlsoap.org/soap/envelope/");
+            xpath.addNamespace("m0", "http://services.samples");
+
+            // evaluating against the envelope always goes through Jaxen
+            assertEquals(expression, xpath.evaluate(ctx.getEnvelope()), xpath.evaluate(ctx));
+            assertEquals(expression, xpath.booleanValueOf(ctx.getEnvelope()),
+                    xpath.booleanValueOf(ctx));
+        }
+    }
+
+    public void testCompiledPropertyComparisons() throws Exception {
+        Axis2MessageContext synCtx = TestUtils.getAxis2MessageContext("<test/>", null);
+        synCtx.setProperty("test", message);
+        synCtx.setProperty("count", 3);
+        synCtx.getAxis2MessageContext().setProperty("test", message);
+
+        assertEquals(message, new SynapseXPath("get-property('test')").evaluate(synCtx));
+        assertEquals(message, new SynapseXPath("get-property('axis2', 'test')").evaluate(synCtx));
+        assertTrue(new SynapseXPath("get-property('test') = '" + message + "'").booleanValueOf(synCtx));
+        assertFalse(new SynapseXPath("$ctx:test != '" + message + "'").booleanValueOf(synCtx));
+        assertTrue(new SynapseXPath("$axis2:test = '" + message + "'").booleanValueOf(synCtx));
+        // non string values are compared by Jaxen
+        assertTrue(new SynapseXPath("$ctx:count = '3'").booleanValueOf(synCtx));
+    }
+
+    public void testCompiledXPathNamespaceChange() throws Exception {
+        MessageContext ctx = TestUtils.getTestContext("<m0:test xmlns:m0=\"http://somens\">" +
+                message + "</m0:test>");
+        SynapseXPath xpath = new SynapseXPath("s11:Body/m0:test");
+        xpath.addNamespace("s11", "http://schemas.xmlsoap.org/soap/envelope/");
+        xpath.addNamespace("m0", "http://otherns");
+        assertEquals("", xpath.stringValueOf(ctx));
+
+        xpath.addNamespace("m0", "http://somens");
+        assertEquals(message, xpath.stringValueOf(ctx));
+    }
 }
@@ -0,0 +1,190 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.bsf;
+
+import org.apache.bsf.xml.XMLHelper;
+import org.apache.synapse.SynapseException;
+
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of script engines, used by the {@link ScriptMediator} to run scripts in
+ * languages whose engines are not thread safe. Engines are created on demand up to the size of
+ * the pool, after which threads wait for an engine to be returned. The time spent waiting is
+ * recorded, so that pools which are too small to handle the load can be identified.
+ */
+class ScriptEnginePool {
+
+    /**
+     * Creates the engines of the pool
+     */
+    interface EngineFactory {
+        PooledEngine createEngine();
+    }
+
+    /**
+     * A script engine along with the state which is specific to it
+     */
+    static final class PooledEngine {
+
+        final ScriptEngine scriptEngine;
+
+        /** Helper to convert between the XML representations of Java and the script engine */
+        final XMLHelper xmlHelper;
+
+        /** The compiled inline script, or null */
+        final CompiledScript compiledScript;
+
+        /** Version of the external scripts evaluated in this engine, guarded by the engine */
+        int scriptVersion = -1;
+
+        PooledEngine(ScriptEngine scriptEngine, XMLHelper xmlHelper,
+                     CompiledScript compiledScript) {
+            this.scriptEngine = scriptEngine;
+            this.xmlHelper = xmlHelper;
+            this.compiledScript = compiledScript;
+        }
+    }
+
+    private final int maxSize;
+    private final EngineFactory factory;
+
+    /** Engines which are not in use, the most recently used first */
+    private final BlockingDeque<PooledEngine> idle = new LinkedBlockingDeque<PooledEngine>();
+
+    private final AtomicInteger created = new AtomicInteger(0);
+
+    private final AtomicLong borrowCount = new AtomicLong(0);
+    private final AtomicLong waitCount = new AtomicLong(0);
+    private final AtomicLong totalWaitTime = new AtomicLong(0);
+    private final AtomicLong maxWaitTime = new AtomicLong(0);
+
+    /**
+     * Create a new pool.
+     *
+     * @param maxSize       the maximum number of engines
+     * @param factory       factory used to create the engines
+     * @param initialEngine an engine already created by the factory, which is added to the pool
+     */
+    ScriptEnginePool(int maxSize, EngineFactory factory, PooledEngine initialEngine) {
+        this.maxSize = Math.max(1, maxSize);
+        this.factory = factory;
+        this.created.set(1);
+        this.idle.offerFirst(initialEngine);
+    }
+
+    /**
+     * Take an engine from the pool, creating a new engine or waiting for one to be returned
+     * if none is available. The engine must be returned by calling {@link #release}.
+     *
+     * @return a script engine for the exclusive use of the caller
+     */
+    PooledEngine borrow() {
+        borrowCount.incrementAndGet();
+        PooledEngine engine = idle.pollFirst();
+        if (engine != null) {
+            return engine;
+        }
+
+        int count;
+        while ((count = created.get()) < maxSize) {
+            if (created.compareAndSet(count, count + 1)) {
+                try {
+                    return factory.createEngine();
+                } catch (RuntimeException e) {
+                    created.decrementAndGet();
+                    throw e;
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        try {
+            engine = idle.takeFirst();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SynapseException("Interrupted while waiting for a script engine", e);
+        }
+
+        long waited = System.nanoTime() - start;
+        waitCount.incrementAndGet();
+        totalWaitTime.addAndGet(waited);
+        long max;
+        while (waited > (max = maxWaitTime.get()) && !maxWaitTime.compareAndSet(max, waited)) {
+            // retry
+        }
+        return engine;
+    }
+
+    /**
+     * Return an engine taken from the pool.
+     *
+     * @param engine the engine to be returned
+     */
+    void release(PooledEngine engine) {
+        idle.offerFirst(engine);
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    int getCreatedCount() {
+        return created.get();
+    }
+
+    int getIdleCount() {
+        return idle.size();
+    }
+
+    long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    long getWaitCount() {
+        return waitCount.get();
+    }
+
+    /**
+     * @return the total time spent waiting for engines, in nanoseconds
+     */
+    long getTotalWaitTime() {
+        return totalWaitTime.get();
+    }
+
+    /**
+     * @return the longest time spent waiting for an engine, in nanoseconds
+     */
+    long getMaxWaitTime() {
+        return maxWaitTime.get();
+    }
+
+    void resetStatistics() {
+        borrowCount.set(0);
+        waitCount.set(0);
+        totalWaitTime.set(0);
+        maxWaitTime.set(0);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.bsf;
+
+/**
+ * ScriptEnginePoolView MBean exposes the size of the script engine pool of a script mediator,
+ * and the time spent waiting for its engines. Wait times are given in milliseconds.
+ */
+public class ScriptEnginePoolView implements ScriptEnginePoolViewMBean {
+
+    private ScriptEnginePool pool;
+
+    ScriptEnginePoolView(ScriptEnginePool pool) {
+        this.pool = pool;
+    }
+
+    public int getMaxSize() {
+        return pool.getMaxSize();
+    }
+
+    public int getCreatedEngines() {
+        return pool.getCreatedCount();
+    }
+
+    public int getIdleEngines() {
+        return pool.getIdleCount();
+    }
+
+    public long getBorrowCount() {
+        return pool.getBorrowCount();
+    }
+
+    public long getWaitCount() {
+        return pool.getWaitCount();
+    }
+
+    public double getAverageWaitTime() {
+        long waits = pool.getWaitCount();
+        return waits == 0 ? 0 : pool.getTotalWaitTime() / (waits * 1000000.0);
+    }
+
+    public double getMaxWaitTime() {
+        return pool.getMaxWaitTime() / 1000000.0;
+    }
+
+    public void reset() {
+        pool.resetStatistics();
+    }
+}
@@ -25,12 +25,17 @@ import com.sun.script.jruby.JRubyScriptEngineFactory;
 import org.apache.axiom.om.OMElement;
 import org.apache.axiom.om.OMText;
 import org.apache.bsf.xml.XMLHelper;
+import org.apache.synapse.ManagedLifecycle;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseException;
 import org.apache.synapse.SynapseLog;
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
 import org.apache.synapse.config.Entry;
+import org.apache.synapse.config.SynapsePropertiesLoader;
+import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.mediators.AbstractMediator;
 import org.apache.synapse.mediators.Value;
+import org.apache.synapse.mediators.bsf.ScriptEnginePool.PooledEngine;
 import org.mozilla.javascript.Context;
 
 import javax.activation.DataHandler;
@@ -38,6 +43,8 @@ import javax.script.*;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -57,8 +64,13 @@ import java.util.TreeMap;
  * if not specified it defaults to a function named 'mediate'. The function takes a single
  * parameter which is the Synapse MessageContext. The function may return a boolean, if it
  * does not then true is assumed.
+ * <p/>
+ * Script engines which are not thread safe are pooled, each engine holding its own copy of the
+ * compiled (or loaded) script. The size of the pool is given by the
+ * <code>synapse.script.engine.pool.size</code> property in synapse.properties, and defaults to
+ * the number of processors.
  */
-public class ScriptMediator extends AbstractMediator {
+public class ScriptMediator extends AbstractMediator implements ManagedLifecycle {
 
     /**
      * The name of the variable made available to the scripting language to access the message
@@ -70,6 +82,13 @@ public class ScriptMediator extends AbstractMediator {
      */
     private static final String JAVA_SCRIPT = "js";
 
+    /**
+     * Property giving the maximum number of engines pooled by each script mediator
+     */
+    private static final String ENGINE_POOL_SIZE = "synapse.script.engine.pool.size";
+
+    private static final String ENGINE_POOL_MBEAN_CATEGORY = "ScriptEnginePool";
+
     /**
      * The registry entry key for a script loaded from the registry
      * Handle both static and dynamic(Xpath) Keys
@@ -92,7 +111,8 @@ public class ScriptMediator extends AbstractMediator {
      */
     private String scriptSourceCode;
     /**
-     * The BSF engine created to process each message through the script
+     * The BSF engine created to process each message through the script. When the engine is
+     * not thread safe, this is the first engine of the pool
      */
     protected ScriptEngine scriptEngine;
     /**
@@ -100,23 +120,28 @@ public class ScriptMediator extends AbstractMediator {
      */
     private boolean multiThreadedEngine;
     /**
-     * The compiled script. Only used for inline scripts
-     */
-    private CompiledScript compiledScript;
-    /**
-     * The Invokable script. Only used for external scripts
+     * The engine shared by all the threads, for multi-threaded engines
      */
-    private Invocable invocableScript;
+    private PooledEngine sharedEngine;
     /**
-     * The BSF helper to convert between the XML representations used by Java
-     * and the scripting language
+     * The pool of engines, for engines which are not multi-threaded
      */
-    private XMLHelper xmlHelper;
+    private ScriptEnginePool enginePool;
 
     /**
      * Lock used to ensure thread-safe lookup of the object from the registry
      */
     private final Object resourceLock = new Object();
+    /**
+     * Version of the external script and the include scripts, incremented on each reload.
+     * Guarded by the resourceLock
+     */
+    private int scriptVersion = 0;
+
+    /**
+     * Name of the MBean exposing the engine pool, while registered
+     */
+    private String mbeanName;
 
     /**
      * Store the class loader from properties
@@ -159,7 +184,22 @@ public class ScriptMediator extends AbstractMediator {
             throw new SynapseException("Script engine is not an Invocable" +
                     " engine for language: " + language);
         }
-        invocableScript = (Invocable) scriptEngine;
+    }
+
+    public void init(SynapseEnvironment se) {
+        if (enginePool != null) {
+            mbeanName = (key != null && key.getKeyValue() != null ? key.getKeyValue() : "inline") +
+                    "-" + Integer.toHexString(System.identityHashCode(this));
+            MBeanRegistrar.getInstance().registerMBean(new ScriptEnginePoolView(enginePool),
+                    ENGINE_POOL_MBEAN_CATEGORY, mbeanName);
+        }
+    }
+
+    public void destroy() {
+        if (mbeanName != null) {
+            MBeanRegistrar.getInstance().unRegisterMBean(ENGINE_POOL_MBEAN_CATEGORY, mbeanName);
+            mbeanName = null;
+        }
     }
 
     /**
@@ -188,11 +228,13 @@ public class ScriptMediator extends AbstractMediator {
 
         boolean returnValue;
         if (multiThreadedEngine) {
-            returnValue = invokeScript(synCtx);
+            returnValue = invokeScript(synCtx, sharedEngine);
         } else {
-            // TODO: change to use a pool of script engines (requires an update to BSF)
-            synchronized (scriptEngine.getClass()) {
-                returnValue = invokeScript(synCtx);
+            PooledEngine engine = enginePool.borrow();
+            try {
+                returnValue = invokeScript(synCtx, engine);
+            } finally {
+                enginePool.release(engine);
             }
         }
 
@@ -207,7 +249,7 @@ public class ScriptMediator extends AbstractMediator {
         return returnValue;
     }
 
-    private boolean invokeScript(MessageContext synCtx) {
+    private boolean invokeScript(MessageContext synCtx, PooledEngine engine) {
         boolean returnValue;
         try {
 
@@ -219,9 +261,9 @@ public class ScriptMediator extends AbstractMediator {
 
             Object returnObject;
             if (key != null) {
-                returnObject = mediateWithExternalScript(synCtx);
+                returnObject = mediateWithExternalScript(synCtx, engine);
             } else {
-                returnObject = mediateForInlineScript(synCtx);
+                returnObject = mediateForInlineScript(synCtx, engine);
             }
             returnValue = !(returnObject != null && returnObject instanceof Boolean)
                     || (Boolean) returnObject;
@@ -250,36 +292,40 @@ public class ScriptMediator extends AbstractMediator {
      * Mediation implementation when the script to be executed should be loaded from the registry
      *
      * @param synCtx the message context
+     * @param engine the engine to run the script
      * @return script result
      * @throws ScriptException       For any errors , when compile, run the script
      * @throws NoSuchMethodException If the function is not defined in the script
      */
-    private Object mediateWithExternalScript(MessageContext synCtx)
+    private Object mediateWithExternalScript(MessageContext synCtx, PooledEngine engine)
             throws ScriptException, NoSuchMethodException {
         prepareExternalScript(synCtx);
-        ScriptMessageContext scriptMC = new ScriptMessageContext(synCtx, xmlHelper);
-        return invocableScript.invokeFunction(function, new Object[]{scriptMC});        
+        loadExternalScript(engine);
+        ScriptMessageContext scriptMC = new ScriptMessageContext(synCtx, engine.xmlHelper);
+        return ((Invocable) engine.scriptEngine).invokeFunction(function, new Object[]{scriptMC});
     }
 
     /**
      * Perform mediation with static inline script of the given scripting language
      *
      * @param synCtx message context
+     * @param engine the engine to run the script
      * @return true, or the script return value
      * @throws ScriptException For any errors , when compile , run the script
      */
-    private Object mediateForInlineScript(MessageContext synCtx) throws ScriptException {
+    private Object mediateForInlineScript(MessageContext synCtx, PooledEngine engine)
+            throws ScriptException {
 
-        ScriptMessageContext scriptMC = new ScriptMessageContext(synCtx, xmlHelper);
+        ScriptMessageContext scriptMC = new ScriptMessageContext(synCtx, engine.xmlHelper);
 
-        Bindings bindings = scriptEngine.createBindings();
+        Bindings bindings = engine.scriptEngine.createBindings();
         bindings.put(MC_VAR_NAME, scriptMC);
 
         Object response;
-        if (compiledScript != null) {
-            response = compiledScript.eval(bindings);
+        if (engine.compiledScript != null) {
+            response = engine.compiledScript.eval(bindings);
         } else {
-            response = scriptEngine.eval(scriptSourceCode, bindings);
+            response = engine.scriptEngine.eval(scriptSourceCode, bindings);
         }
 
         return response;
@@ -290,31 +336,14 @@ public class ScriptMediator extends AbstractMediator {
      * Initialise the Mediator for the inline script
      */
     protected void initInlineScript() {
-        try {
-            initScriptEngine();
-
-            if (scriptEngine instanceof Compilable) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Script engine supports Compilable interface, " +
-                            "compiling script code..");
-                }
-                compiledScript = ((Compilable) scriptEngine).compile(scriptSourceCode);
-            } else {
-                // do nothing. If the script engine doesn't support Compilable then
-                // the inline script will be evaluated on each invocation
-                if (log.isDebugEnabled()) {
-                    log.debug("Script engine does not support the Compilable interface, " +
-                            "in-lined script would be evaluated on each invocation..");
-                }
-            }
-
-        } catch (ScriptException e) {
-            throw new SynapseException("Exception initializing inline script", e);
-        }
+        initScriptEngine();
     }
 
     /**
-     * Prepares the mediator for the invocation of an external script
+     * Prepares the mediator for the invocation of an external script, by loading the script
+     * and the include scripts from the registry if they have not been loaded yet, or if they
+     * have expired. Each engine evaluates the loaded scripts before they are invoked on it
+     * (see {@link #loadExternalScript(PooledEngine)}).
      *
      * @param synCtx MessageContext script
      * @throws ScriptException For any errors , when compile the script
@@ -333,90 +362,105 @@ public class ScriptMediator extends AbstractMediator {
                 (!entry.isCached() || entry.isExpired());
         synchronized (resourceLock) {
             if (scriptSourceCode == null || needsReload) {
-                Object o = synCtx.getEntry(generatedScriptKey);
-                if (o instanceof OMElement) {
-                    scriptSourceCode = ((OMElement) (o)).getText();
-                    scriptEngine.eval(scriptSourceCode);
-                } else if (o instanceof String) {
-                    scriptSourceCode = (String) o;
-                    scriptEngine.eval(scriptSourceCode);
-                } else if (o instanceof OMText) {
-
-                    DataHandler dataHandler = (DataHandler) ((OMText) o).getDataHandler();
-                    if (dataHandler != null) {
-                        BufferedReader reader = null;
-                        try {
-                            reader = new BufferedReader(
-                                    new InputStreamReader(dataHandler.getInputStream()));
-                            scriptEngine.eval(reader);
-
-                        } catch (IOException e) {
-                            handleException("Error in reading script as a stream ", e, synCtx);
-                        } finally {
-
-                            if (reader != null) {
-                                try {
-                                    reader.close();
-                                } catch (IOException e) {
-                                    handleException("Error in closing input stream ", e, synCtx);
-                                }
-                            }
-
-                        }
-                    }
+                String source = readScript(synCtx.getEntry(generatedScriptKey), synCtx);
+                if (source != null) {
+                    scriptSourceCode = source;
+                    scriptVersion++;
                 }
-
             }
         }
 
         // load <include /> scripts; reload each script if needed
         for (Value includeKey : includes.keySet()) {
 
-            String includeSourceCode = (String) includes.get(includeKey);
-
             String generatedKey = includeKey.evaluateValue(synCtx);
 
             Entry includeEntry = synCtx.getConfiguration().getEntryDefinition(generatedKey);
             boolean includeEntryNeedsReload = (includeEntry != null) && includeEntry.isDynamic()
                     && (!includeEntry.isCached() || includeEntry.isExpired());
             synchronized (resourceLock) {
-                if (includeSourceCode == null || includeEntryNeedsReload) {
+                if (includes.get(includeKey) == null || includeEntryNeedsReload) {
                     log.debug("Re-/Loading the include script with key " + includeKey);
-                    Object o = synCtx.getEntry(generatedKey);
-                    if (o instanceof OMElement) {
-                        includeSourceCode = ((OMElement) (o)).getText();
-                        scriptEngine.eval(includeSourceCode);
-                    } else if (o instanceof String) {
-                        includeSourceCode = (String) o;
-                        scriptEngine.eval(includeSourceCode);
-                    } else if (o instanceof OMText) {
-
-                        DataHandler dataHandler = (DataHandler) ((OMText) o).getDataHandler();
-                        if (dataHandler != null) {
-                            BufferedReader reader = null;
-                            try {
-                                reader = new BufferedReader(
-                                        new InputStreamReader(dataHandler.getInputStream()));
-                                scriptEngine.eval(reader);
-
-                            } catch (IOException e) {
-                                handleException("Error in reading script as a stream ", e, synCtx);
-                            } finally {
-
-                                if (reader != null) {
-                                    try {
-                                        reader.close();
-                                    } catch (IOException e) {
-                                        handleException("Error in closing input" +
-                                                " stream ", e, synCtx);
-                                    }
-                                }
-                            }
+                    String source = readScript(synCtx.getEntry(generatedKey), synCtx);
+                    if (source != null) {
+                        includes.put(includeKey, source);
+                        scriptVersion++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Evaluate the external script and the include scripts in the given engine, unless the
+     * current version of the scripts has already been evaluated in it.
+     *
+     * @param engine the engine to run the script
+     * @throws ScriptException For any errors , when compile the script
+     */
+    private void loadExternalScript(PooledEngine engine) throws ScriptException {
+        synchronized (engine) {
+            String source;
+            List<Object> includeSources;
+            int version;
+            synchronized (resourceLock) {
+                version = scriptVersion;
+                if (engine.scriptVersion == version) {
+                    return;
+                }
+                source = scriptSourceCode;
+                includeSources = new ArrayList<Object>(includes.values());
+            }
+
+            if (source != null) {
+                engine.scriptEngine.eval(source);
+            }
+            for (Object includeSource : includeSources) {
+                if (includeSource != null) {
+                    engine.scriptEngine.eval((String) includeSource);
+                }
+            }
+            engine.scriptVersion = version;
+        }
+    }
+
+    private String readScript(Object o, MessageContext synCtx) {
+        if (o instanceof OMElement) {
+            return ((OMElement) (o)).getText();
+        } else if (o instanceof String) {
+            return (String) o;
+        } else if (o instanceof OMText) {
+
+            DataHandler dataHandler = (DataHandler) ((OMText) o).getDataHandler();
+            if (dataHandler != null) {
+                BufferedReader reader = null;
+                try {
+                    reader = new BufferedReader(
+                            new InputStreamReader(dataHandler.getInputStream()));
+                    StringBuilder source = new StringBuilder();
+                    char[] buffer = new char[4096];
+                    int read;
+                    while ((read = reader.read(buffer)) != -1) {
+                        source.append(buffer, 0, read);
+                    }
+                    return source.toString();
+
+                } catch (IOException e) {
+                    handleException("Error in reading script as a stream ", e, synCtx);
+                } finally {
+
+                    if (reader != null) {
+                        try {
+                            reader.close();
+                        } catch (IOException e) {
+                            handleException("Error in closing input stream ", e, synCtx);
                         }
                     }
+
                 }
             }
         }
+        return null;
     }
 
     protected void initScriptEngine() {
@@ -424,25 +468,94 @@ public class ScriptMediator extends AbstractMediator {
             log.debug("Initializing script mediator for language : " + language);
         }
 
+        PooledEngine engine = createEngine();
+        this.scriptEngine = engine.scriptEngine;
+
+        this.multiThreadedEngine = scriptEngine.getFactory().getParameter("THREADING") != null;
+        log.debug("Script mediator for language : " + language +
+                " supports multithreading? : " + multiThreadedEngine);
+
+        if (multiThreadedEngine) {
+            sharedEngine = engine;
+            enginePool = null;
+        } else {
+            sharedEngine = null;
+            enginePool = new ScriptEnginePool(getEnginePoolSize(), new ScriptEnginePool.EngineFactory() {
+                public PooledEngine createEngine() {
+                    return ScriptMediator.this.createEngine();
+                }
+            }, engine);
+        }
+    }
+
+    /**
+     * Read the maximum number of engines pooled by a mediator from the synapse properties,
+     * falling back to the number of processors if the value is not a positive integer.
+     *
+     * @return the engine pool size
+     */
+    private int getEnginePoolSize() {
+        int defaultSize = Runtime.getRuntime().availableProcessors();
+        String value = SynapsePropertiesLoader.getPropertyValue(ENGINE_POOL_SIZE,
+                String.valueOf(defaultSize));
+        try {
+            int poolSize = Integer.parseInt(value.trim());
+            if (poolSize > 0) {
+                return poolSize;
+            }
+        } catch (NumberFormatException ignore) {
+        }
+        log.warn("Invalid value : " + value + " for the property : " + ENGINE_POOL_SIZE +
+                ", using the default script engine pool size : " + defaultSize);
+        return defaultSize;
+    }
+
+    /**
+     * Create a new script engine for the language of this mediator, compiling the inline
+     * script if the engine supports it.
+     *
+     * @return the new engine
+     */
+    private PooledEngine createEngine() {
         ScriptEngineManager manager = new ScriptEngineManager();
         manager.registerEngineExtension("js", new RhinoScriptEngineFactory());
         manager.registerEngineExtension("groovy", new GroovyScriptEngineFactory());
         manager.registerEngineExtension("rb", new JRubyScriptEngineFactory());
 
-        this.scriptEngine = manager.getEngineByExtension(language);
-        if (scriptEngine == null) {
+        ScriptEngine engine = manager.getEngineByExtension(language);
+        if (engine == null) {
             handleException("No script engine found for language: " + language);
         }
+        XMLHelper xmlHelper;
         //Invoking a custom Helper class since there is an api change in rhino17 for js
         if (language.equalsIgnoreCase(JAVA_SCRIPT)) {
             xmlHelper = new JavaScriptXmlHelper();
         } else {
-            xmlHelper = XMLHelper.getArgHelper(scriptEngine);
+            xmlHelper = XMLHelper.getArgHelper(engine);
         }
 
-        this.multiThreadedEngine = scriptEngine.getFactory().getParameter("THREADING") != null;
-        log.debug("Script mediator for language : " + language +
-                " supports multithreading? : " + multiThreadedEngine);
+        CompiledScript compiledScript = null;
+        if (key == null && scriptSourceCode != null) {
+            try {
+                if (engine instanceof Compilable) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Script engine supports Compilable interface, " +
+                                "compiling script code..");
+                    }
+                    compiledScript = ((Compilable) engine).compile(scriptSourceCode);
+                } else {
+                    // do nothing. If the script engine doesn't support Compilable then
+                    // the inline script will be evaluated on each invocation
+                    if (log.isDebugEnabled()) {
+                        log.debug("Script engine does not support the Compilable interface, " +
+                                "in-lined script would be evaluated on each invocation..");
+                    }
+                }
+            } catch (ScriptException e) {
+                throw new SynapseException("Exception initializing inline script", e);
+            }
+        }
+        return new PooledEngine(engine, xmlHelper, compiledScript);
     }
 
     public String getLanguage() {
@@ -0,0 +1,145 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.mediators.throttle;
+
+import org.wso2.throttle.CallerConfiguration;
+import org.wso2.throttle.ThrottleConstants;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Access rate based throttling of the callers of a {@link ThrottleMediator}, used when the state
+ * does not have to be shared with the other members of a cluster. Each caller is allowed the
+ * maximum number of requests of its caller configuration within a time window of the unit time,
+ * and is denied access for the prohibit time period once that is exceeded. Like the
+ * {@link org.wso2.throttle.AccessRateController}, callers are identified by the key of their
+ * caller configuration, hence all the callers matching an IP range or the "other" configuration
+ * share one count. The requests of a window are counted using an atomic counter of the caller,
+ * hence callers do not contend with each other and no lock is taken. The state of idle callers
+ * is removed by {@link #removeIdleCallers(long)}, which the mediator runs periodically.
+ */
+class LocalAccessRateController {
+
+    private final ConcurrentMap<String, CallerState> callers =
+            new ConcurrentHashMap<String, CallerState>();
+
+    /**
+     * Check whether a caller can access the service, and record the access if so.
+     *
+     * @param caller        the caller identifier, i.e. the key of the caller configuration
+     * @param configuration the caller configuration which applies to the caller
+     * @param now           the current time
+     * @return true if the caller is allowed to access the service
+     */
+    boolean canAccess(String caller, CallerConfiguration configuration, long now) {
+        int accessState = configuration.getAccessState();
+        if (accessState == ThrottleConstants.ACCESS_DENIED) {
+            return false;
+        } else if (accessState != ThrottleConstants.ACCESS_CONTROLLED) {
+            return true;
+        }
+
+        long unitTime = configuration.getUnitTime();
+        if (unitTime <= 0) {
+            return true;
+        }
+
+        CallerState state = callers.get(caller);
+        if (state == null) {
+            CallerState newState = new CallerState();
+            state = callers.putIfAbsent(caller, newState);
+            if (state == null) {
+                state = newState;
+            }
+        }
+
+        if (now < state.prohibitedUntil) {
+            return false;
+        }
+
+        Window window = state.window.get();
+        while (window == null || now >= window.end) {
+            Window next = new Window(now + unitTime);
+            if (state.window.compareAndSet(window, next)) {
+                window = next;
+            } else {
+                window = state.window.get();
+            }
+        }
+
+        if (window.count.incrementAndGet() <= configuration.getMaximumRequestPerUnitTime()) {
+            return true;
+        }
+
+        long prohibitTimePeriod = configuration.getProhibitTimePeriod();
+        state.prohibitedUntil = prohibitTimePeriod > 0 ? now + prohibitTimePeriod : window.end;
+        return false;
+    }
+
+    /**
+     * Forget the state of all the callers
+     */
+    void reset() {
+        callers.clear();
+    }
+
+    int getCallerCount() {
+        return callers.size();
+    }
+
+    /**
+     * Remove the state of the callers which are neither within a time window nor prohibited
+     *
+     * @param now the current time
+     */
+    void removeIdleCallers(long now) {
+        for (Map.Entry<String, CallerState> entry : callers.entrySet()) {
+            CallerState state = entry.getValue();
+            Window window = state.window.get();
+            if ((window == null || window.end <= now) && state.prohibitedUntil <= now) {
+                callers.remove(entry.getKey(), state);
+            }
+        }
+    }
+
+    private static final class CallerState {
+
+        private final AtomicReference<Window> window = new AtomicReference<Window>();
+
+        private volatile long prohibitedUntil = 0;
+    }
+
+    /**
+     * The requests of a caller within a unit time
+     */
+    private static final class Window {
+
+        private final long end;
+
+        private final AtomicInteger count = new AtomicInteger(0);
+
+        private Window(long end) {
+            this.end = end;
+        }
+    }
+}
@@ -30,20 +30,38 @@ import org.apache.synapse.MessageContext;
 import org.apache.synapse.ManagedLifecycle;
 import org.apache.synapse.SynapseLog;
 import org.apache.synapse.config.Entry;
+import org.apache.synapse.config.SynapsePropertiesLoader;
 import org.apache.synapse.core.axis2.Axis2MessageContext;
 import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
 import org.apache.synapse.mediators.AbstractMediator;
 import org.apache.synapse.transport.nhttp.NhttpConstants;
+import org.apache.synapse.util.concurrent.SynapseThreadFactory;
 import org.wso2.throttle.*;
 
+import java.util.TimerTask;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 /**
  * The Mediator for the throttling - Throttling will occur according to the ws-policy
  * which is specified as the key for lookup from the registry or the inline policy
  * Only support IP based throttling- Throttling can manage per IP using the throttle policy
+ * <p/>
+ * In a non-clustered environment the access rate of each caller is controlled locally, and
+ * messages are throttled without taking a lock once the throttle has been created. In a clustered
+ * environment the state of the concurrent access controller is replicated for each message, or
+ * periodically if the <code>synapse.throttle.replicationInterval</code> property is set.
  */
 
 public class ThrottleMediator extends AbstractMediator implements ManagedLifecycle {
 
+    /* Property giving the interval (ms) of replicating the throttle states, 0 for each message */
+    private static final String REPLICATION_INTERVAL = "synapse.throttle.replicationInterval";
+
+    /* Interval (ms) at which the state of idle callers is removed from the local controller */
+    private static final long IDLE_CALLER_CLEANUP_INTERVAL = 60000;
+
     /* The key for getting the throttling policy - key refers to a/an [registry] entry    */
     private String policyKey = null;
     /* InLine policy object - XML  */
@@ -60,19 +78,30 @@ public class ThrottleMediator extends AbstractMediator implements ManagedLifecyc
     private String id;
     /* Access rate controller - limit the remote caller access*/
     private AccessRateController accessControler;
+    /* Access rate controller used in a non-clustered environment */
+    private final LocalAccessRateController localAccessController =
+            new LocalAccessRateController();
     /* ConcurrentAccessController - limit the remote callers concurrent access */
-    private ConcurrentAccessController concurrentAccessController = null;
+    private volatile ConcurrentAccessController concurrentAccessController = null;
     /* The property key that used when the ConcurrentAccessController
        look up from ConfigurationContext */
     private String key;
     /* Is this env. support clustering*/
-    private boolean isClusteringEnable = false;
+    private volatile boolean isClusteringEnable = false;
+    /* Whether the check for a clustering environment has been done */
+    private volatile boolean clusteringChecked = false;
     /* The Throttle object - holds all runtime and configuration data */
-    private Throttle throttle;
+    private volatile Throttle throttle;
     /* Lock used to ensure thread-safe creation of the throttle */
     private final Object throttleLock = new Object();
     /* Last version of dynamic policy resource*/
-    private long version;
+    private volatile long version;
+    /* Periodic replication of the throttle states, if enabled in a clustered environment */
+    private volatile ScheduledThreadPoolExecutor replicationScheduler;
+    /* Periodic removal of the idle callers of the local access rate controller */
+    private TimerTask idleCallerCleanup;
+    /* Whether the throttle states have changed since the last periodic replication */
+    private volatile boolean replicationPending = false;
 
     public ThrottleMediator() {
         this.accessControler = new AccessRateController();
@@ -85,6 +114,37 @@ public class ThrottleMediator extends AbstractMediator implements ManagedLifecyc
         if (onRejectMediator instanceof ManagedLifecycle) {
             ((ManagedLifecycle) onRejectMediator).init(se);
         }
+
+        long replicationInterval = 0;
+        String interval = SynapsePropertiesLoader.getPropertyValue(REPLICATION_INTERVAL, "0");
+        try {
+            replicationInterval = Long.parseLong(interval.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value : " + interval + " for the property : " +
+                    REPLICATION_INTERVAL + ", the throttle states are replicated for each message");
+        }
+        if (replicationInterval > 0 && se instanceof Axis2SynapseEnvironment) {
+            final ConfigurationContext cc =
+                    ((Axis2SynapseEnvironment) se).getAxis2ConfigurationContext();
+            if (cc != null && cc.getAxisConfiguration().getClusteringAgent() != null) {
+                replicationScheduler = new ScheduledThreadPoolExecutor(1, new SynapseThreadFactory(
+                        new ThreadGroup("throttle-state-replicator"),
+                        "throttle-state-replicator" + (id != null ? "-" + id : "")));
+                replicationScheduler.scheduleWithFixedDelay(new Runnable() {
+                    public void run() {
+                        replicatePendingState(cc);
+                    }
+                }, replicationInterval, replicationInterval, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        idleCallerCleanup = new TimerTask() {
+            public void run() {
+                localAccessController.removeIdleCallers(System.currentTimeMillis());
+            }
+        };
+        se.getSynapseConfiguration().getSynapseTimer().schedule(idleCallerCleanup,
+                IDLE_CALLER_CLEANUP_INTERVAL, IDLE_CALLER_CLEANUP_INTERVAL);
     }
 
     public void destroy() {
@@ -94,6 +154,15 @@ public class ThrottleMediator extends AbstractMediator implements ManagedLifecyc
         if (onRejectMediator instanceof ManagedLifecycle) {
             ((ManagedLifecycle) onRejectMediator).destroy();
         }
+        if (replicationScheduler != null) {
+            replicationScheduler.shutdownNow();
+            replicationScheduler = null;
+        }
+        if (idleCallerCleanup != null) {
+            idleCallerCleanup.cancel();
+            idleCallerCleanup = null;
+        }
+        localAccessController.reset();
     }
 
     public boolean mediate(MessageContext synCtx) {
@@ -110,15 +179,103 @@ public class ThrottleMediator extends AbstractMediator implements ManagedLifecyc
                 synLog.traceTrace("Message : " + synCtx.getEnvelope());
             }
         }
+        // get Axis2 MessageContext and ConfigurationContext
+        axisMC = ((Axis2MessageContext) synCtx).getAxis2MessageContext();
+        cc = axisMC.getConfigurationContext();
+
+        ConcurrentAccessController controller;
+        if (isThrottleUpToDate(synCtx, isResponse)) {
+            // non-clustered environment and nothing to (re)create, no need to take the lock
+            controller = isResponse ?
+                    (ConcurrentAccessController) cc.getProperty(key) : concurrentAccessController;
+
+        } else {
+            controller = initThrottle(synCtx, cc, isResponse, synLog);
+        }
+        //perform concurrency throttling
+        boolean canAccess = doThrottleByConcurrency(controller, isResponse, synLog);
+
+        //if the access is success through concurrency throttle and if this is a request message
+        //then do access rate based throttling
+        Throttle currentThrottle = throttle;
+        if (currentThrottle != null && !isResponse && canAccess) {
+            canAccess = throttleByAccessRate(synCtx, axisMC, cc, currentThrottle, controller,
+                    synLog);
+        }
+        // all the replication functionality of the access rate based throttling handles by itself
+        // Just replicate the current state of ConcurrentAccessController
+        if (isClusteringEnable && controller != null) {
+            if (cc != null) {
+                if (replicationScheduler != null) {
+                    // replicated by the periodic replication task
+                    replicationPending = true;
+                } else {
+                    try {
+                        if (synLog.isTraceOrDebugEnabled()) {
+                            synLog.traceOrDebug("Going to replicates the  " +
+                                    "states of the ConcurrentAccessController with key : " + key);
+                        }
+                        Replicator.replicate(cc);
+                    } catch (ClusteringFault clusteringFault) {
+                        handleException("Error during the replicating  states ",
+                                clusteringFault, synCtx);
+                    }
+                }
+            }
+        }
+        if (canAccess) {
+            if (onAcceptSeqKey != null) {
+                Mediator mediator = synCtx.getSequence(onAcceptSeqKey);
+                if (mediator != null) {
+                    return mediator.mediate(synCtx);
+                } else {
+                    handleException("Unable to find onAccept sequence with key : "
+                            + onAcceptSeqKey, synCtx);
+                }
+            } else if (onAcceptMediator != null) {
+                return onAcceptMediator.mediate(synCtx);
+            } else {
+                return true;
+            }
+
+        } else {
+            if (onRejectSeqKey != null) {
+                Mediator mediator = synCtx.getSequence(onRejectSeqKey);
+                if (mediator != null) {
+                    return mediator.mediate(synCtx);
+                } else {
+                    handleException("Unable to find onReject sequence with key : "
+                            + onRejectSeqKey, synCtx);
+                }
+            } else if (onRejectMediator != null) {
+                return onRejectMediator.mediate(synCtx);
+            } else {
+                return false;
+            }
+        }
+
+        synLog.traceOrDebug("End : Throttle mediator");
+        return canAccess;
+    }
+
+    /**
+     * Creates or reloads the throttle for a request, and looks up the concurrent access
+     * controller to use for the message.
+     *
+     * @param synCtx     the current message
+     * @param cc         ConfigurationContext
+     * @param isResponse Current Message is response or not
+     * @param synLog     the Synapse log to use
+     * @return the concurrent access controller, or null if there is none
+     */
+    private ConcurrentAccessController initThrottle(MessageContext synCtx,
+                                                    ConfigurationContext cc,
+                                                    boolean isResponse,
+                                                    SynapseLog synLog) {
         // To ensure the creation of throttle is thread safe Ã¢â‚¬â€œ It is possible create same throttle
         // object multiple times  by multiple threads.
-
         synchronized (throttleLock) {
 
-            // get Axis2 MessageContext and ConfigurationContext
-            axisMC = ((Axis2MessageContext) synCtx).getAxis2MessageContext();
-            cc = axisMC.getConfigurationContext();
-
             //To ensure check for clustering environment only happens one time
             if ((throttle == null && !isResponse) || (isResponse
                     && concurrentAccessController == null)) {
@@ -127,6 +284,7 @@ public class ThrottleMediator extends AbstractMediator implements ManagedLifecyc
                         clusteringAgent.getStateManager() != null) {
                     isClusteringEnable = true;
                 }
+                clusteringChecked = true;
             }
 
             // Throttle only will be created ,if the massage flow is IN
@@ -149,6 +307,7 @@ public class ThrottleMediator extends AbstractMediator implements ManagedLifecyc
                         try {
                             // process the policy
                             throttle = ThrottleFactory.createMediatorThrottle(inLinePolicy);
+                            localAccessController.reset();
 
                             //At this point concurrent access controller definitely 'null'
                             // f the clustering is disable.
@@ -213,6 +372,7 @@ public class ThrottleMediator extends AbstractMediator implements ManagedLifecyc
                                         // Creates the throttle from the policy
                                         throttle = ThrottleFactory.createMediatorThrottle(
                                                 (OMElement) entryValue);
+                                        localAccessController.reset();
 
                                         //For non-clustered  environment , must re-initiates
                                         //For  clustered  environment,
@@ -243,74 +403,69 @@ public class ThrottleMediator extends AbstractMediator implements ManagedLifecyc
                 concurrentAccessController =
                         (ConcurrentAccessController) cc.getProperty(key);
             }
+            return concurrentAccessController;
         }
-        //perform concurrency throttling
-        boolean canAccess = doThrottleByConcurrency(isResponse, synLog);
+    }
 
-        //if the access is success through concurrency throttle and if this is a request message
-        //then do access rate based throttling
-        if (throttle != null && !isResponse && canAccess) {
-            canAccess = throttleByAccessRate(synCtx, axisMC, cc, synLog);
+    /**
+     * Checks whether the message can be throttled without taking the lock, i.e. this is not a
+     * clustered environment, and the throttle does not have to be created or reloaded.
+     *
+     * @param synCtx     the current message
+     * @param isResponse Current Message is response or not
+     * @return true if the throttle and the concurrent access controller can be used as they are
+     */
+    private boolean isThrottleUpToDate(MessageContext synCtx, boolean isResponse) {
+        if (!clusteringChecked || isClusteringEnable) {
+            return false;
         }
-        // all the replication functionality of the access rate based throttling handles by itself
-        // Just replicate the current state of ConcurrentAccessController
-        if (isClusteringEnable && concurrentAccessController != null) {
-            if (cc != null) {
-                try {
-                    if (synLog.isTraceOrDebugEnabled()) {
-                        synLog.traceOrDebug("Going to replicates the  " +
-                                "states of the ConcurrentAccessController with key : " + key);
-                    }
-                    Replicator.replicate(cc);
-                } catch (ClusteringFault clusteringFault) {
-                    handleException("Error during the replicating  states ",
-                            clusteringFault, synCtx);
-                }
-            }
+        if (isResponse) {
+            return true;
         }
-        if (canAccess) {
-            if (onAcceptSeqKey != null) {
-                Mediator mediator = synCtx.getSequence(onAcceptSeqKey);
-                if (mediator != null) {
-                    return mediator.mediate(synCtx);
-                } else {
-                    handleException("Unable to find onAccept sequence with key : "
-                            + onAcceptSeqKey, synCtx);
-                }
-            } else if (onAcceptMediator != null) {
-                return onAcceptMediator.mediate(synCtx);
-            } else {
-                return true;
-            }
+        if (throttle == null) {
+            return false;
+        }
+        if (inLinePolicy == null && policyKey != null) {
+            Entry entry = synCtx.getConfiguration().getEntryDefinition(policyKey);
+            return entry != null && !(entry.isDynamic() &&
+                    (!entry.isCached() || entry.isExpired()) && version != entry.getVersion());
+        }
+        return true;
+    }
 
-        } else {
-            if (onRejectSeqKey != null) {
-                Mediator mediator = synCtx.getSequence(onRejectSeqKey);
-                if (mediator != null) {
-                    return mediator.mediate(synCtx);
-                } else {
-                    handleException("Unable to find onReject sequence with key : "
-                            + onRejectSeqKey, synCtx);
-                }
-            } else if (onRejectMediator != null) {
-                return onRejectMediator.mediate(synCtx);
-            } else {
-                return false;
+    /**
+     * Replicates the states of the concurrent access controller, if they have changed since
+     * the last replication
+     *
+     * @param cc the ConfigurationContext holding the states
+     */
+    private void replicatePendingState(ConfigurationContext cc) {
+        if (!replicationPending) {
+            return;
+        }
+        replicationPending = false;
+        try {
+            if (log.isDebugEnabled()) {
+                log.debug("Going to replicates the states of the " +
+                        "ConcurrentAccessController with key : " + key);
             }
+            Replicator.replicate(cc);
+        } catch (ClusteringFault clusteringFault) {
+            log.warn("Error during the replicating states of the " +
+                    "ConcurrentAccessController with key : " + key, clusteringFault);
         }
-
-        synLog.traceOrDebug("End : Throttle mediator");
-        return canAccess;
     }
 
     /**
      * Helper method that handles the concurrent access through throttle
      *
+     * @param concurrentAccessController the concurrent access controller to use, or null
      * @param isResponse Current Message is response or not
      * @param synLog     the Synapse log to use
      * @return true if the caller can access ,o.w. false
      */
-    private boolean doThrottleByConcurrency(boolean isResponse, SynapseLog synLog) {
+    private boolean doThrottleByConcurrency(ConcurrentAccessController concurrentAccessController,
+                                            boolean isResponse, SynapseLog synLog) {
         boolean canAcess = true;
         if (concurrentAccessController != null) {
             // do the concurrency throttling
@@ -345,12 +500,16 @@ public class ThrottleMediator extends AbstractMediator implements ManagedLifecyc
      * @param synCtx MessageContext(Synapse)
      * @param axisMC MessageContext(Axis2)
      * @param cc     ConfigurationContext
+     * @param throttle the throttle to use
+     * @param concurrentAccessController the concurrent access controller, or null
      * @param synLog the Synapse log to use
      * @return ue if the caller can access ,o.w. false
      */
     private boolean throttleByAccessRate(MessageContext synCtx,
                                          org.apache.axis2.context.MessageContext axisMC,
                                          ConfigurationContext cc,
+                                         Throttle throttle,
+                                         ConcurrentAccessController concurrentAccessController,
                                          SynapseLog synLog) {
 
         String callerId = null;
@@ -387,9 +546,8 @@ public class ThrottleMediator extends AbstractMediator implements ManagedLifecyc
 
                         try {
                             //Checks for access state
-                            AccessInformation accessInformation = accessControler.canAccess(context,
-                                    callerId, ThrottleConstants.DOMAIN_BASE);
-                            canAccess = accessInformation.isAccessAllowed();
+                            canAccess = canAccess(context, callerId,
+                                    ThrottleConstants.DOMAIN_BASE);
 
                             if (synLog.isTraceOrDebugEnabled()) {
                                 synLog.traceOrDebug("Access " + (canAccess ? "allowed" : "denied")
@@ -449,12 +607,8 @@ public class ThrottleMediator extends AbstractMediator implements ManagedLifecyc
                                     context.setThrottleId(id);
                                 }
                                 //Checks access state
-                                AccessInformation accessInformation = accessControler.canAccess(
-                                        context,
-                                        callerId,
+                                canAccess = canAccess(context, callerId,
                                         ThrottleConstants.IP_BASE);
-
-                                canAccess = accessInformation.isAccessAllowed();
                                 if (synLog.isTraceOrDebugEnabled()) {
                                     synLog.traceOrDebug("Access " +
                                             (canAccess ? "allowed" : "denied")
@@ -482,6 +636,33 @@ public class ThrottleMediator extends AbstractMediator implements ManagedLifecyc
         return canAccess;
     }
 
+    /**
+     * Checks the access state of a caller, using the access rate controller which replicates
+     * the state in a clustered environment, or the local access rate controller otherwise.
+     * As with the replicating controller, the access rate is counted per caller configuration,
+     * so all the callers matching a range or the "other" configuration share the same count.
+     *
+     * @param context    the throttle context of the caller type
+     * @param callerId   the key of the caller configuration which applies to the caller
+     * @param callerType the type of the caller
+     * @return true if the caller can access ,o.w. false
+     * @throws ThrottleException if the access state cannot be determined
+     */
+    private boolean canAccess(ThrottleContext context, String callerId,
+                              int callerType) throws ThrottleException {
+        if (isClusteringEnable) {
+            return accessControler.canAccess(context, callerId, callerType).isAccessAllowed();
+        }
+
+        CallerConfiguration configuration =
+                context.getThrottleConfiguration().getCallerConfiguration(callerId);
+        if (configuration == null) {
+            return true;
+        }
+        return localAccessController.canAccess(callerType + ":" + callerId, configuration,
+                System.currentTimeMillis());
+    }
+
     /**
      * To get the policy key - The key for which will used to lookup policy from the registry
      *
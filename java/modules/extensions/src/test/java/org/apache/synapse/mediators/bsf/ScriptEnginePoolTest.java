@@ -0,0 +1,89 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.bsf;
+
+import junit.framework.TestCase;
+import org.apache.synapse.mediators.bsf.ScriptEnginePool.PooledEngine;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ScriptEnginePoolTest extends TestCase {
+
+    private final AtomicInteger created = new AtomicInteger(0);
+
+    private final ScriptEnginePool.EngineFactory factory = new ScriptEnginePool.EngineFactory() {
+        public PooledEngine createEngine() {
+            created.incrementAndGet();
+            return new PooledEngine(null, null, null);
+        }
+    };
+
+    public void testEnginesAreReused() {
+        PooledEngine initial = new PooledEngine(null, null, null);
+        ScriptEnginePool pool = new ScriptEnginePool(4, factory, initial);
+
+        PooledEngine engine = pool.borrow();
+        assertSame(initial, engine);
+        pool.release(engine);
+        assertSame(initial, pool.borrow());
+        assertEquals(0, created.get());
+        assertEquals(2, pool.getBorrowCount());
+    }
+
+    public void testPoolGrowsUpToMaxSize() {
+        ScriptEnginePool pool = new ScriptEnginePool(3, factory, new PooledEngine(null, null, null));
+        PooledEngine first = pool.borrow();
+        PooledEngine second = pool.borrow();
+        PooledEngine third = pool.borrow();
+        assertNotSame(first, second);
+        assertNotSame(second, third);
+        assertEquals(2, created.get());
+        assertEquals(3, pool.getCreatedCount());
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(0, pool.getWaitCount());
+    }
+
+    public void testWaitForEngine() throws Exception {
+        final ScriptEnginePool pool = new ScriptEnginePool(1, factory,
+                new PooledEngine(null, null, null));
+        final PooledEngine engine = pool.borrow();
+        final CountDownLatch borrowed = new CountDownLatch(1);
+
+        Thread waiter = new Thread() {
+            public void run() {
+                pool.release(pool.borrow());
+                borrowed.countDown();
+            }
+        };
+        waiter.start();
+
+        Thread.sleep(50);
+        assertEquals(1, borrowed.getCount());
+        pool.release(engine);
+
+        assertTrue(borrowed.await(5, TimeUnit.SECONDS));
+        assertEquals(0, created.get());
+        assertEquals(1, pool.getWaitCount());
+        assertTrue(pool.getMaxWaitTime() > 0);
+        assertTrue(pool.getTotalWaitTime() >= pool.getMaxWaitTime());
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.mediators.throttle;
+
+import junit.framework.TestCase;
+import org.apache.axiom.om.OMXMLBuilderFactory;
+import org.wso2.throttle.*;
+
+import java.io.StringReader;
+
+public class LocalAccessRateControllerTest extends TestCase {
+
+    private static final String POLICY = "<wsp:Policy xmlns:wsp=\"http://schemas.xmlsoap.org/ws/2004/09/policy\"\n" +
+            "            xmlns:throttle=\"http://www.wso2.org/products/wso2commons/throttle\">\n" +
+            "<throttle:MediatorThrottleAssertion>\n" +
+            "    <wsp:Policy>\n" +
+            "        <throttle:ID throttle:type=\"IP\">192.168.8.200-192.168.8.222</throttle:ID>\n" +
+            "        <wsp:Policy>\n" +
+            "            <throttle:Control>\n" +
+            "                <wsp:Policy>\n" +
+            "                    <throttle:MaximumCount>3</throttle:MaximumCount>\n" +
+            "                    <throttle:UnitTime>800000</throttle:UnitTime>\n" +
+            "                    <throttle:ProhibitTimePeriod wsp:Optional=\"true\">10000\n" +
+            "                    </throttle:ProhibitTimePeriod>\n" +
+            "                </wsp:Policy>\n" +
+            "            </throttle:Control>\n" +
+            "        </wsp:Policy>\n" +
+            "    </wsp:Policy>\n" +
+            "</throttle:MediatorThrottleAssertion>\n" +
+            "</wsp:Policy>";
+
+    public void testAccessRate() throws Exception {
+        Throttle throttle = ThrottleFactory.createMediatorThrottle(
+                OMXMLBuilderFactory.createOMBuilder(new StringReader(POLICY)).getDocumentElement());
+        ThrottleConfiguration config = throttle.getThrottleContext(
+                ThrottleConstants.IP_BASED_THROTTLE_KEY).getThrottleConfiguration();
+        CallerConfiguration configuration = config.getCallerConfiguration(
+                config.getConfigurationKeyOfCaller("192.168.8.212"));
+        assertNotNull(configuration);
+
+        String callerId = "1:" + config.getConfigurationKeyOfCaller("192.168.8.212");
+        LocalAccessRateController controller = new LocalAccessRateController();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(controller.canAccess(callerId, configuration, now));
+        }
+        assertFalse(controller.canAccess(callerId, configuration, now));
+
+        // each caller configuration has its own count
+        assertTrue(controller.canAccess("1:other", configuration, now));
+        assertEquals(2, controller.getCallerCount());
+
+        // denied for the prohibit time period, and then allowed in a new time window
+        assertFalse(controller.canAccess(callerId, configuration, now + 9999));
+        assertFalse(controller.canAccess(callerId, configuration, now + 10000));
+        assertTrue(controller.canAccess(callerId, configuration, now + 800000));
+
+        // only the callers outside of a time window and not prohibited are idle
+        controller.removeIdleCallers(now + 800000);
+        assertEquals(1, controller.getCallerCount());
+        controller.removeIdleCallers(now + 1600000);
+        assertEquals(0, controller.getCallerCount());
+
+        assertTrue(controller.canAccess(callerId, configuration, now + 1600000));
+        controller.reset();
+        assertEquals(0, controller.getCallerCount());
+    }
+}
@@ -182,6 +182,7 @@ public class ClientHandler implements NHttpClientEventHandler {
         }
 
         metrics.connected();
+        ConnectionPool.connected(conn, ((Axis2HttpRequest) attachment).getHttpHost());
 
         // record connection creation time for debug logging
         conn.getContext().setAttribute(CONNECTION_CREATION_TIME, System.currentTimeMillis());
@@ -269,7 +270,7 @@ public class ClientHandler implements NHttpClientEventHandler {
      * @param conn HTTP connection to be closed
      */
     public void closed(final NHttpClientConnection conn) {
-        ConnectionPool.forget(conn);
+        ConnectionPool.closed(conn);
         String message = getErrorMessage("Connection close", conn);
         if (log.isTraceEnabled()) {
             log.trace(message);
@@ -26,54 +26,217 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.http.protocol.HttpCoreContext;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.io.IOException;
 
+/**
+ * Pool of outgoing connections used by the nhttp transport sender. Connections are pooled
+ * per target host:port (route) in lock free deques, and the most recently released connection
+ * is reused first so that the remaining connections can age out. Optionally the pool can
+ * limit the number of connections opened per route and in total, in which case a request
+ * waits (up to the lease timeout) for a connection to be released or closed. Idle connections
+ * and connections that have exceeded their time to live are closed by a background sweeper.
+ * See NhttpConstants for the properties which control these limits.
+ */
 public class ConnectionPool {
 
     private static final Log log = LogFactory.getLog(ConnectionPool.class);
 
-    /** A map of available connections for reuse. The key selects the host+port of the
-     * connection and the value contains a List of available connections to destination
+    /** Context attribute holding the route a connection has been accounted against */
+    private static final String CONNECTION_ROUTE = "synapse.connectionPool.route";
+
+    /** A map of pooled connections. The key selects the host+port of the target and the
+     * value holds the connections accounted against that target
      */
-    private static Map<String,List<NHttpClientConnection>> connMap =
-            Collections.synchronizedMap(new HashMap<String,List<NHttpClientConnection>>());
+    private static final ConcurrentMap<String,Route> routes =
+            new ConcurrentHashMap<String,Route>();
 
-    public static NHttpClientConnection getConnection(String host, int port) {
+    private static final AtomicInteger allocatedCount = new AtomicInteger(0);
+    private static final AtomicInteger waitingCount = new AtomicInteger(0);
+    private static final Object waitLock = new Object();
 
-        String key = host + ":" + Integer.toString(port);
-        List<NHttpClientConnection> connections = connMap.get(key);
+    private static final AtomicLong reusedCount = new AtomicLong(0);
+    private static final AtomicLong evictedCount = new AtomicLong(0);
+    private static final AtomicLong leaseTimeoutCount = new AtomicLong(0);
 
-        if (connections == null || connections.isEmpty()) {
-            if (log.isDebugEnabled()) {
-                log.debug("No connections available for reuse");
-            }
-            return null;
-
-        } else {
-            NHttpClientConnection conn;
-            synchronized (connections) {
-                while (!connections.isEmpty()) {
-                    conn = connections.remove(0);
-
-                    if (conn.isOpen() && !conn.isStale()) {
-                        if (log.isDebugEnabled()) {
-                            log.debug("A connection to host : " + host + " on port : " +
-                                port + " is available in the pool, and will be reused");
-                        }
-                        conn.requestInput(); // asankha - make sure keep alives work properly when reused with throttling
-                        return conn;
-                    } else {
-                        if (log.isDebugEnabled()) {
-                            log.debug("closing stale connection to : " + host + ":" + port);
-                        }
-                        try {
-                            conn.close();
-                        } catch (IOException ignore) {
-                        }
+    private static volatile int maxConnectionsPerHost;
+    private static volatile int maxConnections;
+    private static volatile long idleTimeout;
+    private static volatile long timeToLive;
+    private static volatile long leaseTimeout;
+
+    private static ScheduledExecutorService sweeper;
+
+    static {
+        NHttpConfiguration cfg = NHttpConfiguration.getInstance();
+        configure(cfg.getMaxConnectionsPerHost(), cfg.getMaxConnections(),
+                cfg.getConnectionIdleTimeout(), cfg.getConnectionTimeToLive(),
+                cfg.getConnectionLeaseTimeout());
+    }
+
+    /**
+     * Set the limits applied by the pool. This is invoked with the values from the
+     * nhttp.properties file when the pool is first used. A limit of 0 disables the
+     * corresponding check.
+     *
+     * @param maxPerHost maximum number of connections per target host:port
+     * @param maxTotal maximum number of connections in total
+     * @param idleTimeoutMillis time after which an idle pooled connection is closed
+     * @param timeToLiveMillis time since creation after which a connection is not reused
+     * @param leaseTimeoutMillis time to wait for a connection when a limit has been reached
+     */
+    static synchronized void configure(int maxPerHost, int maxTotal, long idleTimeoutMillis,
+                                       long timeToLiveMillis, long leaseTimeoutMillis) {
+        maxConnectionsPerHost = maxPerHost;
+        maxConnections = maxTotal;
+        idleTimeout = idleTimeoutMillis;
+        timeToLive = timeToLiveMillis;
+        leaseTimeout = leaseTimeoutMillis;
+
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+            sweeper = null;
+        }
+
+        long period = Long.MAX_VALUE;
+        if (idleTimeout > 0) {
+            period = idleTimeout;
+        }
+        if (timeToLive > 0) {
+            period = Math.min(period, timeToLive);
+        }
+        if (period != Long.MAX_VALUE) {
+            period = Math.max(period / 2, 1000);
+            sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "nhttp-connection-pool-sweeper");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            sweeper.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    try {
+                        closeExpiredConnections();
+                    } catch (Throwable t) {
+                        log.error("Error while closing expired connections", t);
                     }
                 }
+            }, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Get a pooled connection to the given target. If a pooled connection is not available
+     * and the pool limits permit, a slot is reserved for a new connection and null is returned,
+     * in which case the caller must open a new connection to the target. If the limits have
+     * been reached, this method waits for a connection to be released or closed.
+     *
+     * @param host target host name
+     * @param port target port
+     * @return a pooled connection or null if a new connection should be opened
+     * @throws TimeoutException if the lease timeout expired before a connection was available
+     */
+    public static NHttpClientConnection getConnection(String host, int port)
+            throws TimeoutException {
+
+        String key = getKey(host, port);
+        Route route = getRoute(key);
+        long deadline = -1;
+
+        while (true) {
+            NHttpClientConnection conn = takeIdleConnection(route, key);
+            if (conn != null) {
+                reusedCount.incrementAndGet();
+                return conn;
+            }
+
+            if (allocate(route)) {
+                if (log.isDebugEnabled()) {
+                    log.debug("No connections available for reuse");
+                }
+                return null;
+            }
+
+            long now = System.currentTimeMillis();
+            if (deadline == -1) {
+                deadline = now + leaseTimeout;
             }
-            return null;
+            long remaining = deadline - now;
+            if (remaining <= 0) {
+                leaseTimeoutCount.incrementAndGet();
+                throw new TimeoutException("Timeout waiting for a connection to : " + key);
+            }
+
+            if (maxConnections > 0 && allocatedCount.get() >= maxConnections) {
+                // free up a slot held by an idle connection to some other target
+                closeIdleConnection(route);
+            }
+
+            waitingCount.incrementAndGet();
+            try {
+                synchronized (waitLock) {
+                    if (route.idle.isEmpty() && !canAllocate(route)) {
+                        waitLock.wait(remaining);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TimeoutException("Interrupted while waiting for a connection to : " +
+                        key);
+            } finally {
+                waitingCount.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Reserve a slot for a new connection to the given target regardless of the pool limits.
+     * This is used when a connection obtained from the pool turned out to be closed, and
+     * the slot held by that connection will be freed once it is reported as closed.
+     *
+     * @param host target host name
+     * @param port target port
+     */
+    public static void reserve(String host, int port) {
+        getRoute(getKey(host, port)).allocated.incrementAndGet();
+        allocatedCount.incrementAndGet();
+    }
+
+    /**
+     * Account a newly established connection against the route it was reserved for
+     *
+     * @param conn the new connection
+     * @param host the target of the connection
+     */
+    public static void connected(NHttpClientConnection conn, HttpHost host) {
+        conn.getContext().setAttribute(CONNECTION_ROUTE,
+                getKey(host.getHostName(), host.getPort()));
+    }
+
+    /**
+     * Free the slot reserved for a connection which could not be established
+     *
+     * @param host the target of the connection
+     */
+    public static void connectFailed(HttpHost host) {
+        free(getKey(host.getHostName(), host.getPort()));
+    }
+
+    /**
+     * Remove a closed connection from the pool and free the slot held by it
+     *
+     * @param conn the closed connection
+     */
+    public static void closed(NHttpClientConnection conn) {
+        forget(conn);
+        HttpContext ctx = conn.getContext();
+        String key = (String) ctx.getAttribute(CONNECTION_ROUTE);
+        if (key != null) {
+            ctx.removeAttribute(CONNECTION_ROUTE);
+            free(key);
         }
     }
 
@@ -81,26 +244,17 @@ public class ConnectionPool {
 
         HttpHost host = (HttpHost) conn.getContext().getAttribute(
             HttpCoreContext.HTTP_TARGET_HOST);
-        String key = host.getHostName() + ":" + Integer.toString(host.getPort());
-
-        List<NHttpClientConnection> connections = connMap.get(key);
-        if (connections == null) {
-            synchronized(connMap) {
-                // use double locking to make sure
-                connections = connMap.get(key);
-                if (connections == null) {
-                    connections = Collections.synchronizedList(new LinkedList<NHttpClientConnection>());
-                    connMap.put(key, connections);
-                }
-            }
-        }
+        String key = getKey(host.getHostName(), host.getPort());
+        Route route = getRoute(key);
 
         cleanConnectionReferences(conn);
-        connections.add(conn);
+        route.idle.addFirst(new PooledConnection(conn));
+        int size = route.idleCount.incrementAndGet();
+        signal();
 
         if (log.isDebugEnabled()) {
             log.debug("Released a connection to host: " + host.getHostName() + " on port : " +
-                    host.getPort() + " to the connection pool of current size : " + connections.size());
+                    host.getPort() + " to the connection pool of current size : " + size);
         }
     }
 
@@ -109,9 +263,11 @@ public class ConnectionPool {
         HttpContext ctx = conn.getContext();        
         Axis2HttpRequest axis2Req =
             (Axis2HttpRequest) ctx.getAttribute(ClientHandler.AXIS2_HTTP_REQUEST);
-        axis2Req.clear();   // this is linked via the selection key attachment and will free itself
-                            // on timeout of the keep alive connection. Till then minimize the
-                            // memory usage to a few bytes 
+        if (axis2Req != null) {
+            axis2Req.clear();   // this is linked via the selection key attachment and will free
+                                // itself on timeout of the keep alive connection. Till then
+                                // minimize the memory usage to a few bytes
+        }
 
         ctx.removeAttribute(ClientHandler.AXIS2_HTTP_REQUEST);
         ctx.removeAttribute(ClientHandler.OUTGOING_MESSAGE_CONTEXT);
@@ -128,13 +284,229 @@ public class ConnectionPool {
 
         HttpHost host = (HttpHost) conn.getContext().getAttribute(
             HttpCoreContext.HTTP_TARGET_HOST);
-        String key = host.getHostName() + ":" + Integer.toString(host.getPort());
+        if (host == null) {
+            return;
+        }
+
+        Route route = routes.get(getKey(host.getHostName(), host.getPort()));
+        if (route != null) {
+            for (PooledConnection entry : route.idle) {
+                if (entry.conn == conn) {
+                    if (route.idle.remove(entry)) {
+                        route.idleCount.decrementAndGet();
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Close the pooled connections which have been idle for longer than the idle timeout,
+     * or which have exceeded their time to live
+     */
+    static void closeExpiredConnections() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String,Route> e : routes.entrySet()) {
+            Route route = e.getValue();
+            for (PooledConnection entry : route.idle) {
+                if (isExpired(entry, now) && route.idle.remove(entry)) {
+                    route.idleCount.decrementAndGet();
+                    evictedCount.incrementAndGet();
+                    if (log.isDebugEnabled()) {
+                        log.debug("Closing expired connection to : " + e.getKey());
+                    }
+                    close(entry.conn);
+                }
+            }
+        }
+    }
+
+    public static int getIdleConnectionCount() {
+        int count = 0;
+        for (Route route : routes.values()) {
+            count += route.idleCount.get();
+        }
+        return count;
+    }
 
-        List<NHttpClientConnection> connections = connMap.get(key);
-        if (connections != null) {
-            synchronized(connections) {
-                connections.remove(conn);
+    public static int getAllocatedConnectionCount() {
+        return allocatedCount.get();
+    }
+
+    public static int getWaitingCount() {
+        return waitingCount.get();
+    }
+
+    public static long getReusedCount() {
+        return reusedCount.get();
+    }
+
+    public static long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    public static long getLeaseTimeoutCount() {
+        return leaseTimeoutCount.get();
+    }
+
+    public static Map<String,Integer> getIdleConnectionsPerHost() {
+        Map<String,Integer> map = new TreeMap<String,Integer>();
+        for (Map.Entry<String,Route> e : routes.entrySet()) {
+            int count = e.getValue().idleCount.get();
+            if (count > 0) {
+                map.put(e.getKey(), count);
+            }
+        }
+        return map;
+    }
+
+    public static Map<String,Integer> getAllocatedConnectionsPerHost() {
+        Map<String,Integer> map = new TreeMap<String,Integer>();
+        for (Map.Entry<String,Route> e : routes.entrySet()) {
+            int count = e.getValue().allocated.get();
+            if (count > 0) {
+                map.put(e.getKey(), count);
+            }
+        }
+        return map;
+    }
+
+    private static NHttpClientConnection takeIdleConnection(Route route, String key) {
+        long now = System.currentTimeMillis();
+        PooledConnection entry;
+        while ((entry = route.idle.pollFirst()) != null) {
+            route.idleCount.decrementAndGet();
+            NHttpClientConnection conn = entry.conn;
+
+            if (conn.isOpen() && !conn.isStale() && !isExpired(entry, now)) {
+                if (log.isDebugEnabled()) {
+                    log.debug("A connection to : " + key + " is available in the pool, " +
+                            "and will be reused");
+                }
+                conn.requestInput(); // asankha - make sure keep alives work properly when reused with throttling
+                return conn;
+            }
+
+            if (log.isDebugEnabled()) {
+                log.debug("closing stale connection to : " + key);
+            }
+            evictedCount.incrementAndGet();
+            close(conn);
+        }
+        return null;
+    }
+
+    private static boolean canAllocate(Route route) {
+        return (maxConnectionsPerHost <= 0 || route.allocated.get() < maxConnectionsPerHost) &&
+                (maxConnections <= 0 || allocatedCount.get() < maxConnections);
+    }
+
+    private static boolean allocate(Route route) {
+        while (true) {
+            int current = route.allocated.get();
+            if (maxConnectionsPerHost > 0 && current >= maxConnectionsPerHost) {
+                return false;
+            }
+            if (route.allocated.compareAndSet(current, current + 1)) {
+                break;
+            }
+        }
+
+        while (true) {
+            int current = allocatedCount.get();
+            if (maxConnections > 0 && current >= maxConnections) {
+                route.allocated.decrementAndGet();
+                signal();
+                return false;
             }
+            if (allocatedCount.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private static void free(String key) {
+        Route route = routes.get(key);
+        if (route != null) {
+            route.allocated.decrementAndGet();
+        }
+        allocatedCount.decrementAndGet();
+        signal();
+    }
+
+    private static void closeIdleConnection(Route except) {
+        for (Route route : routes.values()) {
+            if (route == except) {
+                continue;
+            }
+            PooledConnection entry = route.idle.pollLast();
+            if (entry != null) {
+                route.idleCount.decrementAndGet();
+                evictedCount.incrementAndGet();
+                close(entry.conn);
+                return;
+            }
+        }
+    }
+
+    private static void signal() {
+        if (waitingCount.get() > 0) {
+            synchronized (waitLock) {
+                waitLock.notifyAll();
+            }
+        }
+    }
+
+    private static boolean isExpired(PooledConnection entry, long now) {
+        if (idleTimeout > 0 && now - entry.releasedAt > idleTimeout) {
+            return true;
+        }
+        if (timeToLive > 0) {
+            Long created = (Long) entry.conn.getContext().getAttribute(
+                    ClientHandler.CONNECTION_CREATION_TIME);
+            if (created != null && now - created > timeToLive) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void close(NHttpClientConnection conn) {
+        try {
+            conn.close();
+        } catch (IOException ignore) {
+        }
+    }
+
+    private static Route getRoute(String key) {
+        Route route = routes.get(key);
+        if (route == null) {
+            Route newRoute = new Route();
+            route = routes.putIfAbsent(key, newRoute);
+            if (route == null) {
+                route = newRoute;
+            }
+        }
+        return route;
+    }
+
+    private static String getKey(String host, int port) {
+        return host + ":" + Integer.toString(port);
+    }
+
+    private static class Route {
+        private final Deque<PooledConnection> idle = new ConcurrentLinkedDeque<PooledConnection>();
+        private final AtomicInteger idleCount = new AtomicInteger(0);
+        private final AtomicInteger allocated = new AtomicInteger(0);
+    }
+
+    private static class PooledConnection {
+        private final NHttpClientConnection conn;
+        private final long releasedAt = System.currentTimeMillis();
+
+        private PooledConnection(NHttpClientConnection conn) {
+            this.conn = conn;
         }
     }
 }
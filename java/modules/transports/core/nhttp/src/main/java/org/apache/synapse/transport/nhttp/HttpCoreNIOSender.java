@@ -70,6 +70,7 @@ import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.TimeoutException;
 
 /**
  * NIO transport sender for Axis2 based on HttpCore and NIO extensions
@@ -385,7 +386,14 @@ public class HttpCoreNIOSender extends AbstractHandler implements TransportSende
                 }
             }
             
-            NHttpClientConnection conn = ConnectionPool.getConnection(host, port);
+            // pooled connections are keyed by the target host, even when sent via a proxy
+            NHttpClientConnection conn;
+            try {
+                conn = ConnectionPool.getConnection(httpHost.getHostName(), httpHost.getPort());
+            } catch (TimeoutException e) {
+                handleException("Unable to obtain a connection to : " + httpHost, e);
+                return;
+            }
 
             // Ensure MessageContext has a ClientConnectionDebug attached before we start streaming
             ServerConnectionDebug scd = (ServerConnectionDebug)
@@ -415,6 +423,7 @@ public class HttpCoreNIOSender extends AbstractHandler implements TransportSende
                         log.debug("An existing connection reused to : " + host + ":" + port);
                     }                    
                 } catch (ConnectionClosedException e) {
+                    ConnectionPool.reserve(httpHost.getHostName(), httpHost.getPort());
                     ioReactor.connect(new InetSocketAddress(host, port),
                         null, axis2Req, sessionRequestCallback);
                     if (log.isDebugEnabled()) {
@@ -771,6 +780,7 @@ public class HttpCoreNIOSender extends AbstractHandler implements TransportSende
                     request.getAttachment() instanceof Axis2HttpRequest) {
 
                     Axis2HttpRequest axis2Request = (Axis2HttpRequest) request.getAttachment();
+                    ConnectionPool.connectFailed(axis2Request.getHttpHost());
                     if (!axis2Request.isCompleted()) {
                         handler.markRequestCompletedWithError(
                             axis2Request, errorCode,  errorMessage,  null);
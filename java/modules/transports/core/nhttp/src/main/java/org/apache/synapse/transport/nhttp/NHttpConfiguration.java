@@ -38,6 +38,7 @@ public final class NHttpConfiguration extends HttpTransportConfiguration {
     private static final int BLOCKING_QUEUE_LENGTH = -1;
     private static final int IO_WORKER_COUNT = Runtime.getRuntime().availableProcessors();
     private static final int BUFFER_SIZE           = 8192;
+    private static final int CONNECTION_LEASE_TIMEOUT = 30000;
 
     // server listener
     private static final String S_T_CORE     = "snd_t_core";
@@ -124,6 +125,26 @@ public final class NHttpConfiguration extends HttpTransportConfiguration {
         return getBooleanProperty(NhttpConstants.COUNT_CONNECTIONS, false);
     }
 
+    public int getMaxConnectionsPerHost() {
+        return getIntProperty(NhttpConstants.MAX_CONNECTIONS_PER_HOST, 0);
+    }
+
+    public int getMaxConnections() {
+        return getIntProperty(NhttpConstants.MAX_CONNECTIONS, 0);
+    }
+
+    public int getConnectionIdleTimeout() {
+        return getIntProperty(NhttpConstants.CONNECTION_IDLE_TIMEOUT, 0);
+    }
+
+    public int getConnectionTimeToLive() {
+        return getIntProperty(NhttpConstants.CONNECTION_TIME_TO_LIVE, 0);
+    }
+
+    public int getConnectionLeaseTimeout() {
+        return getIntProperty(NhttpConstants.CONNECTION_LEASE_TIMEOUT, CONNECTION_LEASE_TIMEOUT);
+    }
+
     public String isServiceListBlocked() {
         return getStringProperty(BLOCK_SERVICE_LIST, BLOCK_SERVICE_LIST_DEFAULT);
     }
@@ -123,6 +123,17 @@ public class NhttpConstants {
     /** Configuration in nhttp.properties file for enable connection counting */
     public static final String COUNT_CONNECTIONS = "http.count.connections";
 
+    /** Maximum number of connections the sender keeps open (or opening) to a single host */
+    public static final String MAX_CONNECTIONS_PER_HOST = "http.connection.pool.max_per_host";
+    /** Maximum number of connections the sender keeps open (or opening) in total */
+    public static final String MAX_CONNECTIONS = "http.connection.pool.max_total";
+    /** Time (in milliseconds) an unused connection is kept in the connection pool */
+    public static final String CONNECTION_IDLE_TIMEOUT = "http.connection.pool.idle_timeout";
+    /** Maximum time (in milliseconds) a connection is reused since it was established */
+    public static final String CONNECTION_TIME_TO_LIVE = "http.connection.pool.ttl";
+    /** Time (in milliseconds) to wait for a connection when the pool limits are reached */
+    public static final String CONNECTION_LEASE_TIMEOUT = "http.connection.pool.lease_timeout";
+
     public static final String REQ_ARRIVAL_TIME = "REQ_ARRIVAL_TIME";
     public static final String REQ_DEPARTURE_TIME = "REQ_DEPARTURE_TIME";
     public static final String RES_ARRIVAL_TIME = "RES_ARRIVAL_TIME";
@@ -47,6 +47,7 @@ import org.apache.synapse.commons.evaluators.EvaluatorContext;
 import org.apache.synapse.commons.executors.PriorityExecutor;
 import org.apache.synapse.commons.jmx.ThreadingView;
 import org.apache.synapse.transport.nhttp.debug.ServerConnectionDebug;
+import org.apache.synapse.transport.utils.threads.ElasticWorkerPool;
 import org.apache.synapse.transport.nhttp.util.LatencyView;
 import org.apache.synapse.transport.nhttp.util.NhttpMetricsCollector;
 
@@ -125,7 +126,12 @@ public class ServerHandler implements NHttpServerEventHandler {
         this.threadingView = new ThreadingView("HttpServerWorker", true, 50);
 
         this.cfg = NHttpConfiguration.getInstance();
-        if (listenerContext.getExecutor() == null)  {
+        if (listenerContext.getExecutor() == null && cfg.isElasticWorkerPool()) {
+            this.workerPool = new ElasticWorkerPool(
+                cfg.getWorkerPoolMaxConcurrency(),
+                cfg.getServerKeepalive(),
+                "Server Worker thread group", "HttpServerWorker");
+        } else if (listenerContext.getExecutor() == null)  {
             this.workerPool = WorkerPoolFactory.getWorkerPool(
                 cfg.getServerCoreThreads(),
                 cfg.getServerMaxThreads(),
@@ -20,6 +20,7 @@
 package org.apache.synapse.transport.nhttp.util;
 
 import org.apache.synapse.commons.jmx.MBeanRegistrar;
+import org.apache.synapse.transport.nhttp.ConnectionPool;
 
 import java.util.*;
 import java.util.concurrent.ThreadFactory;
@@ -37,6 +38,8 @@ import java.util.concurrent.TimeUnit;
  * connection statistics this MBean also provides information on the request and response
  * sizes received over the HTTP connections. All messages are divided into six categories
  * based on their sizes and the resulting counts are made available as a table. 
+ * When created for the transport sender, this MBean also exposes the statistics of the
+ * outgoing ConnectionPool.
  */
 public class ConnectionsView implements ConnectionsViewMBean {
 
@@ -74,8 +77,15 @@ public class ConnectionsView implements ConnectionsViewMBean {
 
     private String name;
 
+    private boolean sender;
+
     public ConnectionsView(final String name) {
+        this(name, false);
+    }
+
+    public ConnectionsView(final String name, boolean sender) {
         this.name = name;
+        this.sender = sender;
 
         this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
             public Thread newThread(Runnable r) {
@@ -295,4 +305,46 @@ public class ConnectionsView implements ConnectionsViewMBean {
         return activeConnectionsPerHost;
     }
 
+    public int getPooledConnections() {
+        return sender ? ConnectionPool.getIdleConnectionCount() : 0;
+    }
+
+    public int getLeasedConnections() {
+        if (sender) {
+            return Math.max(ConnectionPool.getAllocatedConnectionCount() -
+                    ConnectionPool.getIdleConnectionCount(), 0);
+        }
+        return 0;
+    }
+
+    public int getPendingConnectionLeases() {
+        return sender ? ConnectionPool.getWaitingCount() : 0;
+    }
+
+    public long getReusedConnections() {
+        return sender ? ConnectionPool.getReusedCount() : 0;
+    }
+
+    public long getEvictedConnections() {
+        return sender ? ConnectionPool.getEvictedCount() : 0;
+    }
+
+    public long getConnectionLeaseTimeouts() {
+        return sender ? ConnectionPool.getLeaseTimeoutCount() : 0;
+    }
+
+    public Map getPooledConnectionsPerHost() {
+        if (sender) {
+            return ConnectionPool.getIdleConnectionsPerHost();
+        }
+        return Collections.emptyMap();
+    }
+
+    public Map getAllocatedConnectionsPerHost() {
+        if (sender) {
+            return ConnectionPool.getAllocatedConnectionsPerHost();
+        }
+        return Collections.emptyMap();
+    }
+
 }
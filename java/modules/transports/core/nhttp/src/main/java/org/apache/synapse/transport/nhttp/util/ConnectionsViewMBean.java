@@ -39,6 +39,17 @@ public interface ConnectionsViewMBean {
     public Map getResponseSizesMap();
     public Date getLastResetTime();
     public Map getActiveConnectionsPerHosts();
+
+    // Connection pool statistics (only available for the transport sender)
+    public int getPooledConnections();
+    public int getLeasedConnections();
+    public int getPendingConnectionLeases();
+    public long getReusedConnections();
+    public long getEvictedConnections();
+    public long getConnectionLeaseTimeouts();
+    public Map getPooledConnectionsPerHost();
+    public Map getAllocatedConnectionsPerHost();
+
     public void reset();
     
 }
@@ -43,7 +43,7 @@ public class NhttpMetricsCollector extends MetricsCollector {
     public NhttpMetricsCollector(boolean listener, String transportName) {
         this.listener = listener;
         String name = transportName + "-" + (listener ? "listener" : "sender");
-        this.view = new ConnectionsView(name);
+        this.view = new ConnectionsView(name, !listener);
     }
 
     public void destroy() {
@@ -173,7 +173,7 @@ public class DeliveryAgent {
             lock.unlock();
         }
 
-        while (queue.size() > 0) {
+        while (queue != null && queue.size() > 0) {
             if (conn == null) {
                 // Try to get an existing connection from pool. Here we should not ask to create
                 // new connections as it may ended up with extra connections. New connections are
@@ -185,12 +185,17 @@ public class DeliveryAgent {
 
                 if (messageContext != null) {
                     tryNextMessage(messageContext, conn);
+                    conn = null;
                 }
-                conn = null;
             } else {
                 break;
             }
         }
+
+        if (conn != null) {
+            // no message is waiting for this connection any more, make it available for reuse
+            targetConnections.releaseConnection(conn);
+        }
     }
 
     private void tryNextMessage(MessageContext messageContext, NHttpClientConnection conn) {
@@ -227,9 +232,24 @@ public class DeliveryAgent {
                 }
                 return;
             }
+            if (!isRebuiltBeforeSend(msgContext)) {
+                pipe.enableSplicing();
+            }
         }
 
         conn.requestOutput();
+    }
+
+    /**
+     * Check whether the request will be built by the TargetRequest before it is written out,
+     * in which case the pipe should not be spliced.
+     *
+     * @param msgContext outgoing message context
+     * @return true if chunking is disabled for the request
+     */
+    private boolean isRebuiltBeforeSend(MessageContext msgContext) {
+        return "true".equals(msgContext.getProperty(PassThroughConstants.DISABLE_CHUNKING)) ||
+                "true".equals(msgContext.getProperty(PassThroughConstants.FORCE_HTTP_1_0));
     }    
 
 }
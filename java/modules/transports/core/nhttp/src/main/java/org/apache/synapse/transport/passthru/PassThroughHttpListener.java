@@ -47,6 +47,7 @@ import org.apache.http.nio.reactor.ListenerEndpoint;
 import org.apache.http.nio.reactor.ssl.SSLSetupHandler;
 import org.apache.synapse.commons.jmx.MBeanRegistrar;
 import org.apache.synapse.transport.passthru.config.SourceConfiguration;
+import org.apache.synapse.transport.passthru.jmx.BufferPoolView;
 import org.apache.synapse.transport.passthru.jmx.PassThroughTransportMetricsCollector;
 import org.apache.synapse.transport.passthru.jmx.TransportView;
 import org.apache.synapse.transport.utils.conn.logging.LoggingUtils;
@@ -134,6 +135,9 @@ public class PassThroughHttpListener implements TransportListener {
         MBeanRegistrar.getInstance().registerMBean(
                 new TransportView(this, null, metrics, null), "Transport",
                 "passthru-" + namePrefix.toLowerCase() + "-receiver");
+        MBeanRegistrar.getInstance().registerMBean(
+                new BufferPoolView(sourceConfiguration.getBufferFactory()), "PassThroughBufferPool",
+                "passthru-" + namePrefix.toLowerCase() + "-receiver");
         sourceConfiguration.setMetrics(metrics);
     }
 
@@ -273,6 +277,8 @@ public class PassThroughHttpListener implements TransportListener {
 
         MBeanRegistrar.getInstance().unRegisterMBean("Transport",
                 "passthru-" + namePrefix.toLowerCase() + "-receiver");
+        MBeanRegistrar.getInstance().unRegisterMBean("PassThroughBufferPool",
+                "passthru-" + namePrefix.toLowerCase() + "-receiver");
         sourceConfiguration.getMetrics().destroy();
     }
 
@@ -59,6 +59,7 @@ import org.apache.synapse.transport.nhttp.util.NhttpUtil;
 import org.apache.synapse.transport.passthru.config.SourceConfiguration;
 import org.apache.synapse.transport.passthru.config.TargetConfiguration;
 import org.apache.synapse.transport.passthru.connections.TargetConnections;
+import org.apache.synapse.transport.passthru.jmx.BufferPoolView;
 import org.apache.synapse.transport.passthru.jmx.PassThroughTransportMetricsCollector;
 import org.apache.synapse.transport.passthru.jmx.TransportView;
 import org.apache.synapse.transport.passthru.util.PassThroughTransportUtils;
@@ -160,7 +161,7 @@ public class PassThroughHttpSender extends AbstractHandler implements TransportS
         }
 
         targetConfiguration = new TargetConfiguration(configurationContext,
-                transportOutDescription, workerPool);
+                transportOutDescription, workerPool, namePrefix.toLowerCase());
         configurationContext.setProperty(PassThroughConstants.PASS_THROUGH_TRANSPORT_WORKER_POOL,
                 targetConfiguration.getWorkerPool());
 
@@ -169,6 +170,9 @@ public class PassThroughHttpSender extends AbstractHandler implements TransportS
         TransportView view = new TransportView(null, this, metrics, null);
         MBeanRegistrar.getInstance().registerMBean(view, "Transport",
                  "passthru-" + namePrefix.toLowerCase() + "-sender");
+        MBeanRegistrar.getInstance().registerMBean(
+                new BufferPoolView(targetConfiguration.getBufferFactory()), "PassThroughBufferPool",
+                "passthru-" + namePrefix.toLowerCase() + "-sender");
         targetConfiguration.setMetrics(metrics);
 
         try {
@@ -203,6 +207,7 @@ public class PassThroughHttpSender extends AbstractHandler implements TransportS
         TargetConnections targetConnections =
                 new TargetConnections(ioReactor, targetConfiguration, connectCallback);
         targetConfiguration.setConnections(targetConnections);
+        metrics.setTargetConnections(targetConnections);
 
         // create the delivery agent to hand over messages
         deliveryAgent = new DeliveryAgent(targetConfiguration, targetConnections);
@@ -228,6 +233,9 @@ public class PassThroughHttpSender extends AbstractHandler implements TransportS
         }, "PassThrough" + namePrefix + "Sender");
         t.start();
 
+        // open connections in advance to the configured targets
+        targetConnections.prewarm();
+
         state = BaseConstants.STARTED;
 
         log.info("Pass-through " + namePrefix + " sender started...");
@@ -238,11 +246,16 @@ public class PassThroughHttpSender extends AbstractHandler implements TransportS
     }
 
     public void stop() {
+        if (targetConfiguration.getConnections() != null) {
+            targetConfiguration.getConnections().shutdown();
+        }
         try {
             ioReactor.shutdown();
         } catch (IOException e) {
             log.error("Error shutting down the PassThroughHttpSender", e);
         }
+        MBeanRegistrar.getInstance().unRegisterMBean("PassThroughBufferPool",
+                "passthru-" + namePrefix.toLowerCase() + "-sender");
     }
 
     public InvocationResponse invoke(MessageContext msgContext) throws AxisFault {
@@ -531,6 +544,10 @@ public class PassThroughHttpSender extends AbstractHandler implements TransportS
 
             pipe.attachConsumer(conn);
             sourceResponse.connect(pipe);
+            if (!msgContext.isPropertyTrue(PassThroughConstants.MESSAGE_BUILDER_INVOKED) &&
+                    !Boolean.TRUE.equals(noEntityBody)) {
+                pipe.enableSplicing();
+            }
         }
 
         Integer errorCode = (Integer) msgContext.getProperty(PassThroughConstants.ERROR_CODE);
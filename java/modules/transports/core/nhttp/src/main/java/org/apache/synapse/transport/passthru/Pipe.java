@@ -26,12 +26,26 @@ import org.apache.synapse.transport.passthru.config.BaseConfiguration;
 import org.apache.synapse.transport.passthru.util.ControlledByteBuffer;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This is a buffer shared by both producers and consumers.
+ * <p/>
+ * When the message flowing through the pipe is never built or serialized (i.e. pure
+ * pass-through relaying), the pipe can be switched to the splicing mode by calling
+ * {@link #enableSplicing()}. In this mode the producer and the consumer share a small ring of
+ * buffers. The decoder reads directly into the next free buffer of the ring and the encoder
+ * writes directly from the oldest filled buffer, so the producer can keep reading while the
+ * consumer is writing. Ownership of the ring buffers is handed over using two monotonically
+ * increasing indices, hence no locks or conditions are involved in this mode. The additional
+ * ring buffers are returned to the buffer factory once both the producer and the consumer are
+ * done with the ring, either because the message has been relayed or because of an error.
  */
 public class Pipe {
 
@@ -46,7 +60,7 @@ public class Pipe {
 
     private ControlledByteBuffer outputBuffer;
 
-    private boolean producerCompleted = false;
+    private volatile boolean producerCompleted = false;
 
 	/** Lock to synchronize the producers and consumers */
     private Lock lock = new ReentrantLock();
@@ -57,9 +71,9 @@ public class Pipe {
     /** Name to identify the buffer */
     private String name = "Buffer";
 
-    private boolean consumerError = false;
+    private volatile boolean consumerError = false;
 
-    private boolean producerError = false;
+    private volatile boolean producerError = false;
 
     private BaseConfiguration baseConfig;
 
@@ -72,6 +86,30 @@ public class Pipe {
     private ByteBufferInputStream inputStream;
     private ByteBufferOutputStream outputStream;
 
+    /** Whether the pipe operates in the splicing mode */
+    private volatile boolean spliced = false;
+
+    /** Buffers shared by the producer and the consumer in the splicing mode */
+    private ControlledByteBuffer[] ring;
+
+    /** Index of the next ring buffer to be filled by the producer */
+    private final AtomicLong writeIndex = new AtomicLong(0);
+
+    /** Index of the next ring buffer to be drained by the consumer */
+    private final AtomicLong readIndex = new AtomicLong(0);
+
+    /** Whether the producer will no longer use the ring */
+    private final AtomicBoolean producerDone = new AtomicBoolean(false);
+
+    /** Whether the consumer will no longer use the ring */
+    private final AtomicBoolean consumerDone = new AtomicBoolean(false);
+
+    /** Number of the producer and the consumer which are done with the ring */
+    private final AtomicInteger ringUsersDone = new AtomicInteger(0);
+
+    /** Content read through the input stream and pushed back, see {@link #unread} */
+    private ByteBuffer unreadBuffer;
+
     public Pipe(IOControl producerIoControl, ControlledByteBuffer buffer,
                 String name, BaseConfiguration baseConfig) {
         this.producerIoControl = producerIoControl;
@@ -95,6 +133,52 @@ public class Pipe {
         this.consumerIoControl = consumerIoControl;
     }
 
+    /**
+     * Switch the pipe to the splicing mode, if enabled in the configuration. This must only be
+     * called for messages which are relayed as they are - once the pipe is spliced, the content
+     * can no longer be read through {@link #getInputStream()} nor written through
+     * {@link #getOutputStream()}.
+     *
+     * @return true if the pipe is operating in the splicing mode
+     */
+    public synchronized boolean enableSplicing() {
+        if (!hasHttpProducer || !baseConfig.isPipeSplicingEnabled()) {
+            return false;
+        }
+
+        lock.lock();
+        try {
+            if (spliced) {
+                return true;
+            }
+            if (inputStream != null || outputStream != null || producerError || consumerError) {
+                return false;
+            }
+
+            ring = new ControlledByteBuffer[Math.max(2, baseConfig.getPipeSpliceRingSize())];
+            ring[0] = buffer;
+            if (hasData(buffer)) {
+                // Data already read in to the buffer is handed over to the consumer
+                writeIndex.set(1);
+            } else {
+                buffer.clear();
+                buffer.forceSetInputMode();
+            }
+            spliced = true;
+            if (producerCompleted) {
+                // the whole message has already been read, the producer is not called again
+                ringUserDone(producerDone);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isSpliced() {
+        return spliced;
+    }
+
     /**
      * Consume the data from the buffer. Before calling this method attachConsumer
      * method must be called with a valid IOControl.
@@ -113,7 +197,15 @@ public class Pipe {
             throw new IllegalStateException("Producer cannot be null when calling consume");
         }
 
+        if (spliced) {
+            return consumeSpliced(encoder);
+        }
+
         lock.lock();
+        if (spliced) {
+            lock.unlock();
+            return consumeSpliced(encoder);
+        }
         ControlledByteBuffer consumerBuffer;
         if (outputBuffer != null) {
             consumerBuffer = outputBuffer;
@@ -127,6 +219,15 @@ public class Pipe {
                 return -1;
             }
 
+            if (unreadBuffer != null && outputBuffer == null) {
+                // content pushed back by a reader goes ahead of the content in the buffer
+                int bytesWritten = encoder.write(unreadBuffer);
+                if (!unreadBuffer.hasRemaining()) {
+                    unreadBuffer = null;
+                }
+                return bytesWritten;
+            }
+
             setOutputMode(consumerBuffer);
             int bytesWritten = encoder.write(consumerBuffer.getByteBuffer());
             setInputMode(consumerBuffer);
@@ -170,7 +271,15 @@ public class Pipe {
             throw new IllegalStateException("Producer cannot be null when calling produce");
         }
 
+        if (spliced) {
+            return produceSpliced(decoder);
+        }
+
         lock.lock();
+        if (spliced) {
+            lock.unlock();
+            return produceSpliced(decoder);
+        }
         try {
             setInputMode(buffer);
             int bytesRead = decoder.read(buffer.getByteBuffer());
@@ -203,6 +312,116 @@ public class Pipe {
         }
     }
 
+    private int produceSpliced(final ContentDecoder decoder) throws IOException {
+        long index = writeIndex.get();
+        // once the consumer is at error the content is discarded, so the ring is never full
+        if (!consumerError && index - readIndex.get() >= ring.length) {
+            // All buffers are waiting to be drained. Suspend input until the consumer frees up
+            // a buffer, re-checking afterwards so that a concurrent release is not missed
+            producerIoControl.suspendInput();
+            if (index - readIndex.get() < ring.length) {
+                producerIoControl.requestInput();
+            }
+            return 0;
+        }
+
+        int slot = (int) (index % ring.length);
+        ControlledByteBuffer slotBuffer = ring[slot];
+        if (slotBuffer == null) {
+            slotBuffer = baseConfig.getBufferFactory().getBuffer();
+            ring[slot] = slotBuffer;
+        }
+
+        int bytesRead = decoder.read(slotBuffer.getByteBuffer());
+        if (consumerError) {
+            slotBuffer.clear();
+        }
+
+        boolean published = false;
+        if (slotBuffer.position() > 0) {
+            writeIndex.set(index + 1);
+            published = true;
+        }
+        boolean completed = decoder.isCompleted();
+        if (completed) {
+            producerCompleted = true;
+        }
+        if ((published || completed) && consumerIoControl != null) {
+            consumerIoControl.requestOutput();
+        }
+        if (completed) {
+            ringUserDone(producerDone);
+        }
+        return bytesRead;
+    }
+
+    private int consumeSpliced(final ContentEncoder encoder) throws IOException {
+        if (producerError) {
+            encoder.complete();
+            ringUserDone(consumerDone);
+            return -1;
+        }
+
+        int bytesWritten = 0;
+        long index = readIndex.get();
+        while (index < writeIndex.get()) {
+            ControlledByteBuffer slotBuffer = ring[(int) (index % ring.length)];
+            setOutputMode(slotBuffer);
+            bytesWritten += encoder.write(slotBuffer.getByteBuffer());
+            if (slotBuffer.hasRemaining()) {
+                // the channel cannot accept more data at the moment
+                break;
+            }
+
+            slotBuffer.clear();
+            slotBuffer.forceSetInputMode();
+            readIndex.set(++index);
+            if (!producerCompleted && hasHttpProducer) {
+                producerIoControl.requestInput();
+            }
+        }
+
+        // producerCompleted must be read before comparing the indices
+        boolean completed = producerCompleted;
+        if (index == writeIndex.get()) {
+            if (completed) {
+                encoder.complete();
+                ringUserDone(consumerDone);
+            } else {
+                consumerIoControl.suspendOutput();
+                if (index != writeIndex.get() || producerCompleted) {
+                    consumerIoControl.requestOutput();
+                }
+            }
+        }
+        return bytesWritten;
+    }
+
+    /**
+     * Record that the producer or the consumer will no longer use the ring, and release the
+     * ring once both are done with it.
+     *
+     * @param done the flag of the producer or the consumer
+     */
+    private void ringUserDone(AtomicBoolean done) {
+        if (done.compareAndSet(false, true) && ringUsersDone.incrementAndGet() == 2) {
+            releaseRing();
+        }
+    }
+
+    /**
+     * Return the additional ring buffers to the buffer factory. The first buffer of the ring
+     * is the buffer of the pipe, which is released along with the connection context.
+     */
+    private void releaseRing() {
+        for (int i = 1; i < ring.length; i++) {
+            if (ring[i] != null) {
+                baseConfig.getBufferFactory().release(ring[i]);
+                ring[i] = null;
+            }
+        }
+    }
+
     @Override
     public String toString() {
         return name;
@@ -216,6 +435,13 @@ public class Pipe {
         } finally {
             lock.unlock();
         }
+        if (spliced) {
+            ringUserDone(consumerDone);
+            // let the producer discard the rest of the content and complete
+            if (!producerCompleted && producerIoControl != null) {
+                producerIoControl.requestInput();
+            }
+        }
     }
 
     public void producerError() {
@@ -226,6 +452,43 @@ public class Pipe {
         } finally {
             lock.unlock();
         }
+        if (spliced) {
+            ringUserDone(producerDone);
+            // let the consumer notice the error and complete
+            if (consumerIoControl != null) {
+                consumerIoControl.requestOutput();
+            }
+        }
+    }
+
+    /**
+     * Push back content read through {@link #getInputStream()}. The content is read again by
+     * the next read from the input stream, or if the message is relayed without being read
+     * again, written to the consumer ahead of the rest of the content. This allows examining
+     * the beginning of a message without affecting how it is processed afterwards.
+     *
+     * @param b   buffer holding the content
+     * @param off offset of the content in the buffer
+     * @param len length of the content
+     */
+    public void unread(byte[] b, int off, int len) {
+        if (len <= 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            int pending = unreadBuffer != null ? unreadBuffer.remaining() : 0;
+            ByteBuffer pushedBack = ByteBuffer.allocate(len + pending);
+            pushedBack.put(b, off, len);
+            if (unreadBuffer != null) {
+                pushedBack.put(unreadBuffer);
+            }
+            pushedBack.flip();
+            unreadBuffer = pushedBack;
+            readCondition.signalAll();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -236,6 +499,9 @@ public class Pipe {
      * @return An InputStream object
      */
     public synchronized InputStream getInputStream() {
+        if (spliced) {
+            throw new IllegalStateException("Content of a spliced pipe cannot be read");
+        }
         if (inputStream == null) {
             inputStream = new ByteBufferInputStream();
         }
@@ -249,6 +515,9 @@ public class Pipe {
      * @return An OutputStream object
      */
     public synchronized OutputStream getOutputStream() {
+        if (spliced) {
+            throw new IllegalStateException("Content cannot be written to a spliced pipe");
+        }
         if (outputStream == null) {
             outputBuffer = baseConfig.getBufferFactory().getBuffer();
             outputStream = new ByteBufferOutputStream();
@@ -316,6 +585,13 @@ public class Pipe {
         public int read() throws IOException {
             lock.lock();
             try {
+                if (unreadBuffer != null) {
+                    int b = unreadBuffer.get() & 0xff;
+                    if (!unreadBuffer.hasRemaining()) {
+                        unreadBuffer = null;
+                    }
+                    return b;
+                }
                 if (!hasData(buffer)) {
                     waitForData();
                     if (producerError) {
@@ -338,6 +614,14 @@ public class Pipe {
 
             lock.lock();
             try {
+                if (unreadBuffer != null) {
+                    int chunk = Math.min(len, unreadBuffer.remaining());
+                    unreadBuffer.get(b, off, chunk);
+                    if (!unreadBuffer.hasRemaining()) {
+                        unreadBuffer = null;
+                    }
+                    return chunk;
+                }
                 if (!hasData(buffer)) {
                     waitForData();
                 }
@@ -78,10 +78,10 @@ public class TargetHandler implements NHttpClientEventHandler {
         TargetContext.create(conn, ProtocolState.REQUEST_READY, targetConfiguration);
 
         // notify the pool about the new connection
-        targetConfiguration.getConnections().addConnection(conn);
+        boolean acquired = targetConfiguration.getConnections().addConnection(conn);
 
-        // notify about the new connection
-        deliveryAgent.connected(pool.getHost(), pool.getPort(), conn);
+        // notify about the new connection, prewarmed connections are already in the free list
+        deliveryAgent.connected(pool.getHost(), pool.getPort(), acquired ? conn : null);
         
         conn.getContext().setAttribute(PassThroughConstants.REQ_DEPARTURE_TIME,
                 System.currentTimeMillis());
@@ -25,10 +25,13 @@ import org.apache.axis2.transport.base.threads.WorkerPool;
 import org.apache.axis2.transport.base.threads.WorkerPoolFactory;
 import org.apache.http.config.ConnectionConfig;
 import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.util.ByteBufferAllocator;
+import org.apache.http.nio.util.DirectByteBufferAllocator;
 import org.apache.http.nio.util.HeapByteBufferAllocator;
 import org.apache.http.protocol.HttpProcessor;
 import org.apache.synapse.transport.passthru.jmx.PassThroughTransportMetricsCollector;
 import org.apache.synapse.transport.passthru.util.BufferFactory;
+import org.apache.synapse.transport.utils.threads.ElasticWorkerPool;
 
 /**
  * This class has common configurations for both sender and receiver.
@@ -52,6 +55,10 @@ public abstract class BaseConfiguration {
 
     private HttpProcessor httpProcessor;
 
+    private boolean pipeSplicingEnabled;
+
+    private int pipeSpliceRingSize;
+
     protected PassThroughConfiguration conf = PassThroughConfiguration.getInstance();
 
     public BaseConfiguration(ConfigurationContext configurationContext,
@@ -59,7 +66,13 @@ public abstract class BaseConfiguration {
                              WorkerPool workerPool) {
         this.parameters = parameters;
         this.configurationContext = configurationContext;
-        if (workerPool == null) {
+        if (workerPool == null && conf.isElasticWorkerPool()) {
+            this.workerPool = new ElasticWorkerPool(
+                    conf.getWorkerPoolMaxConcurrency(),
+                    conf.getWorkerThreadKeepaliveSec(),
+                    "Pass-through Message Processing Thread Group",
+                    "PassThroughMessageProcessor");
+        } else if (workerPool == null) {
             this.workerPool = WorkerPoolFactory.getWorkerPool(
                     conf.getWorkerPoolCoreSize(),
                     conf.getWorkerPoolMaxSize(),
@@ -71,8 +84,13 @@ public abstract class BaseConfiguration {
             this.workerPool = workerPool;
         }
 
-        int bufferSize = conf.getIntProperty(PassThroughConfigPNames.IO_BUFFER_SIZE, 1024 * 8);
-        bufferFactory = new BufferFactory(bufferSize, HeapByteBufferAllocator.INSTANCE, 512);
+        ByteBufferAllocator allocator = conf.isDirectIOBuffers() ?
+                DirectByteBufferAllocator.INSTANCE : HeapByteBufferAllocator.INSTANCE;
+        bufferFactory = new BufferFactory(conf.getIOBufferSizeClasses(), conf.getIOBufferSize(),
+                allocator, conf.getIOBufferPoolSize(), conf.getIOBufferPoolStripes(),
+                conf.getIOBufferPoolMaxBytes());
+        pipeSplicingEnabled = conf.isPipeSplicingEnabled();
+        pipeSpliceRingSize = conf.getPipeSpliceRingSize();
         httpProcessor = initHttpProcessor();
     }
 
@@ -102,6 +120,14 @@ public abstract class BaseConfiguration {
         return bufferFactory;
     }
 
+    public boolean isPipeSplicingEnabled() {
+        return pipeSplicingEnabled;
+    }
+
+    public int getPipeSpliceRingSize() {
+        return pipeSpliceRingSize;
+    }
+
     public HttpProcessor getHttpProcessor() {
         return httpProcessor;
     }
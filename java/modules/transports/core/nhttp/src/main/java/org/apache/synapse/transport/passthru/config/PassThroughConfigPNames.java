@@ -55,6 +55,42 @@ public interface PassThroughConfigPNames {
      */
     public String IO_BUFFER_SIZE = "io_buffer_size";
 
+    /**
+     * Defines additional IO buffer sizes (comma separated) pooled by the buffer factory
+     */
+    public String IO_BUFFER_SIZE_CLASSES = "io_buffer_size_classes";
+
+    /**
+     * Defines whether IO buffers should be allocated outside the Java heap
+     */
+    public String IO_BUFFER_DIRECT = "io_buffer_direct";
+
+    /**
+     * Defines the number of IO buffers pooled per buffer size
+     */
+    public String IO_BUFFER_POOL_SIZE = "io_buffer_pool_size";
+
+    /**
+     * Defines the number of stripes the IO buffer pool is divided into
+     */
+    public String IO_BUFFER_POOL_STRIPES = "io_buffer_pool_stripes";
+
+    /**
+     * Defines the maximum amount of memory (in kilobytes) held by idle pooled IO buffers
+     */
+    public String IO_BUFFER_POOL_MAX_KB = "io_buffer_pool_max_kb";
+
+    /**
+     * Defines whether pipes of messages relayed without being built should share a ring of
+     * buffers between the producer and the consumer, instead of a single locked buffer
+     */
+    public String PIPE_SPLICING_ENABLED = "pipe_splicing_enabled";
+
+    /**
+     * Defines the number of buffers in the ring of a spliced pipe
+     */
+    public String PIPE_SPLICE_RING_SIZE = "pipe_splice_ring_size";
+
     /**
      * Defines whether ESB needs to preserve the original User-Agent header.
      */
@@ -80,6 +116,23 @@ public interface PassThroughConfigPNames {
      */
     public String MAX_CONNECTION_PER_TARGET = "http.max.connection.per.target";
 
+    /**
+     * Defines a comma separated list of targets (http://host:port or https://host:port) to
+     * which connections should be opened in advance, when the transport sender starts
+     */
+    public String CONNECTION_PREWARM_TARGETS = "http.connection.prewarm.targets";
+
+    /**
+     * Defines the number of connections opened in advance to each prewarm target
+     */
+    public String CONNECTION_PREWARM_SIZE = "http.connection.prewarm.size";
+
+    /**
+     * Defines the interval (in milliseconds) at which stale pooled connections are closed
+     * and the connections to prewarm targets are replenished
+     */
+    public String CONNECTION_MAINTENANCE_INTERVAL = "http.connection.maintenance.interval";
+
     /**
      * Determines the value of the User-Agent header sent by the transport, when sending
      * requests to a backend endpoint.
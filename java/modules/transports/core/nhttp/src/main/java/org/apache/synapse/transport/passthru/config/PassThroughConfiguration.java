@@ -35,6 +35,10 @@ public class PassThroughConfiguration extends HttpTransportConfiguration {
     private static final int DEFAULT_WORKER_THREAD_KEEPALIVE_SEC = 60;
     private static final int DEFAULT_WORKER_POOL_QUEUE_LENGTH    = -1;
     private static final int DEFAULT_IO_THREADS_PER_REACTOR      = Runtime.getRuntime().availableProcessors();
+    private static final int DEFAULT_IO_BUFFER_SIZE              = 1024 * 8;
+    private static final int DEFAULT_IO_BUFFER_POOL_SIZE         = 512;
+    private static final int DEFAULT_IO_BUFFER_POOL_STRIPES      = Runtime.getRuntime().availableProcessors();
+    private static final int DEFAULT_PIPE_SPLICE_RING_SIZE       = 4;
 
     private static PassThroughConfiguration _instance = new PassThroughConfiguration();
 
@@ -71,6 +75,73 @@ public class PassThroughConfiguration extends HttpTransportConfiguration {
                 DEFAULT_IO_THREADS_PER_REACTOR);
     }
 
+    public int getIOBufferSize() {
+        return getIntProperty(PassThroughConfigPNames.IO_BUFFER_SIZE, DEFAULT_IO_BUFFER_SIZE);
+    }
+
+    public int[] getIOBufferSizeClasses() {
+        String value = getStringProperty(PassThroughConfigPNames.IO_BUFFER_SIZE_CLASSES, "");
+        String[] tokens = value.split(",");
+        int[] sizes = new int[tokens.length];
+        int count = 0;
+        for (String token : tokens) {
+            token = token.trim();
+            if ("".equals(token)) {
+                continue;
+            }
+            try {
+                sizes[count++] = Integer.parseInt(token);
+            } catch (NumberFormatException e) {
+                log.warn("Invalid IO buffer size : " + token + " in " +
+                        PassThroughConfigPNames.IO_BUFFER_SIZE_CLASSES);
+            }
+        }
+        int[] result = new int[count];
+        System.arraycopy(sizes, 0, result, 0, count);
+        return result;
+    }
+
+    public boolean isDirectIOBuffers() {
+        return getBooleanProperty(PassThroughConfigPNames.IO_BUFFER_DIRECT, false);
+    }
+
+    public int getIOBufferPoolSize() {
+        return getIntProperty(PassThroughConfigPNames.IO_BUFFER_POOL_SIZE,
+                DEFAULT_IO_BUFFER_POOL_SIZE);
+    }
+
+    public int getIOBufferPoolStripes() {
+        return getIntProperty(PassThroughConfigPNames.IO_BUFFER_POOL_STRIPES,
+                DEFAULT_IO_BUFFER_POOL_STRIPES);
+    }
+
+    /**
+     * Get the maximum number of bytes held by idle buffers in the IO buffer pool. Unless
+     * configured explicitly, this is enough to fill every slot of the largest size class.
+     *
+     * @return maximum pooled bytes
+     */
+    public long getIOBufferPoolMaxBytes() {
+        Integer maxKb = getIntProperty(PassThroughConfigPNames.IO_BUFFER_POOL_MAX_KB);
+        if (maxKb != null) {
+            return maxKb * 1024L;
+        }
+        long largest = getIOBufferSize();
+        for (int size : getIOBufferSizeClasses()) {
+            largest = Math.max(largest, size);
+        }
+        return largest * getIOBufferPoolSize();
+    }
+
+    public boolean isPipeSplicingEnabled() {
+        return getBooleanProperty(PassThroughConfigPNames.PIPE_SPLICING_ENABLED, false);
+    }
+
+    public int getPipeSpliceRingSize() {
+        return getIntProperty(PassThroughConfigPNames.PIPE_SPLICE_RING_SIZE,
+                DEFAULT_PIPE_SPLICE_RING_SIZE);
+    }
+
     public String getPreserveHttpHeaders() {
         return getStringProperty(PassThroughConfigPNames.HTTP_HEADERS_PRESERVE, "");
     }
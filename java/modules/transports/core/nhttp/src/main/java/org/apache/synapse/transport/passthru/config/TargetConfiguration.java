@@ -22,9 +22,13 @@ package org.apache.synapse.transport.passthru.config;
 import org.apache.axis2.context.ConfigurationContext;
 import org.apache.axis2.description.ParameterInclude;
 import org.apache.axis2.transport.base.threads.WorkerPool;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.http.protocol.*;
 import org.apache.synapse.transport.passthru.connections.TargetConnections;
 
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -34,8 +38,20 @@ import java.util.List;
  */
 public class TargetConfiguration extends BaseConfiguration {
 
+    private static final Log log = LogFactory.getLog(TargetConfiguration.class);
+
     private int maxConnections = Integer.MAX_VALUE;
 
+    /**
+     * Targets (host:port pairs) to which this sender opens connections in advance. Only the
+     * targets with the scheme of the sender are included
+     */
+    private List<String> prewarmTargets;
+
+    private int prewarmSize = 1;
+
+    private int connectionMaintenanceInterval = 0;
+
     /** Whether User-Agent header coming from client should be preserved */
     private boolean preserveUserAgentHeader = false;
 
@@ -47,9 +63,18 @@ public class TargetConfiguration extends BaseConfiguration {
 
     private TargetConnections connections = null;
 
+    /**
+     * Create the configuration of a sender
+     *
+     * @param configurationContext the Axis2 configuration context
+     * @param parameters the transport sender parameters
+     * @param pool the worker pool
+     * @param scheme the scheme of the sender, http or https
+     */
     public TargetConfiguration(ConfigurationContext configurationContext,
                                ParameterInclude parameters,
-                               WorkerPool pool) {
+                               WorkerPool pool,
+                               String scheme) {
         super(configurationContext, parameters, pool);
         maxConnections = conf.getIntProperty(
                 PassThroughConfigPNames.MAX_CONNECTION_PER_TARGET,
@@ -59,6 +84,11 @@ public class TargetConfiguration extends BaseConfiguration {
         preserveServerHeader = conf.getBooleanProperty(
                 PassThroughConfigPNames.SERVER_HEADER_PRESERVE, true);
         populatePreserveHttpHeaders(conf.getPreserveHttpHeaders());
+        populatePrewarmTargets(conf.getStringProperty(
+                PassThroughConfigPNames.CONNECTION_PREWARM_TARGETS, null), scheme);
+        prewarmSize = conf.getIntProperty(PassThroughConfigPNames.CONNECTION_PREWARM_SIZE, 1);
+        connectionMaintenanceInterval = conf.getIntProperty(
+                PassThroughConfigPNames.CONNECTION_MAINTENANCE_INTERVAL, 0);
     }
 
     @Override
@@ -78,6 +108,18 @@ public class TargetConfiguration extends BaseConfiguration {
         return maxConnections;
     }
 
+    public List<String> getPrewarmTargets() {
+        return prewarmTargets;
+    }
+
+    public int getPrewarmSize() {
+        return prewarmSize;
+    }
+
+    public int getConnectionMaintenanceInterval() {
+        return connectionMaintenanceInterval;
+    }
+
     /**
      * Check preserving status of the given http header name
      *
@@ -100,6 +142,46 @@ public class TargetConfiguration extends BaseConfiguration {
         this.connections = connections;
     }
 
+    /**
+     * Populate the prewarm targets of the sender from a comma separated list of targets in
+     * the form scheme://host:port. The HTTP and HTTPS senders share the configuration, so
+     * each of them only takes the targets with its own scheme. Targets without a scheme are
+     * taken to be HTTP targets.
+     *
+     * @param targets Comma separated prewarm targets
+     * @param scheme the scheme of the sender
+     */
+    private void populatePrewarmTargets(String targets, String scheme) {
+        prewarmTargets = new ArrayList<String>();
+        if (targets == null || targets.trim().isEmpty()) {
+            return;
+        }
+        for (String target : targets.split(",")) {
+            target = target.trim();
+            URI uri = null;
+            try {
+                uri = new URI(target.contains("://") ? target : "http://" + target);
+            } catch (URISyntaxException ignored) {
+            }
+            if (uri == null || uri.getHost() == null ||
+                    !("http".equalsIgnoreCase(uri.getScheme()) ||
+                            "https".equalsIgnoreCase(uri.getScheme()))) {
+                log.warn("Ignoring invalid connection prewarm target: " + target +
+                        ". Targets must be specified as http://host:port or https://host:port");
+                continue;
+            }
+            if (!uri.getScheme().equalsIgnoreCase(scheme)) {
+                // opened by the sender of the other scheme
+                continue;
+            }
+            int port = uri.getPort();
+            if (port == -1) {
+                port = "https".equalsIgnoreCase(scheme) ? 443 : 80;
+            }
+            prewarmTargets.add(uri.getHost() + ":" + port);
+        }
+    }
+
     /**
      * Populate preserve http headers from comma separate string
      *
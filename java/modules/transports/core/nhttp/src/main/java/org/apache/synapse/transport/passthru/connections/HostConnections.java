@@ -44,6 +44,8 @@ public class HostConnections {
     private int maxSize;
     // number of awaiting connections
     private int pendingConnections;
+    // number of connections being opened in advance, before they are requested
+    private int warmingConnections;
     // list of free connections available
     private List<NHttpClientConnection> freeConnections = new ArrayList<NHttpClientConnection>();
     // list of connections in use
@@ -112,20 +114,96 @@ public class HostConnections {
         }
     }
 
-    public void addConnection(NHttpClientConnection conn) {
-        if (log.isDebugEnabled()) {
-            log.debug("New connection to " + host + ":" + port + " is added to the free list");
-        }
+    /**
+     * Add a newly established connection to the pool
+     *
+     * @param conn the new connection
+     * @return true if the connection was handed over to a requester, or false if it was
+     *         opened in advance and added to the free list
+     */
+    public boolean addConnection(NHttpClientConnection conn) {
         lock.lock();
         try {
+            if (warmingConnections > 0) {
+                warmingConnections--;
+                freeConnections.add(conn);
+                if (log.isDebugEnabled()) {
+                    log.debug("Prewarmed connection to " + host + ":" + port +
+                            " is added to the free list");
+                }
+                return false;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("New connection to " + host + ":" + port + " is added to the busy list");
+            }
             // Adding to busyConnections to make sure the first requester get it.
             // Otherwise someone else might acquire it.
             busyConnections.add(conn);
+            return true;
         } finally {
             lock.unlock();
         }
     }
 
+    /**
+     * Reserve the connections that need to be opened in advance, so that this host:port
+     * has the given number of free connections
+     *
+     * @param size required number of free connections
+     * @return number of new connections to be opened
+     */
+    public int reserveWarmingConnections(int size) {
+        lock.lock();
+        try {
+            int required = size - freeConnections.size() - warmingConnections;
+            int available = maxSize - busyConnections.size() - freeConnections.size() -
+                    warmingConnections - Math.max(pendingConnections, 0);
+            required = Math.min(required, available);
+            if (required <= 0) {
+                return 0;
+            }
+            warmingConnections += required;
+            return required;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Indicates that a connection requested in advance could not be established
+     */
+    public void warmingConnectionFailed() {
+        lock.lock();
+        try {
+            if (warmingConnections > 0) {
+                warmingConnections--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove the free connections which have been closed or have gone stale
+     *
+     * @return the removed connections
+     */
+    public List<NHttpClientConnection> removeStaleConnections() {
+        List<NHttpClientConnection> staleConnections = new ArrayList<NHttpClientConnection>();
+        lock.lock();
+        try {
+            for (NHttpClientConnection conn : freeConnections) {
+                if (!conn.isOpen() || conn.isStale()) {
+                    staleConnections.add(conn);
+                }
+            }
+            freeConnections.removeAll(staleConnections);
+        } finally {
+            lock.unlock();
+        }
+        return staleConnections;
+    }
+
     /**
      * Indicates that a connection has been successfully established with a remote server
      * as notified by the session request call back.
@@ -160,6 +238,24 @@ public class HostConnections {
         return port;
     }
 
+    public int getFreeConnectionCount() {
+        lock.lock();
+        try {
+            return freeConnections.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getBusyConnectionCount() {
+        lock.lock();
+        try {
+            return busyConnections.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
     public boolean canHaveMoreConnections() {
         return busyConnections.size() + pendingConnections < maxSize;
     }
@@ -23,19 +23,30 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.nio.NHttpClientConnection;
 import org.apache.http.nio.reactor.ConnectingIOReactor;
+import org.apache.http.nio.reactor.SessionRequest;
+import org.apache.http.nio.reactor.SessionRequestCallback;
 import org.apache.synapse.transport.passthru.ConnectCallback;
 import org.apache.synapse.transport.passthru.PassThroughConstants;
 import org.apache.synapse.transport.passthru.TargetContext;
 import org.apache.synapse.transport.passthru.config.TargetConfiguration;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Manages the connection from transport to the back end servers. It keeps track of the
- * connections for host:port pair. 
+ * connections for host:port pair. Connections to the configured prewarm targets are opened
+ * in advance, so that the first requests to those targets do not have to wait for the TCP
+ * (and SSL) handshakes. If a maintenance interval is configured, stale free connections are
+ * periodically closed and the free connections to the prewarm targets are replenished.
  */
 public class TargetConnections {
 
@@ -55,6 +66,17 @@ public class TargetConnections {
     /** callback invoked when a connection is made */
     private ConnectCallback callback = null;
 
+    /** callback invoked when a connection opened in advance is made */
+    private final SessionRequestCallback prewarmCallback = new PrewarmCallback();
+
+    /** targets (host:port pairs) to which connections are opened in advance */
+    private List<String> prewarmTargets;
+
+    /** number of free connections to keep for each prewarm target */
+    private int prewarmSize;
+
+    private ScheduledExecutorService maintenanceScheduler = null;
+
     /**
      * Create a TargetConnections with the given IO-Reactor
      *
@@ -69,6 +91,88 @@ public class TargetConnections {
         this.maxConnections = targetConfiguration.getMaxConnections();
         this.ioReactor = ioReactor;
         this.callback = callback;
+        this.prewarmTargets = targetConfiguration.getPrewarmTargets();
+        this.prewarmSize = targetConfiguration.getPrewarmSize();
+
+        int interval = targetConfiguration.getConnectionMaintenanceInterval();
+        if (interval > 0) {
+            maintenanceScheduler = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "PassThroughTargetConnectionMaintenance");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            maintenanceScheduler.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    try {
+                        closeStaleConnections();
+                        prewarm();
+                    } catch (Throwable t) {
+                        log.error("Error while maintaining target connections", t);
+                    }
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Open connections in advance to all the configured prewarm targets
+     */
+    public void prewarm() {
+        if (prewarmTargets == null) {
+            return;
+        }
+        for (String target : prewarmTargets) {
+            int index = target.lastIndexOf(':');
+            prewarm(target.substring(0, index), Integer.parseInt(target.substring(index + 1)),
+                    prewarmSize);
+        }
+    }
+
+    /**
+     * Open connections in advance to the given host:port pair, so that it will have the
+     * specified number of free connections. The connections are opened asynchronously and
+     * added to the free connections of the host:port pair once they are established.
+     *
+     * @param host host
+     * @param port port
+     * @param size required number of free connections
+     */
+    public void prewarm(String host, int port, int size) {
+        HostConnections pool = getConnectionPool(host, port);
+        int required = pool.reserveWarmingConnections(size);
+        if (required > 0 && log.isDebugEnabled()) {
+            log.debug("Opening " + required + " connection(s) in advance to " + host + ":" + port);
+        }
+        for (int i = 0; i < required; i++) {
+            ioReactor.connect(new InetSocketAddress(host, port), null, pool, prewarmCallback);
+        }
+    }
+
+    /**
+     * Close the free connections which have been closed by the remote end or have gone stale
+     */
+    public void closeStaleConnections() {
+        for (HostConnections pool : poolMap.values()) {
+            for (NHttpClientConnection conn : pool.removeStaleConnections()) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Closing stale connection to " + pool.getHost() + ":" +
+                            pool.getPort());
+                }
+                closeConnection(conn);
+            }
+        }
+    }
+
+    /**
+     * Stop maintaining the connections
+     */
+    public void shutdown() {
+        if (maintenanceScheduler != null) {
+            maintenanceScheduler.shutdownNow();
+        }
     }
 
     /**
@@ -206,16 +310,51 @@ public class TargetConnections {
      * This method is called when a new connection is made.
      *
      * @param conn connection to the target server     
+     * @return true if the connection should be used by the caller, or false if the
+     *         connection was opened in advance and has been made available in the pool
      */
-    public void addConnection(NHttpClientConnection conn) {
+    public boolean addConnection(NHttpClientConnection conn) {
         HostConnections pool = (HostConnections) conn.getContext().getAttribute(
                 PassThroughConstants.CONNECTION_POOL);
         if (pool != null) {
-            pool.addConnection(conn);
+            return pool.addConnection(conn);
         } else {
             // we shouldn't get here
             log.fatal("Connection without a pool. Something wrong. Need to fix.");            
         }
+        return true;
+    }
+
+    public int getFreeConnectionCount() {
+        int count = 0;
+        for (HostConnections pool : poolMap.values()) {
+            count += pool.getFreeConnectionCount();
+        }
+        return count;
+    }
+
+    public int getBusyConnectionCount() {
+        int count = 0;
+        for (HostConnections pool : poolMap.values()) {
+            count += pool.getBusyConnectionCount();
+        }
+        return count;
+    }
+
+    public Map<String,Integer> getFreeConnectionsPerTarget() {
+        Map<String,Integer> map = new TreeMap<String,Integer>();
+        for (Map.Entry<String,HostConnections> entry : poolMap.entrySet()) {
+            map.put(entry.getKey(), entry.getValue().getFreeConnectionCount());
+        }
+        return map;
+    }
+
+    public Map<String,Integer> getBusyConnectionsPerTarget() {
+        Map<String,Integer> map = new TreeMap<String,Integer>();
+        for (Map.Entry<String,HostConnections> entry : poolMap.entrySet()) {
+            map.put(entry.getKey(), entry.getValue().getBusyConnectionCount());
+        }
+        return map;
     }
 
     private HostConnections getConnectionPool(String host, int port) {
@@ -232,4 +371,34 @@ public class TargetConnections {
         return poolMap.get(key);
     }
 
+    /**
+     * Session request callback for the connections opened in advance. Unlike the
+     * ConnectCallback, failures are not reported to the DeliveryAgent since there are
+     * no messages waiting for these connections.
+     */
+    private static class PrewarmCallback implements SessionRequestCallback {
+
+        public void completed(SessionRequest request) {
+            if (log.isDebugEnabled()) {
+                log.debug("Prewarmed connection to : " + request.getRemoteAddress());
+            }
+        }
+
+        public void failed(SessionRequest request) {
+            ((HostConnections) request.getAttachment()).warmingConnectionFailed();
+            log.warn("Unable to open a connection in advance to : " +
+                    request.getRemoteAddress());
+        }
+
+        public void timeout(SessionRequest request) {
+            ((HostConnections) request.getAttachment()).warmingConnectionFailed();
+            log.warn("Timeout opening a connection in advance to : " +
+                    request.getRemoteAddress());
+            request.cancel();
+        }
+
+        public void cancelled(SessionRequest request) {
+            ((HostConnections) request.getAttachment()).warmingConnectionFailed();
+        }
+    }
 }
@@ -0,0 +1,73 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.apache.synapse.transport.passthru.jmx;
+
+import org.apache.synapse.transport.passthru.util.BufferFactory;
+
+import java.util.Arrays;
+
+/**
+ * BufferPoolView MBean exposes the usage statistics of the IO buffer pool used by a
+ * pass-through listener or sender.
+ */
+public class BufferPoolView implements BufferPoolViewMBean {
+
+    private BufferFactory bufferFactory;
+
+    public BufferPoolView(BufferFactory bufferFactory) {
+        this.bufferFactory = bufferFactory;
+    }
+
+    public long getHits() {
+        return bufferFactory.getHits();
+    }
+
+    public long getMisses() {
+        return bufferFactory.getMisses();
+    }
+
+    public long getDiscarded() {
+        return bufferFactory.getDiscarded();
+    }
+
+    public long getOutstandingBuffers() {
+        return bufferFactory.getOutstanding();
+    }
+
+    public long getPooledBytes() {
+        return bufferFactory.getPooledBytes();
+    }
+
+    public long getMaxPooledBytes() {
+        return bufferFactory.getMaxPooledBytes();
+    }
+
+    public int getStripeCount() {
+        return bufferFactory.getStripeCount();
+    }
+
+    public String getSizeClasses() {
+        return Arrays.toString(bufferFactory.getSizeClasses());
+    }
+
+    public void reset() {
+        bufferFactory.resetStatistics();
+    }
+}
@@ -21,6 +21,7 @@ package org.apache.synapse.transport.passthru.jmx;
 
 import org.apache.axis2.AxisFault;
 import org.apache.synapse.commons.jmx.MBeanRegistrar;
+import org.apache.synapse.transport.passthru.connections.TargetConnections;
 
 import java.util.*;
 import java.util.concurrent.Executors;
@@ -36,7 +37,8 @@ import java.util.concurrent.atomic.AtomicInteger;
  * the last 24 hours of execution and they get updated every 5 minutes.  In addition to the
  * connection statistics this MBean also provides information on the request and response
  * sizes received over the HTTP connections. All messages are divided into six categories
- * based on their sizes and the resulting counts are made available as a table.
+ * based on their sizes and the resulting counts are made available as a table. For the
+ * transport sender, the occupancy of the target connection pool is also made available.
  */
 public class ConnectionsView implements ConnectionsViewMBean {
 
@@ -72,6 +74,8 @@ public class ConnectionsView implements ConnectionsViewMBean {
 
     private String name;
 
+    private volatile TargetConnections targetConnections;
+
     public ConnectionsView(String name) throws AxisFault {
         this.name = name;
 
@@ -207,6 +211,36 @@ public class ConnectionsView implements ConnectionsViewMBean {
         return resetTime;
     }
 
+    public void setTargetConnections(TargetConnections targetConnections) {
+        this.targetConnections = targetConnections;
+    }
+
+    public int getFreeConnections() {
+        TargetConnections connections = targetConnections;
+        return connections != null ? connections.getFreeConnectionCount() : 0;
+    }
+
+    public int getBusyConnections() {
+        TargetConnections connections = targetConnections;
+        return connections != null ? connections.getBusyConnectionCount() : 0;
+    }
+
+    public Map getFreeConnectionsPerTarget() {
+        TargetConnections connections = targetConnections;
+        if (connections != null) {
+            return connections.getFreeConnectionsPerTarget();
+        }
+        return Collections.emptyMap();
+    }
+
+    public Map getBusyConnectionsPerTarget() {
+        TargetConnections connections = targetConnections;
+        if (connections != null) {
+            return connections.getBusyConnectionsPerTarget();
+        }
+        return Collections.emptyMap();
+    }
+
     private Map<String,Integer> getCountersMap(AtomicInteger[] counters) {
         // This ensures that keys are returned in the same order we insert them
         // Provides better readability in the JMX consoles
@@ -35,6 +35,12 @@ public interface ConnectionsViewMBean {
     public Map getResponseSizesMap();
     public Date getLastResetTime();
 
+    // Pool occupancy (only available for the transport sender)
+    public int getFreeConnections();
+    public int getBusyConnections();
+    public Map getFreeConnectionsPerTarget();
+    public Map getBusyConnectionsPerTarget();
+
     public void reset();
 
 }
\ No newline at end of file
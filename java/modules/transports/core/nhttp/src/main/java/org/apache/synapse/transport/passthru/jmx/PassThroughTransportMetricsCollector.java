@@ -21,6 +21,7 @@ package org.apache.synapse.transport.passthru.jmx;
 
 import org.apache.axis2.AxisFault;
 import org.apache.axis2.transport.base.MetricsCollector;
+import org.apache.synapse.transport.passthru.connections.TargetConnections;
 
 /**
  * <p>This simple extension of the Axis2 transport MetricsCollector implementation,
@@ -57,6 +58,10 @@ public class PassThroughTransportMetricsCollector extends MetricsCollector {
         view.disconnected();
     }
 
+    public void setTargetConnections(TargetConnections targetConnections) {
+        view.setTargetConnections(targetConnections);
+    }
+
     @Override
     public void notifyReceivedMessageSize(long l) {
         super.notifyReceivedMessageSize(l);
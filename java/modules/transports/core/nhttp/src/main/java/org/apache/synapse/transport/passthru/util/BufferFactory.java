@@ -21,63 +21,253 @@ package org.apache.synapse.transport.passthru.util;
 import org.apache.http.nio.util.ByteBufferAllocator;
 import org.apache.http.nio.util.HeapByteBufferAllocator;
 
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/**
+ * A pool of {@link ControlledByteBuffer} instances shared by the source and target sides of the
+ * pass-through transport. The pool is split into a number of stripes and each thread is bound
+ * to one stripe, so that the I/O reactor threads do not contend with each other when acquiring
+ * and releasing buffers. Every stripe keeps a fixed number of slots for each configured buffer
+ * size class and the slots are claimed and filled using CAS operations only - no locks are
+ * taken on either path. When the stripe of the calling thread is empty (or full on release)
+ * the other stripes are probed before falling back to allocating (or dropping) a buffer.
+ * <p/>
+ * The total number of bytes held by the pool is capped, and hit, miss and outstanding buffer
+ * counts are maintained so that they can be exposed over JMX.
+ */
 public class BufferFactory {
 
-    private volatile ControlledByteBuffer [] buffers;
+    /** Buffer sizes handed out by this factory, sorted in the ascending order */
+    private final int[] sizeClasses;
+
+    /** Index of the size class returned by {@link #getBuffer()} */
+    private final int defaultSizeClass;
+
+    /** Per stripe, per size class buffer slots */
+    private final AtomicReferenceArray<ControlledByteBuffer>[][] stripes;
+
+    private final ByteBufferAllocator allocator;
 
-    private volatile int marker = -1;
+    /** Upper bound on the number of bytes held by idle buffers in the pool */
+    private final long maxPooledBytes;
 
-    private ByteBufferAllocator allocator = null;
+    private final AtomicLong pooledBytes = new AtomicLong(0);
 
-    private Lock lock = new ReentrantLock();
+    private final AtomicLong hits = new AtomicLong(0);
 
-    private int bufferSize = 1024 * 8;
+    private final AtomicLong misses = new AtomicLong(0);
+
+    private final AtomicLong discarded = new AtomicLong(0);
+
+    private final AtomicLong outstanding = new AtomicLong(0);
+
+    private final AtomicInteger stripeSequence = new AtomicInteger(0);
+
+    private final ThreadLocal<Integer> stripeIndex = new ThreadLocal<Integer>() {
+        @Override
+        protected Integer initialValue() {
+            return (stripeSequence.getAndIncrement() & Integer.MAX_VALUE) % stripes.length;
+        }
+    };
 
     public BufferFactory(int bufferSize, ByteBufferAllocator allocator, int size) {
-        this.bufferSize = bufferSize;
+        this(new int[] { bufferSize }, bufferSize, allocator, size,
+                Runtime.getRuntime().availableProcessors(), (long) bufferSize * size);
+    }
+
+    /**
+     * Create a new striped buffer pool.
+     *
+     * @param sizeClasses       buffer sizes that should be pooled
+     * @param defaultBufferSize the buffer size handed out by {@link #getBuffer()}, added to
+     *                          the size classes if not already present
+     * @param allocator         allocator used to create new buffers (heap or direct), the heap
+     *                          allocator is used when this is null
+     * @param size              number of buffers pooled per size class across all stripes
+     * @param stripeCount       number of stripes the pool is divided into
+     * @param maxPooledBytes    maximum number of bytes held by idle buffers in the pool
+     */
+    @SuppressWarnings("unchecked")
+    public BufferFactory(int[] sizeClasses, int defaultBufferSize, ByteBufferAllocator allocator,
+                         int size, int stripeCount, long maxPooledBytes) {
+
+        if (defaultBufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be a positive integer");
+        }
+
+        int[] classes = new int[sizeClasses.length + 1];
+        int count = 0;
+        for (int sizeClass : sizeClasses) {
+            if (sizeClass > 0) {
+                classes[count++] = sizeClass;
+            }
+        }
+        classes[count++] = defaultBufferSize;
+        classes = Arrays.copyOf(classes, count);
+        Arrays.sort(classes);
+
+        int unique = 0;
+        for (int i = 0; i < classes.length; i++) {
+            if (i == 0 || classes[i] != classes[i - 1]) {
+                classes[unique++] = classes[i];
+            }
+        }
+        this.sizeClasses = Arrays.copyOf(classes, unique);
+        this.defaultSizeClass = Arrays.binarySearch(this.sizeClasses, defaultBufferSize);
+
         if (allocator != null) {
             this.allocator = allocator;
         } else {
             this.allocator = HeapByteBufferAllocator.INSTANCE;
         }
 
-        buffers = new ControlledByteBuffer[size];
+        if (stripeCount <= 0) {
+            stripeCount = 1;
+        }
+        int slotsPerStripe = size <= 0 ? 0 : Math.max(1, (size + stripeCount - 1) / stripeCount);
+        this.stripes = new AtomicReferenceArray[stripeCount][this.sizeClasses.length];
+        for (int i = 0; i < stripeCount; i++) {
+            for (int j = 0; j < this.sizeClasses.length; j++) {
+                this.stripes[i][j] = new AtomicReferenceArray<ControlledByteBuffer>(slotsPerStripe);
+            }
+        }
+        this.maxPooledBytes = maxPooledBytes;
     }
 
+    /**
+     * Get a buffer of the default size.
+     *
+     * @return a cleared buffer in the input mode
+     */
     public ControlledByteBuffer getBuffer() {
-        if (marker == -1) {
-            return new ControlledByteBuffer(allocator.allocate(bufferSize));
-        } else {
-            try {
-                lock.lock();
-                if (marker >= 0) {
-                    ControlledByteBuffer controlledByteBuffer = buffers[marker];
-                    controlledByteBuffer.clear();
-                    controlledByteBuffer.forceSetInputMode();
-                    buffers[marker] = null;
-                    marker--;
-                    return controlledByteBuffer;
-                }
-            } finally {
-                lock.unlock();
+        return acquire(defaultSizeClass);
+    }
+
+    /**
+     * Get a buffer which can hold at least the specified number of bytes. The buffer is taken
+     * from the smallest size class that satisfies the request. Requests larger than the largest
+     * size class are served with a newly allocated buffer, which will not be pooled on release.
+     *
+     * @param minimumCapacity minimum capacity of the buffer in bytes
+     * @return a cleared buffer in the input mode
+     */
+    public ControlledByteBuffer getBuffer(int minimumCapacity) {
+        for (int i = 0; i < sizeClasses.length; i++) {
+            if (sizeClasses[i] >= minimumCapacity) {
+                return acquire(i);
             }
         }
-        return new ControlledByteBuffer(allocator.allocate(bufferSize));
+        misses.incrementAndGet();
+        outstanding.incrementAndGet();
+        return new ControlledByteBuffer(allocator.allocate(minimumCapacity));
     }
 
+    /**
+     * Return a buffer to the pool. The buffer is dropped if its capacity does not match one of
+     * the size classes, or if the pool is already full.
+     *
+     * @param buffer buffer to be released
+     */
     public void release(ControlledByteBuffer buffer) {
-        try {
-            lock.lock();
-            if (marker < buffers.length - 1) {
-                buffer.clear();
-                buffer.forceSetInputMode();
-                buffers[++marker] = buffer;
+        outstanding.decrementAndGet();
+
+        int capacity = buffer.getByteBuffer().capacity();
+        int sizeClass = Arrays.binarySearch(sizeClasses, capacity);
+        if (sizeClass < 0) {
+            discarded.incrementAndGet();
+            return;
+        }
+
+        if (pooledBytes.addAndGet(capacity) > maxPooledBytes) {
+            pooledBytes.addAndGet(-capacity);
+            discarded.incrementAndGet();
+            return;
+        }
+
+        buffer.clear();
+        buffer.forceSetInputMode();
+
+        int home = stripeIndex.get();
+        for (int i = 0; i < stripes.length; i++) {
+            AtomicReferenceArray<ControlledByteBuffer> slots =
+                    stripes[(home + i) % stripes.length][sizeClass];
+            for (int j = 0; j < slots.length(); j++) {
+                if (slots.get(j) == null && slots.compareAndSet(j, null, buffer)) {
+                    return;
+                }
             }
-        } finally {
-            lock.unlock();
         }
+
+        pooledBytes.addAndGet(-capacity);
+        discarded.incrementAndGet();
+    }
+
+    private ControlledByteBuffer acquire(int sizeClass) {
+        outstanding.incrementAndGet();
+
+        int home = stripeIndex.get();
+        for (int i = 0; i < stripes.length; i++) {
+            AtomicReferenceArray<ControlledByteBuffer> slots =
+                    stripes[(home + i) % stripes.length][sizeClass];
+            for (int j = 0; j < slots.length(); j++) {
+                ControlledByteBuffer buffer = slots.get(j);
+                if (buffer != null && slots.compareAndSet(j, buffer, null)) {
+                    pooledBytes.addAndGet(-buffer.getByteBuffer().capacity());
+                    hits.incrementAndGet();
+                    return buffer;
+                }
+            }
+        }
+
+        misses.incrementAndGet();
+        return new ControlledByteBuffer(allocator.allocate(sizeClasses[sizeClass]));
+    }
+
+    public int[] getSizeClasses() {
+        return Arrays.copyOf(sizeClasses, sizeClasses.length);
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    public long getMaxPooledBytes() {
+        return maxPooledBytes;
+    }
+
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getDiscarded() {
+        return discarded.get();
+    }
+
+    /**
+     * Number of buffers handed out and not returned yet. Buffers which are not released back
+     * to the factory (e.g. buffers of connections closed due to errors) are included in this
+     * count, so the value should be interpreted as an upper bound.
+     *
+     * @return number of outstanding buffers
+     */
+    public long getOutstanding() {
+        return outstanding.get();
+    }
+
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+        discarded.set(0);
     }
 }
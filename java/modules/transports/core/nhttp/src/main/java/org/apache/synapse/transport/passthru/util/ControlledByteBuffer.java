@@ -44,7 +44,7 @@ public class ControlledByteBuffer {
     }
 
     public void forceSetInputMode() {
-        this.inputMode = new AtomicBoolean(true);
+        this.inputMode.set(true);
     }
 
     public void flip() {
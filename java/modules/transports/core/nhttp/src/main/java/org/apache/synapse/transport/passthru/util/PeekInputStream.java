@@ -0,0 +1,114 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.transport.passthru.util;
+
+import org.apache.synapse.transport.passthru.Pipe;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * A stream over the raw content of a message flowing through a {@link Pipe}, which allows
+ * examining the beginning of the message without consuming it. Everything read through this
+ * stream is pushed back to the pipe when the stream is closed, hence the message can still be
+ * built or relayed as if it was never read. At most a given number of bytes can be read, after
+ * which the stream fails with an IOException.
+ *
+ * @see RelayUtils#peekMessage(org.apache.axis2.context.MessageContext)
+ */
+public class PeekInputStream extends InputStream {
+
+    private final Pipe pipe;
+    private final InputStream in;
+    private final int limit;
+    private final String charSetEncoding;
+
+    private byte[] content = new byte[4096];
+    private int count = 0;
+    private boolean closed = false;
+
+    public PeekInputStream(Pipe pipe, int limit, String charSetEncoding) {
+        this.pipe = pipe;
+        this.in = pipe.getInputStream();
+        this.limit = limit;
+        this.charSetEncoding = charSetEncoding;
+    }
+
+    /**
+     * @return the character set encoding of the content, as given by the content type
+     */
+    public String getCharSetEncoding() {
+        return charSetEncoding;
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkLimit();
+        int b = in.read();
+        if (b != -1) {
+            ensureCapacity(1);
+            content[count++] = (byte) b;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        checkLimit();
+        int read = in.read(b, off, Math.min(len, limit - count));
+        if (read > 0) {
+            ensureCapacity(read);
+            System.arraycopy(b, off, content, count, read);
+            count += read;
+        }
+        return read;
+    }
+
+    /**
+     * Push back everything read through this stream to the pipe.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            pipe.unread(content, 0, count);
+            content = null;
+        }
+    }
+
+    private void checkLimit() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (count >= limit) {
+            throw new IOException("Reached the limit of " + limit + " bytes to be examined");
+        }
+    }
+
+    private void ensureCapacity(int length) {
+        if (count + length > content.length) {
+            content = Arrays.copyOf(content, Math.max(content.length * 2, count + length));
+        }
+    }
+}
@@ -27,6 +27,9 @@ import org.apache.axis2.AxisFault;
 import org.apache.axis2.Constants;
 import org.apache.axis2.addressing.AddressingConstants;
 import org.apache.axis2.addressing.AddressingHelper;
+import org.apache.axis2.builder.Builder;
+import org.apache.axis2.builder.BuilderUtil;
+import org.apache.axis2.builder.SOAPBuilder;
 import org.apache.axis2.context.MessageContext;
 import org.apache.axis2.description.WSDL2Constants;
 import org.apache.axis2.engine.AxisConfiguration;
@@ -38,6 +41,7 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.NullOutputStream;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.http.protocol.HTTP;
 import org.apache.synapse.transport.passthru.PassThroughConstants;
 import org.apache.synapse.transport.passthru.Pipe;
 import org.apache.synapse.transport.passthru.config.PassThroughConfiguration;
@@ -51,6 +55,7 @@ import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
 
 public class RelayUtils {
 
@@ -63,6 +68,9 @@ public class RelayUtils {
     
     private static Boolean forcePTBuild = null;
 
+    /** Maximum number of bytes of an unbuilt message which can be examined */
+    private static final int PEEK_LIMIT = 128 * 1024;
+
     static {
     	if (forcePTBuild == null){
            forcePTBuild = PassThroughConfiguration.getInstance().getBooleanProperty(
@@ -175,6 +183,47 @@ public class RelayUtils {
 	    }
     }
 
+    /**
+     * Returns a stream over the raw content of a SOAP message which is being passed through
+     * without being built, which can be used to examine the beginning of the message without
+     * building it. The stream must be closed once done, which makes the content available again
+     * to be built or relayed. Messages which would not be built by the SOAP builder (including
+     * compressed messages) are not made available, as their raw content differs from the
+     * envelope they would be built into.
+     *
+     * @param messageContext the message context
+     * @return a stream over the raw content, or null if it is not available
+     */
+    public static PeekInputStream peekMessage(MessageContext messageContext) {
+        Pipe pipe = (Pipe) messageContext.getProperty(PassThroughConstants.PASS_THROUGH_PIPE);
+        if (pipe == null || !forcePTBuild || pipe.isSpliced() ||
+                PassThroughTransportUtils.builderInvoked(messageContext) ||
+                messageContext.getProperty(PassThroughConstants.BUFFERED_INPUT_STREAM) != null) {
+            return null;
+        }
+
+        String contentType = (String) messageContext.getProperty(
+                Constants.Configuration.CONTENT_TYPE);
+        if (contentType == null || messageContext.getConfigurationContext() == null) {
+            return null;
+        }
+
+        Object headers = messageContext.getProperty(MessageContext.TRANSPORT_HEADERS);
+        if (headers instanceof Map && ((Map) headers).get(HTTP.CONTENT_ENCODING) != null) {
+            return null;
+        }
+
+        int index = contentType.indexOf(';');
+        String baseType = index > 0 ? contentType.substring(0, index).trim() : contentType.trim();
+        Builder builder = messageContext.getConfigurationContext().getAxisConfiguration().
+                getMessageBuilder(baseType);
+        if (!(builder instanceof SOAPBuilder)) {
+            return null;
+        }
+
+        return new PeekInputStream(pipe, PEEK_LIMIT, BuilderUtil.getCharSetEncoding(contentType));
+    }
+
     private static void processAddressing(MessageContext messageContext) throws AxisFault {
         if (noAddressingHandler) {
             return;
@@ -34,6 +34,9 @@ public class HttpConfigConstants {
     public static final String SENDER_SO_TIMEOUT = "http.socket.timeout.sender";
     public static final String SELECT_INTERVAL = "http.nio.select-interval";
 
+    public static final String WORKER_POOL_ELASTIC = "http.worker.pool.elastic";
+    public static final String WORKER_POOL_MAX_CONCURRENCY = "http.worker.pool.max-concurrency";
+
     public static final String HTTP_MALFORMED_INPUT_ACTION = "http.malformed.input.action";
     public static final String HTTP_UNMAPPABLE_INPUT_ACTION = "http.unmappable.input.action";
 }
@@ -34,6 +34,8 @@ import java.util.Properties;
  */
 public abstract class HttpTransportConfiguration {
 
+    private static final int DEFAULT_WORKER_POOL_MAX_CONCURRENCY = 1000;
+
     protected Log log = LogFactory.getLog(this.getClass());
 
     private Properties props;
@@ -142,6 +144,26 @@ public abstract class HttpTransportConfiguration {
                 .build();
     }
 
+    /**
+     * Check whether messages should be dispatched on an ElasticWorkerPool, which starts a
+     * thread per message up to a concurrency limit, instead of the bounded worker pool.
+     *
+     * @return true if the elastic worker pool is enabled
+     */
+    public boolean isElasticWorkerPool() {
+        return getBooleanProperty(HttpConfigConstants.WORKER_POOL_ELASTIC, false);
+    }
+
+    /**
+     * Get the maximum number of messages the elastic worker pool processes concurrently
+     *
+     * @return A positive integer
+     */
+    public int getWorkerPoolMaxConcurrency() {
+        return getIntProperty(HttpConfigConstants.WORKER_POOL_MAX_CONCURRENCY,
+                DEFAULT_WORKER_POOL_MAX_CONCURRENCY);
+    }
+
     /**
      * Get an int property that tunes the http transport. Prefer system properties
      *
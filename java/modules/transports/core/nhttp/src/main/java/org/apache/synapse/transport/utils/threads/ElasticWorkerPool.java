@@ -0,0 +1,207 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.transport.utils.threads;
+
+import org.apache.axis2.transport.base.threads.NativeThreadFactory;
+import org.apache.axis2.transport.base.threads.WorkerPool;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A WorkerPool which hands each task over to a thread of its own instead of queueing it
+ * behind a small, fixed set of threads. Threads are created on demand and idle threads are
+ * reused until the keep-alive time expires. The number of tasks running at any given time is
+ * bounded by a concurrency limit, and tasks submitted above that limit are queued until a
+ * running task completes. </p>
+ *
+ * <p>This pool is meant for mediation flows which block on backends, where a bounded pool
+ * gets exhausted by threads waiting on I/O. The concurrency limit should be sized according
+ * to the number of parked threads the JVM can afford, rather than the number of CPUs.</p>
+ */
+public class ElasticWorkerPool implements WorkerPool {
+
+    private static final Log log = LogFactory.getLog(ElasticWorkerPool.class);
+
+    /** Executor creating and caching the threads */
+    private final ThreadPoolExecutor executor;
+
+    /** Permits for running tasks, one per task */
+    private final Semaphore permits;
+
+    /** Tasks waiting for a permit */
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<Runnable>();
+
+    /** Number of tasks waiting for a permit */
+    private final AtomicInteger pendingCount = new AtomicInteger(0);
+
+    /** Number of tasks being executed */
+    private final AtomicInteger activeCount = new AtomicInteger(0);
+
+    private final int maxConcurrency;
+
+    /**
+     * Create a pool which runs at most the given number of tasks concurrently
+     *
+     * @param maxConcurrency maximum number of tasks executed at a time
+     * @param keepAliveSec time in seconds an idle thread is kept for reuse
+     * @param threadGroupName name of the thread group of the worker threads
+     * @param threadGroupId prefix of the worker thread names
+     */
+    public ElasticWorkerPool(int maxConcurrency, int keepAliveSec,
+                             String threadGroupName, String threadGroupId) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("Maximum concurrency should be a positive value");
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(maxConcurrency);
+        this.executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, keepAliveSec,
+                TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                new NativeThreadFactory(new ThreadGroup(threadGroupName), threadGroupId));
+
+        if (log.isDebugEnabled()) {
+            log.debug("Created an elastic worker pool " + threadGroupId +
+                    " with max concurrency = " + maxConcurrency +
+                    ", keep-alive = " + keepAliveSec);
+        }
+    }
+
+    public void execute(Runnable task) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("The worker pool has been shut down");
+        }
+        pending.offer(task);
+        pendingCount.incrementAndGet();
+        dispatch();
+    }
+
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    public int getQueueSize() {
+        return pendingCount.get();
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Get the number of threads currently created by the pool, including idle threads
+     *
+     * @return number of threads in the pool
+     */
+    public int getPoolSize() {
+        return executor.getPoolSize();
+    }
+
+    /**
+     * Shut down the pool. The running tasks and the tasks waiting for a permit are allowed to
+     * complete within the given time, and the tasks still waiting after it are discarded.
+     *
+     * @param timeout time in milliseconds to wait for the tasks to complete
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void shutdown(int timeout) throws InterruptedException {
+        executor.shutdown();
+        // the running workers keep taking the pending tasks until there are none left
+        executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+
+        int discarded = 0;
+        while (pending.poll() != null) {
+            pendingCount.decrementAndGet();
+            discarded++;
+        }
+        if (discarded > 0) {
+            log.warn(discarded + " pending tasks were discarded, as they could not be " +
+                    "executed before the worker pool was shut down");
+        }
+    }
+
+    /**
+     * Start a thread for each pending task while permits are available
+     */
+    private void dispatch() {
+        while (!pending.isEmpty() && permits.tryAcquire()) {
+            Runnable task = pending.poll();
+            if (task == null) {
+                // another thread took the task we saw
+                permits.release();
+                continue;
+            }
+            pendingCount.decrementAndGet();
+
+            try {
+                executor.execute(new Worker(task));
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Runs a task, and then any task which got queued while it was running, before handing
+     * back its permit.
+     */
+    private class Worker implements Runnable {
+
+        private Runnable task;
+
+        private Worker(Runnable task) {
+            this.task = task;
+        }
+
+        public void run() {
+            activeCount.incrementAndGet();
+            try {
+                while (task != null) {
+                    try {
+                        task.run();
+                    } catch (Throwable t) {
+                        log.error("Unhandled exception in worker", t);
+                    }
+
+                    task = pending.poll();
+                    if (task != null) {
+                        pendingCount.decrementAndGet();
+                    }
+                }
+            } finally {
+                activeCount.decrementAndGet();
+                permits.release();
+            }
+
+            // pick up tasks queued after the last poll, but before the permit was released
+            if (!executor.isShutdown()) {
+                dispatch();
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.transport.nhttp;
+
+import junit.framework.TestCase;
+import org.apache.http.HttpHost;
+import org.apache.http.nio.NHttpClientConnection;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeoutException;
+
+public class ConnectionPoolTest extends TestCase {
+
+    @Override
+    protected void tearDown() throws Exception {
+        ConnectionPool.configure(0, 0, 0, 0, 30000);
+    }
+
+    public void testConnectionReuse() throws Exception {
+        ConnectionPool.configure(0, 0, 0, 0, 1000);
+        HttpHost host = new HttpHost("reuse.test", 8280);
+
+        assertNull(ConnectionPool.getConnection("reuse.test", 8280));
+        TestConnection conn1 = open(host);
+        assertNull(ConnectionPool.getConnection("reuse.test", 8280));
+        TestConnection conn2 = open(host);
+        assertEquals(2, ConnectionPool.getAllocatedConnectionsPerHost().get("reuse.test:8280")
+                .intValue());
+
+        ConnectionPool.release(conn1.proxy);
+        ConnectionPool.release(conn2.proxy);
+        assertEquals(2, ConnectionPool.getIdleConnectionsPerHost().get("reuse.test:8280")
+                .intValue());
+
+        // the most recently released connection is reused first
+        assertSame(conn2.proxy, ConnectionPool.getConnection("reuse.test", 8280));
+        conn1.open = false;
+        ConnectionPool.closed(conn1.proxy);
+        assertNull(ConnectionPool.getIdleConnectionsPerHost().get("reuse.test:8280"));
+        assertEquals(1, ConnectionPool.getAllocatedConnectionsPerHost().get("reuse.test:8280")
+                .intValue());
+
+        ConnectionPool.closed(conn2.proxy);
+        ConnectionPool.closed(conn2.proxy);
+        assertNull(ConnectionPool.getAllocatedConnectionsPerHost().get("reuse.test:8280"));
+    }
+
+    public void testStaleConnectionEviction() throws Exception {
+        ConnectionPool.configure(0, 0, 0, 0, 1000);
+        HttpHost host = new HttpHost("stale.test", 8280);
+
+        assertNull(ConnectionPool.getConnection("stale.test", 8280));
+        TestConnection conn = open(host);
+        ConnectionPool.release(conn.proxy);
+        conn.stale = true;
+
+        long evicted = ConnectionPool.getEvictedCount();
+        assertNull(ConnectionPool.getConnection("stale.test", 8280));
+        assertTrue(conn.closed);
+        assertEquals(evicted + 1, ConnectionPool.getEvictedCount());
+    }
+
+    public void testIdleTimeout() throws Exception {
+        ConnectionPool.configure(0, 0, 50, 0, 1000);
+        HttpHost host = new HttpHost("idle.test", 8280);
+
+        assertNull(ConnectionPool.getConnection("idle.test", 8280));
+        TestConnection conn = open(host);
+        ConnectionPool.release(conn.proxy);
+
+        Thread.sleep(100);
+        ConnectionPool.closeExpiredConnections();
+        assertTrue(conn.closed);
+        assertNull(ConnectionPool.getIdleConnectionsPerHost().get("idle.test:8280"));
+    }
+
+    public void testMaxConnectionsPerHost() throws Exception {
+        ConnectionPool.configure(1, 0, 0, 0, 100);
+        final HttpHost host = new HttpHost("limit.test", 8280);
+
+        assertNull(ConnectionPool.getConnection("limit.test", 8280));
+        final TestConnection conn = open(host);
+
+        long timeouts = ConnectionPool.getLeaseTimeoutCount();
+        try {
+            ConnectionPool.getConnection("limit.test", 8280);
+            fail("Lease timeout expected");
+        } catch (TimeoutException expected) {
+        }
+        assertEquals(timeouts + 1, ConnectionPool.getLeaseTimeoutCount());
+
+        // other hosts are not affected by the limit
+        assertNull(ConnectionPool.getConnection("other.limit.test", 8280));
+        ConnectionPool.connectFailed(new HttpHost("other.limit.test", 8280));
+
+        ConnectionPool.configure(1, 0, 0, 0, 5000);
+        Thread releaser = new Thread() {
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ignore) {
+                }
+                ConnectionPool.release(conn.proxy);
+            }
+        };
+        releaser.start();
+        assertSame(conn.proxy, ConnectionPool.getConnection("limit.test", 8280));
+        releaser.join();
+
+        conn.open = false;
+        ConnectionPool.closed(conn.proxy);
+        assertNull(ConnectionPool.getConnection("limit.test", 8280));
+        ConnectionPool.connectFailed(host);
+    }
+
+    private TestConnection open(HttpHost host) {
+        TestConnection conn = new TestConnection();
+        conn.context.setAttribute(HttpCoreContext.HTTP_TARGET_HOST, host);
+        ConnectionPool.connected(conn.proxy, host);
+        return conn;
+    }
+
+    private static class TestConnection implements InvocationHandler {
+
+        private final HttpContext context = new BasicHttpContext();
+        private final NHttpClientConnection proxy = (NHttpClientConnection) Proxy.newProxyInstance(
+                NHttpClientConnection.class.getClassLoader(),
+                new Class[] { NHttpClientConnection.class }, this);
+
+        private volatile boolean open = true;
+        private volatile boolean stale = false;
+        private volatile boolean closed = false;
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("getContext".equals(name)) {
+                return context;
+            } else if ("isOpen".equals(name)) {
+                return open;
+            } else if ("isStale".equals(name)) {
+                return stale;
+            } else if ("close".equals(name) || "shutdown".equals(name)) {
+                open = false;
+                closed = true;
+            } else if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            } else if ("equals".equals(name)) {
+                return proxy == args[0];
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.transport.passthru;
+
+import org.apache.axis2.transport.base.threads.WorkerPool;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.util.HeapByteBufferAllocator;
+import org.apache.http.protocol.HttpProcessor;
+import org.apache.synapse.transport.passthru.config.BaseConfiguration;
+import org.apache.synapse.transport.passthru.util.BufferFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class PipeTest {
+
+    private static final int BUFFER_SIZE = 64;
+
+    private static final int RING_SIZE = 3;
+
+    private BufferFactory bufferFactory;
+    private CountingIOControl producerControl;
+    private CountingIOControl consumerControl;
+    private Pipe pipe;
+
+    @Before
+    public void setUp() throws Exception {
+        bufferFactory = new BufferFactory(BUFFER_SIZE, HeapByteBufferAllocator.INSTANCE, 8);
+        producerControl = new CountingIOControl();
+        consumerControl = new CountingIOControl();
+        pipe = new Pipe(producerControl, bufferFactory.getBuffer(), "test",
+                new SplicingConfiguration(bufferFactory));
+        pipe.attachConsumer(consumerControl);
+    }
+
+    @Test
+    public void testSplicedContentIsRelayed() throws Exception {
+        assertTrue(pipe.enableSplicing());
+        assertTrue(pipe.isSpliced());
+
+        byte[] content = content(1000);
+        ChunkedDecoder decoder = new ChunkedDecoder(content, 50);
+        ArrayEncoder encoder = new ArrayEncoder();
+        while (!encoder.isCompleted()) {
+            if (!decoder.isCompleted()) {
+                pipe.produce(decoder);
+            }
+            pipe.consume(encoder);
+        }
+        assertArrayEquals(content, encoder.out.toByteArray());
+
+        // only the buffer of the pipe is still held once the message has been relayed
+        assertEquals(1, bufferFactory.getOutstanding());
+    }
+
+    @Test
+    public void testRingGrowsUpToItsSize() throws Exception {
+        assertTrue(pipe.enableSplicing());
+
+        byte[] content = content(BUFFER_SIZE * (RING_SIZE + 2));
+        ChunkedDecoder decoder = new ChunkedDecoder(content, BUFFER_SIZE);
+
+        // the ring grows by a buffer for each chunk read ahead of the consumer
+        for (int i = 0; i < RING_SIZE; i++) {
+            assertEquals(BUFFER_SIZE, pipe.produce(decoder));
+            assertEquals(i + 1, bufferFactory.getOutstanding());
+        }
+        assertEquals(RING_SIZE, consumerControl.outputRequests);
+
+        // once all the ring buffers are filled the input is suspended
+        assertEquals(0, pipe.produce(decoder));
+        assertEquals(1, producerControl.inputSuspensions);
+        assertEquals(RING_SIZE, bufferFactory.getOutstanding());
+
+        // draining the ring frees up the buffers, which are reused rather than reallocated
+        ArrayEncoder encoder = new ArrayEncoder();
+        pipe.consume(encoder);
+        assertEquals(RING_SIZE * BUFFER_SIZE, encoder.out.size());
+        while (!encoder.isCompleted()) {
+            if (!decoder.isCompleted()) {
+                pipe.produce(decoder);
+            }
+            pipe.consume(encoder);
+        }
+        assertArrayEquals(content, encoder.out.toByteArray());
+        assertEquals(1, bufferFactory.getOutstanding());
+    }
+
+    @Test
+    public void testRingIsReleasedOnProducerError() throws Exception {
+        assertTrue(pipe.enableSplicing());
+
+        ChunkedDecoder decoder = new ChunkedDecoder(content(BUFFER_SIZE * 4), BUFFER_SIZE);
+        pipe.produce(decoder);
+        pipe.produce(decoder);
+        assertEquals(2, bufferFactory.getOutstanding());
+
+        pipe.producerError();
+        assertEquals(2, bufferFactory.getOutstanding());
+
+        // the consumer is asked to write, notices the error and completes
+        ArrayEncoder encoder = new ArrayEncoder();
+        assertEquals(-1, pipe.consume(encoder));
+        assertTrue(encoder.isCompleted());
+        assertEquals(1, bufferFactory.getOutstanding());
+    }
+
+    @Test
+    public void testRingIsReleasedOnConsumerError() throws Exception {
+        assertTrue(pipe.enableSplicing());
+
+        ChunkedDecoder decoder = new ChunkedDecoder(content(BUFFER_SIZE * 6), BUFFER_SIZE);
+        for (int i = 0; i < RING_SIZE; i++) {
+            pipe.produce(decoder);
+        }
+        assertEquals(RING_SIZE, bufferFactory.getOutstanding());
+
+        // the producer is resumed and discards the rest of the content
+        pipe.consumerError();
+        assertEquals(1, producerControl.inputRequests);
+        while (!decoder.isCompleted()) {
+            pipe.produce(decoder);
+        }
+        assertEquals(1, bufferFactory.getOutstanding());
+    }
+
+    @Test
+    public void testSplicingIsNotEnabledAfterStreaming() throws Exception {
+        pipe.getInputStream();
+        assertFalse(pipe.enableSplicing());
+        assertFalse(pipe.isSpliced());
+    }
+
+    private static byte[] content(int length) {
+        byte[] content = new byte[length];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        return content;
+    }
+
+    private static class SplicingConfiguration extends BaseConfiguration {
+
+        private final BufferFactory bufferFactory;
+
+        SplicingConfiguration(BufferFactory bufferFactory) {
+            super(null, null, new NoOpWorkerPool());
+            this.bufferFactory = bufferFactory;
+        }
+
+        @Override
+        protected HttpProcessor initHttpProcessor() {
+            return null;
+        }
+
+        @Override
+        public BufferFactory getBufferFactory() {
+            return bufferFactory;
+        }
+
+        @Override
+        public boolean isPipeSplicingEnabled() {
+            return true;
+        }
+
+        @Override
+        public int getPipeSpliceRingSize() {
+            return RING_SIZE;
+        }
+    }
+
+    /**
+     * Returns the content in chunks of at most the given size
+     */
+    private static class ChunkedDecoder implements ContentDecoder {
+
+        private final ByteBuffer data;
+        private final int chunkSize;
+
+        ChunkedDecoder(byte[] data, int chunkSize) {
+            this.data = ByteBuffer.wrap(data);
+            this.chunkSize = chunkSize;
+        }
+
+        public int read(ByteBuffer dst) {
+            int length = Math.min(chunkSize, Math.min(dst.remaining(), data.remaining()));
+            for (int i = 0; i < length; i++) {
+                dst.put(data.get());
+            }
+            return length;
+        }
+
+        public boolean isCompleted() {
+            return !data.hasRemaining();
+        }
+    }
+
+    private static class ArrayEncoder implements ContentEncoder {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private boolean completed = false;
+
+        public int write(ByteBuffer src) {
+            int length = src.remaining();
+            while (src.hasRemaining()) {
+                out.write(src.get());
+            }
+            return length;
+        }
+
+        public void complete() {
+            completed = true;
+        }
+
+        public boolean isCompleted() {
+            return completed;
+        }
+    }
+
+    private static class CountingIOControl implements IOControl {
+
+        private int inputRequests;
+        private int inputSuspensions;
+        private int outputRequests;
+
+        public void requestInput() {
+            inputRequests++;
+        }
+
+        public void suspendInput() {
+            inputSuspensions++;
+        }
+
+        public void requestOutput() {
+            outputRequests++;
+        }
+
+        public void suspendOutput() {
+        }
+
+        public void shutdown() {
+        }
+    }
+
+    private static class NoOpWorkerPool implements WorkerPool {
+
+        public void execute(Runnable task) {
+        }
+
+        public int getActiveCount() {
+            return 0;
+        }
+
+        public int getQueueSize() {
+            return 0;
+        }
+
+        public void shutdown(int timeout) {
+        }
+    }
+}
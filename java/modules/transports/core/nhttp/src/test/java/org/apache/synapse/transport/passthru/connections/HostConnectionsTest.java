@@ -0,0 +1,91 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.transport.passthru.connections;
+
+import junit.framework.TestCase;
+import org.apache.http.nio.NHttpClientConnection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+public class HostConnectionsTest extends TestCase {
+
+    public void testPrewarmedConnections() throws Exception {
+        HostConnections pool = new HostConnections("localhost", 9000, 3);
+        assertEquals(2, pool.reserveWarmingConnections(2));
+        // connections already being opened are taken into account
+        assertEquals(0, pool.reserveWarmingConnections(2));
+
+        NHttpClientConnection conn1 = createConnection(true);
+        NHttpClientConnection conn2 = createConnection(true);
+        assertFalse(pool.addConnection(conn1));
+        pool.warmingConnectionFailed();
+        assertEquals(1, pool.getFreeConnectionCount());
+
+        // connections which were not opened in advance go to the requester
+        assertTrue(pool.addConnection(conn2));
+        assertEquals(1, pool.getBusyConnectionCount());
+
+        assertSame(conn1, pool.getConnection());
+        assertEquals(0, pool.getFreeConnectionCount());
+        assertEquals(2, pool.getBusyConnectionCount());
+
+        // the pool limit is respected
+        assertEquals(1, pool.reserveWarmingConnections(5));
+    }
+
+    public void testStaleConnectionRemoval() throws Exception {
+        HostConnections pool = new HostConnections("localhost", 9000, 10);
+        assertEquals(2, pool.reserveWarmingConnections(2));
+
+        NHttpClientConnection open = createConnection(true);
+        NHttpClientConnection closed = createConnection(false);
+        pool.addConnection(open);
+        pool.addConnection(closed);
+
+        List<NHttpClientConnection> stale = pool.removeStaleConnections();
+        assertEquals(1, stale.size());
+        assertSame(closed, stale.get(0));
+        assertEquals(1, pool.getFreeConnectionCount());
+        assertSame(open, pool.getConnection());
+    }
+
+    private NHttpClientConnection createConnection(final boolean open) {
+        return (NHttpClientConnection) Proxy.newProxyInstance(
+                NHttpClientConnection.class.getClassLoader(),
+                new Class[] { NHttpClientConnection.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if ("isOpen".equals(name)) {
+                    return open;
+                } else if ("isStale".equals(name)) {
+                    return !open;
+                } else if ("hashCode".equals(name)) {
+                    return System.identityHashCode(proxy);
+                } else if ("equals".equals(name)) {
+                    return proxy == args[0];
+                }
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.transport.passthru.util;
+
+import org.apache.http.nio.util.HeapByteBufferAllocator;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BufferFactoryTest {
+
+    @Test
+    public void testReleasedBufferIsReused() {
+        BufferFactory factory = new BufferFactory(1024, HeapByteBufferAllocator.INSTANCE, 4);
+        ControlledByteBuffer buffer = factory.getBuffer();
+        buffer.put((byte) 1);
+        factory.release(buffer);
+
+        ControlledByteBuffer reused = factory.getBuffer();
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(1, factory.getHits());
+        assertEquals(1, factory.getMisses());
+        assertEquals(1, factory.getOutstanding());
+    }
+
+    @Test
+    public void testSizeClasses() {
+        BufferFactory factory = new BufferFactory(new int[] {4096, 1024}, 2048,
+                HeapByteBufferAllocator.INSTANCE, 4, 2, Long.MAX_VALUE);
+        assertArrayEquals(new int[] {1024, 2048, 4096}, factory.getSizeClasses());
+
+        assertEquals(2048, factory.getBuffer().getByteBuffer().capacity());
+        assertEquals(1024, factory.getBuffer(100).getByteBuffer().capacity());
+        assertEquals(4096, factory.getBuffer(3000).getByteBuffer().capacity());
+
+        // Buffers larger than the largest size class are allocated but never pooled
+        ControlledByteBuffer large = factory.getBuffer(10000);
+        assertEquals(10000, large.getByteBuffer().capacity());
+        factory.release(large);
+        assertEquals(0, factory.getPooledBytes());
+        assertEquals(1, factory.getDiscarded());
+    }
+
+    @Test
+    public void testPooledBytesAreBounded() {
+        BufferFactory factory = new BufferFactory(new int[0], 1024,
+                HeapByteBufferAllocator.INSTANCE, 16, 4, 2048);
+        List<ControlledByteBuffer> buffers = new ArrayList<ControlledByteBuffer>();
+        for (int i = 0; i < 5; i++) {
+            buffers.add(factory.getBuffer());
+        }
+        for (ControlledByteBuffer buffer : buffers) {
+            factory.release(buffer);
+        }
+        assertEquals(2048, factory.getPooledBytes());
+        assertEquals(3, factory.getDiscarded());
+        assertEquals(0, factory.getOutstanding());
+    }
+
+    @Test
+    public void testBuffersAreSharedAcrossStripes() throws Exception {
+        final BufferFactory factory = new BufferFactory(new int[0], 1024,
+                HeapByteBufferAllocator.INSTANCE, 8, 4, Long.MAX_VALUE);
+        final ControlledByteBuffer buffer = factory.getBuffer();
+
+        // Release from another thread, which will most likely be bound to a different stripe
+        Thread releaser = new Thread() {
+            public void run() {
+                factory.release(buffer);
+            }
+        };
+        releaser.start();
+        releaser.join();
+
+        assertSame(buffer, factory.getBuffer());
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.transport.passthru.util;
+
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.synapse.transport.passthru.Pipe;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class PeekInputStreamTest {
+
+    private byte[] content;
+    private Pipe pipe;
+
+    @Before
+    public void setUp() throws Exception {
+        content = new byte[600];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+
+        pipe = new Pipe(new NoOpIOControl(), new ControlledByteBuffer(ByteBuffer.allocate(1024)),
+                "test", null);
+        pipe.attachConsumer(new NoOpIOControl());
+        pipe.produce(new ArrayDecoder(content));
+    }
+
+    @Test
+    public void testContentIsReadAgainAfterPeek() throws Exception {
+        PeekInputStream peek = new PeekInputStream(pipe, 1000, "UTF-8");
+        byte[] prefix = new byte[100];
+        assertEquals(100, peek.read(prefix, 0, prefix.length));
+        assertEquals(100, peek.read());
+        peek.close();
+
+        assertArrayEquals(content, readFully(pipe.getInputStream()));
+    }
+
+    @Test
+    public void testPeekLimit() throws Exception {
+        PeekInputStream peek = new PeekInputStream(pipe, 50, "UTF-8");
+        byte[] prefix = new byte[100];
+        assertEquals(50, peek.read(prefix, 0, prefix.length));
+        try {
+            peek.read();
+            fail("Reading beyond the limit should fail");
+        } catch (IOException expected) {
+        }
+        peek.close();
+
+        assertArrayEquals(content, readFully(pipe.getInputStream()));
+    }
+
+    @Test
+    public void testContentIsRelayedAfterPeek() throws Exception {
+        PeekInputStream peek = new PeekInputStream(pipe, 1000, "UTF-8");
+        assertEquals(200, peek.read(new byte[200], 0, 200));
+        peek.close();
+
+        ArrayEncoder encoder = new ArrayEncoder();
+        while (!encoder.isCompleted()) {
+            pipe.consume(encoder);
+        }
+        assertArrayEquals(content, encoder.out.toByteArray());
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64];
+        int read;
+        while ((read = in.read(buffer, 0, buffer.length)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static class ArrayDecoder implements ContentDecoder {
+
+        private final ByteBuffer data;
+
+        ArrayDecoder(byte[] data) {
+            this.data = ByteBuffer.wrap(data);
+        }
+
+        public int read(ByteBuffer dst) {
+            int length = Math.min(dst.remaining(), data.remaining());
+            for (int i = 0; i < length; i++) {
+                dst.put(data.get());
+            }
+            return length;
+        }
+
+        public boolean isCompleted() {
+            return !data.hasRemaining();
+        }
+    }
+
+    private static class ArrayEncoder implements ContentEncoder {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private boolean completed = false;
+
+        public int write(ByteBuffer src) {
+            int length = src.remaining();
+            while (src.hasRemaining()) {
+                out.write(src.get());
+            }
+            return length;
+        }
+
+        public void complete() {
+            completed = true;
+        }
+
+        public boolean isCompleted() {
+            return completed;
+        }
+    }
+
+    private static class NoOpIOControl implements IOControl {
+
+        public void requestInput() {
+        }
+
+        public void suspendInput() {
+        }
+
+        public void requestOutput() {
+        }
+
+        public void suspendOutput() {
+        }
+
+        public void shutdown() {
+        }
+    }
+}
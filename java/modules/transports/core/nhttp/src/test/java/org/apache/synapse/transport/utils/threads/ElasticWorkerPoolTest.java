@@ -0,0 +1,199 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.transport.utils.threads;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ElasticWorkerPoolTest extends TestCase {
+
+    private static final int TASKS = 400;
+
+    public void testConcurrencyLimit() throws Exception {
+        final int limit = 10;
+        ElasticWorkerPool pool = new ElasticWorkerPool(limit, 5, "test-group", "test-worker");
+
+        final AtomicInteger running = new AtomicInteger(0);
+        final AtomicInteger maxRunning = new AtomicInteger(0);
+        final CountDownLatch done = new CountDownLatch(TASKS / 4);
+
+        for (int i = 0; i < TASKS / 4; i++) {
+            pool.execute(new Runnable() {
+                public void run() {
+                    int current = running.incrementAndGet();
+                    int max;
+                    while (current > (max = maxRunning.get())) {
+                        if (maxRunning.compareAndSet(max, current)) {
+                            break;
+                        }
+                    }
+                    sleep(10);
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+
+        assertTrue(pool.getQueueSize() > 0);
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertTrue("Concurrency limit exceeded: " + maxRunning.get(), maxRunning.get() <= limit);
+        assertEquals(limit, maxRunning.get());
+
+        waitForIdle(pool);
+        assertEquals(0, pool.getQueueSize());
+        pool.shutdown(1000);
+    }
+
+    public void testFailingTask() throws Exception {
+        ElasticWorkerPool pool = new ElasticWorkerPool(1, 5, "test-group", "test-worker");
+        final CountDownLatch done = new CountDownLatch(1);
+
+        pool.execute(new Runnable() {
+            public void run() {
+                throw new RuntimeException("Test exception");
+            }
+        });
+        pool.execute(new Runnable() {
+            public void run() {
+                done.countDown();
+            }
+        });
+
+        assertTrue("Permit should be reused after a failure", done.await(5, TimeUnit.SECONDS));
+        pool.shutdown(1000);
+    }
+
+    /**
+     * Tasks blocking on a slow backend do not hold back the tasks behind them, the pool runs
+     * all of them at once up to its concurrency limit.
+     *
+     * @throws Exception on an error
+     */
+    public void testBlockingTasksRunConcurrently() throws Exception {
+        ElasticWorkerPool pool = new ElasticWorkerPool(TASKS, 5, "test-group", "test-worker");
+        final CountDownLatch started = new CountDownLatch(TASKS);
+        final CountDownLatch backend = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(TASKS);
+
+        for (int i = 0; i < TASKS; i++) {
+            pool.execute(new BlockingTask(started, backend, done));
+        }
+
+        // every task is blocked on the backend at the same time
+        assertTrue("Only " + (TASKS - started.getCount()) + " tasks were started",
+                started.await(30, TimeUnit.SECONDS));
+        assertEquals(TASKS, pool.getActiveCount());
+        assertEquals(0, pool.getQueueSize());
+
+        backend.countDown();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        pool.shutdown(1000);
+    }
+
+    public void testShutdownRunsPendingTasks() throws Exception {
+        ElasticWorkerPool pool = new ElasticWorkerPool(1, 5, "test-group", "test-worker");
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch backend = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(6);
+
+        pool.execute(new BlockingTask(started, backend, done));
+        for (int i = 0; i < 5; i++) {
+            pool.execute(new BlockingTask(new CountDownLatch(1), backend, done));
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(5, pool.getQueueSize());
+
+        backend.countDown();
+        pool.shutdown(5000);
+        assertEquals(0, done.getCount());
+        assertEquals(0, pool.getQueueSize());
+
+        try {
+            pool.execute(new BlockingTask(new CountDownLatch(1), backend, done));
+            fail("A task must not be accepted after the pool is shut down");
+        } catch (RejectedExecutionException expected) {
+        }
+    }
+
+    public void testShutdownDiscardsTasksAfterTimeout() throws Exception {
+        ElasticWorkerPool pool = new ElasticWorkerPool(1, 5, "test-group", "test-worker");
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch backend = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(6);
+
+        pool.execute(new BlockingTask(started, backend, done));
+        for (int i = 0; i < 5; i++) {
+            pool.execute(new BlockingTask(new CountDownLatch(1), backend, done));
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        pool.shutdown(100);
+        assertEquals(0, pool.getQueueSize());
+
+        backend.countDown();
+        waitForIdle(pool);
+        // only the task which was running when the pool was shut down completes
+        assertEquals(5, done.getCount());
+    }
+
+    private void waitForIdle(ElasticWorkerPool pool) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+        while (pool.getActiveCount() > 0 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    /**
+     * A task which blocks until the backend latch is released
+     */
+    private static class BlockingTask implements Runnable {
+
+        private final CountDownLatch started;
+        private final CountDownLatch backend;
+        private final CountDownLatch done;
+
+        private BlockingTask(CountDownLatch started, CountDownLatch backend,
+                             CountDownLatch done) {
+            this.started = started;
+            this.backend = backend;
+            this.done = done;
+        }
+
+        public void run() {
+            started.countDown();
+            try {
+                backend.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+            }
+            done.countDown();
+        }
+    }
+}